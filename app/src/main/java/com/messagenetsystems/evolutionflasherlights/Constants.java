@@ -11,6 +11,14 @@ package com.messagenetsystems.evolutionflasherlights;
  *  2020.06.18      Chris Rider     Added constant for found-controller notification text.
  *  2020.06.28      Chris Rider     Refactored intent-related constants names and values to make code maintainability easier.
  *  2020.07.02      Chris Rider     Decreased light command timeout from 2500ms to 2000ms.
+ *  2026.10.16      agent           Added write-without-response transport settings.
+ *  2026.10.16      agent           Added light state confirmation staleness (for LightStateReconciler).
+ *  2026.10.16      agent           Added verbose logging configuration (for LogUtils).
+ *  2026.10.16      agent           Added log sampling interval and the local setLogConfig intent (for LogControlReceiver).
+ *  2026.10.16      agent           Added main app heartbeat stale/dead thresholds (for MainAppLiveness).
+ *  2026.10.16      agent           Added monitor task cadences and supervision settings (for MonitorScheduler).
+ *  2026.10.16      agent           Added drift reconcile rate limit (for LightStateReconciler).
+ *  2026.10.16      agent           Added the LOG_CONTROL permission that setLogConfig broadcasts require.
  */
 
 
@@ -24,9 +32,25 @@ public class Constants {
 
     public static final boolean GATT_AUTOCONNECT = false;
 
+    // Write colour/brightness/flash datagrams without waiting for the device's response, once the link is known-good
+    public static final boolean GATT_WRITE_NO_RESPONSE_ENABLED = true;
+    public static final int GATT_WRITE_NO_RESPONSE_MIN_SPACING_MS = 30;     //pacing between unacknowledged writes (so we don't overrun the controller)
+
     // Number of milliseconds to give a light command to respond, before we brute-force it to cancel
     public static final int LIGHT_COMMAND_TIMEOUT_MS = 2000;
 
+    // Number of milliseconds a confirmed light state is trusted before we write it again anyway (in case the controller drifted)
+    public static final long LIGHT_STATE_CONFIRMATION_STALE_MS = 2 * 60 * 1000;
+
+    // Reconciling right away when the controller reports a state other than the confirmed one: at most once per interval (doubling with
+    // each consecutive drift), and after this many drifts in a row we stop (and leave it to confirmation staleness) until a report matches
+    public static final long LIGHT_STATE_DRIFT_RECONCILE_MIN_INTERVAL_MS = 30 * 1000;
+    public static final int LIGHT_STATE_DRIFT_RECONCILE_MAX_CONSECUTIVE = 3;
+
+    // Number of milliseconds without a heartbeat from the main delivery app before it's considered stale, and then dead (see MainAppLiveness)
+    public static final long MAIN_APP_HEARTBEAT_STALE_MS = 30 * 1000;
+    public static final long MAIN_APP_HEARTBEAT_DEAD_MS = 90 * 1000;
+
     // WARNING: Make sure any changes to this block coincide with other apps' Constants class files!
     public static final String NAMESPACE_MESSAGENET = "com.messagenetsystems";
     public static final String PACKAGE_NAME_MAIN_APP = NAMESPACE_MESSAGENET+".evolution2";
@@ -66,10 +90,37 @@ public class Constants {
     }
 
 
+    /** Intents this app receives for itself (not shared with other apps) */
+    public static class LocalIntents {
+        public static class Actions {
+            public static String SET_LOG_CONFIG = PACKAGE_NAME_FLASHERS + ".intent.action.setLogConfig";                                   //change logging levels/method/sampling at runtime (see LogControlReceiver)
+        }
+
+        public static class Permissions {
+            public static String LOG_CONTROL = PACKAGE_NAME_FLASHERS + ".permission.LOG_CONTROL";                                          //senders of SET_LOG_CONFIG must hold this (signature-level, see manifest)
+        }
+
+        public static class ExtrasKeys {
+            public static String LOG_SUBSYSTEM = PACKAGE_NAME_FLASHERS + ".intent.extra.logSubsystem";                                     //subsystem name (e.g. "transport"), or "all" (omit for the global level)
+            public static String LOG_LEVEL = PACKAGE_NAME_FLASHERS + ".intent.extra.logLevel";                                             //"V", "D", "I", "W", "E", or "default"
+            public static String LOG_METHOD = PACKAGE_NAME_FLASHERS + ".intent.extra.logMethod";                                           //"logcat", "file", or "default"
+            public static String LOG_SAMPLE_INTERVAL_MS = PACKAGE_NAME_FLASHERS + ".intent.extra.logSampleIntervalMs";                     //milliseconds (long), zero to disable sampling
+        }
+    }
+
+
     /** Configuration subclass */
     public static class Configuration {
         public class App {
             public static final boolean LOG_TO_FILE = true;
+            public static final boolean LOG_VERBOSE = false;        //whether verbose messages get logged (see LogUtils; can be changed at runtime)
+            public static final long LOG_SAMPLE_INTERVAL_MS = 60 * 1000;    //how often repetitive messages (e.g. loop banners) get through (see LogUtils.Sampler; can be changed at runtime)
+        }
+        public class Monitor {
+            public static final long SUPERVISION_PERIOD_MS = 60 * 1000;     //how often MonitorScheduler checks on its tasks and logs their run-time stats
+            public static final long TASK_RESTART_DELAY_MS = 5 * 1000;      //how long after a triggered task throws before MonitorScheduler runs it again
+            public static final long HEALTH_MONITOR_PERIOD_MS = 1000;       //how often HealthMonitorThread checks problem counts
+            public static final long LEGACY_LIGHT_STATE_PERIOD_MS = 2000;   //how often BluetoothFlasherLightsService's light state manager checks the lights
         }
     }
 
@@ -28,6 +28,25 @@ package com.messagenetsystems.evolutionflasherlights;
  *                                  Got notification bar action item to turn activate light standby mode working.
  *  2020.07.02      Chris Rider     Implemented doForce flag in executeLightCommand method, notification text tweaks, and optimized delayed cleanup Runnable/Handler operations.
  *  2020.07.06      Chris Rider     Trying out a scan routine (instead of direct acquisition of device), didn't really work, but keeping it around in a deactivated state.
+ *  2026.10.16      agent           Light commands now go to a persistent GATT session (GattSessionManager_HY254117) instead of connecting per command.
+ *  2026.10.16      agent           No longer aborts commands while one is underway; the session's mailbox takes the newest one instead (latest wins).
+ *  2026.10.16      agent           Repeat suppression now goes by the session's LightStateReconciler (desired vs. confirmed state, with staleness).
+ *  2026.10.16      agent           Command/connection-underway flags (and their force-cleanup timeout) replaced by methods that ask the session's state machine.
+ *  2026.10.16      agent           Light command payloads are built once into a LightCommandPayloadTable, right after the device model.
+ *  2026.10.16      agent           Starts AsyncFileLogger (with FileLogger's log directory) so file logging doesn't block callers.
+ *  2026.10.16      agent           Opens the CommandJournal (same directory), and records commands received, dedupe decisions, and submissions.
+ *  2026.10.16      agent           Provisioning file is read through ProvisioningCache (watched for changes) instead of a root shell.
+ *  2026.10.16      agent           Resets MainAppLiveness along with the other main app heartbeat globals.
+ *  2026.10.16      agent           Signals LightStateManagerThread when a light command has been written.
+ *  2026.10.16      agent           Owns the MonitorScheduler that all monitor loops (both services' light state managers, health monitor) run on.
+ *  2026.10.16      agent           Runtime and last-write times are elapsed-realtime (monotonic); dropped the main app heartbeat Date globals (MainAppLiveness has them).
+ *  2026.10.16      agent           Added submitLightCommand, which says what became of a command (for the bound LightCommandChannel).
+ *  2026.10.16      agent           Logs through LogUtils (SUBSYSTEM_APP; async file logger, runtime levels, templates on the command path)
+ *                                  instead of calling FL directly.
+ *  2026.10.16      agent           Added setDefinedLightControllerMAC (starts or re-points the GATT session), also invoked when the
+ *                                  provisioning file's MAC changes, so a controller associated after startup gets used right away.
+ *  2026.10.16      agent           Light status notification updates for submitted and written commands are posted to the main thread,
+ *                                  so submitLightCommand (called on Binder threads) and the GATT session never wait on NotificationManager.
  */
 
 import android.Manifest;
@@ -63,20 +82,28 @@ import com.bosphere.filelogger.FL;
 import com.bosphere.filelogger.FLConfig;
 import com.bosphere.filelogger.FLConst;
 import com.messagenetsystems.evolutionflasherlights.activities.StartupActivity;
-import com.messagenetsystems.evolutionflasherlights.bluetooth.BluetoothGattCallback;
 import com.messagenetsystems.evolutionflasherlights.devices.BluetoothLightController_HY254117V9;
+import com.messagenetsystems.evolutionflasherlights.devices.LightCommandPayloadTable;
 import com.messagenetsystems.evolutionflasherlights.models.FlasherLights;
+import com.messagenetsystems.evolutionflasherlights.models.MainAppLiveness;
 import com.messagenetsystems.evolutionflasherlights.receivers.NotificationActionReceiver;
 import com.messagenetsystems.evolutionflasherlights.services.BluetoothFlasherLightsService;
-import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+import com.messagenetsystems.evolutionflasherlights.threads.LightStateManagerThread;
+import com.messagenetsystems.evolutionflasherlights.threads.MonitorScheduler;
+import com.messagenetsystems.evolutionflasherlights.utilities.AsyncFileLogger;
+import com.messagenetsystems.evolutionflasherlights.utilities.DatetimeUtils;
 import com.messagenetsystems.evolutionflasherlights.utilities.FileUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.ProvisioningCache;
 import com.messagenetsystems.evolutionflasherlights.utilities.SettingsUtils;
+import com.messagenetsystems.evolutionflasherlights.v3.CommandJournal;
 import com.messagenetsystems.evolutionflasherlights.v3.GattCallback_HY254117;
+import com.messagenetsystems.evolutionflasherlights.v3.GattSessionManager_HY254117;
+import com.messagenetsystems.evolutionflasherlights.v3.LightStateReconciler;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -84,44 +111,47 @@ import java.util.UUID;
 
 
 public class MainApplication extends Application {
-    private final String TAG = this.getClass().getSimpleName();
+    private static final String TAG = MainApplication.class.getSimpleName();
 
     // Constants...
     public static final int NOTIF_REPLACE = 1;
     public static final int NOTIF_APPEND = 2;
 
+    // Logging stuff...
+    private static final int LOG_SEVERITY_V = 1;
+    private static final int LOG_SEVERITY_D = 2;
+    private static final int LOG_SEVERITY_I = 3;
+    private static final int LOG_SEVERITY_W = 4;
+    private static final int LOG_SEVERITY_E = 5;
+    private static final int logMethod = Constants.LOG_METHOD_FILELOGGER;
+
 
     // Global data variables (private ones are available via getter methods)...
     private String appPackageName;
     public static String appPackageNameStatic;
     private String appVersion;
     private Date appStartedDate;
+    private volatile long appStartedElapsedMS;                      //monotonic, for runtime (wall clock may be adjusted while we run)
     private volatile boolean allowAppToDie;
 
     public static String definedLightControllerMAC;
     public static FlasherLights.OmniCommandCodes flasherLightOmniCommandCodes;
     public static BluetoothLightController_HY254117V9 lightControllerDeviceModel;
+    public static volatile LightCommandPayloadTable lightCommandPayloadTable;
 
     public BluetoothDevice bluetoothDevice;
     public GattCallback_HY254117 bluetoothGattCallback;
     public BluetoothGatt bluetoothGatt;
+    public GattSessionManager_HY254117 gattSessionManager;
+    public MonitorScheduler monitorScheduler;                       //the one thread all our monitor loops run on, as tasks
 
     public volatile int numOfDeliveringMsgsInMainApp;
     public static volatile UUID msgCurrentlyDelivering_UUID;
     public static volatile long msgCurrentlyDelivering_exectedDeliveryDurationMS;
     public static volatile long msgCurrentlyDelivering_lightDurationMS;
 
-    public static volatile Date mainAppHeartbeat_appStartedTimestamp;
-    public static volatile Date mainAppLastCommunicationTimestamp;
-    public static volatile Date mainAppLastCommunicationTimestamp_previous;
-
-    public volatile boolean isBluetoothDeviceCommandUnderway;
     public volatile byte[] mostRecentRootCharacteristicWrittenToDevice_value;
-    public volatile Date mostRecentRootCharacteristicWrittenToDevice_datetime;
-    public volatile boolean isBluetoothGattConnectionUnderway;
-
-    private LightTimeoutForceCleanupRunnable lightTimeoutForceCleanupRunnable;
-    public static Handler lightTimeoutForceCleanupHandler;
+    public volatile long mostRecentRootCharacteristicWrittenToDevice_elapsedMS = DatetimeUtils.ELAPSED_NEVER;
 
     public volatile boolean bluetoothProblemExists_needDeviceReset = false;
     public long problemCount_status133 = 0;
@@ -133,6 +163,7 @@ public class MainApplication extends Application {
     private NotificationCompat.Builder mNotifBuilder;
     private int mNotifID;
     private Notification mNotification;
+    private final Handler notificationHandler = new Handler(Looper.getMainLooper());       //light status notification updates (posted, so callers never wait on NotificationManager)
 
     Intent stopMainServiceIntent;
     PendingIntent stopMainServicePendingIntent;
@@ -176,19 +207,19 @@ public class MainApplication extends Application {
             @Override
             public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
                 final String TAGG = "onActivityCreated("+activity.getClass().getSimpleName()+"): ";
-                FL.d(TAG, TAGG+"Invoked.");
+                logD(TAGG+"Invoked.");
             }
 
             @Override
             public void onActivityStarted(Activity activity) {
                 final String TAGG = "onActivityStarted("+activity.getClass().getSimpleName()+"): ";
-                FL.d(TAG, TAGG+"Invoked.");
+                logD(TAGG+"Invoked.");
             }
 
             @Override
             public void onActivityResumed(Activity activity) {
                 final String TAGG = "onActivityResumed("+activity.getClass().getSimpleName()+"): ";
-                FL.i(TAG, TAGG+"Invoked.");
+                logI(TAGG+"Invoked.");
 
                 //setCurrentVisibleActivity(activity);
             }
@@ -196,7 +227,7 @@ public class MainApplication extends Application {
             @Override
             public void onActivityPaused(Activity activity) {
                 final String TAGG = "onActivityPaused("+activity.getClass().getSimpleName()+"): ";
-                FL.d(TAG, TAGG+"Invoked.");
+                logD(TAGG+"Invoked.");
 
                 //setCurrentVisibleActivity(null);
             }
@@ -204,19 +235,19 @@ public class MainApplication extends Application {
             @Override
             public void onActivityStopped(Activity activity) {
                 final String TAGG = "onActivityStopped("+activity.getClass().getSimpleName()+"): ";
-                FL.d(TAG, TAGG+"Invoked.");
+                logD(TAGG+"Invoked.");
             }
 
             @Override
             public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
                 final String TAGG = "onActivitySaveInstanceState("+activity.getClass().getSimpleName()+"): ";
-                FL.d(TAG, TAGG+"Invoked.");
+                logD(TAGG+"Invoked.");
             }
 
             @Override
             public void onActivityDestroyed(Activity activity) {
                 final String TAGG = "onActivityDestroyed("+activity.getClass().getSimpleName()+"): ";
-                FL.d(TAG, TAGG+"Invoked.");
+                logD(TAGG+"Invoked.");
             }
         });
     }
@@ -227,7 +258,7 @@ public class MainApplication extends Application {
     public void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
         final String TAGG = "onConfigurationChanged: ";
-        FL.i(TAG, TAGG+"Invoked.");
+        logI(TAGG+"Invoked.");
 
         //TODO? Depending on what "configuration" means, you may need to reload/reinit stuff?
     }
@@ -242,7 +273,7 @@ public class MainApplication extends Application {
     public void onLowMemory() {
         super.onLowMemory();
         final String TAGG = "onLowMemory: ";
-        FL.i(TAG, TAGG+"Invoked.");
+        logI(TAGG+"Invoked.");
     }
 
     // Called when the OS has determined that it's a good time for a process to trim unneeded memory from its processes.
@@ -251,7 +282,7 @@ public class MainApplication extends Application {
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
         final String TAGG = "onTrimMemory: ";
-        FL.i(TAG, TAGG+"Invoked.");
+        logI(TAGG+"Invoked.");
     }
 
     // This method is for use in emulated process environments.
@@ -260,7 +291,22 @@ public class MainApplication extends Application {
     public void onTerminate() {
         super.onTerminate();
         final String TAGG = "onTerminate: ";
-        FL.d(TAG, TAGG+"Invoked.");
+        logD(TAGG+"Invoked.");
+
+        if (this.gattSessionManager != null) {
+            this.gattSessionManager.shutdown();
+            this.gattSessionManager = null;
+        }
+
+        if (this.monitorScheduler != null) {
+            this.monitorScheduler.shutdown();
+            this.monitorScheduler = null;
+        }
+
+        ProvisioningCache.setListener(null);
+        ProvisioningCache.stopWatching();
+        CommandJournal.close();
+        AsyncFileLogger.stop();
     }
 
 
@@ -300,6 +346,12 @@ public class MainApplication extends Application {
             // Overall toggle to enable/disable logging!
             FL.setEnabled(true);
 
+            // Classes' own log methods (LogUtils) write files through this instead, so they never wait on the filesystem
+            AsyncFileLogger.start(logDirectory);
+
+            // Binary journal of light commands and GATT events (see tools/JournalAnalyzer.java)
+            CommandJournal.open(logDirectory);
+
             // Give a second for things to finish and become ready
             // We do this in case other stuff starts to log right away
             try {
@@ -318,6 +370,8 @@ public class MainApplication extends Application {
 
         this.isProvFileAvailable = isProvFileAvailable();
 
+        this.monitorScheduler = new MonitorScheduler(Constants.LOG_METHOD_FILELOGGER);
+
         flasherLightOmniCommandCodes = new FlasherLights.OmniCommandCodes(FlasherLights.PLATFORM_MNS); //TODO: Make this not hard-coded!
 
         // Dev-Note: We shouldn't have to bother with this kind of thing, since our only service is sticky
@@ -330,8 +384,6 @@ public class MainApplication extends Application {
         turnLightsStandbyPendingIntent = PendingIntent.getBroadcast(this, 0, turnLightsStandbyIntent, PendingIntent.FLAG_UPDATE_CURRENT);
 
         this.mNotifID = Integer.parseInt(new SimpleDateFormat("ddHHmmss", Locale.US).format(new Date()));
-
-        this.lightTimeoutForceCleanupRunnable = new LightTimeoutForceCleanupRunnable();
     }
 
     // Initialize "global" data
@@ -344,24 +396,27 @@ public class MainApplication extends Application {
         appPackageNameStatic = appPackageName;
         this.appVersion = loadAppVersion(getApplicationContext());
         this.appStartedDate = new Date();
+        this.appStartedElapsedMS = DatetimeUtils.nowElapsedMS();
         this.allowAppToDie = false;
 
         this.mainService = new BluetoothFlasherLightsService();
         this.mainServiceIntent = new Intent(getApplicationContext(), mainService.getClass());
 
-        // Initialize our configured/defined light controller MAC address
+        // Initialize our configured/defined light controller MAC address (provisioning file is parsed once, and re-read only if it changes)
+        ProvisioningCache.startWatching();
         //definedLightControllerMAC = SettingsUtils.getSharePrefsFlasherLightControllerMacAddress();
         definedLightControllerMAC = SettingsUtils.getProvFileFlasherLightControllerMacAddress();
         if (!SettingsUtils.isThisMacAddressValid(definedLightControllerMAC)) {
-            FL.w(TAGG+TAGG+"Configured flasher light MAC address is invalid. Won't use it.");
+            logW(TAGG+"Configured flasher light MAC address is invalid. Won't use it.");
             definedLightControllerMAC = null;
         }
 
         //flasherLightOmniCommandCodes = new FlasherLights.OmniCommandCodes(FlasherLights.PLATFORM_MNS); //TODO: Make this not hard-coded!
         lightControllerDeviceModel = new BluetoothLightController_HY254117V9(Constants.LOG_METHOD_FILELOGGER);
+        lightCommandPayloadTable = new LightCommandPayloadTable(lightControllerDeviceModel, flasherLightOmniCommandCodes, Constants.LOG_METHOD_FILELOGGER);
 
         this.bluetoothDevice = null;
-        this.bluetoothGattCallback = new GattCallback_HY254117(Constants.LOG_METHOD_FILELOGGER);
+        this.bluetoothGattCallback = null;
         if (this.bluetoothGatt != null) {
             this.bluetoothGatt.close();
             this.bluetoothGatt = null;
@@ -373,16 +428,29 @@ public class MainApplication extends Application {
         msgCurrentlyDelivering_exectedDeliveryDurationMS = 0;
         msgCurrentlyDelivering_lightDurationMS = 0;
 
-        mainAppLastCommunicationTimestamp = null;
-        mainAppLastCommunicationTimestamp_previous = null;
-        mainAppHeartbeat_appStartedTimestamp = null;
+        MainAppLiveness.reset();
 
-        this.isBluetoothDeviceCommandUnderway = false;
         mostRecentRootCharacteristicWrittenToDevice_value = null;
-        mostRecentRootCharacteristicWrittenToDevice_datetime = null;
-        this.isBluetoothGattConnectionUnderway = false;
+        mostRecentRootCharacteristicWrittenToDevice_elapsedMS = DatetimeUtils.ELAPSED_NEVER;
+
+        // Open our long-lived link to the light controller (it stays up and reconnects on its own from here on)
+        if (this.gattSessionManager != null) {
+            this.gattSessionManager.shutdown();
+        }
+        this.gattSessionManager = new GattSessionManager_HY254117(getApplicationContext(), Constants.LOG_METHOD_FILELOGGER);
+        if (definedLightControllerMAC != null) {
+            this.gattSessionManager.start();
+        } else {
+            logW(TAGG+"No light controller defined, so not starting GATT session yet.");
+        }
 
-        lightTimeoutForceCleanupHandler = new Handler(Looper.getMainLooper());
+        // Follow the provisioning file, in case the light controller gets (re)associated there while we run
+        ProvisioningCache.setListener(new ProvisioningCache.Listener() {
+            @Override
+            public void onLightControllerMacAddressChanged(String macAddress) {
+                setDefinedLightControllerMAC(macAddress);
+            }
+        });
     }
 
     // Load app version and return it
@@ -393,10 +461,10 @@ public class MainApplication extends Application {
         try {
             ret = String.valueOf(appContext.getPackageName());
         } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught!", e);
+            logE(TAGG+"Exception caught: "+e.getMessage());
         }
 
-        FL.d(TAG, TAGG+"Returning \""+ret+"\".");
+        logD(TAGG+"Returning \""+ret+"\".");
         return ret;
     }
 
@@ -409,10 +477,10 @@ public class MainApplication extends Application {
             PackageInfo pInfo = appContext.getPackageManager().getPackageInfo(getPackageName(), 0);
             ret = String.valueOf(pInfo.versionName);
         } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught!", e);
+            logE(TAGG+"Exception caught: "+e.getMessage());
         }
 
-        FL.d(TAG, TAGG+"Returning \""+ret+"\".");
+        logD(TAGG+"Returning \""+ret+"\".");
         return ret;
     }
 
@@ -425,10 +493,10 @@ public class MainApplication extends Application {
             FileUtils fileUtils = new FileUtils(getApplicationContext(), FileUtils.LOG_METHOD_FILELOGGER);
             ret = fileUtils.doesFileExist(FileUtils.FILE_PATH_EXTERNAL_STORAGE, getResources().getString(R.string.provfile_filename));
         } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught!", e);
+            logE(TAGG+"Exception caught: "+e.getMessage());
         }
 
-        FL.d(TAG, TAGG+"Returning "+String.valueOf(ret)+".");
+        logD(TAGG+"Returning "+String.valueOf(ret)+".");
         return ret;
     }
 
@@ -439,11 +507,11 @@ public class MainApplication extends Application {
         ActivityManager manager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
         for (ActivityManager.RunningServiceInfo service : manager.getRunningServices(Integer.MAX_VALUE)) {
             if (serviceClass.getName().equals(service.service.getClassName())) {
-                FL.i(TAG, TAGG+"Returning true.");
+                logI(TAGG+"Returning true.");
                 return true;
             }
         }
-        FL.i(TAG, TAGG+"Returning false.");
+        logI(TAGG+"Returning false.");
         return false;
     }
 
@@ -459,149 +527,133 @@ public class MainApplication extends Application {
 
             startActivity(new Intent(this, StartupActivity.class));
         } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught!", e);
+            logE(TAGG+"Exception caught: "+e.getMessage());
         }
     }
 
-    //private int retries = 0;      //DEV-NOTE: retry idea doesn't fix the issues
+    /** Execute the specified light command.
+     * The command is handed to our persistent GATT session, which writes it immediately if the link is up,
+     * or as soon as the link (re)connects. There is no longer any connect/disconnect per command.
+     * If another command is still underway, this one replaces whatever is waiting and gets written as soon as that one finishes.
+     * @param flasherLightCommandCode Omni command code to execute
+     * @param durationS Duration (seconds) the light command should last
+     * @param msgUUID UUID of the message this command is for (may be null)
+     * @param doForce Whether to skip the repeat check
+     * @return Whether the command was accepted
+     */
     public boolean executeLightCommand(byte flasherLightCommandCode, long durationS, UUID msgUUID, boolean doForce) {
-        final String TAGG = "executeLightCommand: ";
-        FL.d(TAGG+"Invoked for command: "+Byte.toString(flasherLightCommandCode)+" ("+flasherLightOmniCommandCodes.codeToEnglish(flasherLightCommandCode)+")");
-
-        if (doForce) {
-            this.bluetoothDevice = null;
-            if (this.bluetoothGatt != null) {
-                this.bluetoothGatt.close();
-                this.bluetoothGatt = null;
-            }
-            if (this.bluetoothGattCallback != null) {
-                this.bluetoothGattCallback.cleanup();
-                this.bluetoothGattCallback = null;
+        return submitLightCommand(flasherLightCommandCode, durationS, msgUUID, doForce) == FlasherLights.LightCommandChannel.RESULT_QUEUED;
+    }
+
+    /** Same as executeLightCommand, but says what became of the command (for callers that report back, like LightCommandChannelBinder).
+     * Safe to invoke from any thread.
+     * @return FlasherLights.LightCommandChannel.RESULT_QUEUED, RESULT_ALREADY_APPLIED, or RESULT_REJECTED
+     */
+    public int submitLightCommand(byte flasherLightCommandCode, long durationS, UUID msgUUID, boolean doForce) {
+        final String TAGG = "submitLightCommand: ";
+        logD(TAGG, "Invoked for command {} (force {}).", flasherLightCommandCode, doForce);             //formatted only if debug is on
+        CommandJournal.record(CommandJournal.EVENT_COMMAND_RECEIVED, flasherLightCommandCode, doForce ? 1 : 0, 0, durationS);
+
+        if (this.gattSessionManager == null) {
+            logW(TAGG+"No GATT session available, aborting.");
+            return FlasherLights.LightCommandChannel.RESULT_REJECTED;
+        }
+
+        // Check whether we even need to execute a command (no need to touch the radio if the controller is already confirmed in this state)
+        // Note: if anything is still outstanding, the confirmed state isn't where the lights will end up, so this one must replace it
+        LightStateReconciler lightStateReconciler = this.gattSessionManager.getLightStateReconciler();
+        lightStateReconciler.setDesired(flasherLightCommandCode);
+        if (doForce || this.gattSessionManager.isCommandOutstanding()) {
+            //must send
+        } else if (!lightStateReconciler.needsReconcile()) {
+            CommandJournal.record(CommandJournal.EVENT_COMMAND_DEDUPED, flasherLightCommandCode);
+            logV(TAGG+"Light controller is already confirmed in this state, so it's unnecessary to send it again, aborting.");
+            return FlasherLights.LightCommandChannel.RESULT_ALREADY_APPLIED;
+        }
+
+        try {
+            // Hand the command to our session (it takes care of connecting, if needed, and writing; newest command wins)
+            if (!this.gattSessionManager.submitLightCommand(flasherLightCommandCode)) {
+                CommandJournal.record(CommandJournal.EVENT_COMMAND_SUBMITTED, flasherLightCommandCode, 0, 0, 0);
+                logW(TAGG+"GATT session did not accept the command, aborting.");
+                return FlasherLights.LightCommandChannel.RESULT_REJECTED;
             }
+            CommandJournal.record(CommandJournal.EVENT_COMMAND_SUBMITTED, flasherLightCommandCode, 1, 0, 0);
+
+            // Update notification just for FYI (on the main thread, so a Binder caller doesn't wait on it)
+            postNotificationWithLightStatus(flasherLightCommandCode, false);
+
+            return FlasherLights.LightCommandChannel.RESULT_QUEUED;
+        } catch (Exception e) {
+            logE(TAGG+"Exception caught: "+e.getMessage());
+            return FlasherLights.LightCommandChannel.RESULT_REJECTED;
         }
+    }
 
-        // Check whether we even need to execute a command (don't need to keep sending repeats of the same command, for instance)
-        if (doForce || mostRecentRootCharacteristicWrittenToDevice_value == null) {
-            //nothing has ever been written yet, so we may allow it
-        } else if (Arrays.equals(mostRecentRootCharacteristicWrittenToDevice_value, ConversionUtils.convertCommandCodeToBleCharacteristicValueList(flasherLightCommandCode).get(0))) {
-            FL.i(TAGG+"This light command would be a repeat of the most recently written command, so it's unnecessary to send it again, aborting.");
+    /** Use the specified light controller from now on (e.g. once it's been associated), starting or re-pointing our GATT session.
+     * @param macAddress MAC address of the light controller
+     * @return Whether it was valid (and is now the defined controller)
+     */
+    public boolean setDefinedLightControllerMAC(String macAddress) {
+        final String TAGG = "setDefinedLightControllerMAC: ";
+
+        if (!SettingsUtils.isThisMacAddressValid(macAddress)) {
+            logW(TAGG+"MAC address \""+String.valueOf(macAddress)+"\" is invalid. Won't use it.");
             return false;
         }
 
-        // Decide how we proceed if there is a pending command that hasn't finished executing
-        if (!doForce && this.isBluetoothDeviceCommandUnderway) {
-            FL.w(TAGG+"A BLE command is pending, aborting.");
-            return false;
+        if (!macAddress.equalsIgnoreCase(definedLightControllerMAC)) {
+            logI(TAGG+"Light controller is now "+macAddress+" (was "+String.valueOf(definedLightControllerMAC)+").");
         }
+        definedLightControllerMAC = macAddress;
 
-        this.isBluetoothDeviceCommandUnderway = true;
-
-        try{
-            // Ensure any previous GATT clients are cleared out before we proceed (to help avoid 133 status errors)
-            if (this.bluetoothGatt != null) {
-                FL.w(TAGG+"BluetoothGatt client instance not null. Perhaps we're still waiting on client device to let us go. Attempting resource reset and aborting so you may try again.");
-                this.bluetoothGatt.disconnect();
-                this.bluetoothGatt.close();
-                this.bluetoothGatt = null;
-                this.bluetoothGattCallback.cleanup();
-                this.bluetoothGattCallback = null;
-                this.bluetoothDevice = null;
-
-                this.isBluetoothDeviceCommandUnderway = false;
-                return false;
-
-            /*
-            if (retries < 2) {
-                FL.w(TAGG + "BluetoothGatt client instance not null. Perhaps we're still waiting on client device to let us go. Retrying...");
-                try {
-                    Thread.sleep(1000);
-                } catch (Exception e) {
-                    FL.w(TAGG+"Exception caught sleeping on retry: "+e.getMessage());
-                }
-                retries++;
-                executeLightCommand(flasherLightCommandCode, durationS, msgUUID, doForce);  //recurse
-            } else {
-                FL.w(TAGG+"BluetoothGatt client instance not null and retries did not succeed. Perhaps we're still waiting on client device to let us go. Aborting.");
-                retries = 0;
-                return false;
-            }
-            */
-            }
+        if (this.gattSessionManager != null) {
+            this.gattSessionManager.useController(macAddress);
+        }
+        return true;
+    }
 
-            //---- DEVICE --------------------------------------------------------------------------
-            //DEV-NOTE: Reinit every single time no matter what? Seems to exhibit good behavior doing so. Probably right way.
-            if (!bluetoothDeviceInit(BLUETOOTH_DEVICE_INIT_METHOD_DIRECT)) {
-                FL.w(TAGG+"Failed to initialize BluetoothDevice, aborting!");
-                this.isBluetoothDeviceCommandUnderway = false;      //reinit
-                return false;
-            }
-            /*
-            bluetoothDeviceInit(BLUETOOTH_DEVICE_INIT_METHOD_SCAN);
-            //while (isScanInProgress) {
-            while (bluetoothDevice == null) {
-                try {
-                    FL.v(TAGG + "Waiting a brief time for scan to finish.");
-                    Thread.sleep(200);
-                } catch (InterruptedException e) {
-                    FL.w(TAGG + "Exception caught waiting for scan to stop; should be alright, so continuing.");
-                }
-            }
-            */
+    /** Make sure the light controller is in whatever state was last asked for.
+     * This only touches the radio if it isn't confirmed to be in that state, or that confirmation has gone stale.
+     * @return Whether a command was sent
+     */
+    public boolean reconcileLightState() {
+        if (this.gattSessionManager == null) {
+            return false;
+        }
 
-            //---- GATT CALLBACKS ------------------------------------------------------------------
-            // Check if we have a callback instance and create it if we don't (should never happen)
-            if (this.bluetoothGattCallback == null) {
-                this.bluetoothGattCallback = new GattCallback_HY254117(Constants.LOG_METHOD_FILELOGGER);
-            }
-            if (this.bluetoothGattCallback != null) {
-                FL.v(TAGG+"Created BluetoothGattCallback instance.");
-            } else {
-                FL.w(TAGG + "Failed to create BluetoothGattCallback instance, aborting.");
-                this.isBluetoothDeviceCommandUnderway = false;
-                return false;
-            }
+        Byte desiredCode = this.gattSessionManager.getLightStateReconciler().getDesired();
+        if (desiredCode == null) {
+            return false;
+        }
 
-            // Set the BLE command that the callback instance should send to the lights when it establishes a connection
-            // DEV-NOTE: Since we avoid duplicate/concurrent calls with the checks at the beginning of this method, this should not result
-            // in any race conditions or anything like that, so probably no need to use synchronize or anything.
-            this.bluetoothGattCallback.setFlasherLightCommandCodeToDo(flasherLightCommandCode);
-            if (this.bluetoothGattCallback.getFlasherLightCommandCodeToDo() != flasherLightCommandCode) {
-                FL.w(TAGG + "Failed to set command code in BluetoothGattCallback instance, aborting.");
-                this.isBluetoothDeviceCommandUnderway = false;
-                return false;
-            }
+        return executeLightCommand(desiredCode, Integer.MAX_VALUE, null, false);
+    }
 
+    /** Invoked by our GATT session once all of a light command's values have been written to the device.
+     * @param flasherLightCommandCode Omni command code that was written
+     * @param rootCharacteristicValue First (root) characteristic value that was written for the command
+     */
+    public void onLightCommandWritten(byte flasherLightCommandCode, byte[] rootCharacteristicValue) {
+        final String TAGG = "onLightCommandWritten: ";
+        logV(TAGG, "Invoked for command {}.", flasherLightCommandCode);
 
-            //---- GATT CLIENT/CONNECTION ----------------------------------------------------------
-            // Clean up any old gatt client instances (to avoid any from piling up when we invoke connect)
-            if (this.bluetoothGatt != null) {
-                FL.v(TAGG+"Old BluetoothGatt client instance exists, closing and cleaning it up before continuing...");
-                try {
-                    this.bluetoothGatt.close();
-                } catch (Exception e) {
-                    FL.w(TAGG+"Exception caught closing GATT client. Continuing.");
-                }
-            }
+        this.mostRecentRootCharacteristicWrittenToDevice_value = rootCharacteristicValue;
+        this.mostRecentRootCharacteristicWrittenToDevice_elapsedMS = DatetimeUtils.nowElapsedMS();
 
-            // Update notification just for FYI
-            replaceNotificationWithLightStatus(flasherLightCommandCode, false);
+        postNotificationWithLightStatus(flasherLightCommandCode, true);
 
-            // Invoke connect and kick off the callback sequence
-            this.bluetoothGatt = this.bluetoothDevice.connectGatt(getApplicationContext(),
-                    Constants.GATT_AUTOCONNECT,
-                    this.bluetoothGattCallback,
-                    BluetoothDevice.TRANSPORT_LE);
-            this.isBluetoothGattConnectionUnderway = true;
+        LightStateManagerThread.signal(LightStateManagerThread.EVENT_COMMAND_COMPLETED);
+    }
 
-            // On delay, completely abort the operation if it doesn't respond back or complete in a reasonable amount of time...
-            // We do this no matter whether the GATT process succeeds or not, just to make sure resources are cleared.
-            lightTimeoutForceCleanupHandler.postDelayed(lightTimeoutForceCleanupRunnable, Constants.LIGHT_COMMAND_TIMEOUT_MS);
+    /** Whether a light command is being written, or waiting for the link to be written (asks the session, so it can never be left stale). */
+    public boolean isBluetoothDeviceCommandUnderway() {
+        return this.gattSessionManager != null && this.gattSessionManager.isCommandOutstanding();
+    }
 
-            return true;
-        } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught: "+e.getMessage());
-            return false;
-        }
+    /** Whether a connection to the light controller is being established (asks the session's state machine). */
+    public boolean isBluetoothGattConnectionUnderway() {
+        return this.gattSessionManager != null && this.gattSessionManager.isConnectionEstablishing();
     }
 
     public static final byte BLUETOOTH_DEVICE_INIT_METHOD_DIRECT = 1;
@@ -666,27 +718,27 @@ public class MainApplication extends Application {
                     //scanStopHandler.postDelayed(new Runnable() {
                         @Override
                         public void run() {
-                            FL.d(TAGG + "Runnable executing to stop scan.");
+                            logD(TAGG + "Runnable executing to stop scan.");
                             try {
                                 if (isScanInProgress) {
-                                    FL.d(TAGG + "Scanning will now be commanded to stop.");
+                                    logD(TAGG + "Scanning will now be commanded to stop.");
 
                                     bluetoothLeScanner.stopScan(btleScanCallback);
                                     isScanInProgress = false;
 
                                     try {
-                                        FL.v(TAGG + "Waiting a brief time for scan to finish stopping.");
+                                        logV(TAGG + "Waiting a brief time for scan to finish stopping.");
                                         Thread.sleep(100);
                                     } catch (InterruptedException e) {
-                                        FL.w(TAGG + "Exception caught waiting for scan to stop; should be alright, so continuing.");
+                                        logW(TAGG + "Exception caught waiting for scan to stop; should be alright, so continuing.");
                                     }
                                 } else {
-                                    FL.i(TAGG+"Scan not in progress, unable to stop what's not happening.");
+                                    logI(TAGG+"Scan not in progress, unable to stop what's not happening.");
                                 }
 
                                 //handlerThread.interrupt();
                             } catch (Exception e) {
-                                FL.w(TAGG+"Exception caught stopping scan: "+e.getMessage());
+                                logW(TAGG+"Exception caught stopping scan: "+e.getMessage());
                             }
                         }
                     }, scanMaxSeconds*1000);
@@ -694,53 +746,26 @@ public class MainApplication extends Application {
                     break;
             }
         } catch (Exception e) {
-            FL.w(TAG, TAGG+"Exception caught: "+e.getMessage());
+            logW(TAGG+"Exception caught: "+e.getMessage());
         }
 
         // Validate whether we succeeded and set return value as such
         if (deviceAcquisitionMethod != BLUETOOTH_DEVICE_INIT_METHOD_SCAN) {
             if (bluetoothDevice != null) {
-                FL.v(TAGG + "Acquired BluetoothDevice from BluetoothAdapter.");
+                logV(TAGG + "Acquired BluetoothDevice from BluetoothAdapter.");
                 ret = true;
             } else {
-                FL.w(TAGG + "Failed to acquire BluetoothDevice from BluetoothAdapter.");
+                logW(TAGG + "Failed to acquire BluetoothDevice from BluetoothAdapter.");
                 ret = false;
             }
         } else {
             ret = false;
         }
 
-        // Reinit anything dependent on this, since they would have been obliterated by this operation
-        isBluetoothDeviceCommandUnderway = false;
-        isBluetoothGattConnectionUnderway = false;
-
-        FL.v(TAG, TAGG+"Returning: "+Boolean.toString(ret));
+        logV(TAGG+"Returning: "+Boolean.toString(ret));
         return ret;
     }
 
-    private class LightTimeoutForceCleanupRunnable implements Runnable {
-        final String TAGG = LightTimeoutForceCleanupRunnable.class.getSimpleName()+": ";
-
-        @Override
-        public void run() {
-            try {
-                if (bluetoothGatt != null) {
-                    FL.d(TAGG+"Light command timeout reached. Closing and cleaning up GATT, independently from callbacks.");
-
-                    bluetoothGatt.close();
-                    bluetoothGatt = null;
-
-                    bluetoothGattCallback.cleanup();
-                    bluetoothGattCallback = null;
-                } else {
-                    FL.d(TAG, TAGG+"GATT already closed and cleaned up (probably via callbacks). Nothing to do.");
-                }
-            } catch (Exception e) {
-                FL.w(TAG, TAGG+"Exception caught explicitly closing GATT independently from callbacks: "+e.getMessage());
-            }
-        }
-    }
-
     private class BtleScanCallback extends ScanCallback {
         private final String TAGG = BtleScanCallback.class.getSimpleName()+": ";
 
@@ -901,7 +926,7 @@ public class MainApplication extends Application {
     /** Replace the notification with specified light status. */
     public void replaceNotificationWithLightStatus(Byte flasherLightCode, String textAfterLightMode, boolean verified) {
         final String TAGG = "replaceNotificationWithLightStatus: ";
-        FL.v(TAG, TAGG+"Invoked.");
+        logV(TAGG+"Invoked.");
 
         final String verifiedText_false = " processing...";
         final String verifiedText_true = " in effect";
@@ -920,13 +945,23 @@ public class MainApplication extends Application {
                 replaceNotificationWithText(humanReadableCode + textAfterLightMode + verifiedTextToUse);
             }
         } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught: "+e.getMessage());
+            logE(TAGG+"Exception caught: "+e.getMessage());
         }
     }
     public void replaceNotificationWithLightStatus(Byte flasherLightCode, boolean verified) {
         replaceNotificationWithLightStatus(flasherLightCode, null, verified);
     }
 
+    /** Same as replaceNotificationWithLightStatus, but done on the main thread (in order), without waiting for it. Safe to invoke from any thread. */
+    private void postNotificationWithLightStatus(final Byte flasherLightCode, final boolean verified) {
+        notificationHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                replaceNotificationWithLightStatus(flasherLightCode, verified);
+            }
+        });
+    }
+
     /** Return the current notification text. */
     public String getCurrentNotificationText() {
         final String TAGG = "getCurrentNotificationText: ";
@@ -1063,7 +1098,7 @@ public class MainApplication extends Application {
     public String getAppPackageName() {
         final String TAGG = "getAppPackageName: ";
         final String ret = this.appPackageName;
-        FL.d(TAG, TAGG+"Returning \""+String.valueOf(ret)+"\".");
+        logD(TAGG+"Returning \""+String.valueOf(ret)+"\".");
         return ret;
     }
     public static String getAppPackageNameStatic() {
@@ -1071,7 +1106,7 @@ public class MainApplication extends Application {
     }
     public void setAppPackageName(String packageName) {
         final String TAGG = "setAppPackageName: ";
-        FL.d(TAG, TAGG+"Setting \""+String.valueOf(packageName)+"\"...");
+        logD(TAGG+"Setting \""+String.valueOf(packageName)+"\"...");
         this.appPackageName = packageName;
         appPackageNameStatic = packageName;
     }
@@ -1079,66 +1114,65 @@ public class MainApplication extends Application {
     public String getAppVersion() {
         final String TAGG = "getAppVersion: ";
         final String ret = this.appVersion;
-        FL.d(TAG, TAGG+"Returning \""+String.valueOf(ret)+"\".");
+        logD(TAGG+"Returning \""+String.valueOf(ret)+"\".");
         return ret;
     }
     public void setAppVersion(String appVersion) {
         final String TAGG = "setAppVersion: ";
-        FL.d(TAG, TAGG+"Setting \""+String.valueOf(appVersion)+"\"...");
+        logD(TAGG+"Setting \""+String.valueOf(appVersion)+"\"...");
         this.appVersion = appVersion;
     }
 
     public Date getAppStartedDate() {
         final String TAGG = "getAppStartedDate: ";
         final Date ret = this.appStartedDate;
-        FL.d(TAG, TAGG+"Returning \""+String.valueOf(ret)+"\".");
+        logD(TAGG+"Returning \""+String.valueOf(ret)+"\".");
         return ret;
     }
     public long getAppRunningHours() {
         final String TAGG = "getAppRunningHours: ";
         long ret = 0;
         try {
-            long appStartTime = getAppStartedDate().getTime();
-            long currentTime = new Date().getTime();
-            long diffMS = currentTime - appStartTime;
+            long diffMS = DatetimeUtils.msSince(this.appStartedElapsedMS);
             long diffHrs = diffMS / (60 * 60 * 1000);
             ret = diffHrs;
         } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught calculating app's runtime in hours: "+e.getMessage());
+            logE(TAGG+"Exception caught calculating app's runtime in hours: "+e.getMessage());
         }
-        FL.d(TAG, TAGG+"Returning \""+Long.toString(ret)+"\".");
+        logD(TAGG+"Returning \""+Long.toString(ret)+"\".");
         return ret;
     }
     public long getAppRunningMinutes() {
         final String TAGG = "getAppRunningMinutes: ";
         long ret = 0;
         try {
-            long appStartTime = getAppStartedDate().getTime();
-            long currentTime = new Date().getTime();
-            long diffMS = currentTime - appStartTime;
+            long diffMS = DatetimeUtils.msSince(this.appStartedElapsedMS);
             long diffMins = diffMS / (60 * 1000);
             ret = diffMins;
         } catch (Exception e) {
-            FL.e(TAG, TAGG+"Exception caught calculating app's runtime in hours: "+e.getMessage());
+            logE(TAGG+"Exception caught calculating app's runtime in hours: "+e.getMessage());
         }
-        FL.d(TAG, TAGG+"Returning \""+Long.toString(ret)+"\".");
+        logD(TAGG+"Returning \""+Long.toString(ret)+"\".");
         return ret;
     }
     public void setAppStartedDate(Date date) {
         final String TAGG = "setAppStartedDate: ";
-        FL.d(TAG, TAGG+"Setting "+String.valueOf(date)+"...");
+        logD(TAGG+"Setting "+String.valueOf(date)+"...");
         this.appStartedDate = date;
+        if (date != null) {
+            this.appStartedElapsedMS = DatetimeUtils.nowElapsedMS() - Math.max(0, System.currentTimeMillis() - date.getTime());
+        }
     }
 
     public boolean getAllowAppToDie() {
         final String TAGG = "getAllowAppToDie: ";
         final boolean ret = this.allowAppToDie;
-        FL.d(TAG, TAGG+"Returning "+String.valueOf(ret)+".");
+        logD(TAGG+"Returning "+String.valueOf(ret)+".");
         return ret;
     }
     public void setAllowAppToDie(boolean allowAppToDie) {
         final String TAGG = "setAllowAppToDie: ";
-        FL.d(TAG, TAGG+"Setting "+String.valueOf(allowAppToDie)+"...");
+        logD(TAGG+"Setting "+String.valueOf(allowAppToDie)+"...");
         this.allowAppToDie = allowAppToDie;
     }
 
@@ -1173,4 +1207,31 @@ public class MainApplication extends Application {
     }
 
 
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private static void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private static void logV(String tagg, String template, Object arg1) {
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, LOG_SEVERITY_V, tagg, template, arg1);         //formatted only if verbose is on
+    }
+    private static void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private static void logD(String tagg, String template, Object arg1, Object arg2) {
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, LOG_SEVERITY_D, tagg, template, arg1, arg2);   //formatted only if debug is on
+    }
+    private static void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private static void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private static void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private static void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, logSeverity, tagg);
+    }
 }
@@ -8,6 +8,8 @@ package com.messagenetsystems.evolutionflasherlights.activities;
  *  2020.06.30      Chris Rider     Improved runtime permissions approval workflow.
  *                                  Added feature to scan for nearest device and update MAC in provisioning file, when associating.
  *  2020.07.01      Chris Rider     Improvements to testing flows and trying to make more responsive, additional status texts, fixed MAC not showing on initial load, etc.
+ *  2026.10.16      agent           Button re-enable wait now asks MainApplication whether the command is still outstanding, and gives up after a while.
+ *  2026.10.16      agent           Association goes through MainApplication.setDefinedLightControllerMAC (so the GATT session picks it up).
  */
 
 import android.Manifest;
@@ -327,14 +329,21 @@ public class StartupActivity extends Activity {
             new Handler(Looper.getMainLooper()).post(new Runnable() {
                 @Override
                 public void run() {
-                    while (mainApplication.isBluetoothDeviceCommandUnderway) {
+                    // The session keeps an unwritten command until the link is back, so don't wait on it forever
+                    int secondsWaited = 0;
+                    while (mainApplication.isBluetoothDeviceCommandUnderway() && secondsWaited < 10) {
                         try {
                             Thread.sleep(1000);
                         } catch (InterruptedException e) {
                             FL.w(TAGG + "Exception caught sleeping: " + e.getMessage());
                         }
+                        secondsWaited++;
+                    }
+                    if (mainApplication.isBluetoothDeviceCommandUnderway()) {
+                        tvStatus.setText(MainApplication.flasherLightOmniCommandCodes.codeToEnglish(command)+" Queued (light device not connected yet).");
+                    } else {
+                        tvStatus.setText(MainApplication.flasherLightOmniCommandCodes.codeToEnglish(command)+" Done.");
                     }
-                    tvStatus.setText(MainApplication.flasherLightOmniCommandCodes.codeToEnglish(command)+" Done.");
                     enableButtons();
                 }
             });
@@ -433,7 +442,7 @@ public class StartupActivity extends Activity {
                 tvStatus.setText("Associated \"" + lightControllerMacAddress + "\" with main app.");
                 tvStatus.setVisibility(View.VISIBLE);
                 etMAC.setText(lightControllerMacAddress);
-                MainApplication.definedLightControllerMAC = lightControllerMacAddress;
+                mainApplication.setDefinedLightControllerMAC(lightControllerMacAddress);
                 ret = true;
             } else {
                 Log.w(TAG, TAGG + "Set shared prefs method failed somehow.");
@@ -24,19 +24,18 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.Nullable;
-import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.TextView;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
 import com.messagenetsystems.evolutionflasherlights.R;
 import com.messagenetsystems.evolutionflasherlights.devices.BluetoothLightController_HY254117V9;
 import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 import com.messagenetsystems.evolutionflasherlights.utilities.SettingsUtils;
 
 import java.util.Arrays;
@@ -776,45 +775,6 @@ public class TestActivity extends Activity {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, logSeverity, tagg);
     }
 }
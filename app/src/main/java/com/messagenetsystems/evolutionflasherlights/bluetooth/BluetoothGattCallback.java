@@ -37,27 +37,34 @@ package com.messagenetsystems.evolutionflasherlights.bluetooth;
  *  2020.07.01      Chris Rider     Added some extra logic to try to check for and clear out old connections before beginning a new one - doesn't really prevent our 133 error, but can't hurt.
  *  2020.07.02      Chris Rider     Minor refactoring of onConnectionStateChange callback, also now executing standby light mode if 133 encountered -best we can do for now, at least not indicate wrong message to user -doesn't work every time but better?
  *  2020.07.06      Chris Rider     Trying out some service-discovery retry mechanism (doesn't seem to work any better), also implemented some null-error catches.
+ *  2026.10.16      agent           GATT operations now go through a GattOperationQueue instead of sleeping between them on callback threads.
+ *  2026.10.16      agent           Resolved attributes now come from GattAttributeCache (skips rediscovery for a known controller), and
+ *                                  refreshDeviceCache moved there so it's only invoked when a write fails with an attribute error.
+ *  2026.10.16      agent           Status 133 is reported to the session's GattRecoveryController instead of scheduling a forced standby re-send
+ *                                  (the light state reconciler re-asserts the desired state once the link is healthy again).
+ *  2026.10.16      agent           No longer clears MainApplication's command/connection flags (those are now derived from the session's state machine).
+ *  2026.10.16      agent           Last-write time is now elapsed-realtime (no Date per write).
+ *  2026.10.16      agent           Always discovers services again (cached attributes are resolved on this client afterward, not reused from another).
  */
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
 import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.DatetimeUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+import com.messagenetsystems.evolutionflasherlights.v3.GattAttributeCache;
+import com.messagenetsystems.evolutionflasherlights.v3.GattOperationQueue;
+import com.messagenetsystems.evolutionflasherlights.v3.GattRecoveryController;
 
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Method;
-import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -98,6 +105,10 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
 
     private byte customStatus;
 
+    private GattOperationQueue gattOperationQueue;
+    private GattOperationQueue.OnCompleteListener discoverServicesListener;
+    private GattOperationQueue.OnCompleteListener characteristicWriteListener;
+
 
     /** Constructor */
     public BluetoothGattCallback(Context context, int logMethod, @Nullable List<byte[]> characteristicValuesToWrite) {
@@ -135,6 +146,20 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
 
         this.customStatus = STATUS_CUSTOM_NONE;
 
+        this.gattOperationQueue = new GattOperationQueue(null, logMethod);
+        this.discoverServicesListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                processServicesDiscovered(op.getGatt(), status);
+            }
+        };
+        this.characteristicWriteListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                processCharacteristicWrite(op, status);
+            }
+        };
+
         logI("Instance created.");
     }
 
@@ -162,25 +187,13 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
         this.serviceUUID = null;
         this.characteristicUUID = null;
 
+        if (this.gattOperationQueue != null) {
+            this.gattOperationQueue.quit();
+            this.gattOperationQueue = null;
+        }
+
         //BluetoothService.callbackInstanceCount--;
         //BluetoothService.lightCmdIsUnderway = false;
-
-        this.mainApplication.isBluetoothDeviceCommandUnderway = false;
-
-        this.mainApplication.isBluetoothGattConnectionUnderway = false;
-    }
-
-    private void refreshDeviceCache(BluetoothGatt gatt) {
-        final String TAGG = "refreshDeviceCache: ";
-
-        try {
-            Method localMethod = gatt.getClass().getMethod("refresh");
-            if(localMethod != null) {
-                localMethod.invoke(gatt);
-            }
-        } catch(Exception localException) {
-            Log.d(TAGG+"Exception caught: ", localException.toString());
-        }
     }
 
 
@@ -213,15 +226,8 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
                         delayWhenBonded = 1000;
                     }
                     final int delay = bondState == BOND_BONDED ? delayWhenBonded : 50;
-                    new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            logV(TAGG+"Discovering services with "+delay+"ms delay.");
-                            if (!gatt.discoverServices()) {
-                                logE(TAGG+"discoverServices failed to start.");
-                            }
-                        }
-                    }, delay);
+                    logV(TAGG+"Discovering services with "+delay+"ms delay.");
+                    gattOperationQueue.enqueue(GattOperationQueue.Operation.discoverServices(gatt, delay, discoverServicesListener));
                 }  else if (bondState == BOND_BONDING) {
                     // Bonding process in progress, let it complete
                     // Stack would be busy in this case and service discovery unavailable
@@ -259,24 +265,15 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
                 // There was a low-level error in the communication which led to loss of connection.
                 logE(TAGG+"Status 133 (low-level error / loss of connection / failure to connect). ");
                 mainApplication.problemCount_status133++;
-                mainApplication.replaceNotificationWithText("ERROR: Device connection problem! Executing standby light mode...");
-
-                // Try to at least reset lights to default standby to clear out any old modes
-                new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            mainApplication.executeLightCommand(
-                                    mainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_STANDBY,
-                                    Long.MAX_VALUE,
-                                    null,
-                                    true
-                            );
-                        } catch (Exception e) {
-                            logE(TAGG+"Exception caught: "+e.getMessage());
-                        }
+                mainApplication.replaceNotificationWithText("ERROR: Device connection problem! Recovering...");
+
+                // Let recovery decide when (and how hard) to try again, rather than forcing a standby re-send into a struggling stack
+                if (mainApplication.gattSessionManager != null) {
+                    int step = mainApplication.gattSessionManager.getRecoveryController().onFailure(status);
+                    if (step >= GattRecoveryController.STEP_REFRESH_CACHE) {
+                        GattAttributeCache.invalidate(gatt);
                     }
-                }, Constants.LIGHT_COMMAND_TIMEOUT_MS+1);  //ensure we run this after any delayed independent resource cleanup runnable
+                }
 
                 gatt.close();
                 cleanup();
@@ -345,7 +342,14 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
     @Override
     public void onServicesDiscovered(BluetoothGatt gatt, int status) {
         super.onServicesDiscovered(gatt, status);
-        final String TAGG = "onServicesDiscovered: ";
+        if (gattOperationQueue != null) {
+            gattOperationQueue.onServicesDiscovered(gatt, status);
+        }
+    }
+
+    /** Handle the result of a (queued) service discovery. Runs on the operation queue's thread. */
+    private void processServicesDiscovered(BluetoothGatt gatt, int status) {
+        final String TAGG = "processServicesDiscovered: ";
 
         switch (status) {
             case GATT_SUCCESS:
@@ -364,73 +368,28 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
                         }
                     }
 
-                    // Get the service we care about from whatever services the device responded with...
-                    BluetoothGattService bluetoothGattService = gatt.getService(this.serviceUUID);
-
-                    // Check if we have our service and can continue...
-                    // If not, then try an alternative methods to get it
-                    if (bluetoothGattService == null) {
-                        logW(TAGG + "Unable to directly get GATT service for UUID \"" + String.valueOf(this.serviceUUID) + "\"");
-
-                        //ORIGINAL SIMPLE...
-                        //logE(TAGG + "Unable to find appropriate service. Disconnecting GATT and cancelling this session...");
-                        //this.customStatus = STATUS_CUSTOM_SERVICE_DISCOVERY_PROBLEM;    //set our flag that the onDisconnect can catch on
-                        //gatt.disconnect();
-
-                        if (gatt.getServices() != null) {
-                            logD(TAGG + "Searching all available services...");
-                            for (BluetoothGattService gattService : gatt.getServices()) {
-                                if (gattService.getUuid() != null) {
-                                    logV(TAGG + "  checking available service \"" + gattService.getUuid().toString() + "\"");
-                                    if (this.serviceUUID.toString().equals(gattService.getUuid().toString())) {
-                                        logV(TAGG + "  Found!");
-                                        bluetoothGattService = gattService;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-
-                        if (bluetoothGattService == null) {
-                            if (serviceDiscoveryRetries < serviceDiscoveryMaxRetries) {
-                                logW(TAGG + "Search yielded no appropriate service. Trying again...");
-                                serviceDiscoveryRetries++;
-                                doSleep(200);
-                                gatt.discoverServices();
-                            } else {
-                                logE(TAGG + "Still not able to find appropriate service. Disconnecting GATT and cancelling this session...");
-                                mainApplication.problemCount_serviceDiscovery++;
-                                serviceDiscoveryRetries = 0;
-                                this.customStatus = STATUS_CUSTOM_SERVICE_DISCOVERY_PROBLEM;    //set our flag that the onDisconnect can catch on
-                                gatt.disconnect();
-                            }
+                    // Resolve the service and characteristics we care about from whatever services the device responded with (cached instance IDs spare the search)...
+                    GattAttributeCache.Attributes attributes = GattAttributeCache.resolve(gatt,
+                            this.serviceUUID,
+                            this.characteristicUUID,
+                            UUID.fromString(MainApplication.lightControllerDeviceModel.getUuidStr_characteristicForNotify()),
+                            UUID.fromString(MainApplication.lightControllerDeviceModel.getUuidStr_characteristicForOverhead()));
+
+                    if (attributes == null) {
+                        if (serviceDiscoveryRetries < serviceDiscoveryMaxRetries) {
+                            logW(TAGG + "Search yielded no appropriate service. Trying again...");
+                            serviceDiscoveryRetries++;
+                            gattOperationQueue.enqueue(GattOperationQueue.Operation.discoverServices(gatt, 200, discoverServicesListener));
                         } else {
-                            // Now that we have our service, we can actually write something to the device...
-                            try {
-                                //this.bluetoothGattCharacteristic = this.bluetoothGattService.getCharacteristic(this.characteristicUUID);
-                                //this.bluetoothGattCharacteristic.setValue(this.characteristicValuesToWrite.get(characteristicIndexToWrite));
-                                //gatt.writeCharacteristic(this.bluetoothGattCharacteristic);
-                                BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(this.characteristicUUID);
-                                bluetoothGattCharacteristic.setValue(characteristicValuesToWrite.get(characteristicIndexToWrite));
-                                gatt.writeCharacteristic(bluetoothGattCharacteristic);
-                            } catch (Exception e) {
-                                logE(TAGG + "Exception caught (will reset index counter): " + e.getMessage());
-                                characteristicIndexToWrite = 0;
-                            }
+                            logE(TAGG + "Still not able to find appropriate service. Disconnecting GATT and cancelling this session...");
+                            mainApplication.problemCount_serviceDiscovery++;
+                            serviceDiscoveryRetries = 0;
+                            this.customStatus = STATUS_CUSTOM_SERVICE_DISCOVERY_PROBLEM;    //set our flag that the onDisconnect can catch on
+                            gatt.disconnect();
                         }
                     } else {
                         // Now that we have our service, we can actually write something to the device...
-                        try {
-                            //this.bluetoothGattCharacteristic = this.bluetoothGattService.getCharacteristic(this.characteristicUUID);
-                            //this.bluetoothGattCharacteristic.setValue(this.characteristicValuesToWrite.get(characteristicIndexToWrite));
-                            //gatt.writeCharacteristic(this.bluetoothGattCharacteristic);
-                            BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(this.characteristicUUID);
-                            bluetoothGattCharacteristic.setValue(characteristicValuesToWrite.get(characteristicIndexToWrite));
-                            gatt.writeCharacteristic(bluetoothGattCharacteristic);
-                        } catch (Exception e) {
-                            logE(TAGG + "Exception caught (will reset index counter): " + e.getMessage());
-                            characteristicIndexToWrite = 0;
-                        }
+                        writeCurrentCharacteristicValue(gatt, attributes.char1001);
                     }
 
                 } catch (Exception e) {
@@ -451,18 +410,26 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
     // Result of a characteristic write operation
     public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
         super.onCharacteristicWrite(gatt, characteristic, status);
-        final String TAGG = "onCharacteristicWrite: ";
+        if (gattOperationQueue != null) {
+            gattOperationQueue.onCharacteristicWrite(gatt, characteristic, status);
+        }
+    }
+
+    /** Handle the result of a (queued) characteristic write. Runs on the operation queue's thread. */
+    private void processCharacteristicWrite(GattOperationQueue.Operation op, int status) {
+        final String TAGG = "processCharacteristicWrite: ";
+        final BluetoothGatt gatt = op.getGatt();
         logV(TAGG + "Invoked (status="+Integer.toString(status)+")");
 
         switch (status) {
             case GATT_SUCCESS:
                 //logV(TAGG+"Success! Wrote: "+ Arrays.toString(characteristic.getValue()));                            //print decimal values
-                logV(TAGG+"Success! Wrote: "+ ConversionUtils.byteArrayToHexString(characteristic.getValue(), ",")+". Disconnecting GATT...");    //print hex values
+                logV(TAGG+"Success! Wrote: "+ ConversionUtils.byteArrayToHexString(op.getValue(), ",")+".");    //print hex values
 
                 // We only care that we wrote the first command in the potential list of many commands
                 if (characteristicIndexToWrite == 0) {
-                    mainApplication.mostRecentRootCharacteristicWrittenToDevice_value = characteristic.getValue();
-                    mainApplication.mostRecentRootCharacteristicWrittenToDevice_datetime = new Date();
+                    mainApplication.mostRecentRootCharacteristicWrittenToDevice_value = op.getValue();
+                    mainApplication.mostRecentRootCharacteristicWrittenToDevice_elapsedMS = DatetimeUtils.nowElapsedMS();
                 }
 
                 // Since we had a successful write, we can increment to next potential characteristic to write
@@ -471,9 +438,8 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
                 // Check if we have another characteristic to write (e.g. to make it flash)
                 // If not, just disconnect and finish up
                 if (this.characteristicIndexToWrite < this.characteristicValuesToWrite.size()) {
-                    doSleep(250);   //give time for the device/LE-protocol to be completely done with the previous command
-                    characteristic.setValue(this.characteristicValuesToWrite.get(characteristicIndexToWrite));
-                    gatt.writeCharacteristic(characteristic);
+                    gattOperationQueue.enqueue(GattOperationQueue.Operation.writeCharacteristic(gatt, op.getCharacteristic(), this.characteristicValuesToWrite.get(characteristicIndexToWrite), characteristicWriteListener)
+                            .setDelayBeforeStartMS(250));   //give time for the device/LE-protocol to be completely done with the previous command
                 } else {
                     // Trigger a disconnect since we're done
                     this.customStatus = STATUS_CUSTOM_NONE;
@@ -484,6 +450,9 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
             default:
                 //TODO: try again?
                 logW(TAGG+"Unhandled write-result status ("+Integer.toString(status)+"), disconnecting GATT...");
+                if (GattAttributeCache.isAttributeError(status)) {
+                    GattAttributeCache.invalidate(gatt);
+                }
                 this.customStatus = STATUS_CUSTOM_CHARACTERISTIC_WRITE_PROBLEM;
                 gatt.disconnect();
                 break;
@@ -532,13 +501,15 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
     /*============================================================================================*/
     /* Local Methods */
 
-    private void doSleep(int ms) {
-        final String TAGG = "doSleep("+Integer.toString(ms)+"): ";
+    /** Queue writing the current characteristic value (per characteristicIndexToWrite) to the provided characteristic. */
+    private void writeCurrentCharacteristicValue(BluetoothGatt gatt, BluetoothGattCharacteristic bluetoothGattCharacteristic) {
+        final String TAGG = "writeCurrentCharacteristicValue: ";
 
         try {
-            Thread.sleep(ms);
-        } catch (InterruptedException ie) {
-            logW(TAGG+"Exception caught trying to sleep: "+ie.getMessage());
+            gattOperationQueue.enqueue(GattOperationQueue.Operation.writeCharacteristic(gatt, bluetoothGattCharacteristic, characteristicValuesToWrite.get(characteristicIndexToWrite), characteristicWriteListener));
+        } catch (Exception e) {
+            logE(TAGG + "Exception caught (will reset index counter): " + e.getMessage());
+            characteristicIndexToWrite = 0;
         }
     }
 
@@ -579,45 +550,6 @@ public class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallba
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
     }
 }
\ No newline at end of file
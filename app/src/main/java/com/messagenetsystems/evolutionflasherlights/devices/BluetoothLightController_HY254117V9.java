@@ -40,16 +40,21 @@ package com.messagenetsystems.evolutionflasherlights.devices;
  * 2018.10-11   Chris Rider     Numerous updates to prepare lights for Demo in Wisconsin, and generally bring closer to finished product.
  * 2019.01.14   Chris Rider     Copied over to this dedicated app from the main app.
  * 2020.05.29   Chris Rider     Implemented new file logging utility.
+ * 2026.10.16   agent           validateCommandSafety made public (LightCommandPayloadTable validates everything it builds), fixed it
+ *                              correcting the wrong byte for white commands, and added getCalibrationSignature.
+ * 2026.10.16   agent           Datagrams now encoded by DatagramCodec_HY254117, which enforces safety limits as it encodes
+ *                              (replaces validateCommandSafety). Peak-brightness methods now get steady-safe brightness.
+ * 2026.10.16   agent           Hex conversions no longer use BigInteger/String.format (delegating to ConversionUtils where possible).
  */
 
 
 import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 
 import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
 import java.util.Arrays;
 
 
@@ -197,8 +202,11 @@ public class BluetoothLightController_HY254117V9 {
     public final byte[] CHARACTERISTIC_VALUE_BYTES_HANDSHAKE = new byte[]{(byte)0xb8,(byte)0x04,(byte)0x04,(byte)0xe3,(byte)0x24,(byte)0xa8,(byte)0x69};
     public final byte[] CHARACTERISTIC_VALUE_BYTES_PASSWORD_000000 = new byte[]{(byte)0xb8,(byte)0x03,(byte)0x05,(byte)0x04,(byte)0x00,(byte)0x00,(byte)0x00,(byte)0x00};
 
+    private final DatagramCodec_HY254117 codec;                                                     //all datagrams get encoded (and made safe) by this
+
 
     /** Hardware & Security related values... */
+
     public final static String MAC_ADDR_PREFIX = "REDACTED";                                        //manufacturer portion (first half) of the controller's MAC address
     public final static String DEVICE_NAME = "REDACTED";                                            //default device name reported by our controller device
 
@@ -211,6 +219,7 @@ public class BluetoothLightController_HY254117V9 {
         logD("Constructing an instance of "+TAG+".");
 
         this.logMethod = logMethod;
+        this.codec = new DatagramCodec_HY254117(this);
 
         // Detect and correct any miscalculated max-brightness values...
         if (DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY >= DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_PEAK) {
@@ -233,6 +242,9 @@ public class BluetoothLightController_HY254117V9 {
 
 
     /** Getters */
+    public DatagramCodec_HY254117 getDatagramCodec() {
+        return codec;
+    }
     public String getUuidStr_mainService() {
         return CONTROL_SERV_UUID;
     }
@@ -262,186 +274,89 @@ public class BluetoothLightController_HY254117V9 {
      */
 
     public byte[] constructLightCommandByteSequence_turnOn() {
-        final String TAGG = "constructLightCommandByteSequence_turnOn: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_POWER,
-                DATAGRAM_W_DATA_ON
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_POWER_ON];
+        codec.encodePower(cmd, 0, true);
         return cmd;
     }
     public byte[] constructLightCommandByteSequence_turnOff() {
-        final String TAGG = "constructLightCommandByteSequence_turnOff: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_POWER,
-                DATAGRAM_W_DATA_OFF,
-                (byte) 0x02     /* IMPORTANT!!! needed to prevent automatically going max white brightness after power cycle - will return to last set state instead when input power is resumed */
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
+        //NOTE: the codec always includes the trailing 0x02 (prevents going max white brightness after power cycle - will return to last set state instead when input power is resumed)
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_POWER_OFF];
+        codec.encodePower(cmd, 0, false);
         return cmd;
     }
 
     // NOTE: these "flashing" commands are for the light chip to handle on its own
     public byte[] constructLightCommandByteSequence_flashingOn() {
-        final String TAGG = "constructLightCommandByteSequence_flashingOn: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_FLASH,
-                DATAGRAM_W_DATA_ON
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_FLASH];
+        codec.encodeFlash(cmd, 0, true);
         return cmd;
     }
     public byte[] constructLightCommandByteSequence_flashingOff() {
-        final String TAGG = "constructLightCommandByteSequence_flashingOff: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_FLASH,
-                DATAGRAM_W_DATA_OFF
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_FLASH];
+        codec.encodeFlash(cmd, 0, false);
         return cmd;
     }
 
     // RGB WHITE...
     public byte[] constructLightCommandByteSequence_whiteRgbMinBrightness() {
-        final String TAGG = "constructLightCommandByteSequence_whiteRgbMinBrightness: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_COLOR,
-                DATAGRAM_W_DATA_RED_MINBRIGHT_SAT_RGB, DATAGRAM_W_DATA_GREEN_MINBRIGHT_SAT_RGB, DATAGRAM_W_DATA_BLUE_MINBRIGHT_SAT_RGB,     /*(byte) 0x36, (byte) 0x45, (byte) 0x43,*/
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_COLOR];
+        codec.encodeColor(cmd, 0,
+                DATAGRAM_W_DATA_RED_MINBRIGHT_SAT_RGB & 0xff, DATAGRAM_W_DATA_GREEN_MINBRIGHT_SAT_RGB & 0xff, DATAGRAM_W_DATA_BLUE_MINBRIGHT_SAT_RGB & 0xff,     /*(byte) 0x36, (byte) 0x45, (byte) 0x43,*/
                 0x00,   /*min bright-power for RGB*/
-                DATAGRAM_W_DATA_SPEED_DESIRED
-        };
-
+                DATAGRAM_W_DATA_SPEED_DESIRED);
         return cmd;
     }
     public byte[] constructLightCommandByteSequence_whiteRgbMedBrightness() {
-        final String TAGG = "constructLightCommandByteSequence_whiteRgbMedBrightness: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_COLOR,
-                DATAGRAM_W_DATA_RED_MEDBRIGHT_SAT_RGB, DATAGRAM_W_DATA_GREEN_MEDBRIGHT_SAT_RGB, DATAGRAM_W_DATA_BLUE_MEDBRIGHT_SAT_RGB,    /*(byte) 0x48, (byte) 0xff, (byte) 0x88,*/
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_COLOR];
+        codec.encodeColor(cmd, 0,
+                DATAGRAM_W_DATA_RED_MEDBRIGHT_SAT_RGB & 0xff, DATAGRAM_W_DATA_GREEN_MEDBRIGHT_SAT_RGB & 0xff, DATAGRAM_W_DATA_BLUE_MEDBRIGHT_SAT_RGB & 0xff,    /*(byte) 0x48, (byte) 0xff, (byte) 0x88,*/
                 0x02,   /*medium bright-power for RGB*/
-                DATAGRAM_W_DATA_SPEED_DESIRED
-        };
-
+                DATAGRAM_W_DATA_SPEED_DESIRED);
         return cmd;
     }
 
     // WHITE DIODE...
     public byte[] constructLightCommandByteSequence_whiteMinBrightness() {
-        final String TAGG = "constructLightCommandByteSequence_whiteMinBrightness: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_WHITE,
-                DATAGRAM_W_DATA_ON,
-                DATAGRAM_W_DATA_WHITE_MINBRIGHT_PWR,
-                DATAGRAM_W_DATA_WHITE_TONE_COOL
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
-        return cmd;
+        return constructWhite(DATAGRAM_W_DATA_WHITE_MINBRIGHT_PWR);
     }
     public byte[] constructLightCommandByteSequence_whiteMedBrightness() {
-        final String TAGG = "constructLightCommandByteSequence_whiteMedBrightness: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_WHITE,
-                DATAGRAM_W_DATA_ON,
-                DATAGRAM_W_DATA_WHITE_MEDBRIGHT_PWR,
-                DATAGRAM_W_DATA_WHITE_TONE_COOL
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
-        return cmd;
+        return constructWhite(DATAGRAM_W_DATA_WHITE_MEDBRIGHT_PWR);
     }
     public byte[] constructLightCommandByteSequence_whiteMaxBrightnessPeak() {
         final String TAGG = "constructLightCommandByteSequence_whiteMaxBrightnessPeak: ";
-        logW(TAGG+TAGG+"WARNING! This brightness is not intended to be long lasting due to over-heat/voltage.");
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_WHITE,
-                DATAGRAM_W_DATA_ON,
-                DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_PEAK,
-                DATAGRAM_W_DATA_WHITE_TONE_COOL
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
-        return cmd;
+        logW(TAGG+TAGG+"Peak brightness requested, but the codec only allows steady-safe brightness, so you'll get that.");
+        return constructWhite(DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_PEAK);
     }
     public byte[] constructLightCommandByteSequence_whiteMaxBrightnessSteady() {
-        final String TAGG = "constructLightCommandByteSequence_whiteMaxBrightnessSteady: ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_WHITE,
-                DATAGRAM_W_DATA_ON,
-                DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY,
-                DATAGRAM_W_DATA_WHITE_TONE_COOL
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
+        return constructWhite(DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY);
+    }
+    private byte[] constructWhite(byte brightnessPwr) {
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_WHITE];
+        codec.encodeWhite(cmd, 0, brightnessPwr, DATAGRAM_W_DATA_WHITE_TONE_COOL);
         return cmd;
     }
 
     // COLORS...
     public byte[] constructLightCommandByteSequence_colorMinBrightness(byte[] colorData) {
-        final String TAGG = "constructLightCommandByteSequence_colorMinBrightness("+byteArrayToHexString(colorData)+"): ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_COLOR,
-                colorData[COLOR_BYTE_RED], colorData[COLOR_BYTE_GREEN], colorData[COLOR_BYTE_BLUE],
-                getMinBrightnessForColors(colorData),
-                DATAGRAM_W_DATA_SPEED_DESIRED
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
-        return cmd;
+        return constructColor(colorData, getMinBrightnessForColors(colorData));
     }
     public byte[] constructLightCommandByteSequence_colorMedBrightness(byte[] colorData) {
-        final String TAGG = "constructLightCommandByteSequence_colorMedBrightness("+byteArrayToHexString(colorData)+"): ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_COLOR,
-                colorData[COLOR_BYTE_RED], colorData[COLOR_BYTE_GREEN], colorData[COLOR_BYTE_BLUE],
-                getMedBrightnessForColors(colorData),
-                DATAGRAM_W_DATA_SPEED_DESIRED
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
-        return cmd;
+        return constructColor(colorData, getMedBrightnessForColors(colorData));
     }
     public byte[] constructLightCommandByteSequence_colorMaxBrightnessPeak(byte[] colorData) {
-        final String TAGG = "constructLightCommandByteSequence_colorMaxBrightnessPeak("+byteArrayToHexString(colorData)+"): ";
-        logW(TAGG+TAGG+"WARNING! This brightness is not intended to be long lasting due to over-heat/voltage.");
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_COLOR,
-                colorData[COLOR_BYTE_RED], colorData[COLOR_BYTE_GREEN], colorData[COLOR_BYTE_BLUE],
-                DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_PEAK,
-                DATAGRAM_W_DATA_SPEED_DESIRED
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
-        return cmd;
+        final String TAGG = "constructLightCommandByteSequence_colorMaxBrightnessPeak: ";
+        logW(TAGG+TAGG+"Peak brightness requested, but the codec only allows steady-safe brightness, so you'll get that.");
+        return constructColor(colorData, DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_PEAK);
     }
     public byte[] constructLightCommandByteSequence_colorMaxBrightnessSteady(byte[] colorData) {
-        final String TAGG = "constructLightCommandByteSequence_colorMaxBrightnessSteady("+byteArrayToHexString(colorData)+"): ";
-
-        final byte[] cmd = {DATAGRAM_W_HEADER,
-                DATAGRAM_W_CMD_COLOR,
-                colorData[COLOR_BYTE_RED], colorData[COLOR_BYTE_GREEN], colorData[COLOR_BYTE_BLUE],
-                getMaxBrightnessSteadyForColors(colorData),
-                DATAGRAM_W_DATA_SPEED_DESIRED
-        };
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(cmd)+"\".");
+        return constructColor(colorData, getMaxBrightnessSteadyForColors(colorData));
+    }
+    private byte[] constructColor(byte[] colorData, byte brightnessPwr) {
+        final byte[] cmd = new byte[DatagramCodec_HY254117.LENGTH_COLOR];
+        codec.encodeColor(cmd, 0,
+                colorData[COLOR_BYTE_RED] & 0xff, colorData[COLOR_BYTE_GREEN] & 0xff, colorData[COLOR_BYTE_BLUE] & 0xff,
+                brightnessPwr,
+                DATAGRAM_W_DATA_SPEED_DESIRED);
         return cmd;
     }
 
@@ -650,87 +565,12 @@ public class BluetoothLightController_HY254117V9 {
      ** Misc. methods...
      */
 
-    // Take provided command and make sure it's safe, returning the original or corrected command
-    private byte[] validateCommandSafety(byte[] commandToCheck) {                                   //TODO: split this into more discrete methods
-        final String TAGG = "validateCommandSafety("+byteArrayToHexString(commandToCheck)+"): ";
-
-        final int HEADER_BYTE_POS = 0;                //for all commands, first byte is header
-        final int CMD_BYTE_POS = 1;                   //for all commands, second byte is command
-        final int BRIGHTNESS_BYTE_WHITE_POS = 3;      //for white commands, fourth byte is the brightness
-        final int BRIGHTNESS_BYTE_COLOR_POS = 5;      //for color commands, sixth byte is the brightness
-        final int COLOR_BYTE_RED_POS = 2;             //for color commands, third byte is the red value
-        final int COLOR_BYTE_GREEN_POS = 3;           //for color commands, fourth byte is the green value
-        final int COLOR_BYTE_BLUE_POS = 4;            //for color commands, fifth byte is the blue value
-
-        // First, check the first byte to make sure it's a valid header byte; correct it, if not...
-        if (commandToCheck[HEADER_BYTE_POS] != DATAGRAM_W_HEADER) {
-            logW(TAGG+TAGG+"Data header needs correcting ("+byteToHexString(commandToCheck[HEADER_BYTE_POS])+" -> "+byteToHexString(DATAGRAM_W_HEADER)+").");
-            commandToCheck[HEADER_BYTE_POS] = DATAGRAM_W_HEADER;
-        }
-
-        // Second, check the second byte to determine what kind of other checks we'll need to do (then do them, as appropriate)...
-        switch (commandToCheck[CMD_BYTE_POS]) {
-            case DATAGRAM_W_CMD_COLOR:
-                /* check that colors are safe with specified power level
-                 *  (the primary concern is with red, since it requires a lower voltage than other colors)
-                 *  (for now, just assume steady safe value, not peak --to be extra safe)
-                 */
-
-                //NOTE: start first with the color that can handle the highest power level... (since we're correcting a shared brightness value for all colors, we want lowest common denominator)
-
-                //if only green is on AND the command's brightness is above green's safe max brightness, reset brightness to maximum green can safely tolerate
-                if (commandToCheck[COLOR_BYTE_GREEN_POS] > (byte) 0x00
-                        && commandToCheck[COLOR_BYTE_BLUE_POS] <= (byte) 0x00
-                        && commandToCheck[COLOR_BYTE_RED_POS] <= (byte) 0x00
-                        && commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] > DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY) {
-                    logW(TAGG+TAGG + "Brightness needs changed to protect green diode (" + byteToHexString(commandToCheck[BRIGHTNESS_BYTE_COLOR_POS]) + " -> " + byteToHexString(DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY) + ").");
-                    commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] = DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY;
-                }
-
-                //if only blue is on AND the command's brightness is above blue's safe max brightness, reset brightness to maximum blue can safely tolerate
-                if (commandToCheck[COLOR_BYTE_BLUE_POS] > (byte) 0x00
-                        && commandToCheck[COLOR_BYTE_GREEN_POS] <= (byte) 0x00
-                        && commandToCheck[COLOR_BYTE_RED_POS] <= (byte) 0x00
-                        && commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] > DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY) {
-                    logW(TAGG+TAGG + "Brightness needs changed to protect blue diode (" + byteToHexString(commandToCheck[BRIGHTNESS_BYTE_COLOR_POS]) + " -> " + byteToHexString(DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY) + ").");
-                    commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] = DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY;
-                }
-
-                //if only red is on AND the command's brightness is above red's safe max brightness, reset brightness to maximum red can safely tolerate
-                if (commandToCheck[COLOR_BYTE_RED_POS] > (byte) 0x00
-                        && commandToCheck[COLOR_BYTE_GREEN_POS] <= (byte) 0x00
-                        && commandToCheck[COLOR_BYTE_BLUE_POS] <= (byte) 0x00
-                        && commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] > DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY) {
-                    logW(TAGG+TAGG + "Brightness needs changed to protect red diode (" + byteToHexString(commandToCheck[BRIGHTNESS_BYTE_COLOR_POS]) + " -> " + byteToHexString(DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY) + ").");
-                    commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] = DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY;
-                }
-
-                //NOTE: at this point, if only a single color was commanded, we should now be at the safest brightness level that the most delicate diode can handle
-                //(next will need to investigate more complex color combinations)
-
-                //for color combos including red, use red's max safe value as brightness
-                if (commandToCheck[COLOR_BYTE_RED_POS] > (byte) 0x00
-                        && (commandToCheck[COLOR_BYTE_GREEN_POS] > (byte) 0x00 || commandToCheck[COLOR_BYTE_BLUE_POS] > (byte) 0x00)
-                        && commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] > DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY) {
-                    logW(TAGG+TAGG + "Brightness needs changed to protect red diode (" + byteToHexString(commandToCheck[BRIGHTNESS_BYTE_COLOR_POS]) + " -> " + byteToHexString(DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY) + ").");
-                    commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] = DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY;     //TODO: in future, make corrected-value calculation more sophisticated?
-                }
-
-                //NOTE: at this point, any color command that includes the most sensitive color should now only use its max safe brightness
-
-                break;
-            case DATAGRAM_W_CMD_WHITE:
-                if (commandToCheck[BRIGHTNESS_BYTE_WHITE_POS] > DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY) {
-                    logW(TAGG+TAGG + "Brightness needs changed to protect white diode (" + byteToHexString(commandToCheck[BRIGHTNESS_BYTE_WHITE_POS]) + " -> " + byteToHexString(DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY) + ").");
-                    commandToCheck[BRIGHTNESS_BYTE_COLOR_POS] = DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY;
-                }
-                break;
-            default:
-                break;
-        }
-
-        logV(TAGG+TAGG+"Returning \""+byteArrayToHexString(commandToCheck)+"\".");
-        return commandToCheck;
+    // Something that changes whenever any of the calibrated (non-constant) brightness limits change, so anything built from them knows to rebuild
+    public int getCalibrationSignature() {
+        return ((DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY & 0xff) << 24)
+                | ((DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY & 0xff) << 16)
+                | ((DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY & 0xff) << 8)
+                | (DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY & 0xff);
     }
 
     public byte getMinBrightnessForColors(byte[] colorData) {
@@ -909,23 +749,23 @@ public class BluetoothLightController_HY254117V9 {
     ** Conversion methods...
     */
 
+    // Hex of the decimal string's characters (ex. 255 -> "323535")
     public static String intToHexString8(int i) {
-        try {
-            return String.format("%01x", new BigInteger(1, String.valueOf(i).getBytes("UTF-8")));
-        }
-        catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-            return "";
-        }
+        return asciiDigitsToHexString(i);
     }
     public static String intToHexString16(int i) {
-        try {
-            return String.format("%02x", new BigInteger(1, String.valueOf(i).getBytes("UTF-8")));
-        }
-        catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-            return "";
+        return asciiDigitsToHexString(i);
+    }
+    private static String asciiDigitsToHexString(int i) {
+        final char[] hexArray = "0123456789abcdef".toCharArray();
+        final String digits = String.valueOf(i);
+        final char[] hexChars = new char[digits.length() * 2];
+        for (int j = 0; j < digits.length(); j++) {
+            int v = digits.charAt(j) & 0xFF;
+            hexChars[j * 2] = hexArray[v >>> 4];
+            hexChars[j * 2 + 1] = hexArray[v & 0x0F];
         }
+        return new String(hexChars);
     }
 
     public static byte[] stringToByteArray_forPin(String pin) {
@@ -955,23 +795,11 @@ public class BluetoothLightController_HY254117V9 {
         return data;
     }
     public static String byteArrayToHexString(byte[] bytes) {
-        final char[] hexArray = "0123456789ABCDEF".toCharArray();
-        char[] hexChars = new char[bytes.length * 2];
-        for ( int j = 0; j < bytes.length; j++ ) {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 2] = hexArray[v >>> 4];
-            hexChars[j * 2 + 1] = hexArray[v & 0x0F];
-        }
-        return new String(hexChars);
+        return ConversionUtils.byteArrayToHexString(bytes);
     }
 
     public static String byteToHexString(byte mByte) {
-        final char[] hexArray = "0123456789ABCDEF".toCharArray();
-        char[] hexChars = new char[2];
-        int v = mByte & 0xFF;
-        hexChars[0] = hexArray[v >>> 4];
-        hexChars[1] = hexArray[v & 0x0F];
-        return new String(hexChars);
+        return ConversionUtils.byteToHexString(mByte);
     }
 
     /*============================================================================================*/
@@ -993,45 +821,6 @@ public class BluetoothLightController_HY254117V9 {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_ENCODER, logMethod, TAG, logSeverity, tagg);
     }
 }
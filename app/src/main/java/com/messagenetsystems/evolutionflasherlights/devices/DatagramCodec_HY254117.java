@@ -0,0 +1,325 @@
+package com.messagenetsystems.evolutionflasherlights.devices;
+
+/* DatagramCodec_HY254117
+ * Typed encoder/decoder for the REDACTED (HY254117 V9) controller's datagrams: header, command, then the command's data
+ * (on/off, color saturations, brightness-power, speed, white tone).
+ *
+ * Encoding writes straight into a caller-supplied array (at an offset) or ByteBuffer, so nothing intermediate is allocated,
+ * and the caller can reuse one buffer for everything. Decoding reads the same way, into a caller-supplied (reusable) Datagram.
+ *
+ * !!! WARNING !!!
+ * This is where diode safety is enforced. Every value is clamped to its field's range as it's encoded, and brightness-power
+ * is clamped to the lowest steady-state maximum among the diodes that are actually lit (see the controller model's
+ * *_MAXBRIGHT_PWR_STDY values). There is no way to encode an unsafe datagram, so nothing needs to be validated afterward.
+ * Limits are read from the controller model on every encode, so calibration changes are honored immediately.
+ *
+ * Usage:
+ *  byte[] buf = new byte[DatagramCodec_HY254117.MAX_LENGTH];
+ *  int len = codec.encodeColor(buf, 0, 0xff, 0x00, 0x00, 0x03, DatagramCodec_HY254117.SPEED_MAX);
+ *  if (codec.decode(value, 0, value.length, datagram)) { ...datagram.type, datagram.brightness... }
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces hand-built datagram arrays and the post-hoc validateCommandSafety pass).
+ */
+
+import java.nio.ByteBuffer;
+
+
+public class DatagramCodec_HY254117 {
+
+    // Datagram types (by command byte)...
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int TYPE_POWER = 1;
+    public static final int TYPE_COLOR = 2;
+    public static final int TYPE_FLASH = 3;
+    public static final int TYPE_WHITE = 4;
+    public static final int TYPE_SCENE = 5;
+
+    // Field positions...
+    public static final int POS_HEADER = 0;                         //all datagrams
+    public static final int POS_COMMAND = 1;                        //all datagrams
+    public static final int POS_ONOFF = 2;                          //power, flash, white
+    public static final int POS_POWER_PERSIST = 3;                  //power-off
+    public static final int POS_COLOR_RED = 2;
+    public static final int POS_COLOR_GREEN = 3;
+    public static final int POS_COLOR_BLUE = 4;
+    public static final int POS_COLOR_BRIGHTNESS = 5;
+    public static final int POS_COLOR_SPEED = 6;
+    public static final int POS_WHITE_BRIGHTNESS = 3;
+    public static final int POS_WHITE_TONE = 4;
+    public static final int POS_SCENE = 2;
+
+    // Lengths...
+    public static final int LENGTH_POWER_ON = 3;
+    public static final int LENGTH_POWER_OFF = 4;
+    public static final int LENGTH_FLASH = 3;
+    public static final int LENGTH_COLOR = 7;
+    public static final int LENGTH_WHITE = 5;
+    public static final int MAX_LENGTH = 7;                         //enough for any datagram we encode
+
+    // Field ranges...
+    public static final int SATURATION_MAX = 0xff;
+    public static final int BRIGHTNESS_PWR_MAX = 0x0f;
+    public static final int SPEED_MAX = 0x0a;
+    public static final int WHITE_TONE_MAX = 0x14;
+
+    private static final byte DATA_OFF = (byte) 0x00;
+    private static final byte DATA_ON = (byte) 0x01;
+    private static final byte DATA_POWER_OFF_PERSIST = (byte) 0x02; //IMPORTANT!!! without it, lights come back full bright white after a power cycle
+
+    private final BluetoothLightController_HY254117V9 model;
+    private long clampCount;                                        //how many times a value had to be clamped (just for diagnostics)
+
+
+    /** Holder for a decoded datagram (reuse one, rather than allocating per decode). */
+    public static class Datagram {
+        public int type;
+        public int length;
+        public boolean isOn;                                        //power, flash, white
+        public int red;                                             //color (0-255)
+        public int green;
+        public int blue;
+        public int brightness;                                      //color, white (brightness-power, 0-15)
+        public int speed;                                           //color (0-10)
+        public int tone;                                            //white (0-20)
+        public int scene;                                           //scene
+
+        public void clear() {
+            type = TYPE_UNKNOWN;
+            length = 0;
+            isOn = false;
+            red = green = blue = brightness = speed = tone = scene = 0;
+        }
+    }
+
+
+    /** Constructor
+     * @param model Controller model (header/command bytes, and the diode safety limits)
+     */
+    public DatagramCodec_HY254117(BluetoothLightController_HY254117V9 model) {
+        this.model = model;
+        this.clampCount = 0;
+    }
+
+
+    /*============================================================================================*/
+    /* Encoding Methods */
+    // Each writes the complete datagram starting at the offset (or buffer position) and returns its length.
+
+    public int encodePower(byte[] dst, int off, boolean on) {
+        dst[off + POS_HEADER] = model.DATAGRAM_W_HEADER;
+        dst[off + POS_COMMAND] = model.DATAGRAM_W_CMD_POWER;
+        if (on) {
+            dst[off + POS_ONOFF] = DATA_ON;
+            return LENGTH_POWER_ON;
+        }
+        dst[off + POS_ONOFF] = DATA_OFF;
+        dst[off + POS_POWER_PERSIST] = DATA_POWER_OFF_PERSIST;
+        return LENGTH_POWER_OFF;
+    }
+    public int encodePower(ByteBuffer dst, boolean on) {
+        dst.put(model.DATAGRAM_W_HEADER).put(model.DATAGRAM_W_CMD_POWER);
+        if (on) {
+            dst.put(DATA_ON);
+            return LENGTH_POWER_ON;
+        }
+        dst.put(DATA_OFF).put(DATA_POWER_OFF_PERSIST);
+        return LENGTH_POWER_OFF;
+    }
+
+    // NOTE: flashing is for the light chip to handle on its own (it flashes whatever color it's currently set to)
+    public int encodeFlash(byte[] dst, int off, boolean on) {
+        dst[off + POS_HEADER] = model.DATAGRAM_W_HEADER;
+        dst[off + POS_COMMAND] = model.DATAGRAM_W_CMD_FLASH;
+        dst[off + POS_ONOFF] = on ? DATA_ON : DATA_OFF;
+        return LENGTH_FLASH;
+    }
+    public int encodeFlash(ByteBuffer dst, boolean on) {
+        dst.put(model.DATAGRAM_W_HEADER).put(model.DATAGRAM_W_CMD_FLASH).put(on ? DATA_ON : DATA_OFF);
+        return LENGTH_FLASH;
+    }
+
+    /** Color datagram. Brightness-power is clamped to what the most delicate lit diode can take steadily. */
+    public int encodeColor(byte[] dst, int off, int red, int green, int blue, int brightnessPwr, int speed) {
+        red = clamp(red, SATURATION_MAX);
+        green = clamp(green, SATURATION_MAX);
+        blue = clamp(blue, SATURATION_MAX);
+
+        dst[off + POS_HEADER] = model.DATAGRAM_W_HEADER;
+        dst[off + POS_COMMAND] = model.DATAGRAM_W_CMD_COLOR;
+        dst[off + POS_COLOR_RED] = (byte) red;
+        dst[off + POS_COLOR_GREEN] = (byte) green;
+        dst[off + POS_COLOR_BLUE] = (byte) blue;
+        dst[off + POS_COLOR_BRIGHTNESS] = (byte) clamp(brightnessPwr, getColorBrightnessLimit(red, green, blue));
+        dst[off + POS_COLOR_SPEED] = (byte) clamp(speed, SPEED_MAX);
+        return LENGTH_COLOR;
+    }
+    public int encodeColor(ByteBuffer dst, int red, int green, int blue, int brightnessPwr, int speed) {
+        red = clamp(red, SATURATION_MAX);
+        green = clamp(green, SATURATION_MAX);
+        blue = clamp(blue, SATURATION_MAX);
+
+        dst.put(model.DATAGRAM_W_HEADER).put(model.DATAGRAM_W_CMD_COLOR)
+                .put((byte) red).put((byte) green).put((byte) blue)
+                .put((byte) clamp(brightnessPwr, getColorBrightnessLimit(red, green, blue)))
+                .put((byte) clamp(speed, SPEED_MAX));
+        return LENGTH_COLOR;
+    }
+
+    /** White-diode datagram. Brightness-power is clamped to the white diode's steady maximum. */
+    public int encodeWhite(byte[] dst, int off, int brightnessPwr, int tone) {
+        dst[off + POS_HEADER] = model.DATAGRAM_W_HEADER;
+        dst[off + POS_COMMAND] = model.DATAGRAM_W_CMD_WHITE;
+        dst[off + POS_ONOFF] = DATA_ON;
+        dst[off + POS_WHITE_BRIGHTNESS] = (byte) clamp(brightnessPwr, model.DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY);
+        dst[off + POS_WHITE_TONE] = (byte) clamp(tone, WHITE_TONE_MAX);
+        return LENGTH_WHITE;
+    }
+    public int encodeWhite(ByteBuffer dst, int brightnessPwr, int tone) {
+        dst.put(model.DATAGRAM_W_HEADER).put(model.DATAGRAM_W_CMD_WHITE).put(DATA_ON)
+                .put((byte) clamp(brightnessPwr, model.DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY))
+                .put((byte) clamp(tone, WHITE_TONE_MAX));
+        return LENGTH_WHITE;
+    }
+
+    /** The highest brightness-power that's steadily safe for every diode lit by these saturations (lowest common denominator). */
+    public int getColorBrightnessLimit(int red, int green, int blue) {
+        int limit = BRIGHTNESS_PWR_MAX;
+        if (red > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY);
+        if (green > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY);
+        if (blue > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY);
+        if (red <= 0 && green <= 0 && blue <= 0) {
+            //nothing lit, so brightness shouldn't matter, but be conservative anyway
+            limit = Math.min(Math.min(model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY, model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY),
+                    model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY);
+        }
+        return limit;
+    }
+
+    private int clamp(int value, int max) {
+        if (value < 0) {
+            clampCount++;
+            return 0;
+        }
+        if (value > max) {
+            clampCount++;
+            return max;
+        }
+        return value;
+    }
+
+
+    /*============================================================================================*/
+    /* Decoding Methods */
+
+    /** What type of datagram this is, just from its header and command bytes (without decoding the rest). */
+    public int peekType(byte[] src, int off, int len) {
+        if (src == null || len < 2 || src[off + POS_HEADER] != model.DATAGRAM_W_HEADER) {
+            return TYPE_UNKNOWN;
+        }
+        return typeOfCommand(src[off + POS_COMMAND]);
+    }
+
+    /** Decode the datagram at the offset into the supplied holder.
+     * @return Whether it was a well-formed datagram of a known type (if not, out.type is TYPE_UNKNOWN)
+     */
+    public boolean decode(byte[] src, int off, int len, Datagram out) {
+        out.clear();
+        if (src == null || len < 3 || src[off + POS_HEADER] != model.DATAGRAM_W_HEADER) {
+            return false;
+        }
+
+        final int type = typeOfCommand(src[off + POS_COMMAND]);
+        switch (type) {
+            case TYPE_POWER:
+            case TYPE_FLASH:
+                out.isOn = src[off + POS_ONOFF] != DATA_OFF;
+                break;
+            case TYPE_SCENE:
+                out.scene = src[off + POS_SCENE] & 0xff;
+                break;
+            case TYPE_WHITE:
+                if (len < LENGTH_WHITE - 1) return false;                   //tone is optional
+                out.isOn = src[off + POS_ONOFF] != DATA_OFF;
+                out.brightness = src[off + POS_WHITE_BRIGHTNESS] & 0xff;
+                out.tone = (len >= LENGTH_WHITE) ? (src[off + POS_WHITE_TONE] & 0xff) : 0;
+                break;
+            case TYPE_COLOR:
+                if (len < LENGTH_COLOR - 1) return false;                   //some firmware leaves off the speed when notifying
+                out.red = src[off + POS_COLOR_RED] & 0xff;
+                out.green = src[off + POS_COLOR_GREEN] & 0xff;
+                out.blue = src[off + POS_COLOR_BLUE] & 0xff;
+                out.brightness = src[off + POS_COLOR_BRIGHTNESS] & 0xff;
+                out.speed = (len >= LENGTH_COLOR) ? (src[off + POS_COLOR_SPEED] & 0xff) : 0;
+                break;
+            default:
+                return false;
+        }
+
+        out.type = type;
+        out.length = len;
+        return true;
+    }
+
+    /** Decode the datagram between the buffer's position and limit into the supplied holder (the buffer's position isn't changed). */
+    public boolean decode(ByteBuffer src, Datagram out) {
+        if (src.hasArray()) {
+            return decode(src.array(), src.arrayOffset() + src.position(), src.remaining(), out);
+        }
+
+        out.clear();
+        final int off = src.position();
+        final int len = src.remaining();
+        if (len < 3 || src.get(off + POS_HEADER) != model.DATAGRAM_W_HEADER) {
+            return false;
+        }
+
+        final int type = typeOfCommand(src.get(off + POS_COMMAND));
+        switch (type) {
+            case TYPE_POWER:
+            case TYPE_FLASH:
+                out.isOn = src.get(off + POS_ONOFF) != DATA_OFF;
+                break;
+            case TYPE_SCENE:
+                out.scene = src.get(off + POS_SCENE) & 0xff;
+                break;
+            case TYPE_WHITE:
+                if (len < LENGTH_WHITE - 1) return false;
+                out.isOn = src.get(off + POS_ONOFF) != DATA_OFF;
+                out.brightness = src.get(off + POS_WHITE_BRIGHTNESS) & 0xff;
+                out.tone = (len >= LENGTH_WHITE) ? (src.get(off + POS_WHITE_TONE) & 0xff) : 0;
+                break;
+            case TYPE_COLOR:
+                if (len < LENGTH_COLOR - 1) return false;
+                out.red = src.get(off + POS_COLOR_RED) & 0xff;
+                out.green = src.get(off + POS_COLOR_GREEN) & 0xff;
+                out.blue = src.get(off + POS_COLOR_BLUE) & 0xff;
+                out.brightness = src.get(off + POS_COLOR_BRIGHTNESS) & 0xff;
+                out.speed = (len >= LENGTH_COLOR) ? (src.get(off + POS_COLOR_SPEED) & 0xff) : 0;
+                break;
+            default:
+                return false;
+        }
+
+        out.type = type;
+        out.length = len;
+        return true;
+    }
+
+    private int typeOfCommand(byte cmd) {
+        if (cmd == model.DATAGRAM_W_CMD_POWER) return TYPE_POWER;
+        if (cmd == model.DATAGRAM_W_CMD_COLOR) return TYPE_COLOR;
+        if (cmd == model.DATAGRAM_W_CMD_FLASH) return TYPE_FLASH;
+        if (cmd == model.DATAGRAM_W_CMD_WHITE) return TYPE_WHITE;
+        if (cmd == model.DATAGRAM_W_CMD_SCENE) return TYPE_SCENE;
+        return TYPE_UNKNOWN;
+    }
+
+
+    /*============================================================================================*/
+    /* Getter & Setter Methods */
+
+    public long getClampCount() {
+        return this.clampCount;
+    }
+}
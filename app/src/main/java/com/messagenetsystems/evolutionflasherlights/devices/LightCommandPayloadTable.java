@@ -0,0 +1,257 @@
+package com.messagenetsystems.evolutionflasherlights.devices;
+
+/* LightCommandPayloadTable
+ * Every Omni command code's characteristic value sequence for our light controller, built once up front.
+ *
+ * Translating a command code used to mean walking 50+ else-if comparisons and constructing fresh byte arrays
+ * every time. Instead, we translate each possible code once (all 256 byte values) by its OmniCommandCodes attributes
+ * (the model's datagram codec enforces diode safety as it encodes), and keep the results in an array indexed by the code.
+ * Looking up a command is then one array index, with no allocation.
+ *
+ * The payloads depend on the controller model's calibration (its steady max-brightness limits), so the table remembers
+ * the calibration it was built with, and rebuilds itself (once) if that ever changes.
+ *
+ * NOTE: Returned lists are unmodifiable, and the byte arrays in them are shared by everyone, so never modify them!
+ *
+ * Usage:
+ *  LightCommandPayloadTable table = new LightCommandPayloadTable(lightControllerModel, omniCommandCodes, logMethod);
+ *  List<byte[]> values = table.get(flasherLightCommandCode);     //values.get(0) is the base command, any others follow it (e.g. flash on)
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces per-call else-if chains in ConversionUtils and BluetoothFlasherLightsService).
+ *  2026.10.16      agent           Also precomputes each code's payload fingerprint (for AppliedLightState repeat detection).
+ *  2026.10.16      agent           Construct from OmniCommandCodes packed attributes (color/level/effect) instead of comparing every code.
+ */
+
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.models.FlasherLights;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+import com.messagenetsystems.evolutionflasherlights.v3.AppliedLightState;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+public class LightCommandPayloadTable {
+    private final String TAG = LightCommandPayloadTable.class.getSimpleName();
+
+    private final int TABLE_SIZE = 256;                             //one entry for every possible byte value
+
+    private final BluetoothLightController_HY254117V9 model;
+    private final FlasherLights.OmniCommandCodes codes;
+
+    private volatile List<byte[]>[] table;                          //indexed by (command code & 0xff); swapped as a whole when rebuilt
+    private volatile long[] fingerprints;                           //each entry's payload fingerprint, same indexing (swapped along with table)
+    private volatile List<byte[]> defaultEntry;                     //what anything not explicitly handled maps to
+    private volatile int builtWithCalibration;                      //model's calibration signature at the time the table was built
+    private volatile int buildCount;
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor (builds the table right away) */
+    public LightCommandPayloadTable(BluetoothLightController_HY254117V9 model, FlasherLights.OmniCommandCodes codes, int logMethod) {
+        this.logMethod = logMethod;
+        this.model = model;
+        this.codes = codes;
+        this.buildCount = 0;
+
+        build();
+    }
+
+
+    /*============================================================================================*/
+    /* Lookup Methods */
+
+    /** Get the characteristic values to write for the specified command code.
+     * @param flasherLightCommandCode Omni command code
+     * @return Unmodifiable list of values (base command first); do not modify the arrays
+     */
+    public List<byte[]> get(byte flasherLightCommandCode) {
+        if (model.getCalibrationSignature() != builtWithCalibration) {
+            rebuild();
+        }
+        return table[flasherLightCommandCode & 0xff];
+    }
+
+    /** Same as get(byte), for callers that carry codes around as ints (anything outside byte range gets the default). */
+    public List<byte[]> get(int flasherLightCommandCode) {
+        if (flasherLightCommandCode < Byte.MIN_VALUE || flasherLightCommandCode > Byte.MAX_VALUE) {
+            return defaultEntry;
+        }
+        return get((byte) flasherLightCommandCode);
+    }
+
+    /** Get the fingerprint of the specified command code's whole payload sequence (see AppliedLightState). */
+    public long getFingerprint(byte flasherLightCommandCode) {
+        if (model.getCalibrationSignature() != builtWithCalibration) {
+            rebuild();
+        }
+        return fingerprints[flasherLightCommandCode & 0xff];
+    }
+
+    /** Same as getFingerprint(byte), for callers that carry codes around as ints. */
+    public long getFingerprint(int flasherLightCommandCode) {
+        if (flasherLightCommandCode < Byte.MIN_VALUE || flasherLightCommandCode > Byte.MAX_VALUE) {
+            return AppliedLightState.fingerprint(defaultEntry);
+        }
+        return getFingerprint((byte) flasherLightCommandCode);
+    }
+
+    public int getBuildCount() {
+        return this.buildCount;
+    }
+
+
+    /*============================================================================================*/
+    /* Build Methods */
+
+    private synchronized void rebuild() {
+        final String TAGG = "rebuild: ";
+
+        if (model.getCalibrationSignature() == builtWithCalibration) {
+            return;                                                 //someone else beat us to it
+        }
+
+        logI(TAGG+"Controller calibration changed, rebuilding light command payload table.");
+        build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void build() {
+        final String TAGG = "build: ";
+
+        final int calibration = model.getCalibrationSignature();
+        final List<byte[]>[] newTable = (List<byte[]>[]) new List[TABLE_SIZE];
+        final long[] newFingerprints = new long[TABLE_SIZE];
+
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            newTable[i] = construct((byte) i);
+            newFingerprints[i] = AppliedLightState.fingerprint(newTable[i]);
+        }
+
+        this.defaultEntry = construct(codes.CMD_UNKNOWN);
+        this.fingerprints = newFingerprints;
+        this.table = newTable;
+        this.builtWithCalibration = calibration;
+        this.buildCount++;
+
+        logD(TAGG+"Built light command payload table (build #"+buildCount+", calibration "+Integer.toHexString(calibration)+").");
+    }
+
+    /** Translate the command code into the controller's characteristic values, and make sure each is safe. */
+    private List<byte[]> construct(byte flasherLightCommandCode) {
+        final String TAGG = "construct("+String.valueOf(flasherLightCommandCode)+"): ";
+
+        byte[] lightCommandBase;
+        byte[] lightCommandAdditional = null;
+
+        try {
+            // Translate the signal-light command from message into a light controller command, by its attributes
+            final int attrs = codes.getAttributes(flasherLightCommandCode);
+            final int color = FlasherLights.OmniCommandCodes.colorOf(attrs);
+            final int level = FlasherLights.OmniCommandCodes.levelOf(attrs);
+            final int effect = FlasherLights.OmniCommandCodes.effectOf(attrs);
+
+            if (codes.isOff(flasherLightCommandCode)) {
+                lightCommandBase = model.constructLightCommandByteSequence_turnOff();
+            }
+            else if (color == FlasherLights.OmniCommandCodes.COLOR_NONE) {
+                //default (none, standby, unknown, unhandled)
+                lightCommandBase = model.constructLightCommandByteSequence_whiteRgbMinBrightness();
+            }
+            else if (effect != FlasherLights.OmniCommandCodes.EFFECT_STEADY) {
+                //the controller has no fade, so fading is flashing (for now, but at least it's distinguishable from flashing now)
+                if (FlasherLights.OmniCommandCodes.isWhite(attrs)) {
+                    lightCommandBase = model.constructLightCommandByteSequence_whiteMaxBrightnessSteady();      //TODO: differentiate white temperatures
+                } else {
+                    lightCommandBase = model.constructLightCommandByteSequence_colorMaxBrightnessSteady(constructColorDataBytes(color, model.COLOR_BRIGHTNESS_MAX));
+                }
+                lightCommandAdditional = model.constructLightCommandByteSequence_flashingOn();
+            }
+            else if (FlasherLights.OmniCommandCodes.isWhite(attrs)) {
+                //TODO: differentiate white temperatures
+                if (level == FlasherLights.OmniCommandCodes.LEVEL_BRI) {
+                    lightCommandBase = model.constructLightCommandByteSequence_whiteMaxBrightnessSteady();
+                } else if (level == FlasherLights.OmniCommandCodes.LEVEL_MED) {
+                    lightCommandBase = model.constructLightCommandByteSequence_whiteMedBrightness();
+                } else {
+                    lightCommandBase = model.constructLightCommandByteSequence_whiteMinBrightness();
+                }
+            }
+            else {
+                if (level == FlasherLights.OmniCommandCodes.LEVEL_BRI) {
+                    lightCommandBase = model.constructLightCommandByteSequence_colorMaxBrightnessSteady(constructColorDataBytes(color, model.COLOR_BRIGHTNESS_MAX));
+                } else if (level == FlasherLights.OmniCommandCodes.LEVEL_MED) {
+                    lightCommandBase = model.constructLightCommandByteSequence_colorMedBrightness(constructColorDataBytes(color, model.COLOR_BRIGHTNESS_MIN));
+                } else {
+                    lightCommandBase = model.constructLightCommandByteSequence_colorMinBrightness(constructColorDataBytes(color, model.COLOR_BRIGHTNESS_MIN));
+                }
+            }
+        } catch (Exception e) {
+            logE(TAGG+"Exception caught: "+e.getMessage());
+            lightCommandBase = model.constructLightCommandByteSequence_whiteRgbMinBrightness();
+        }
+
+        // Freeze it (the model's datagram codec already made sure nothing here can hurt the diodes)
+        if (lightCommandAdditional != null) {
+            return Collections.unmodifiableList(Arrays.asList(lightCommandBase, lightCommandAdditional));
+        } else {
+            return Collections.singletonList(lightCommandBase);
+        }
+    }
+
+
+    /** The controller's color data bytes for the specified OmniCommandCodes COLOR_* (not white, which isn't a color datagram). */
+    private byte[] constructColorDataBytes(int color, int fineTuneSatLevel) {
+        switch (color) {
+            case FlasherLights.OmniCommandCodes.COLOR_RED:
+                return model.constructDataBytes_color_red(fineTuneSatLevel);
+            case FlasherLights.OmniCommandCodes.COLOR_GREEN:
+                return model.constructDataBytes_color_green(fineTuneSatLevel);
+            case FlasherLights.OmniCommandCodes.COLOR_BLUE:
+                return model.constructDataBytes_color_blue(fineTuneSatLevel);
+            case FlasherLights.OmniCommandCodes.COLOR_ORANGE:
+                return model.constructDataBytes_color_orange(fineTuneSatLevel);
+            case FlasherLights.OmniCommandCodes.COLOR_PINK:
+                return model.constructDataBytes_color_pink(fineTuneSatLevel);
+            case FlasherLights.OmniCommandCodes.COLOR_PURPLE:
+                return model.constructDataBytes_color_purple(fineTuneSatLevel);
+            case FlasherLights.OmniCommandCodes.COLOR_YELLOW:
+                return model.constructDataBytes_color_yellow(fineTuneSatLevel);
+            default:
+                throw new IllegalArgumentException("No color data bytes for color "+color);
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_ENCODER, logMethod, TAG, logSeverity, tagg);
+    }
+}
@@ -15,6 +15,7 @@ package com.messagenetsystems.evolutionflasherlights.models;
  *  First, you should load the appropriate command codes for your platform (MNS, API, etc.), by simply instantiating this class.
  *  You simply do that by creating an instance of this class, while passing in the desired PLATFORM_* constant provided below.
  *  Then to actually send light commands, it's easiest to just invoke the static broadcastLightCommand method.
+ *  If you need lower latency, or to know whether the command was taken, bind to the LightCommandChannel instead (see that subclass).
  *
  *  NOTE:
  *  Do not confuse this class and its scope with actually sending the command to the light hardware! They are different!
@@ -22,10 +23,16 @@ package com.messagenetsystems.evolutionflasherlights.models;
  * Revisions:
  *  2020.06.01-03   Chris Rider     Created.
  *  2020.06.16      Chris Rider     Added message UUID support.
+ *  2026.10.16      agent           Added packed attribute table (color/level/effect/kind + display name) to OmniCommandCodes.
+ *  2026.10.16      agent           Added LightCommandChannel (bound-service IPC for light commands, with a synchronous result).
+ *  2026.10.16      agent           LightCommandChannel's service now requires a signature-level permission (PERMISSION).
  */
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
@@ -115,6 +122,47 @@ public class FlasherLights {
         public byte CMD_LIGHT_FLASHING_WHITEWARM;
         public byte CMD_LIGHT_FLASHING_YELLOW;
 
+        // Attribute table...
+        // Every code maps to one packed int (bits 0-3 color, 4-5 level, 6-7 effect, 8-11 kind flags), so consumers
+        // can branch on fields instead of comparing against every code. Adding a code means adding a row in loadAttributes.
+        public static final int COLOR_NONE = 0;
+        public static final int COLOR_BLUE = 1;
+        public static final int COLOR_GREEN = 2;
+        public static final int COLOR_ORANGE = 3;
+        public static final int COLOR_PINK = 4;
+        public static final int COLOR_PURPLE = 5;
+        public static final int COLOR_RED = 6;
+        public static final int COLOR_WHITECOOL = 7;
+        public static final int COLOR_WHITEPURE = 8;
+        public static final int COLOR_WHITEWARM = 9;
+        public static final int COLOR_YELLOW = 10;
+
+        public static final int LEVEL_NONE = 0;
+        public static final int LEVEL_DIM = 1;
+        public static final int LEVEL_MED = 2;
+        public static final int LEVEL_BRI = 3;
+
+        public static final int EFFECT_STEADY = 0;
+        public static final int EFFECT_FLASH = 1;
+        public static final int EFFECT_FADE = 2;
+
+        public static final int KIND_DEFINED = 0x100;               //code is in the table at all (anything else is "unhandled")
+        public static final int KIND_NONE = 0x200;
+        public static final int KIND_OFF = 0x400;
+        public static final int KIND_STANDBY = 0x800;
+
+        private static final int COLOR_SHIFT = 0;
+        private static final int COLOR_MASK = 0x0F;
+        private static final int LEVEL_SHIFT = 4;
+        private static final int LEVEL_MASK = 0x03;
+        private static final int EFFECT_SHIFT = 6;
+        private static final int EFFECT_MASK = 0x03;
+
+        private static final String DISPLAY_NAME_UNHANDLED = "Unhandled Code";
+
+        private final int[] attributes = new int[256];              //indexed by (code & 0xFF)
+        private final String[] displayNames = new String[256];      //indexed by (code & 0xFF)
+
         /** Constructor
          * @param platform Platform that we should use (in FlasherLights constants).
          */
@@ -239,6 +287,78 @@ public class FlasherLights {
                     this.CMD_LIGHT_FLASHING_YELLOW = CommandsAPI.CMD_LIGHT_FLASHING_YELLOW;
                     break;
             }
+
+            loadAttributes();
+        }
+
+        /** Load the attribute table rows for the codes just loaded.
+         * Rows are in priority order; if two codes share a value (e.g. API's NONE and UNKNOWN are both 0), the first row wins. */
+        private void loadAttributes() {
+            final int K = KIND_DEFINED;
+
+            defineRow(CMD_UNKNOWN,                  K,                                              "Unknown");
+            defineRow(CMD_LIGHT_NONE,               K | KIND_NONE,                                  "None");
+            defineRow(CMD_LIGHT_OFF,                K | KIND_OFF,                                   "Off");
+            defineRow(CMD_LIGHT_STANDBY,            K | KIND_STANDBY,                               "Standby");
+            defineRow(CMD_LIGHT_BLUE_DIM,           K | pack(COLOR_BLUE, LEVEL_DIM, EFFECT_STEADY),        "Dim Blue");
+            defineRow(CMD_LIGHT_BLUE_MED,           K | pack(COLOR_BLUE, LEVEL_MED, EFFECT_STEADY),        "Medium Blue");
+            defineRow(CMD_LIGHT_BLUE_BRI,           K | pack(COLOR_BLUE, LEVEL_BRI, EFFECT_STEADY),        "Bright Blue");
+            defineRow(CMD_LIGHT_GREEN_DIM,          K | pack(COLOR_GREEN, LEVEL_DIM, EFFECT_STEADY),       "Dim Green");
+            defineRow(CMD_LIGHT_GREEN_MED,          K | pack(COLOR_GREEN, LEVEL_MED, EFFECT_STEADY),       "Medium Green");
+            defineRow(CMD_LIGHT_GREEN_BRI,          K | pack(COLOR_GREEN, LEVEL_BRI, EFFECT_STEADY),       "Bright Green");
+            defineRow(CMD_LIGHT_ORANGE_DIM,         K | pack(COLOR_ORANGE, LEVEL_DIM, EFFECT_STEADY),      "Dim Orange");
+            defineRow(CMD_LIGHT_ORANGE_MED,         K | pack(COLOR_ORANGE, LEVEL_MED, EFFECT_STEADY),      "Medium Orange");
+            defineRow(CMD_LIGHT_ORANGE_BRI,         K | pack(COLOR_ORANGE, LEVEL_BRI, EFFECT_STEADY),      "Bright Orange");
+            defineRow(CMD_LIGHT_PINK_DIM,           K | pack(COLOR_PINK, LEVEL_DIM, EFFECT_STEADY),        "Dim Pink");
+            defineRow(CMD_LIGHT_PINK_MED,           K | pack(COLOR_PINK, LEVEL_MED, EFFECT_STEADY),        "Medium Pink");
+            defineRow(CMD_LIGHT_PINK_BRI,           K | pack(COLOR_PINK, LEVEL_BRI, EFFECT_STEADY),        "Bright Pink");
+            defineRow(CMD_LIGHT_PURPLE_DIM,         K | pack(COLOR_PURPLE, LEVEL_DIM, EFFECT_STEADY),      "Dim Purple");
+            defineRow(CMD_LIGHT_PURPLE_MED,         K | pack(COLOR_PURPLE, LEVEL_MED, EFFECT_STEADY),      "Medium Purple");
+            defineRow(CMD_LIGHT_PURPLE_BRI,         K | pack(COLOR_PURPLE, LEVEL_BRI, EFFECT_STEADY),      "Bright Purple");
+            defineRow(CMD_LIGHT_RED_DIM,            K | pack(COLOR_RED, LEVEL_DIM, EFFECT_STEADY),         "Dim Red");
+            defineRow(CMD_LIGHT_RED_MED,            K | pack(COLOR_RED, LEVEL_MED, EFFECT_STEADY),         "Medium Red");
+            defineRow(CMD_LIGHT_RED_BRI,            K | pack(COLOR_RED, LEVEL_BRI, EFFECT_STEADY),         "Bright Red");
+            defineRow(CMD_LIGHT_WHITECOOL_DIM,      K | pack(COLOR_WHITECOOL, LEVEL_DIM, EFFECT_STEADY),   "Dim White (cool)");
+            defineRow(CMD_LIGHT_WHITECOOL_MED,      K | pack(COLOR_WHITECOOL, LEVEL_MED, EFFECT_STEADY),   "Medium White (cool)");
+            defineRow(CMD_LIGHT_WHITECOOL_BRI,      K | pack(COLOR_WHITECOOL, LEVEL_BRI, EFFECT_STEADY),   "Bright White (cool)");
+            defineRow(CMD_LIGHT_WHITEPURE_DIM,      K | pack(COLOR_WHITEPURE, LEVEL_DIM, EFFECT_STEADY),   "Dim White");
+            defineRow(CMD_LIGHT_WHITEPURE_MED,      K | pack(COLOR_WHITEPURE, LEVEL_MED, EFFECT_STEADY),   "Medium White");
+            defineRow(CMD_LIGHT_WHITEPURE_BRI,      K | pack(COLOR_WHITEPURE, LEVEL_BRI, EFFECT_STEADY),   "Bright White");
+            defineRow(CMD_LIGHT_WHITEWARM_DIM,      K | pack(COLOR_WHITEWARM, LEVEL_DIM, EFFECT_STEADY),   "Dim White (warm)");
+            defineRow(CMD_LIGHT_WHITEWARM_MED,      K | pack(COLOR_WHITEWARM, LEVEL_MED, EFFECT_STEADY),   "Medium White (warm)");
+            defineRow(CMD_LIGHT_WHITEWARM_BRI,      K | pack(COLOR_WHITEWARM, LEVEL_BRI, EFFECT_STEADY),   "Bright White (warm)");
+            defineRow(CMD_LIGHT_YELLOW_DIM,         K | pack(COLOR_YELLOW, LEVEL_DIM, EFFECT_STEADY),      "Dim Yellow");
+            defineRow(CMD_LIGHT_YELLOW_MED,         K | pack(COLOR_YELLOW, LEVEL_MED, EFFECT_STEADY),      "Medium Yellow");
+            defineRow(CMD_LIGHT_YELLOW_BRI,         K | pack(COLOR_YELLOW, LEVEL_BRI, EFFECT_STEADY),      "Bright Yellow");
+            defineRow(CMD_LIGHT_FADING_BLUE,        K | pack(COLOR_BLUE, LEVEL_BRI, EFFECT_FADE),          "Fading Blue");
+            defineRow(CMD_LIGHT_FADING_GREEN,       K | pack(COLOR_GREEN, LEVEL_BRI, EFFECT_FADE),         "Fading Greeen");
+            defineRow(CMD_LIGHT_FADING_ORANGE,      K | pack(COLOR_ORANGE, LEVEL_BRI, EFFECT_FADE),        "Fading Orange");
+            defineRow(CMD_LIGHT_FADING_PINK,        K | pack(COLOR_PINK, LEVEL_BRI, EFFECT_FADE),          "Fading Pink");
+            defineRow(CMD_LIGHT_FADING_PURPLE,      K | pack(COLOR_PURPLE, LEVEL_BRI, EFFECT_FADE),        "Fading Purple");
+            defineRow(CMD_LIGHT_FADING_RED,         K | pack(COLOR_RED, LEVEL_BRI, EFFECT_FADE),           "Fading Red");
+            defineRow(CMD_LIGHT_FADING_WHITECOOL,   K | pack(COLOR_WHITECOOL, LEVEL_BRI, EFFECT_FADE),     "Fading White (cool)");
+            defineRow(CMD_LIGHT_FADING_WHITEPURE,   K | pack(COLOR_WHITEPURE, LEVEL_BRI, EFFECT_FADE),     "Fading White");
+            defineRow(CMD_LIGHT_FADING_WHITEWARM,   K | pack(COLOR_WHITEWARM, LEVEL_BRI, EFFECT_FADE),     "Fading White (warm)");
+            defineRow(CMD_LIGHT_FADING_YELLOW,      K | pack(COLOR_YELLOW, LEVEL_BRI, EFFECT_FADE),        "Fading Yellow");
+            defineRow(CMD_LIGHT_FLASHING_BLUE,      K | pack(COLOR_BLUE, LEVEL_BRI, EFFECT_FLASH),         "Flashing Blue");
+            defineRow(CMD_LIGHT_FLASHING_GREEN,     K | pack(COLOR_GREEN, LEVEL_BRI, EFFECT_FLASH),        "Flashing Greeen");
+            defineRow(CMD_LIGHT_FLASHING_ORANGE,    K | pack(COLOR_ORANGE, LEVEL_BRI, EFFECT_FLASH),       "Flashing Orange");
+            defineRow(CMD_LIGHT_FLASHING_PINK,      K | pack(COLOR_PINK, LEVEL_BRI, EFFECT_FLASH),         "Flashing Pink");
+            defineRow(CMD_LIGHT_FLASHING_PURPLE,    K | pack(COLOR_PURPLE, LEVEL_BRI, EFFECT_FLASH),       "Flashing Purple");
+            defineRow(CMD_LIGHT_FLASHING_RED,       K | pack(COLOR_RED, LEVEL_BRI, EFFECT_FLASH),          "Flashing Red");
+            defineRow(CMD_LIGHT_FLASHING_WHITECOOL, K | pack(COLOR_WHITECOOL, LEVEL_BRI, EFFECT_FLASH),    "Flashing White (cool)");
+            defineRow(CMD_LIGHT_FLASHING_WHITEPURE, K | pack(COLOR_WHITEPURE, LEVEL_BRI, EFFECT_FLASH),    "Flashing White");
+            defineRow(CMD_LIGHT_FLASHING_WHITEWARM, K | pack(COLOR_WHITEWARM, LEVEL_BRI, EFFECT_FLASH),    "Flashing White (warm)");
+            defineRow(CMD_LIGHT_FLASHING_YELLOW,    K | pack(COLOR_YELLOW, LEVEL_BRI, EFFECT_FLASH),       "Flashing Yellow");
+        }
+
+        private void defineRow(byte code, int attrs, String displayName) {
+            int idx = code & 0xFF;
+            if ((attributes[idx] & KIND_DEFINED) != 0) {
+                return;
+            }
+            attributes[idx] = attrs;
+            displayNames[idx] = displayName.intern();
         }
 
         /** Converts the ASCII character to a decimal byte.
@@ -362,62 +482,59 @@ public class FlasherLights {
             static final int CMD_LIGHT_FLASHING_YELLOW = 52;
         }
 
+        /*============================================================================================*/
+        /* Attribute Methods */
+
+        public static int pack(int color, int level, int effect) {
+            return ((color & COLOR_MASK) << COLOR_SHIFT) | ((level & LEVEL_MASK) << LEVEL_SHIFT) | ((effect & EFFECT_MASK) << EFFECT_SHIFT);
+        }
+
+        public static int colorOf(int attrs) {
+            return (attrs >> COLOR_SHIFT) & COLOR_MASK;
+        }
+
+        public static int levelOf(int attrs) {
+            return (attrs >> LEVEL_SHIFT) & LEVEL_MASK;
+        }
+
+        public static int effectOf(int attrs) {
+            return (attrs >> EFFECT_SHIFT) & EFFECT_MASK;
+        }
+
+        public static boolean isWhite(int attrs) {
+            int color = colorOf(attrs);
+            return color == COLOR_WHITECOOL || color == COLOR_WHITEPURE || color == COLOR_WHITEWARM;
+        }
+
+        /** Packed attributes for the specified code (0 if it's not a code we know). */
+        public int getAttributes(byte code) {
+            return attributes[code & 0xFF];
+        }
+
+        public boolean isDefined(byte code) {
+            return (attributes[code & 0xFF] & KIND_DEFINED) != 0;
+        }
+
+        public boolean isOff(byte code) {
+            return (attributes[code & 0xFF] & KIND_OFF) != 0;
+        }
+
+        public boolean isStandby(byte code) {
+            return (attributes[code & 0xFF] & KIND_STANDBY) != 0;
+        }
+
+        public boolean isNone(byte code) {
+            return (attributes[code & 0xFF] & KIND_NONE) != 0;
+        }
+
+        /** Whether the code actually lights something up (has a color), as opposed to unknown/none/off/standby. */
+        public boolean isColor(byte code) {
+            return colorOf(attributes[code & 0xFF]) != COLOR_NONE;
+        }
+
         public String codeToEnglish(byte code) {
-            if (code == CMD_UNKNOWN)                        return "Unknown";
-            else if (code == CMD_LIGHT_NONE)                return "None";
-            else if (code == CMD_LIGHT_OFF)                 return "Off";
-            else if (code == CMD_LIGHT_STANDBY)             return "Standby";
-            else if (code == CMD_LIGHT_BLUE_DIM)            return "Dim Blue";
-            else if (code == CMD_LIGHT_BLUE_MED)            return "Medium Blue";
-            else if (code == CMD_LIGHT_BLUE_BRI)            return "Bright Blue";
-            else if (code == CMD_LIGHT_GREEN_DIM)           return "Dim Green";
-            else if (code == CMD_LIGHT_GREEN_MED)           return "Medium Green";
-            else if (code == CMD_LIGHT_GREEN_BRI)           return "Bright Green";
-            else if (code == CMD_LIGHT_ORANGE_DIM)          return "Dim Orange";
-            else if (code == CMD_LIGHT_ORANGE_MED)          return "Medium Orange";
-            else if (code == CMD_LIGHT_ORANGE_BRI)          return "Bright Orange";
-            else if (code == CMD_LIGHT_PINK_DIM)            return "Dim Pink";
-            else if (code == CMD_LIGHT_PINK_MED)            return "Medium Pink";
-            else if (code == CMD_LIGHT_PINK_BRI)            return "Bright Pink";
-            else if (code == CMD_LIGHT_PURPLE_DIM)          return "Dim Purple";
-            else if (code == CMD_LIGHT_PURPLE_MED)          return "Medium Purple";
-            else if (code == CMD_LIGHT_PURPLE_BRI)          return "Bright Purple";
-            else if (code == CMD_LIGHT_RED_DIM)             return "Dim Red";
-            else if (code == CMD_LIGHT_RED_MED)             return "Medium Red";
-            else if (code == CMD_LIGHT_RED_BRI)             return "Bright Red";
-            else if (code == CMD_LIGHT_WHITECOOL_DIM)       return "Dim White (cool)";
-            else if (code == CMD_LIGHT_WHITECOOL_MED)       return "Medium White (cool)";
-            else if (code == CMD_LIGHT_WHITECOOL_BRI)       return "Bright White (cool)";
-            else if (code == CMD_LIGHT_WHITEPURE_DIM)       return "Dim White";
-            else if (code == CMD_LIGHT_WHITEPURE_MED)       return "Medium White";
-            else if (code == CMD_LIGHT_WHITEPURE_BRI)       return "Bright White";
-            else if (code == CMD_LIGHT_WHITEWARM_DIM)       return "Dim White (warm)";
-            else if (code == CMD_LIGHT_WHITEWARM_MED)       return "Medium White (warm)";
-            else if (code == CMD_LIGHT_WHITEWARM_BRI)       return "Bright White (warm)";
-            else if (code == CMD_LIGHT_YELLOW_DIM)          return "Dim Yellow";
-            else if (code == CMD_LIGHT_YELLOW_MED)          return "Medium Yellow";
-            else if (code == CMD_LIGHT_YELLOW_BRI)          return "Bright Yellow";
-            else if (code == CMD_LIGHT_FADING_BLUE)         return "Fading Blue";
-            else if (code == CMD_LIGHT_FADING_GREEN)        return "Fading Greeen";
-            else if (code == CMD_LIGHT_FADING_ORANGE)       return "Fading Orange";
-            else if (code == CMD_LIGHT_FADING_PINK)         return "Fading Pink";
-            else if (code == CMD_LIGHT_FADING_PURPLE)       return "Fading Purple";
-            else if (code == CMD_LIGHT_FADING_RED)          return "Fading Red";
-            else if (code == CMD_LIGHT_FADING_WHITECOOL)    return "Fading White (cool)";
-            else if (code == CMD_LIGHT_FADING_WHITEPURE)    return "Fading White";
-            else if (code == CMD_LIGHT_FADING_WHITEWARM)    return "Fading White (warm)";
-            else if (code == CMD_LIGHT_FADING_YELLOW)       return "Fading Yellow";
-            else if (code == CMD_LIGHT_FLASHING_BLUE)       return "Flashing Blue";
-            else if (code == CMD_LIGHT_FLASHING_GREEN)      return "Flashing Greeen";
-            else if (code == CMD_LIGHT_FLASHING_ORANGE)     return "Flashing Orange";
-            else if (code == CMD_LIGHT_FLASHING_PINK)       return "Flashing Pink";
-            else if (code == CMD_LIGHT_FLASHING_PURPLE)     return "Flashing Purple";
-            else if (code == CMD_LIGHT_FLASHING_RED)        return "Flashing Red";
-            else if (code == CMD_LIGHT_FLASHING_WHITECOOL)  return "Flashing White (cool)";
-            else if (code == CMD_LIGHT_FLASHING_WHITEPURE)  return "Flashing White";
-            else if (code == CMD_LIGHT_FLASHING_WHITEWARM)  return "Flashing White (warm)";
-            else if (code == CMD_LIGHT_FLASHING_YELLOW)     return "Flashing Yellow";
-            else return "Unhandled Code";
+            String name = displayNames[code & 0xFF];
+            return name != null ? name : DISPLAY_NAME_UNHANDLED;
         }
     }
 
@@ -440,6 +557,7 @@ public class FlasherLights {
             public static final String DO_LIGHT_COMMAND_LEGACY = PREFIX + ".doLegacyLightCommand";
             public static final String POPULATE_LIGHT_CONTROLLER_ASSOCIATION_FILE = PREFIX + ".populateLightControllerAssociationFile";
             public static final String ASSOCIATE_NEAREST_LIGHT_CONTROLLER = PREFIX + ".associateNearestLights";
+            public static final String BIND_LIGHT_COMMAND_CHANNEL = PREFIX + ".bindLightCommandChannel";
         }
 
         public class Extras {
@@ -521,6 +639,106 @@ public class FlasherLights {
     }
 
 
+    /** LightCommandChannel subclass
+     * Bound-service IPC for light commands, as a lower latency alternative to broadcastLightCommand (which stays, for compatibility).
+     * A call goes straight to the controller app's binder thread (no broadcast dispatch), and returns whether the command was taken.
+     *
+     * The request is kept compact: command code, duration, and message UUID as its two longs (no strings, no Bundle).
+     * The call only waits for the command to be queued to the light controller's session, never for the Bluetooth write itself.
+     * The service requires PERMISSION (signature-level), so only apps signed with the same key, that declare it, can bind.
+     *
+     * Usage (from another app):
+     *  <uses-permission android:name="com.messagenetsystems.evolutionflasherlights.permission.LIGHT_COMMAND_CHANNEL" />  //in its manifest
+     *  context.bindService(FlasherLights.LightCommandChannel.getBindIntent(), serviceConnection, Context.BIND_AUTO_CREATE);
+     *  ...in onServiceConnected, keep the IBinder, then whenever you have a command:
+     *  int result = FlasherLights.LightCommandChannel.submitLightCommand(binder, lightCommand, lightDurationS, messageUUID);
+     *  if (!FlasherLights.LightCommandChannel.isAccepted(result)) { ...maybe fall back to broadcastLightCommand... }
+     *
+     * WARNING: The wire format below is shared with other apps! If you change it, bump VERSION and keep accepting the old one.
+     */
+    public static class LightCommandChannel {
+        public static final String DESCRIPTOR = CONTROLLER_APP_PACKAGE_NAME + ".LightCommandChannel";
+        public static final String SERVICE_CLASS_NAME = CONTROLLER_APP_PACKAGE_NAME + ".services.MainService";
+        public static final String PERMISSION = CONTROLLER_APP_PACKAGE_NAME + ".permission.LIGHT_COMMAND_CHANNEL";     //must match the manifest (signature-level)
+        public static final int VERSION = 1;
+
+        // Transactions...
+        public static final int TRANSACTION_SUBMIT_LIGHT_COMMAND = IBinder.FIRST_CALL_TRANSACTION;      //(int version, byte code, long durationS, long uuidMSB, long uuidLSB) -> int result
+
+        // Results...
+        public static final int RESULT_QUEUED = 1;                  //accepted, and queued for the light controller
+        public static final int RESULT_ALREADY_APPLIED = 2;         //accepted, but the light controller is already confirmed in that state (nothing to write)
+        public static final int RESULT_REJECTED = -1;               //not accepted (e.g. no light controller session)
+        public static final int RESULT_INVALID = -2;                //request was malformed, or from an incompatible version
+        public static final int RESULT_UNAVAILABLE = -3;            //couldn't reach the controller app (not bound, or it died)
+
+        /** Intent to bind to the channel with (explicit, so it works from any app). */
+        public static Intent getBindIntent() {
+            Intent intent = new Intent(Intents.Actions.BIND_LIGHT_COMMAND_CHANNEL);
+            intent.setClassName(CONTROLLER_APP_PACKAGE_NAME, SERVICE_CLASS_NAME);
+            return intent;
+        }
+
+        /** Submit a light command over a bound channel.
+         * @param binder IBinder from onServiceConnected (may be null, in which case the result is RESULT_UNAVAILABLE)
+         * @param lightCommand Byte for the light command
+         * @param lightDurationS Long for number of seconds to deliver light command.
+         * @param messageUUID The associated message's UUID (may be null). Used to track certain things (like duration).
+         * @return One of the RESULT_* values
+         */
+        public static int submitLightCommand(@Nullable IBinder binder, byte lightCommand, long lightDurationS, @Nullable UUID messageUUID) {
+            final String TAGG = "LightCommandChannel.submitLightCommand: ";
+
+            if (binder == null) {
+                Log.w(TAG, TAGG+"Channel is not bound.");
+                return RESULT_UNAVAILABLE;
+            }
+
+            Parcel data = Parcel.obtain();
+            Parcel reply = Parcel.obtain();
+            try {
+                data.writeInterfaceToken(DESCRIPTOR);
+                data.writeInt(VERSION);
+                data.writeByte(lightCommand);
+                data.writeLong(lightDurationS);
+                data.writeLong(messageUUID == null ? 0 : messageUUID.getMostSignificantBits());
+                data.writeLong(messageUUID == null ? 0 : messageUUID.getLeastSignificantBits());
+                if (!binder.transact(TRANSACTION_SUBMIT_LIGHT_COMMAND, data, reply, 0)) {
+                    Log.w(TAG, TAGG+"Channel does not support this transaction.");
+                    return RESULT_INVALID;
+                }
+                reply.readException();
+                return reply.readInt();
+            } catch (RemoteException e) {
+                Log.w(TAG, TAGG+"Channel is unavailable: "+e.getMessage());
+                return RESULT_UNAVAILABLE;
+            } catch (RuntimeException e) {
+                Log.e(TAG, TAGG+"Exception caught: "+e.getMessage());
+                return RESULT_INVALID;
+            } finally {
+                reply.recycle();
+                data.recycle();
+            }
+        }
+
+        /** Whether the specified result means the command was taken (whether or not anything needed to be written). */
+        public static boolean isAccepted(int result) {
+            return result == RESULT_QUEUED || result == RESULT_ALREADY_APPLIED;
+        }
+
+        public static String resultToString(int result) {
+            switch (result) {
+                case RESULT_QUEUED: return "QUEUED";
+                case RESULT_ALREADY_APPLIED: return "ALREADY_APPLIED";
+                case RESULT_REJECTED: return "REJECTED";
+                case RESULT_INVALID: return "INVALID";
+                case RESULT_UNAVAILABLE: return "UNAVAILABLE";
+                default: return "UNKNOWN("+result+")";
+            }
+        }
+    }
+
+
     /** Determine with light-command byte equates to the provided flasher values from the OmniMessage
      * @param flasherLightOmniCommandCodes Instance of FlasherLights.OmniCommandCodes
      * @param flasherMode OmniMessage.flasherMode value
@@ -0,0 +1,188 @@
+package com.messagenetsystems.evolutionflasherlights.models;
+
+/* MainAppLiveness
+ * In-process model of whether the main delivery app is alive, driven by the heartbeat broadcasts it already sends us
+ * (REGISTER_MAIN_APP_HEARTBEAT, see MainAppDataReceiver). Replaces forking a root shell to grep ps output for it.
+ *
+ * Heartbeats are stamped with our own monotonic clock (elapsedRealtime) when they arrive, so the verdict can't be thrown off
+ * by wall clock changes, or by the two apps' clocks disagreeing. The verdict is:
+ *  ALIVE   Heartbeat within the last MAIN_APP_HEARTBEAT_STALE_MS.
+ *  STALE   No heartbeat for that long, but not yet MAIN_APP_HEARTBEAT_DEAD_MS (it may just be busy; give it a grace period).
+ *  DEAD    No heartbeat for MAIN_APP_HEARTBEAT_DEAD_MS, or never any heartbeat since we started.
+ *
+ * Usage:
+ *  MainAppLiveness.onHeartbeat(appStartedMS, sentMS);                                 //from the receiver
+ *  if (MainAppLiveness.getVerdict() == MainAppLiveness.VERDICT_DEAD) { ... }           //cheap; no I/O
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces su/ps/grep check of whether main app is running).
+ *  2026.10.16      agent           Exposed last communication time (for LightStateManagerThread's silence deadline).
+ *  2026.10.16      agent           Timing goes through DatetimeUtils monotonic helpers.
+ */
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.DatetimeUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+
+public class MainAppLiveness {
+    private static final String TAG = MainAppLiveness.class.getSimpleName();
+
+    // Verdicts...
+    public static final int VERDICT_ALIVE = 1;
+    public static final int VERDICT_STALE = 2;
+    public static final int VERDICT_DEAD = 3;
+
+    private static final long NEVER = -1;
+
+    private static volatile long lastHeartbeatElapsedMS = NEVER;
+    private static volatile long lastCommunicationElapsedMS = NEVER;
+    private static volatile long appStartedWallMS = NEVER;                          //as reported by the main app (changes when it restarts)
+    private static volatile long heartbeatCount = 0;
+    private static volatile int lastReportedVerdict = VERDICT_DEAD;
+
+    // Logging stuff...
+    private static final int LOG_SEVERITY_V = 1;
+    private static final int LOG_SEVERITY_D = 2;
+    private static final int LOG_SEVERITY_I = 3;
+    private static final int LOG_SEVERITY_W = 4;
+    private static final int LOG_SEVERITY_E = 5;
+    private static final int logMethod = Constants.LOG_METHOD_FILELOGGER;
+
+
+    /*============================================================================================*/
+    /* Update Methods */
+
+    /** Register a heartbeat from the main app (its start time and send time are its own wall clock, and only used for reporting). */
+    public static void onHeartbeat(long mainAppStartedWallMS, long sentWallMS) {
+        final String TAGG = "onHeartbeat: ";
+
+        final long nowElapsedMS = DatetimeUtils.nowElapsedMS();
+        final long previousStartedWallMS = appStartedWallMS;
+
+        lastHeartbeatElapsedMS = nowElapsedMS;
+        lastCommunicationElapsedMS = nowElapsedMS;
+        appStartedWallMS = mainAppStartedWallMS;
+        heartbeatCount++;                                                           //only ever updated from the receiver (main thread)
+
+        if (previousStartedWallMS != NEVER && previousStartedWallMS != mainAppStartedWallMS) {
+            logI(TAGG+"Main app has restarted (started "+previousStartedWallMS+" -> "+mainAppStartedWallMS+").");
+        }
+        logV(TAGG+"Heartbeat #"+heartbeatCount+" (sent "+sentWallMS+").");
+
+        reportVerdictChange(VERDICT_ALIVE);
+    }
+
+    /** Register any other broadcast from the main app (proves it's there, but isn't a heartbeat). */
+    public static void onCommunication() {
+        lastCommunicationElapsedMS = DatetimeUtils.nowElapsedMS();
+    }
+
+    /** Forget everything (main app is considered dead until its next heartbeat). */
+    public static void reset() {
+        lastHeartbeatElapsedMS = NEVER;
+        lastCommunicationElapsedMS = NEVER;
+        appStartedWallMS = NEVER;
+        heartbeatCount = 0;
+        lastReportedVerdict = VERDICT_DEAD;
+    }
+
+
+    /*============================================================================================*/
+    /* Query Methods */
+
+    /** Current verdict (VERDICT_*). */
+    public static int getVerdict() {
+        final long msSinceLastHeartbeat = getMsSinceLastHeartbeat();
+
+        int verdict;
+        if (msSinceLastHeartbeat < 0 || msSinceLastHeartbeat >= Constants.MAIN_APP_HEARTBEAT_DEAD_MS) {
+            verdict = VERDICT_DEAD;
+        } else if (msSinceLastHeartbeat >= Constants.MAIN_APP_HEARTBEAT_STALE_MS) {
+            verdict = VERDICT_STALE;
+        } else {
+            verdict = VERDICT_ALIVE;
+        }
+
+        reportVerdictChange(verdict);
+        return verdict;
+    }
+
+    public static boolean isAlive() {
+        return getVerdict() == VERDICT_ALIVE;
+    }
+
+    /** Milliseconds since the last heartbeat (-1 if there hasn't been one). */
+    public static long getMsSinceLastHeartbeat() {
+        final long last = lastHeartbeatElapsedMS;
+        return last == NEVER ? -1 : DatetimeUtils.nowElapsedMS() - last;
+    }
+
+    /** Milliseconds since we last heard anything from the main app (-1 if we haven't). */
+    public static long getMsSinceLastCommunication() {
+        final long last = lastCommunicationElapsedMS;
+        return last == NEVER ? -1 : DatetimeUtils.nowElapsedMS() - last;
+    }
+
+    /** When (elapsedRealtime) we last heard anything from the main app (-1 if we haven't). */
+    public static long getLastCommunicationElapsedMS() {
+        return lastCommunicationElapsedMS;
+    }
+
+    public static long getHeartbeatCount() {
+        return heartbeatCount;
+    }
+
+    public static String verdictToString(int verdict) {
+        switch (verdict) {
+            case VERDICT_ALIVE: return "ALIVE";
+            case VERDICT_STALE: return "STALE";
+            case VERDICT_DEAD: return "DEAD";
+            default: return "UNKNOWN("+verdict+")";
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Utility Methods */
+
+    /** Log the verdict when it changes (so it's only logged on transitions, not on every check). */
+    private static void reportVerdictChange(int verdict) {
+        final int previous = lastReportedVerdict;
+        if (verdict == previous) {
+            return;
+        }
+        lastReportedVerdict = verdict;
+
+        final String message = "Main app liveness "+verdictToString(previous)+" -> "+verdictToString(verdict)
+                +" (last heartbeat "+getMsSinceLastHeartbeat()+"ms ago).";
+        if (verdict == VERDICT_ALIVE) {
+            logI("reportVerdictChange: "+message);
+        } else {
+            logW("reportVerdictChange: "+message);
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private static void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private static void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private static void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private static void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private static void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private static void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, logSeverity, tagg);
+    }
+}
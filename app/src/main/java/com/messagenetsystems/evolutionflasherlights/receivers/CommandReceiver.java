@@ -25,11 +25,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
 import com.messagenetsystems.evolutionflasherlights.models.FlasherLights;
 import com.messagenetsystems.evolutionflasherlights.services.MainService;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 
 import java.lang.ref.WeakReference;
 import java.util.UUID;
@@ -197,45 +197,6 @@ public class CommandReceiver extends BroadcastReceiver {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_RECEIVERS, logMethod, TAG, logSeverity, tagg);
     }
 }
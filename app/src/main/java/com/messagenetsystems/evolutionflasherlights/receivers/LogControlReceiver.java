@@ -0,0 +1,155 @@
+package com.messagenetsystems.evolutionflasherlights.receivers;
+
+/* LogControlReceiver
+ * Broadcast receiver for changing logging at runtime (no restart needed): minimum level and log method, either globally or
+ * per subsystem (see LogUtils.SUBSYSTEM_*), and how often sampled (repetitive) messages get through.
+ *
+ * It's registered with the signature-level Constants.LocalIntents.Permissions.LOG_CONTROL, so the plain adb shell can't send to it;
+ * use a root shell (su -c "am broadcast ..."), or an app signed with our key that declares the permission.
+ *
+ * Examples (extras keys are in Constants.LocalIntents.ExtrasKeys, shortened here):
+ *  am broadcast -a <...setLogConfig> --es <...logSubsystem> transport --es <...logLevel> V       //verbose GATT/transport only
+ *  am broadcast -a <...setLogConfig> --es <...logSubsystem> transport --es <...logLevel> default //back to the global level
+ *  am broadcast -a <...setLogConfig> --es <...logLevel> W                                         //global level
+ *  am broadcast -a <...setLogConfig> --es <...logSubsystem> all --es <...logMethod> logcat        //every subsystem to logcat
+ *  am broadcast -a <...setLogConfig> --el <...logSampleIntervalMs> 0                              //stop sampling
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created.
+ *  2026.10.16      agent           Senders need the LOG_CONTROL permission (see MainService).
+ */
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+
+public class LogControlReceiver extends BroadcastReceiver {
+    private final static String TAG = LogControlReceiver.class.getSimpleName();
+
+    private static final String SUBSYSTEM_ALL = "all";
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor */
+    public LogControlReceiver(int logMethod) {
+        this.logMethod = logMethod;
+    }
+
+    /** Specify what happens when we receive the broadcasts. */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final String TAGG = "onReceive: ";
+
+        if (intent.getAction() == null || !intent.getAction().equals(Constants.LocalIntents.Actions.SET_LOG_CONFIG)) {
+            logW(TAGG+"Intent action did not match any handled conditions.");
+            return;
+        }
+
+        Bundle extras = intent.getExtras();
+        if (extras == null) {
+            logW(TAGG+"Intent contains no extras. Nothing to change. Current settings: "+LogUtils.describe());
+            return;
+        }
+
+        try {
+            // Figure out which subsystem(s) this applies to (none specified means the global settings)...
+            String subsystemName = extras.getString(Constants.LocalIntents.ExtrasKeys.LOG_SUBSYSTEM);
+            int subsystemFrom;
+            int subsystemTo;
+            if (subsystemName == null) {
+                subsystemFrom = -1;
+                subsystemTo = -1;
+            } else if (subsystemName.trim().equalsIgnoreCase(SUBSYSTEM_ALL)) {
+                subsystemFrom = 0;
+                subsystemTo = LogUtils.SUBSYSTEM_COUNT - 1;
+            } else {
+                subsystemFrom = subsystemTo = LogUtils.parseSubsystem(subsystemName);
+                if (subsystemFrom < 0) {
+                    logW(TAGG+"Unknown subsystem \""+subsystemName+"\". Aborting.");
+                    return;
+                }
+            }
+
+            // Level...
+            if (extras.containsKey(Constants.LocalIntents.ExtrasKeys.LOG_LEVEL)) {
+                String levelName = extras.getString(Constants.LocalIntents.ExtrasKeys.LOG_LEVEL);
+                int severity = LogUtils.parseSeverity(levelName);
+                if (severity < 0 || (severity == LogUtils.SEVERITY_INHERIT && subsystemFrom < 0)) {
+                    logW(TAGG+"Invalid log level \""+levelName+"\". Ignoring it.");
+                } else if (subsystemFrom < 0) {
+                    LogUtils.setMinSeverity(severity);
+                } else {
+                    for (int subsystem = subsystemFrom; subsystem <= subsystemTo; subsystem++) {
+                        LogUtils.setSubsystemMinSeverity(subsystem, severity);
+                    }
+                }
+            }
+
+            // Method (only per subsystem, since classes' own methods are the "global" setting)...
+            if (extras.containsKey(Constants.LocalIntents.ExtrasKeys.LOG_METHOD)) {
+                String methodName = extras.getString(Constants.LocalIntents.ExtrasKeys.LOG_METHOD);
+                int method = LogUtils.parseLogMethod(methodName);
+                if (method < 0) {
+                    logW(TAGG+"Invalid log method \""+methodName+"\". Ignoring it.");
+                } else {
+                    if (subsystemFrom < 0) {
+                        subsystemFrom = 0;
+                        subsystemTo = LogUtils.SUBSYSTEM_COUNT - 1;
+                    }
+                    for (int subsystem = subsystemFrom; subsystem <= subsystemTo; subsystem++) {
+                        LogUtils.setSubsystemLogMethod(subsystem, method);
+                    }
+                }
+            }
+
+            // Sampling interval (accept it as a long or a string, since that's easy to get wrong with am)...
+            if (extras.containsKey(Constants.LocalIntents.ExtrasKeys.LOG_SAMPLE_INTERVAL_MS)) {
+                Object value = extras.get(Constants.LocalIntents.ExtrasKeys.LOG_SAMPLE_INTERVAL_MS);
+                try {
+                    LogUtils.setSampleIntervalMs(value instanceof Number ? ((Number) value).longValue() : Long.parseLong(String.valueOf(value).trim()));
+                } catch (NumberFormatException e) {
+                    logW(TAGG+"Invalid sample interval \""+value+"\". Ignoring it.");
+                }
+            }
+
+            logI(TAGG+"Logging settings now: "+LogUtils.describe());
+        } catch (Exception e) {
+            logE(TAGG+"Exception caught: "+e.getMessage());
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_RECEIVERS, logMethod, TAG, logSeverity, tagg);
+    }
+}
@@ -10,19 +10,22 @@ package com.messagenetsystems.evolutionflasherlights.receivers;
  *  2020.06.23      Chris Rider     Brought in MainApplication instance, and migrated globals over to that.
  *  2020.06.28      Chris Rider     Refactored/renamed from MessageDataReceiver to MainAppDataReceiver, so we can include more things in this class' scope (initially for processing main delivery app's heartbeat).
  *                                  Also now updating last-communication-from-main-app global variable when we receive other broadcast from main app.
+ *  2026.10.16      agent           Heartbeats and other communication now also feed MainAppLiveness.
+ *  2026.10.16      agent           Signals LightStateManagerThread when main app communicates or its delivering count changes.
+ *  2026.10.16      agent           No longer allocates Dates per broadcast (MainAppLiveness keeps monotonic times).
  */
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
+import com.messagenetsystems.evolutionflasherlights.models.MainAppLiveness;
+import com.messagenetsystems.evolutionflasherlights.threads.LightStateManagerThread;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 
 import java.lang.ref.WeakReference;
-import java.util.Date;
 
 
 public class MainAppDataReceiver extends BroadcastReceiver {
@@ -94,9 +97,9 @@ public class MainAppDataReceiver extends BroadcastReceiver {
                 logV(TAGG + "Updating current number of delivering message to: " + Integer.toString(numberOfDeliveringMsgs));
                 this.mainApplication.numOfDeliveringMsgsInMainApp = numberOfDeliveringMsgs;
 
-                // Go ahead an update the last-communication timestamps...
-                MainApplication.mainAppLastCommunicationTimestamp_previous = MainApplication.mainAppLastCommunicationTimestamp;
-                MainApplication.mainAppLastCommunicationTimestamp = new Date();
+                // Go ahead an update the last-communication time...
+                MainAppLiveness.onCommunication();
+                LightStateManagerThread.signal(LightStateManagerThread.EVENT_MAIN_APP_COMMUNICATION | LightStateManagerThread.EVENT_DELIVERING_COUNT_CHANGED);
             }
             else if (intent.getAction().equals(Constants.Intents.Actions.REGISTER_MAIN_APP_HEARTBEAT)) {
                 logD(TAGG + "Received request to register a heartbeat from the main delivery app.");
@@ -110,13 +113,12 @@ public class MainAppDataReceiver extends BroadcastReceiver {
                 }
 
                 mainAppStartedTimestamp = intent.getLongExtra(Constants.Intents.ExtrasKeys.APP_STARTED_DATE_MS, -1);
-                heartbeatTimestamp = intent.getLongExtra(Constants.Intents.ExtrasKeys.NOW_DATE_MS, new Date().getTime());
+                heartbeatTimestamp = intent.getLongExtra(Constants.Intents.ExtrasKeys.NOW_DATE_MS, System.currentTimeMillis());
 
-                // Convert and save values
-                MainApplication.mainAppHeartbeat_appStartedTimestamp = new Date(mainAppStartedTimestamp);
-                MainApplication.mainAppLastCommunicationTimestamp_previous = MainApplication.mainAppLastCommunicationTimestamp;
-                MainApplication.mainAppLastCommunicationTimestamp = new Date(heartbeatTimestamp);
-                logV(TAGG + "Converted intent's primitives, and set MainApplication heartbeat global values for main delivery app (started "+MainApplication.mainAppHeartbeat_appStartedTimestamp.toString()+" / heartbeat sent "+MainApplication.mainAppLastCommunicationTimestamp.toString()+")");
+                // Save values (liveness is timed by our own monotonic clock, not these wall clock values)
+                MainAppLiveness.onHeartbeat(mainAppStartedTimestamp, heartbeatTimestamp);
+                LightStateManagerThread.signal(LightStateManagerThread.EVENT_MAIN_APP_COMMUNICATION);
+                logV(TAGG + "Registered heartbeat from main delivery app (started "+mainAppStartedTimestamp+" / heartbeat sent "+heartbeatTimestamp+")");
             }
             /* Experimental, never enacted...
             else if (intent.getAction().equals(Constants.Intents.Actions.MSG_DATA_UPDATE)) {
@@ -179,45 +181,6 @@ public class MainAppDataReceiver extends BroadcastReceiver {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_RECEIVERS, logMethod, TAG, logSeverity, tagg);
     }
 }
@@ -30,6 +30,20 @@ package com.messagenetsystems.evolutionflasherlights.services;
  *      2019.01.14      Chris Rider     Copied over to this dedicated app from main app.
  *      2020.05.28-29   Chris Rider     Implemented file logging capability.
  *      2020.06.02      Chris Rider     Stripped and cleaned up some unnecessary things now that we're starting to use the refactored version.
+ *      2026.10.16      agent           GATT operations now go through a GattOperationQueue instead of sleeping on callback threads.
+ *      2026.10.16      agent           Light command characteristic now comes from GattAttributeCache instead of walking services for every write.
+ *      2026.10.16      agent           Commands arriving while one is trying to send now wait in a latest-wins mailbox instead of being dropped.
+ *      2026.10.16      agent           Status 133/257 go through a GattRecoveryController (backoff, escalation, circuit breaker) instead of
+ *                                      always doing a full cleanup/re-initialize.
+ *      2026.10.16      agent           Connection-initiated/command-trying flags replaced by a ConnectionStateMachine (CAS transitions,
+ *                                      transition log, and a stuck state gets cleared instead of blocking commands forever).
+ *      2026.10.16      agent           Light commands are encoded from a prebuilt LightCommandPayloadTable instead of an else-if chain per call.
+ *      2026.10.16      agent           Repeat detection now compares an AppliedLightState (code + payload fingerprint) instead of re-encoding
+ *                                      the command and comparing hex strings of it and the last written base command.
+ *      2026.10.16      agent           Main app running check now uses the MainAppLiveness heartbeat verdict instead of su/ps/grep every cycle.
+ *      2026.10.16      agent           LightStateManagerThread now runs as a periodic task on MainApplication's shared MonitorScheduler.
+ *      2026.10.16      agent           Rapid-fire, backoff, and write-spacing checks now use the monotonic clock (DatetimeUtils) instead of new Date().
+ *      2026.10.16      agent           Light command characteristic is resolved on the current gatt each time (cached by instance ID, not by object).
  */
 
 
@@ -57,20 +71,30 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
 import com.messagenetsystems.evolutionflasherlights.R;
 import com.messagenetsystems.evolutionflasherlights.activities.StartupActivity;
 import com.messagenetsystems.evolutionflasherlights.devices.BluetoothLightController_HY254117V9;
+import com.messagenetsystems.evolutionflasherlights.devices.LightCommandPayloadTable;
 import com.messagenetsystems.evolutionflasherlights.models.FlasherLights;
+import com.messagenetsystems.evolutionflasherlights.models.MainAppLiveness;
+import com.messagenetsystems.evolutionflasherlights.threads.MonitorScheduler;
 import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.DatetimeUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 import com.messagenetsystems.evolutionflasherlights.utilities.SettingsUtils;
+import com.messagenetsystems.evolutionflasherlights.v3.AppliedLightState;
+import com.messagenetsystems.evolutionflasherlights.v3.ConnectionStateMachine;
+import com.messagenetsystems.evolutionflasherlights.v3.GattAttributeCache;
+import com.messagenetsystems.evolutionflasherlights.v3.GattOperationQueue;
+import com.messagenetsystems.evolutionflasherlights.v3.GattRecoveryController;
+import com.messagenetsystems.evolutionflasherlights.v3.LightCommandMailbox;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -108,27 +132,32 @@ public class BluetoothFlasherLightsService extends Service {
     private static String lightControllerDevice_macAddress;
     private BluetoothDevice mBluetoothDevice;
     private BluetoothLightController_HY254117V9 lightController;
+    private LightCommandPayloadTable lightCommandPayloadTable;                                       //every command's payload, built once per lightController
 
     // Declare bluetooth light communication related resources
     private GattClientCallback mGattClientCallback;
     private BluetoothGatt mBluetoothGatt;
+    private GattOperationQueue mGattOperationQueue;                                                 //all GATT operations go through this, one at a time
+    private final LightCommandMailbox<String> mPendingLightSignalMailbox = new LightCommandMailbox<String>();     //newest light signal waiting for the current send to finish
+    private final Handler mPendingLightSignalHandler = new Handler(Looper.getMainLooper());
+    private GattRecoveryController mGattRecoveryController;                                         //created once in onCreate (survives cleanup/initialize, so counts carry across)
+    private volatile long mNextConnectionAllowedAt = 0;                                             //backoff from the recovery controller (elapsed-realtime deadline)
+    private ConnectionStateMachine mConnectionState;                                                //created once in onCreate (IDLE, CONNECTING, DISCOVERING, WRITING, DISCONNECTING)
+    private final long CONNECTION_STUCK_MS = 10 * 1000;                                             //no connect/discover/write/disconnect should ever take this long
 
     // Declare interprocess communication stuff
     private BroadcastReceiver broadcastReceiver;
 
-    // Declare any worker threads
-    private Thread defaultLightStateManagerThread = null;
+    // Declare any worker tasks (these run on MainApplication's shared MonitorScheduler)
+    private LightStateManagerThread defaultLightStateManagerThread = null;
 
     // Declare flags and misc
-    private volatile boolean aConnectionHasBeenInitiated = false;
-    private volatile boolean aCommandIsTryingToSend = false;
     //private volatile boolean aMsgLightCommandIsActive = false;
-    private volatile long mostRecent_getTime_lightConnection = 0;
-    private volatile long mostRecent_getTime_lightCommandWritten = 0;
-    private volatile boolean lastWriteWasSuccessful = false;
+    private volatile long mostRecent_elapsedMS_lightConnection = DatetimeUtils.ELAPSED_NEVER;
+    private volatile long mostRecent_elapsedMS_lightCommandWritten = DatetimeUtils.ELAPSED_NEVER;
+    private final AppliedLightState mLastAppliedLightState = new AppliedLightState();                //last command whose whole sequence was written successfully
     //private volatile char lastWrittenLightCommand_asASCII;
     //private volatile int lastWrittenLightCommand_asDecimal;
-    private volatile byte[] lastWrittenLightCommand_asByteArray;
     public static volatile int currentLightCommand_asDecimal;
     public static volatile byte[] currentLightCommand_asByteArray;
     public static volatile boolean preventSendingAnyLightCommands = false;
@@ -155,6 +184,9 @@ public class BluetoothFlasherLightsService extends Service {
         final String TAGG = "onCreate: ";
         logV(TAGG+"Invoked.");
 
+        this.mGattRecoveryController = new GattRecoveryController(logMethod);
+        this.mConnectionState = new ConnectionStateMachine(TAG, logMethod);
+
         try {
             this.mainApplication = ((MainApplication) getApplicationContext());
         } catch (Exception e) {
@@ -194,13 +226,11 @@ public class BluetoothFlasherLightsService extends Service {
         //  controller and enable us to send it commands.)
         startScanForDevices();
 
-        // Start any threads
-        if (defaultLightStateManagerThread != null) {
-            defaultLightStateManagerThread.start();
-        } else {
+        // Start any worker tasks
+        if (defaultLightStateManagerThread == null) {
             defaultLightStateManagerThread = new LightStateManagerThread(context);
-            defaultLightStateManagerThread.start();
         }
+        defaultLightStateManagerThread.start(mainApplication.monitorScheduler);
 
         // Finish startup...
         logI(TAGG+"Service started.");
@@ -253,10 +283,11 @@ public class BluetoothFlasherLightsService extends Service {
         scannedStrongestRssi = -100;        //an unrealistically low strength value
         SCAN_PERIOD = 3000;                 //milliseconds after which to stop scanning (should get overridden by read in of strings.xml value?)
         currentLightCommand_asDecimal = MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_NONE;
-        aConnectionHasBeenInitiated = false;
+        mConnectionState.forceTo(ConnectionStateMachine.STATE_IDLE, "initialize");
 
         // Create an instance of our lightController class (which has all the stuff unique to our particular light controller device)
         lightController = new BluetoothLightController_HY254117V9(logMethod);
+        lightCommandPayloadTable = new LightCommandPayloadTable(lightController, MainApplication.flasherLightOmniCommandCodes, logMethod);
 
         // Get shared-prefs values
         lightControllerDevice_macAddress = SettingsUtils.getSharePrefsFlasherLightControllerMacAddress();
@@ -269,12 +300,13 @@ public class BluetoothFlasherLightsService extends Service {
         initializeBleAdapter();
 
         mBluetoothGatt = null;
+        mGattOperationQueue = new GattOperationQueue(null, logMethod);
 
         // Initialize and register Message Handler
         broadcastReceiver = new LightCommandBroadcastReceiver();
         registerReceiver(broadcastReceiver, new IntentFilter(INTENTFILTER_LIGHTCMD));
 
-        // Initialize any worker threads
+        // Initialize any worker tasks
         defaultLightStateManagerThread = new LightStateManagerThread(context);
     }
 
@@ -299,10 +331,14 @@ public class BluetoothFlasherLightsService extends Service {
                 mBluetoothAdapter.cancelDiscovery();
             }
         }
+        if (mGattOperationQueue != null) {
+            mGattOperationQueue.quit();
+            mGattOperationQueue = null;
+        }
 
-        // Clean up any threads
+        // Clean up any worker tasks
         if (defaultLightStateManagerThread != null)
-            defaultLightStateManagerThread.interrupt();
+            defaultLightStateManagerThread.stop();
 
         // Misc.
         if (broadcastReceiver != null)
@@ -624,14 +660,31 @@ public class BluetoothFlasherLightsService extends Service {
 
         List<BluetoothGattService> services = null;
 
-        boolean saveWrittenCommand = true;
+        final GattOperationQueue.OnCompleteListener discoverServicesListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                processServicesDiscovered(op.getGatt(), status);
+            }
+        };
+        final GattOperationQueue.OnCompleteListener characteristicWriteListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                processCharacteristicWrite(op.getGatt(), op.getValue(), status);
+            }
+        };
+        final GattOperationQueue.OnCompleteListener characteristicReadListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                processCharacteristicRead(op.getCharacteristic(), status);
+            }
+        };
 
         GattClientCallback(byte[] lightCommand, byte[] lightCommandAdditional, int lightCommand_asDecimal) {
             this.lightCommand = lightCommand;
             this.lightCommand_asDecimal = lightCommand_asDecimal;
             this.lightCommandAdditional = lightCommandAdditional;
 
-            lastWriteWasSuccessful = false; //reset flag before we start to do write stuff
+            mLastAppliedLightState.forget();    //whatever was applied won't be once we start to do write stuff
         }
 
         @Override
@@ -655,8 +708,10 @@ public class BluetoothFlasherLightsService extends Service {
                     logW(TAGG+TAGG+"Exception caught (problem with BluetoothGatt provided in callback?): "+e.getMessage());
                 }
 
-                aCommandIsTryingToSend = false;
-                aConnectionHasBeenInitiated = false;
+                mConnectionState.forceTo(ConnectionStateMachine.STATE_IDLE, "disconnected, status "+status);
+
+                // This send is done, so if something newer came in meanwhile, send it now
+                sendPendingLightSignal();
             }
             // if these conditions == true, then we have a successful connection
             else if (newState == BluetoothProfile.STATE_CONNECTED) {
@@ -664,21 +719,23 @@ public class BluetoothFlasherLightsService extends Service {
                 //logI(TAGG+TAGG+"Connected. Writing command...");
                 //writeCommandToLights(lightCommand);
 
-                mostRecent_getTime_lightConnection = new Date().getTime();
+                mostRecent_elapsedMS_lightConnection = DatetimeUtils.nowElapsedMS();
+                mGattRecoveryController.onSuccess();
 
                 // Try to avoid common problems in BLE from discovering immediately after establishing connection
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ie) {
-                    logW(TAGG+TAGG+"Exception caught trying to sleep: "+ie.getMessage());
-                }
-
+                // (the queue holds off starting discovery for a second, without blocking this callback thread)
                 logI(TAGG+TAGG+"Connected. Discovering services...");
+                mConnectionState.transition(ConnectionStateMachine.STATE_CONNECTING, ConnectionStateMachine.STATE_DISCOVERING, "connected");
                 try {
-                    gatt.discoverServices();
+                    mGattOperationQueue.enqueue(GattOperationQueue.Operation.discoverServices(gatt, 1000, discoverServicesListener));
                 } catch (Exception e) {
                     logW(TAGG+TAGG+"Exception caught (problem with BluetoothGatt provided in callback?): "+e.getMessage());
-                    aCommandIsTryingToSend = false;
+                    mConnectionState.forceTo(ConnectionStateMachine.STATE_DISCONNECTING, "discovery could not be queued");
+                    try {
+                        gatt.disconnect();
+                    } catch (Exception e2) {
+                        logW(TAGG+TAGG+"Exception caught disconnecting: "+e2.getMessage());
+                    }
 
                     // Since we failed, setup to try again
                     /* TODO: just an idea (seems unnecessary) probably would fail due to looper.prepare problem?
@@ -693,13 +750,12 @@ public class BluetoothFlasherLightsService extends Service {
                 }
             } else {
                 logW(TAGG+TAGG+"Unhandled state, disconnecting...");
+                mConnectionState.forceTo(ConnectionStateMachine.STATE_DISCONNECTING, "unhandled state "+newState);
                 try {
                     gatt.disconnect();
-                    aConnectionHasBeenInitiated = false;
                 } catch (Exception e) {
                     logW(TAGG+TAGG+"Exception caught (problem with BluetoothGatt provided in callback?): "+e.getMessage());
                 }
-                aCommandIsTryingToSend = false;
 
                 // Since we failed, setup to try again
                 /* TODO: just an idea (seems unnecessary) probably would fail due to looper.prepare problem?
@@ -719,9 +775,7 @@ public class BluetoothFlasherLightsService extends Service {
                 logV(TAGG+TAGG+"Unknown error 133 (too many connections?)");
                 //TODO: Might be some relationship to "No connection for..." error thrown by BtGatt.GattService discoverServices() -- try waiting about 500ms then try to connect again (works for some guy)
 
-                // Restart the core stuff in this class
-                cleanup();
-                initialize();
+                recoverFromConnectionFailure(gatt, status);
             } else if (status == 257) {
                 /* The following may not actually work... (CR 2018.11.30)
                 logI(TAGG+TAGG+"Unknown error 257 (max client connections reached?). Trying to disconnect and close gatt.");
@@ -734,25 +788,29 @@ public class BluetoothFlasherLightsService extends Service {
                 }
                 */
 
-                // Restart the core stuff in this class
-                logI(TAGG+TAGG+"Unknown error 257 (max client connections reached?). Trying to cleanup and re-initialize core class bluetooth stuff...");
-                cleanup();
-                initialize();
-
-                aCommandIsTryingToSend = false;
+                logI(TAGG+TAGG+"Unknown error 257 (max client connections reached?).");
+                recoverFromConnectionFailure(gatt, status);
             }
         }
 
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            final String TAGG = this.TAGG+"onServicesDiscovered: ";
+            if (mGattOperationQueue != null) {
+                mGattOperationQueue.onServicesDiscovered(gatt, status);
+            }
+        }
+
+        /** Handle the result of a (queued) service discovery. Runs on the operation queue's thread. */
+        private void processServicesDiscovered(BluetoothGatt gatt, int status) {
+            final String TAGG = this.TAGG+"processServicesDiscovered: ";
             logV(TAGG+TAGG + "Invoked (status="+status+")");
 
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 services = gatt.getServices();
                 if (services == null) {
                     logE(TAGG+TAGG+"No services available, disconnecting and aborting.");
-                    lastWriteWasSuccessful = false; //reset flag
+                    mLastAppliedLightState.forget();
+                    mConnectionState.forceTo(ConnectionStateMachine.STATE_DISCONNECTING, "no services");
                     gatt.disconnect();
 
                     // Since we failed, setup to try again
@@ -771,19 +829,27 @@ public class BluetoothFlasherLightsService extends Service {
                 logD(TAGG+TAGG+"Success. "+services.size()+" services available. Writing command...");
                 //for (BluetoothGattService service : services)
                 //    logV(TAGG+TAGG+" Found-service UUID: "+String.valueOf(service.getUuid()));
-                writeCommandToLights(gatt, services, lightCommand);
+                mConnectionState.transition(ConnectionStateMachine.STATE_DISCOVERING, ConnectionStateMachine.STATE_WRITING, "services discovered");
+                writeCommandToLights(gatt, lightCommand, 0, characteristicWriteListener);
             } else {
                 //logW(TAGG+TAGG+"Unhandled status.");
                 logD(TAGG+TAGG+"Unhandled status, disconnecting...");
+                mConnectionState.forceTo(ConnectionStateMachine.STATE_DISCONNECTING, "discovery failed, status "+status);
                 gatt.disconnect();
-                aCommandIsTryingToSend = false;
             }
         }
 
         @Override
         // Result of a characteristic read operation
         public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            final String TAGG = this.TAGG+"onCharacteristicRead: ";
+            if (mGattOperationQueue != null) {
+                mGattOperationQueue.onCharacteristicRead(gatt, characteristic, status);
+            }
+        }
+
+        /** Handle the result of a (queued) characteristic read. Runs on the operation queue's thread. */
+        private void processCharacteristicRead(BluetoothGattCharacteristic characteristic, int status) {
+            final String TAGG = this.TAGG+"processCharacteristicRead: ";
             logV(TAGG+TAGG + "Invoked (status="+status+")");
 
             if (status == BluetoothGatt.GATT_SUCCESS) {
@@ -797,48 +863,54 @@ public class BluetoothFlasherLightsService extends Service {
         @Override
         // Result of a characteristic write operation
         public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            final String TAGG = this.TAGG+"onCharacteristicWrite: ";
+            if (mGattOperationQueue != null) {
+                mGattOperationQueue.onCharacteristicWrite(gatt, characteristic, status);
+            }
+        }
+
+        /** Handle the result of a (queued) characteristic write. Runs on the operation queue's thread. */
+        private void processCharacteristicWrite(BluetoothGatt gatt, byte[] writtenValue, int status) {
+            final String TAGG = this.TAGG+"processCharacteristicWrite: ";
             logV(TAGG+TAGG + "Invoked (status="+status+")");
 
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                logD(TAGG+TAGG+"Success (bytes that were written: \"" + ConversionUtils.byteArrayToHexString(characteristic.getValue()) + "\").");
+                logD(TAGG+TAGG+"Success (bytes that were written: \"" + ConversionUtils.byteArrayToHexString(writtenValue) + "\").");
 
                 //Log potential issue if this write comes very soon after another previous write
-                if (new Date().getTime() - mostRecent_getTime_lightCommandWritten < 500) {
+                if (DatetimeUtils.isWithinMS(mostRecent_elapsedMS_lightCommandWritten, 500)) {
                     logW(TAGG+TAGG+"Notice! This light command written unusually soon after last one. Consider looking into this!");
                 }
 
                 //Write operation successful
-                lastWriteWasSuccessful = true;
-                mostRecent_getTime_lightCommandWritten = new Date().getTime();
-
-                if (saveWrittenCommand)
-                    lastWrittenLightCommand_asByteArray = characteristic.getValue();
+                mostRecent_elapsedMS_lightCommandWritten = DatetimeUtils.nowElapsedMS();
 
                 //lastWrittenLightCommand_asDecimal = currentLightCommand_asDecimal;
                 //lastWrittenLightCommand_asASCII = (char) lastWrittenLightCommand_asDecimal;
 
                 //Check if we have another characteristic to write
                 if (lightCommandAdditional != null) {
-                    //Wait a bit to make sure previous write makes it to the light
-                    try {
-                        Thread.sleep(600);
-                    } catch (InterruptedException ie) {
-                        logW(TAGG+TAGG + "Exception caught trying to sleep: " + ie.getMessage());
-                    }
-
-                    //Make sure the flash command won't get saves as a last-successful-command
-                    saveWrittenCommand = false;
-
-                    writeCommandToLights(gatt, services, lightCommandAdditional);
+                    //Wait a bit (queue delays the start, no sleeping) to make sure previous write makes it to the light
+                    boolean queued = writeCommandToLights(gatt, lightCommandAdditional, 600, characteristicWriteListener);
                     lightCommandAdditional = null;  //reset so we don't keep executing
                     //lastWrittenLightCommand_asDecimal = currentLightCommand_asDecimal;      //save off our last actual command (which is right now our "current" command) -we don't care to save the additional command
+
+                    //Once the additional write completes, we'll come back through here and disconnect
+                    if (queued) {
+                        return;
+                    }
+                } else {
+                    //That was the last write of this command's sequence, so it's now what the light is doing
+                    mLastAppliedLightState.record((byte) lightCommand_asDecimal, lightCommandPayloadTable.getFingerprint(lightCommand_asDecimal));
                 }
 
             } else {
                 logW(TAGG+TAGG+"Unhandled status.");
                 //lastWrittenLightCommand_asDecimal = SIGNALLIGHT_CMD_NONE;
 
+                if (GattAttributeCache.isAttributeError(status)) {
+                    GattAttributeCache.invalidate(gatt);
+                }
+
                 // Since we failed, setup to try again
                 /* TODO: just an idea (seems unnecessary) probably would fail due to looper.prepare problem?
                 new Handler().postDelayed(new Runnable() {
@@ -852,10 +924,8 @@ public class BluetoothFlasherLightsService extends Service {
             }
 
             logD(TAGG+TAGG+"Disconnecting.");
+            mConnectionState.forceTo(ConnectionStateMachine.STATE_DISCONNECTING, "write done, status "+status);
             gatt.disconnect();
-
-            aCommandIsTryingToSend = false;
-            aConnectionHasBeenInitiated = false;
         }
     }
 
@@ -876,10 +946,10 @@ public class BluetoothFlasherLightsService extends Service {
         final String TAGG = "connectGattDevice: ";
         logV(TAGG+TAGG+"Invoked.");
 
-        //TODO: check for existing active connection first?
-        if (aConnectionHasBeenInitiated) {
+        clearStuckConnectionState();
+        if (!mConnectionState.isIdle()) {
             if (doForce) {
-                logW(TAGG+TAGG + "Connection has already been initiated; but force-flag set, so allowing connection anyway.");
+                logW(TAGG+TAGG + "Connection has already been initiated ("+mConnectionState.toString()+"); but force-flag set, so allowing connection anyway.");
             } else {
                 logW(TAGG+TAGG + "Connection has already been initiated, aborting to prevent a pile up.");
                 return;
@@ -896,7 +966,7 @@ public class BluetoothFlasherLightsService extends Service {
         }
 
         int msAvoidRapidFireConnectsUnder = 1000;
-        if (new Date().getTime() - mostRecent_getTime_lightConnection < msAvoidRapidFireConnectsUnder) {
+        if (DatetimeUtils.isWithinMS(mostRecent_elapsedMS_lightConnection, msAvoidRapidFireConnectsUnder)) {
             if (doForce) {
                 logW(TAGG+TAGG + "Connection was last made < " + msAvoidRapidFireConnectsUnder + "ms ago; but force-flag set, so allowing connection anway.");
             } else {
@@ -905,16 +975,71 @@ public class BluetoothFlasherLightsService extends Service {
             }
         }
 
+        // Respect recovery (an open circuit breaker means the stack needs a rest, even for forced commands)
+        if (!mGattRecoveryController.allowAttempt()) {
+            logW(TAGG+TAGG + "Circuit breaker is open (another "+mGattRecoveryController.getBreakerRemainingMS()+"ms), aborting.");
+            return;
+        }
+        if (!DatetimeUtils.hasDeadlinePassed(mNextConnectionAllowedAt)) {
+            if (doForce) {
+                logW(TAGG+TAGG + "Still backing off from a connection failure; but force-flag set, so allowing connection anyway.");
+            } else {
+                logW(TAGG+TAGG + "Still backing off from a connection failure (another "+DatetimeUtils.msUntil(mNextConnectionAllowedAt)+"ms), aborting.");
+                return;
+            }
+        }
+
         // Initiate a connection to our device's GATT server, passing in our callback
         // Note: You may use this global object after it's connected for various post-connection tasks.
-        aConnectionHasBeenInitiated = true;
-        aCommandIsTryingToSend = true;
+        if (!mConnectionState.transition(ConnectionStateMachine.STATE_IDLE, ConnectionStateMachine.STATE_CONNECTING, "connect")) {
+            if (doForce) {
+                mConnectionState.forceTo(ConnectionStateMachine.STATE_CONNECTING, "forced connect");
+            } else {
+                logW(TAGG+TAGG + "Another connection was initiated meanwhile ("+mConnectionState.toString()+"), aborting.");
+                return;
+            }
+        }
         //mBluetoothGatt = mBluetoothDevice.connectGatt(this, true, gattClientCallback);
         //mBluetoothGatt.connect();
         try {
             mBluetoothDevice.connectGatt(this, Constants.GATT_AUTOCONNECT, gattClientCallback).connect();
         } catch (NullPointerException npe) {
             logE(TAGG+TAGG+"Null Pointer Exception caught trying to invoke .connectGatt method on mBluetoothDevice: "+npe.getMessage());
+            mConnectionState.forceTo(ConnectionStateMachine.STATE_IDLE, "connectGatt failed");
+        }
+    }
+
+    /** If the connection state hasn't moved in longer than any step should take (e.g. a disconnect callback that never came),
+     * log how it got there and reset it, so commands don't wait forever behind it. */
+    private void clearStuckConnectionState() {
+        final String TAGG = "clearStuckConnectionState: ";
+
+        if (mConnectionState.isStuck(CONNECTION_STUCK_MS)) {
+            logW(TAGG+TAGG + "Connection state stuck in "+mConnectionState.toString()+" for "+mConnectionState.getTimeInStateMS()+"ms. Resetting it.");
+            mConnectionState.dumpTransitionLog("stuck");
+            mConnectionState.forceTo(ConnectionStateMachine.STATE_IDLE, "stuck");
+        }
+    }
+
+    /** Recover from a connection failure (133, 257) as hard as the recovery controller says, and back off further connections.
+     * The heaviest step here (in place of an adapter reset) is re-initializing this class's core bluetooth stuff. */
+    private void recoverFromConnectionFailure(BluetoothGatt gatt, int status) {
+        final String TAGG = "recoverFromConnectionFailure: ";
+
+        mConnectionState.dumpTransitionLog("failure, status "+status);
+
+        final int step = mGattRecoveryController.onFailure(status);
+        mNextConnectionAllowedAt = DatetimeUtils.deadlineIn(mGattRecoveryController.getNextAttemptDelayMS());
+
+        if (step >= GattRecoveryController.STEP_REFRESH_CACHE) {
+            logI(TAGG+TAGG+"Refreshing GATT cache.");
+            GattAttributeCache.invalidate(gatt);
+        }
+
+        if (step == GattRecoveryController.STEP_RESET_ADAPTER) {
+            logI(TAGG+TAGG+"Trying to cleanup and re-initialize core class bluetooth stuff...");
+            cleanup();
+            initialize();
         }
     }
 
@@ -928,7 +1053,7 @@ public class BluetoothFlasherLightsService extends Service {
             mBluetoothGatt.close();
         }
 
-        aConnectionHasBeenInitiated = false;
+        mConnectionState.forceTo(ConnectionStateMachine.STATE_IDLE, "disconnected by us");
     }
 
     /** Read current light mode characteristic from the light controller's GATT server.
@@ -936,12 +1061,11 @@ public class BluetoothFlasherLightsService extends Service {
      * You may use this to directly verify what the light controller is doing with your command, for instance.
      * NOTE: Remember that the value is returned via callback (onCharacteristicRead).
      * NOTE: Created 2018.11.28, not really working yet! */
-    private Boolean readCharacteristicValue_lightCommand(BluetoothGatt gatt, List<BluetoothGattService> gattServices) {
+    private Boolean readCharacteristicValue_lightCommand(BluetoothGatt gatt) {
         final String TAGG = "readCharacteristicValue_lightCommand: ";
         logV(TAGG+TAGG+"Invoked.");
 
         boolean ret = false;
-        BluetoothGattService service = null;
         BluetoothGattCharacteristic characteristic;
 
         //TODO: check for current connection active first?
@@ -953,35 +1077,16 @@ public class BluetoothFlasherLightsService extends Service {
                     .getCharacteristic(UUID.fromString(lightController.getUuidStr_characteristicForWritingCommands()));
                     */
 
-            //service = gatt.getService(UUID.fromString(lightController.getUuidStr_mainService()));
-            if (gattServices != null) {
-                for (BluetoothGattService iService : gattServices) {
-                    if (iService.getUuid() != null
-                            && iService.getUuid().toString().equals(lightController.getUuidStr_mainService())) {
-                        service = iService;
-                        break;
-                    }
-                }
-            }
-
-            if (service == null) {
-                logD(TAGG+TAGG+"Could not get service from any provided list of gattServices, getting from gatt object...");
-                service = gatt.getService(UUID.fromString(lightController.getUuidStr_mainService()));
-            }
-
-            if (service == null) {
-                logW(TAGG+TAGG+"Failed to get service. Throwing exception.");
-                throw new Exception();
-            } else {
-                characteristic = service.getCharacteristic(UUID.fromString(lightController.getUuidStr_characteristicForWritingCommands()));
-            }
+            characteristic = resolveCommandCharacteristic(gatt);
 
             if (characteristic == null) {
-                logW(TAGG+TAGG+"Failed to get characteristic from provided gatt and its service. Throwing exception.");
+                logW(TAGG+TAGG+"Failed to get characteristic for provided gatt. Throwing exception.");
                 throw new Exception();
             }
 
-            ret = gatt.readCharacteristic(characteristic);
+            mGattOperationQueue.enqueue(GattOperationQueue.Operation.readCharacteristic(gatt, characteristic,
+                    mGattClientCallback == null ? null : mGattClientCallback.characteristicReadListener));
+            ret = true;
         } catch (Exception e) {
             logE(TAGG+TAGG+"Exception caught with getting characteristic: "+e.getMessage());
         }
@@ -989,14 +1094,23 @@ public class BluetoothFlasherLightsService extends Service {
         return ret;
     }
 
-    /** Write a characteristic to GATT with the provided data/command.
-     * Returns whether any write command sent (refer to onCharacteristicWrite callback for better result). */
-    private boolean writeCommandToLights(BluetoothGatt gatt, List<BluetoothGattService> gattServices, byte[] command) {
+    /** Get the light command characteristic on the provided (discovered) gatt (found by cached instance ID once the controller is known). */
+    private BluetoothGattCharacteristic resolveCommandCharacteristic(BluetoothGatt gatt) {
+        GattAttributeCache.Attributes attributes = GattAttributeCache.resolve(gatt,
+                UUID.fromString(lightController.getUuidStr_mainService()),
+                UUID.fromString(lightController.getUuidStr_characteristicForWritingCommands()),
+                UUID.fromString(lightController.getUuidStr_characteristicForNotify()),
+                UUID.fromString(lightController.getUuidStr_characteristicForOverhead()));
+        return attributes == null ? null : attributes.char1001;
+    }
+
+    /** Write a characteristic to GATT with the provided data/command (by way of the operation queue).
+     * Returns whether any write command queued (refer to the listener for better result). */
+    private boolean writeCommandToLights(BluetoothGatt gatt, byte[] command, long delayBeforeStartMS, GattOperationQueue.OnCompleteListener listener) {
         final String TAGG = "writeCommandToLights: ";
         logV(TAGG+TAGG+"Invoked.");
 
         boolean ret = false;
-        BluetoothGattService service = null;
         BluetoothGattCharacteristic characteristic;
 
         //TODO: check for current connection active first?
@@ -1008,37 +1122,17 @@ public class BluetoothFlasherLightsService extends Service {
                     .getCharacteristic(UUID.fromString(lightController.getUuidStr_characteristicForWritingCommands()));
                     */
 
-            //service = gatt.getService(UUID.fromString(lightController.getUuidStr_mainService()));
-            if (gattServices != null) {
-                for (BluetoothGattService iService : gattServices) {
-                    if (iService.getUuid() != null
-                            && iService.getUuid().toString().equals(lightController.getUuidStr_mainService())) {
-                        service = iService;
-                        break;
-                    }
-                }
-            }
-
-            if (service == null) {
-                logD(TAGG+TAGG+"Could not get service from any provided list of gattServices, getting from gatt object...");
-                service = gatt.getService(UUID.fromString(lightController.getUuidStr_mainService()));
-            }
-
-            if (service == null) {
-                logW(TAGG+TAGG+"Failed to get service. Throwing exception.");
-                throw new Exception();
-            } else {
-                characteristic = service.getCharacteristic(UUID.fromString(lightController.getUuidStr_characteristicForWritingCommands()));
-            }
+            characteristic = resolveCommandCharacteristic(gatt);
 
             if (characteristic == null) {
-                logW(TAGG+TAGG+"Failed to get characteristic from provided gatt and its service. Throwing exception.");
+                logW(TAGG+TAGG+"Failed to get characteristic for provided gatt. Throwing exception.");
                 throw new Exception();
             }
 
-            characteristic.setValue(command);
-            logV(TAGG+TAGG+"Writing characteristic value \""+ConversionUtils.byteArrayToHexString(characteristic.getValue())+"\"...");
-            ret = gatt.writeCharacteristic(characteristic);
+            logV(TAGG+TAGG+"Queueing characteristic value \""+ConversionUtils.byteArrayToHexString(command)+"\"...");
+            mGattOperationQueue.enqueue(GattOperationQueue.Operation.writeCharacteristic(gatt, characteristic, command, listener)
+                    .setDelayBeforeStartMS(delayBeforeStartMS));
+            ret = true;
         } catch (Exception e) {
             logE(TAGG+TAGG+"Exception caught with creating/setting/writing characteristic: "+e.getMessage());
         }
@@ -1048,109 +1142,17 @@ public class BluetoothFlasherLightsService extends Service {
 
     /** Encode a light command...
      * Takes a banner light command (decimal version) and generates the gatt byte array.
-     * NOTE: Does not account for additional commands (like flashing). */
+     * NOTE: Does not account for additional commands (like flashing).
+     * NOTE: Comes straight out of the prebuilt payload table, so the returned array is shared (don't modify it!). */
     private byte[] encodeLightCommandBytesFromBannerLightCommand(int dbb_light_signal_asInt) {
         final String TAGG = "encodeLightCommandBytesFromBannerLightCommand(\""+dbb_light_signal_asInt+"\") : ";
-        logD(TAGG+TAGG+"Invoked.");
-
-        byte[] lightCommand;
 
         try {
-            // Translate the signal-light command from message into a light controller command
-            if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_OFF) {
-                lightCommand = lightController.constructLightCommandByteSequence_turnOff();
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_RED_BRI) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_red(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_RED_MED) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMedBrightness(lightController.constructDataBytes_color_red());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_RED_DIM) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMinBrightness(lightController.constructDataBytes_color_red());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_GREEN_BRI) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_green(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_GREEN_MED) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMedBrightness(lightController.constructDataBytes_color_green());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_GREEN_DIM) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMinBrightness(lightController.constructDataBytes_color_green());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_BLUE_BRI) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_blue(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_BLUE_MED) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMedBrightness(lightController.constructDataBytes_color_blue());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_BLUE_DIM) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMinBrightness(lightController.constructDataBytes_color_blue());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_ORANGE_BRI) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_orange(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_ORANGE_MED) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMedBrightness(lightController.constructDataBytes_color_orange());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_ORANGE_DIM) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMinBrightness(lightController.constructDataBytes_color_orange());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PINK_BRI) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_pink(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PINK_MED) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMedBrightness(lightController.constructDataBytes_color_pink());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PINK_DIM) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMinBrightness(lightController.constructDataBytes_color_pink());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PURPLE_BRI) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_purple(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PURPLE_MED) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMedBrightness(lightController.constructDataBytes_color_purple());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PURPLE_DIM) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMinBrightness(lightController.constructDataBytes_color_purple());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_YELLOW_BRI) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_yellow(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_YELLOW_MED) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMedBrightness(lightController.constructDataBytes_color_yellow());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_YELLOW_DIM) {
-                lightCommand = lightController.constructLightCommandByteSequence_colorMinBrightness(lightController.constructDataBytes_color_yellow());
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITECOOL_BRI
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEPURE_BRI
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEWARM_BRI) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_whiteMaxBrightnessSteady();
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITECOOL_MED
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEPURE_MED
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEWARM_MED) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_whiteMedBrightness();
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITECOOL_DIM
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEPURE_DIM
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEWARM_DIM) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_whiteMinBrightness();
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_RED
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_RED) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_red(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_GREEN
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_GREEN) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_green(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_BLUE
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_BLUE) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_blue(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_ORANGE
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_ORANGE) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_orange(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_PINK
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_PINK) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_pink(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_PURPLE
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_PURPLE) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_purple(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_YELLOW
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_YELLOW) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_colorMaxBrightnessSteady(lightController.constructDataBytes_color_yellow(lightController.COLOR_BRIGHTNESS_MAX));
-            } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITECOOL
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITECOOL
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITEPURE
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITEPURE
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITEWARM
-                    || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITEWARM) {   //TODO: differentiate
-                lightCommand = lightController.constructLightCommandByteSequence_whiteMaxBrightnessSteady();
-            } else {
-                //default
-                lightCommand = lightController.constructLightCommandByteSequence_whiteRgbMinBrightness();
-            }
+            return lightCommandPayloadTable.get(dbb_light_signal_asInt).get(0);
         } catch (Exception e) {
             logE(TAGG+TAGG+"Exception caught: "+e.getMessage());
-            lightCommand = null;
+            return null;
         }
-
-        return lightCommand;
     }
 
     /** Initiate a command to the lights.
@@ -1195,35 +1197,10 @@ public class BluetoothFlasherLightsService extends Service {
             return false;
         }
 
-        // Translate the signal-light command from message into any additional light controller command that may be needed
-        if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_RED
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_RED) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
-        } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_GREEN
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_GREEN) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
-        } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_BLUE
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_BLUE) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
-        } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_ORANGE
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_ORANGE) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
-        } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_PINK
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_PINK) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
-        } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_PURPLE
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_PURPLE) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
-        } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_YELLOW
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_YELLOW) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
-        } else if (dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITECOOL
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITECOOL
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITEPURE
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITEPURE
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITEWARM
-                || dbb_light_signal_asInt == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITEWARM) {   //TODO: differentiate
-            lightCommandAdditional = lightController.constructLightCommandByteSequence_flashingOn();
+        // Any additional light controller command that may be needed (e.g. flash on) follows the base command in the payload table
+        List<byte[]> lightCommandPayloads = lightCommandPayloadTable.get(dbb_light_signal_asInt);
+        if (lightCommandPayloads.size() > 1) {
+            lightCommandAdditional = lightCommandPayloads.get(1);
         }
 
         // Set flags depending on whether a signal-light message has been dispatched
@@ -1237,11 +1214,17 @@ public class BluetoothFlasherLightsService extends Service {
         currentLightCommand_asByteArray = lightCommand;
 
         // Check for an existing call so we don't do multiple times at once
-        if (aCommandIsTryingToSend && !doForceSend) {
-            //abort
-            logW(TAGG+TAGG + "A command is already trying to send, and we're not supposed to force it, aborting.");
-            return false;
-        } else if (thisCommandWouldBeRepeatOfLastSuccessfulCommand(dbb_light_signal) && !doForceSend) {
+        // (rather than dropping this one, it waits to go as soon as the current send finishes... newest one wins)
+        clearStuckConnectionState();
+        if (!mConnectionState.isIdle() && !doForceSend) {
+            String supersededSignal = mPendingLightSignalMailbox.post(dbb_light_signal);
+            if (supersededSignal != null) {
+                logI(TAGG+TAGG + "A command is already trying to send. Queued this one (replacing waiting \""+supersededSignal+"\") to send once it finishes.");
+            } else {
+                logI(TAGG+TAGG + "A command is already trying to send. Queued this one to send once it finishes.");
+            }
+            return true;
+        } else if (thisCommandWouldBeRepeatOfLastSuccessfulCommand(dbb_light_signal_asInt) && !doForceSend) {
             logI(TAGG+TAGG+"This command seems unnecessary, as a repeat of the last successful command. Not sending.");
             return false;
         } else {
@@ -1259,46 +1242,40 @@ public class BluetoothFlasherLightsService extends Service {
         }
     }
 
+    /** Send the newest light signal that came in while the previous one was trying to send, if any.
+     * Delayed a bit, so connectGattDevice's rapid-fire protection doesn't just throw it away. */
+    private void sendPendingLightSignal() {
+        final String TAGG = "sendPendingLightSignal: ";
 
-    private boolean thisCommandWouldBeRepeatOfLastSuccessfulCommand(String dbb_light_signal) {
-        final String TAGG = "thisCommandWouldBeRepeatOfLastSuccessfulCommand: ";
-        boolean ret = false;
-
-        if (dbb_light_signal == null) {
-            logW(TAGG+TAGG + "Provided light signal is null. That should not be.");
-        } else if (aCommandIsTryingToSend) {
-            logW(TAGG+TAGG+"A command is currently trying to send. Comparison may be unreliable.");
-        } else if (!lastWriteWasSuccessful) {
-            logW(TAGG+TAGG+"Last command was not successful. Comparison may be unreliable.");
-        } else {
-            /*
-            String lastSuccessfulCommand = Character.toString(lastWrittenLightCommand_asASCII);
-            logD(TAGG+TAGG+"Last successful command: \""+lastSuccessfulCommand+"\".");
+        if (mPendingLightSignalMailbox.isEmpty()) {
+            return;
+        }
 
-            if (dbb_light_signal.equals(lastSuccessfulCommand)) {
-                //yes, it would be a repeat
-                ret = true;
+        mPendingLightSignalHandler.removeCallbacksAndMessages(null);
+        mPendingLightSignalHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                String pendingSignal = mPendingLightSignalMailbox.take();
+                if (pendingSignal != null) {
+                    logD(TAGG+TAGG+"Sending waiting light signal \""+pendingSignal+"\".");
+                    initiateLightCommand(pendingSignal);
+                }
             }
-            */
-
-            // Convert the string-version light signal character to an actual char type and then a byte array of the actual light-controller command
-            char tempChar = dbb_light_signal.toCharArray()[0];
-            byte[] cmdBytes = encodeLightCommandBytesFromBannerLightCommand((int) tempChar);
+        }, 1000);
+    }
 
-            // Convert the raw commands into strings we can use to compare easily
-            String thisCmdString = ConversionUtils.byteArrayToHexString(cmdBytes);
-            String lastCmdString = ConversionUtils.byteArrayToHexString(lastWrittenLightCommand_asByteArray);
-            logV(TAGG+TAGG+"This command: \""+thisCmdString+"\".");
-            logV(TAGG+TAGG+"Last successful command: \""+lastCmdString+"\".");
 
-            if (thisCmdString.equalsIgnoreCase(lastCmdString)) {
-                //yes, it would be a repeat
-                ret = true;
-            }
+    /** Whether the specified light command is exactly what the light was last successfully set to.
+     * Just a couple of primitive comparisons (command code and precomputed payload fingerprint), since this happens for every command. */
+    private boolean thisCommandWouldBeRepeatOfLastSuccessfulCommand(int dbb_light_signal_asInt) {
+        if (!mConnectionState.isIdle()) {
+            return false;       //a command is currently trying to send, so what's applied is about to change
+        }
+        if (dbb_light_signal_asInt < Byte.MIN_VALUE || dbb_light_signal_asInt > Byte.MAX_VALUE) {
+            return false;
         }
 
-        logV(TAGG+TAGG+"Returning "+ String.valueOf(ret));
-        return ret;
+        return mLastAppliedLightState.isRepeat((byte) dbb_light_signal_asInt, lightCommandPayloadTable.getFingerprint(dbb_light_signal_asInt));
     }
 
     /***********************************************************************************************
@@ -1374,11 +1351,7 @@ public class BluetoothFlasherLightsService extends Service {
                     return;
                 }
 
-                // Check for existing command attempt to avoid stomping all over each other
-                if (aCommandIsTryingToSend && !lightCmdDoForce) {
-                    logW(TAGG+TAGG+"A command is already trying to send to the lights and hasn't finished, and not forced to send. Aborting.");
-                    return;
-                }
+                // Note: if a command attempt is already underway, initiateLightCommand holds this one until it finishes (newest wins)
 
                 // Take appropriate action, depending on what the purpose is
                 switch (lightCmd) {
@@ -1436,12 +1409,14 @@ public class BluetoothFlasherLightsService extends Service {
      *  2018.11.26  Chris Rider     Created (initially for just default state when no messages).
      *  2018.11.27  Chris Rider     Modified to handle all states, even for messages.
      *  2019.01.14  Chris Rider     Modified to check for running main app instead of active messages, and command default light state if it's invalid somehow.
+     *  2026.10.16  agent           Now a periodic task on MainApplication's shared MonitorScheduler instead of its own sleep-loop thread (name kept).
      */
-    public class LightStateManagerThread extends Thread {
-        private String TAGG = LightStateManagerThread.class.getSimpleName();
-        private long pid;
-        private int initialWaitPeriodMS;
-        private int workCycleRestPeriodMS;
+    public class LightStateManagerThread implements Runnable {
+        private String TAGG = LightStateManagerThread.class.getSimpleName()+": ";
+        private long initialWaitPeriodMS;
+        private long workCycleRestPeriodMS;
+        private long cycleNumber;
+        private MonitorScheduler.Task task;         //our task on the shared MonitorScheduler (null until started)
         private String defaultSignalLightValue;
         private int periodicSoftForceFactor;        //soft-force is doing a gatt read to verify the actual mode
         private int periodicHardForceFactor;        //hard-force is doing a gatt write to make sure it gets the mode
@@ -1449,7 +1424,8 @@ public class BluetoothFlasherLightsService extends Service {
 
         LightStateManagerThread(Context appContext) {
             initialWaitPeriodMS = 10000;
-            workCycleRestPeriodMS = 2000;
+            workCycleRestPeriodMS = Constants.Configuration.Monitor.LEGACY_LIGHT_STATE_PERIOD_MS;
+            cycleNumber = 0;
             //defaultSignalLightValue = appContext.getResources().getString(R.string.SIGNALLIGHT_CMD_NONE);
             defaultSignalLightValue = String.valueOf((char) MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_NONE);
             periodicSoftForceFactor = 10;           //every Nth work cycle to read from the controller the actual mode and maybe do a write to correct it
@@ -1457,107 +1433,93 @@ public class BluetoothFlasherLightsService extends Service {
             forceDoForceThisCycle = false;
         }
 
-        /** Main runnable routine (executes once whenever the initialized thread is commanded to start running) */
+        /** Start our work cycles, as a periodic task on the specified scheduler (first one after initialWaitPeriodMS, to give time for the
+         * things we're monitoring to potentially come online). */
+        void start(MonitorScheduler scheduler) {
+            if (task == null) {
+                task = scheduler.schedulePeriodic("Legacy"+LightStateManagerThread.class.getSimpleName(), initialWaitPeriodMS, workCycleRestPeriodMS, this);
+            }
+        }
+
+        /** Stop our work cycles (one that's underway finishes). */
+        void stop() {
+            if (task != null) {
+                task.cancel();
+                task = null;
+            }
+        }
+
+        /** One work cycle (runs on the MonitorScheduler's thread, so it must never block) */
         @Override
         public void run() {
             final String TAGG = "run: ";
-            long cycleNumber = 0;
-            logD(TAGG+this.TAGG + TAGG + "Invoked.");
-
-            pid = Thread.currentThread().getId();
-            this.TAGG = this.TAGG + " #"+pid+": ";
-            logI(TAGG+this.TAGG + TAGG + "Thread now running.");
-
-            // As long as our thread is supposed to be running, start doing work-cycles until it's been flagged to interrupt (rest period happens at the end of the cycle)...
-            while (!Thread.currentThread().isInterrupted()) {
 
-                // Take a rest before beginning our first iteration (to give time for the things we're monitoring to potentially come online)...
-                if (cycleNumber == 0) {
-                    try {
-                        Thread.sleep(initialWaitPeriodMS);
-                    } catch (InterruptedException e) {
-                        logE(TAGG+this.TAGG + TAGG + "Exception caught trying to sleep for first-run (" + workCycleRestPeriodMS + "ms). Broadcasting this error status and stopping.\n" + e.getMessage());
-                        Thread.currentThread().interrupt();
-                    }
-                }
+           /* START MAIN THREAD-WORK
+            * Note: you don't need to exit or break for normal work; instead, only continue (so cleanup and rest can occur at the end of the iteration/cycle) */
 
-               /* START MAIN THREAD-WORK
-                * Note: you don't need to exit or break for normal work; instead, only continue (so cleanup and rest can occur at the end of the iteration/cycle) */
+            // Indicate that this thread is beginning work tasks (may be useful for outside processes to know this)
+            cycleNumber++;
+            logV(TAGG+this.TAGG + TAGG + "=======================================(start)");
+            logV(TAGG+this.TAGG + TAGG + "BEGINNING WORK CYCLE #" + cycleNumber + "...");
 
-                // Indicate that this thread is beginning work tasks (may be useful for outside processes to know this)
-                cycleNumber++;
-                logV(TAGG+this.TAGG + TAGG + "=======================================(start)");
-                logV(TAGG+this.TAGG + TAGG + "BEGINNING WORK CYCLE #" + cycleNumber + "...");
+            // If StartupActivity is running, then don't stomp all over what the user might be doing
+            if (StartupActivity.activityActive) {
+                //don't do anything
+            } else {
 
-                // If StartupActivity is running, then don't stomp all over what the user might be doing
-                if (StartupActivity.activityActive) {
-                    //don't do anything
-                } else {
+                // Figure out whether we force-send this cycle or not
+            /*
+            if (cycleNumber % periodicHardForceFactor == 0) {
+                logD(TAGG+this.TAGG + TAGG + "Forcing send this time!");
+                forceDoForceThisCycle = LightCommandBroadcastReceiver.CMD_LIGHTS_FORCE_SEND_YES;
+            } else {
+                forceDoForceThisCycle = LightCommandBroadcastReceiver.CMD_LIGHTS_FORCE_SEND_NO;
+            }
+            */
+            /*
+            if (cycleNumber % periodicSoftForceFactor == 0) {
+                logD(TAGG+this.TAGG + TAGG + "Asynchronously reading actual light controller state this time...");
+                readCharacteristicValue_lightCommand(mBluetoothGatt);         //refer to onReadCharacteristic for saving the actual value
+            }
+            */
 
-                    // Figure out whether we force-send this cycle or not
-                /*
-                if (cycleNumber % periodicHardForceFactor == 0) {
-                    logD(TAGG+this.TAGG + TAGG + "Forcing send this time!");
-                    forceDoForceThisCycle = LightCommandBroadcastReceiver.CMD_LIGHTS_FORCE_SEND_YES;
+                // If no messages, request default light state
+                //if (SmmonService.activeBannerMessages != null && SmmonService.activeBannerMessages.messages != null && SmmonService.activeBannerMessages.messages.size() == 0) {
+                //    logD(TAGG+this.TAGG + TAGG + "No active banner messages, initiating default light mode...");
+                //    initiateLightCommand(defaultSignalLightValue, forceDoForceThisCycle);
+                //} else if (SmmonService.activeBannerMessages != null && SmmonService.activeBannerMessages.messages != null && SmmonService.activeBannerMessages.messages.size() > 0) {
+                //    // Figure out if currently-delivering message needs a light mode
+                //    /*
+                //    if (ScrollMsgWithDetails.isInFront && ScrollMsgWithDetails.msgIsScrolling && ScrollMsgWithDetails.currentlyDisplayingMessageUUID != null) {
+                //        //show this message's light mode
+                //        BannerMessage bmo = SmmonService.activeBannerMessages.getMsgAsBannerMessageObjectForUUID(ScrollMsgWithDetails.currentlyDisplayingMessageUUID);
+                //        if (bmo != null) {
+                //            logD(TAGG+this.TAGG + TAGG + "Initiating light mode ("+bmo.dbb_light_signal+") for currently delivering message ("+ScrollMsgWithDetails.currentlyDisplayingMessageUUID.toString()+")...");
+                //            initiateLightCommand(bmo.dbb_light_signal, forceDoForceThisCycle);
+                //        }
+                //    } else {
+                //        logI(TAGG+this.TAGG + TAGG+"Unhandled delivering-message light mode. Nothing to do.");
+                //    }
+                //    */
+                //    logD(TAGG+this.TAGG + TAGG + "Active banner messages, allowing delivery activity to control light mode...");
+                // If no main app running, then do default light state
+                final int mainAppVerdict = MainAppLiveness.getVerdict();
+                if (mainAppVerdict == MainAppLiveness.VERDICT_ALIVE) {
+                    logD(TAGG + this.TAGG + TAGG + "Main app is running ok, leaving lights alone.");
+                } else if (mainAppVerdict == MainAppLiveness.VERDICT_STALE) {
+                    logW(TAGG + this.TAGG + TAGG + "Main app heartbeat is stale ("+MainAppLiveness.getMsSinceLastHeartbeat()+"ms ago), leaving lights alone for now.");
+                } else if (mainApplication.numOfDeliveringMsgsInMainApp == 0) {
+                    logD(TAGG + this.TAGG + TAGG + "There are NO messages delivering. Initiating default light mode...");
+                    initiateLightCommand(defaultSignalLightValue, forceDoForceThisCycle);
+                } else if (mainApplication.numOfDeliveringMsgsInMainApp > 0) {
+                    logD(TAGG + this.TAGG + TAGG + "There are "+Integer.toString(mainApplication.numOfDeliveringMsgsInMainApp)+" messages delivering, leaving lights alone.");
                 } else {
-                    forceDoForceThisCycle = LightCommandBroadcastReceiver.CMD_LIGHTS_FORCE_SEND_NO;
-                }
-                */
-                /*
-                if (cycleNumber % periodicSoftForceFactor == 0) {
-                    logD(TAGG+this.TAGG + TAGG + "Asynchronously reading actual light controller state this time...");
-                    readCharacteristicValue_lightCommand(mBluetoothGatt, null);         //refer to onReadCharacteristic for saving the actual value
-                }
-                */
-
-                    // If no messages, request default light state
-                    //if (SmmonService.activeBannerMessages != null && SmmonService.activeBannerMessages.messages != null && SmmonService.activeBannerMessages.messages.size() == 0) {
-                    //    logD(TAGG+this.TAGG + TAGG + "No active banner messages, initiating default light mode...");
-                    //    initiateLightCommand(defaultSignalLightValue, forceDoForceThisCycle);
-                    //} else if (SmmonService.activeBannerMessages != null && SmmonService.activeBannerMessages.messages != null && SmmonService.activeBannerMessages.messages.size() > 0) {
-                    //    // Figure out if currently-delivering message needs a light mode
-                    //    /*
-                    //    if (ScrollMsgWithDetails.isInFront && ScrollMsgWithDetails.msgIsScrolling && ScrollMsgWithDetails.currentlyDisplayingMessageUUID != null) {
-                    //        //show this message's light mode
-                    //        BannerMessage bmo = SmmonService.activeBannerMessages.getMsgAsBannerMessageObjectForUUID(ScrollMsgWithDetails.currentlyDisplayingMessageUUID);
-                    //        if (bmo != null) {
-                    //            logD(TAGG+this.TAGG + TAGG + "Initiating light mode ("+bmo.dbb_light_signal+") for currently delivering message ("+ScrollMsgWithDetails.currentlyDisplayingMessageUUID.toString()+")...");
-                    //            initiateLightCommand(bmo.dbb_light_signal, forceDoForceThisCycle);
-                    //        }
-                    //    } else {
-                    //        logI(TAGG+this.TAGG + TAGG+"Unhandled delivering-message light mode. Nothing to do.");
-                    //    }
-                    //    */
-                    //    logD(TAGG+this.TAGG + TAGG + "Active banner messages, allowing delivery activity to control light mode...");
-                    // If no main app running, then do default light state
-                    if (SettingsUtils.isMainAppRunningOK()) {
-                        logD(TAGG + this.TAGG + TAGG + "Main app is running ok, leaving lights alone.");
-                    } else if (mainApplication.numOfDeliveringMsgsInMainApp == 0) {
-                        logD(TAGG + this.TAGG + TAGG + "There are NO messages delivering. Initiating default light mode...");
-                        initiateLightCommand(defaultSignalLightValue, forceDoForceThisCycle);
-                    } else if (mainApplication.numOfDeliveringMsgsInMainApp > 0) {
-                        logD(TAGG + this.TAGG + TAGG + "There are "+Integer.toString(mainApplication.numOfDeliveringMsgsInMainApp)+" messages delivering, leaving lights alone.");
-                    } else {
-                        logW(TAGG+this.TAGG + TAGG + "Problem accessing active banner messages data. Initiating default light mode...");
-                        initiateLightCommand(defaultSignalLightValue, forceDoForceThisCycle);
-                    }
-                }
-
-               /* END MAIN THREAD-WORK */
-
-                // Take a rest before next iteration (to make sure this thread doesn't run full tilt)...
-                try {
-                    Thread.sleep(workCycleRestPeriodMS);
-                } catch (InterruptedException e) {
-                    logE(TAGG+this.TAGG + TAGG + "Exception caught trying to sleep for interval (" + workCycleRestPeriodMS + "ms). Thread stopping.\n" + e.getMessage());
-                    Thread.currentThread().interrupt();
+                    logW(TAGG+this.TAGG + TAGG + "Problem accessing active banner messages data. Initiating default light mode...");
+                    initiateLightCommand(defaultSignalLightValue, forceDoForceThisCycle);
                 }
+            }
 
-                // Thread has been flagged to interrupt, so let's end it and clean up...
-                if (Thread.currentThread().isInterrupted()) {
-                    logD(TAGG+this.TAGG + TAGG + "Stopping.");    //just log it, as the loop's conditional will break out and actually halt the thread
-                }
-            }//end while
+           /* END MAIN THREAD-WORK */
         }//end run()
     }
 
@@ -1580,45 +1542,6 @@ public class BluetoothFlasherLightsService extends Service {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
     }
 }
@@ -0,0 +1,162 @@
+package com.messagenetsystems.evolutionflasherlights.services;
+
+/* LightCommandChannelBinder
+ * Server side of FlasherLights.LightCommandChannel: a bound-service IPC endpoint for light commands, returned by MainService.onBind.
+ * This sits next to CommandReceiver (broadcasts still work), but skips system broadcast dispatch, and the main thread altogether.
+ *
+ * Calls arrive on one of our binder threads, are unpacked straight from the Parcel (code, duration, UUID as two longs; no extras
+ * or UUID strings to parse), and handed to MainApplication.submitLightCommand, which only queues the command to the light
+ * controller's session. So the caller gets its result (queued / already applied / rejected) synchronously, and quickly.
+ *
+ * Usage:
+ *  lightCommandChannelBinder = new LightCommandChannelBinder(getApplicationContext(), logMethod);
+ *  ...in onBind, for FlasherLights.Intents.Actions.BIND_LIGHT_COMMAND_CHANNEL...
+ *  return lightCommandChannelBinder;
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (bound IPC alternative to broadcasting light commands).
+ *  2026.10.16      agent           Per-call debug message is only built when debug logging is on.
+ */
+
+import android.content.Context;
+import android.os.Binder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.MainApplication;
+import com.messagenetsystems.evolutionflasherlights.models.FlasherLights;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+import java.util.UUID;
+
+
+public class LightCommandChannelBinder extends Binder {
+    private final static String TAG = LightCommandChannelBinder.class.getSimpleName();
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+    // Local stuff...
+    private volatile MainApplication mainApplication;
+
+    // Statistics (binder threads run concurrently, so these are approximate)...
+    private volatile long requestCount = 0;
+    private volatile long acceptedCount = 0;
+
+
+    /** Constructor */
+    public LightCommandChannelBinder(Context context, int logMethod) {
+        logV("Instantiating...");
+
+        this.logMethod = logMethod;
+
+        try {
+            this.mainApplication = ((MainApplication) context.getApplicationContext());
+        } catch (Exception e) {
+            Log.e(TAG, "Exception caught instantiating "+TAG+": "+e.getMessage());
+        }
+    }
+
+    public void cleanup() {
+        final String TAGG = "cleanup: ";
+        logD(TAGG+"Cleaning up ("+requestCount+" requests, "+acceptedCount+" accepted).");
+
+        this.mainApplication = null;
+    }
+
+
+    /*============================================================================================*/
+    /* Binder Methods */
+
+    /** Handle a call from a client (on one of our binder threads). */
+    @Override
+    protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        if (code != FlasherLights.LightCommandChannel.TRANSACTION_SUBMIT_LIGHT_COMMAND) {
+            return super.onTransact(code, data, reply, flags);
+        }
+
+        data.enforceInterface(FlasherLights.LightCommandChannel.DESCRIPTOR);
+        final int result = submitLightCommand(data);
+
+        if (reply != null) {
+            reply.writeNoException();
+            reply.writeInt(result);
+        }
+        return true;
+    }
+
+
+    /*============================================================================================*/
+    /* Utility Methods */
+
+    /** Unpack a submit request, and hand it to MainApplication.
+     * @return One of the FlasherLights.LightCommandChannel.RESULT_* values
+     */
+    private int submitLightCommand(Parcel data) {
+        final String TAGG = "submitLightCommand: ";
+        requestCount++;
+
+        final int version = data.readInt();
+        if (version != FlasherLights.LightCommandChannel.VERSION) {
+            logW(TAGG+"Unsupported request version ("+version+") from uid "+getCallingUid()+", rejecting.");
+            return FlasherLights.LightCommandChannel.RESULT_INVALID;
+        }
+
+        final byte command = data.readByte();
+        long durationS = data.readLong();
+        final long uuidMSB = data.readLong();
+        final long uuidLSB = data.readLong();
+
+        // Normalize duration - should only be positive values
+        if (durationS < 0) durationS = 0;
+
+        // Normalize UUID (both halves zero means none was given)
+        final UUID uuid = (uuidMSB == 0 && uuidLSB == 0) ? null : new UUID(uuidMSB, uuidLSB);
+
+        final MainApplication mainApplication = this.mainApplication;
+        if (mainApplication == null) {
+            logW(TAGG+"Channel has been cleaned up, rejecting command "+Byte.toString(command)+".");
+            return FlasherLights.LightCommandChannel.RESULT_REJECTED;
+        }
+
+        final int result = mainApplication.submitLightCommand(command, durationS, uuid, false);
+        if (FlasherLights.LightCommandChannel.isAccepted(result)) {
+            acceptedCount++;
+        }
+        if (LogUtils.isLoggable(LogUtils.SUBSYSTEM_RECEIVERS, LOG_SEVERITY_D)) {         //don't build this on every call unless debug is on
+            logD(TAGG+"Command "+Byte.toString(command)+" ("+durationS+"s, msg "+String.valueOf(uuid)+") from uid "+getCallingUid()
+                    +": "+FlasherLights.LightCommandChannel.resultToString(result));
+        }
+        return result;
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_RECEIVERS, logMethod, TAG, logSeverity, tagg);
+    }
+}
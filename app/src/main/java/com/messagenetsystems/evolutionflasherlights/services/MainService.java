@@ -12,6 +12,11 @@ package com.messagenetsystems.evolutionflasherlights.services;
  *  2020.06.28      Chris Rider     Ability to monitor and restart LightStateManager thread if needed.
  *  2020.07.01      Chris Rider     Added flag for when service is started and probably ready (initially just used by StartupActivity for status text on screen).
  *  2020.07.04      Chris Rider     Added HealthMonitorThread.
+ *  2026.10.16      agent           Added LogControlReceiver, for changing logging levels/method/sampling at runtime.
+ *  2026.10.16      agent           LightStateManager and HealthMonitor now run as tasks on MainApplication's shared MonitorScheduler (which
+ *                                  supervises them), so MonitorChildProcesses and its isAlive/restart polling are gone.
+ *  2026.10.16      agent           onBind now returns the LightCommandChannelBinder (bound IPC for light commands, alongside CommandReceiver).
+ *  2026.10.16      agent           LogControlReceiver only accepts broadcasts from senders holding the LOG_CONTROL permission.
  */
 
 import android.app.Service;
@@ -22,14 +27,15 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.models.FlasherLights;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
 import com.messagenetsystems.evolutionflasherlights.receivers.CommandReceiver;
+import com.messagenetsystems.evolutionflasherlights.receivers.LogControlReceiver;
 import com.messagenetsystems.evolutionflasherlights.receivers.MainAppDataReceiver;
 import com.messagenetsystems.evolutionflasherlights.threads.HealthMonitorThread;
 import com.messagenetsystems.evolutionflasherlights.threads.LightStateManagerThread;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 
 import java.lang.ref.WeakReference;
 
@@ -51,13 +57,15 @@ public class MainService extends Service {
     private IntentFilter commandReceiverIntentFilter;
     private MainAppDataReceiver mainAppDataReceiver;
     private IntentFilter mainAppDataReceiverIntentFilter;
+    private LogControlReceiver logControlReceiver;
+    private IntentFilter logControlReceiverIntentFilter;
 
-    // Threads & Services...
-    private MonitorChildProcesses monitorChildProcesses;
+    // Binders...
+    private LightCommandChannelBinder lightCommandChannelBinder;
+
+    // Threads & Services (tasks on MainApplication's MonitorScheduler)...
     private LightStateManagerThread lightStateManagerThread;
-    public volatile boolean isThreadAlive_lightStateManager;
     private HealthMonitorThread healthMonitorThread;
-    public volatile boolean isThreadAlive_healthMonitorThread;
 
     // Handlers...
 
@@ -112,8 +120,12 @@ public class MainService extends Service {
         this.mainAppDataReceiverIntentFilter.addAction(Constants.Intents.Actions.UPDATE_NUMBER_DELIVERING_MSGS);
         this.mainAppDataReceiverIntentFilter.addAction(Constants.Intents.Actions.REGISTER_MAIN_APP_HEARTBEAT);
 
-        // Initialize our monitoring process
-        this.monitorChildProcesses = new MonitorChildProcesses();
+        this.logControlReceiver = new LogControlReceiver(logMethod);
+        this.logControlReceiverIntentFilter = new IntentFilter();
+        this.logControlReceiverIntentFilter.addAction(Constants.LocalIntents.Actions.SET_LOG_CONFIG);
+
+        // Initialize our binder stuff
+        this.lightCommandChannelBinder = new LightCommandChannelBinder(getApplicationContext(), logMethod);
 
         // Prepare all our processes and threads
         this.lightStateManagerThread = new LightStateManagerThread(getApplicationContext(), logMethod);
@@ -130,8 +142,14 @@ public class MainService extends Service {
      **/
     @Override
     public IBinder onBind(Intent intent) {
-        //throw new UnsupportedOperationException("Not yet implemented");
-        //return binder;
+        final String TAGG = "onBind: ";
+
+        if (intent != null && FlasherLights.Intents.Actions.BIND_LIGHT_COMMAND_CHANNEL.equals(intent.getAction())) {
+            logI(TAGG+"Binding light command channel.");
+            return lightCommandChannelBinder;
+        }
+
+        logW(TAGG+"Nothing to bind for action \""+(intent == null ? null : intent.getAction())+"\".");
         return null;
     }
 
@@ -162,6 +180,9 @@ public class MainService extends Service {
         // Message data & delivery status information receiver
         registerReceiver(mainAppDataReceiver, mainAppDataReceiverIntentFilter);
 
+        // Logging control receiver (levels/method/sampling at runtime; only from senders holding our signature permission, or root)
+        registerReceiver(logControlReceiver, logControlReceiverIntentFilter, Constants.LocalIntents.Permissions.LOG_CONTROL, null);
+
 
         ////////////////////////////////////////////////////////////////////////////////////////////
         // DEV-NOTE: Services...
@@ -179,14 +200,10 @@ public class MainService extends Service {
 
 
         ////////////////////////////////////////////////////////////////////////////////////////////
-        // Start any other threads
-        // NOTE: For Thread classes, you should use .start() to ensure each thread executes on its own spawned thread.
-        //       If you use .run(), the thread will run on this MainService thread, rather than on its own new thread.
-        this.lightStateManagerThread.start();
-        this.healthMonitorThread.start();
-
-        // Start our child-monitoring process
-        this.monitorChildProcesses.start();
+        // Start our monitor tasks
+        // NOTE: These all run on MainApplication's one shared MonitorScheduler thread, which also supervises them (no need for us to restart them).
+        this.lightStateManagerThread.start(mainApplication.monitorScheduler);
+        this.healthMonitorThread.start(mainApplication.monitorScheduler);
 
 
         // Finish startup...
@@ -215,10 +232,18 @@ public class MainService extends Service {
         this.mainAppDataReceiver.cleanup();
         this.mainAppDataReceiver = null;
 
+        unregisterReceiver(logControlReceiver);
+        this.logControlReceiver = null;
+
+        // Stop taking bound requests (clients still holding the binder get RESULT_REJECTED from here on)
+        if (this.lightCommandChannelBinder != null) {
+            this.lightCommandChannelBinder.cleanup();
+            this.lightCommandChannelBinder = null;
+        }
+
         // Stop any services (you should take care of implicit cleanup in the Service class' onDestroy method)
 
-        // Stop and cleanup any threads
-        monitorChildProcesses.cleanup();
+        // Stop and cleanup any monitor tasks
         lightStateManagerThread.cleanup();
         healthMonitorThread.cleanup();
 
@@ -227,11 +252,11 @@ public class MainService extends Service {
         //sendBroadcast(broadcastIntent);
 
         // Explicitly release variables (not strictly necessary, but can't hurt to force garbage collection)
-        this.monitorChildProcesses = null;
         this.lightStateManagerThread = null;
         healthMonitorThread = null;
         this.mainApplication = null;
         this.commandReceiverIntentFilter = null;
+        this.logControlReceiverIntentFilter = null;
         //this.bluetoothFlasherLightsServiceIntent = null;
 
         // Clear up anything else
@@ -285,232 +310,6 @@ public class MainService extends Service {
     }
 
 
-    /*============================================================================================*/
-    /* Utilities */
-
-    private void restartThread_lightStateManager() {
-        final String TAGG = "restartThread_lightStateManager: ";
-        logV(TAGG+"Trying to restart LightStateManager...");
-
-        int maxWaitForStart = 10;
-
-        try {
-            if (this.lightStateManagerThread != null) {
-                this.lightStateManagerThread.cleanup();
-            }
-
-            this.lightStateManagerThread = new LightStateManagerThread(appContextRef.get(), logMethod);
-            this.lightStateManagerThread.start();
-
-            while (!this.lightStateManagerThread.isThreadRunning()) {
-                //wait here while thread starts up
-                logV(TAGG+"Waiting for thread to start.");
-
-                maxWaitForStart--;
-                if (maxWaitForStart < 0) {
-                    break;
-                }
-
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    logW(TAGG + "Exception caught trying to sleep: " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            logE(TAGG + "Exception caught: " + e.getMessage());
-        }
-    }
-
-    private void restartThread_healthMonitorThread() {
-        final String TAGG = "restartThread_healthMonitorThread: ";
-        logV(TAGG+"Trying to restart HealthMonitorThread...");
-
-        int maxWaitForStart = 10;
-
-        try {
-            if (this.healthMonitorThread != null) {
-                this.healthMonitorThread.cleanup();
-            }
-
-            this.healthMonitorThread = new HealthMonitorThread(appContextRef.get(), logMethod);
-            this.healthMonitorThread.start();
-
-            while (!this.healthMonitorThread.isThreadRunning()) {
-                //wait here while thread starts up
-                logV(TAGG+"Waiting for thread to start.");
-
-                maxWaitForStart--;
-                if (maxWaitForStart < 0) {
-                    break;
-                }
-
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    logW(TAGG + "Exception caught trying to sleep: " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            logE(TAGG + "Exception caught: " + e.getMessage());
-        }
-    }
-
-
-    /*============================================================================================*/
-    /* Subclasses */
-
-    /** Thread to monitor child processes, and restart them if necessary. */
-    private class MonitorChildProcesses extends Thread {
-        private final String TAGG = MonitorChildProcesses.class.getSimpleName()+": ";
-
-        private volatile boolean isStopRequested;           //flag to set/check for the thread to interrupt itself
-        private volatile boolean isThreadRunning;           //just a status flag
-        private volatile boolean pauseProcessing;           //flag to set if you want to pause processing work (may double as a kind of "is paused" flag)
-
-        private int activeProcessingSleepDuration;          //duration (in milliseconds) to sleep during active processing (to help ensure CPU cycles aren't eaten like crazy)
-        private int pausedProcessingSleepDuration;          //duration (in milliseconds) to sleep during paused processing (to help ensure CPU cycles aren't eaten like crazy)
-
-        private long loopIterationCounter;
-
-        /** Constructor */
-        public MonitorChildProcesses() {
-            // Initialize values
-            this.isStopRequested = false;
-            this.isThreadRunning = false;
-            this.pauseProcessing = false;
-            this.activeProcessingSleepDuration = 5000;
-            this.pausedProcessingSleepDuration = 10000;
-            this.loopIterationCounter = 1;
-        }
-
-        /** Main runnable routine... executes once whenever the initialized thread is commanded to start running with .start() or .execute() method call.
-         * Remember that .start() implicitly spawns a thread and calls .execute() to invoke this run() method.
-         * If you directly call .run(), this run() method will invoke on the same thread you call it from. */
-        @Override
-        public void run() {
-            final String TAGG = this.TAGG+"run: ";
-            logV(TAGG + "Invoked.");
-
-            // As long as our thread is supposed to be running...
-            while (!Thread.currentThread().isInterrupted()) {
-
-                // Our thread has started or is still running
-                isThreadRunning = true;
-
-                // Either do nothing (if paused) or allow work to happen (if not paused)...
-                logV(TAGG + "-------- Iteration #" + loopIterationCounter + " ------------------------");
-                if (pauseProcessing) {
-                    doSleepPaused();
-                    logD(TAGG + "Processing is paused. Thread continuing to run, but no work is occurring.");
-                } else {
-                    // Do a short delay to help prevent the thread loop from eating cycles
-                    doSleepActive();
-
-                    try {
-                        ////////////////////////////////////////////////////////////////////////////////
-                        // DO THE BULK OF THE ACTUAL WORK HERE...
-
-                        if (!lightStateManagerThread.isAlive()) {
-                            isThreadAlive_lightStateManager = false;
-                            logW(TAGG+"LightStateManager is not alive! Restarting it...");
-                            restartThread_lightStateManager();
-                        } else {
-                            isThreadAlive_lightStateManager = true;
-                        }
-
-                        if (!healthMonitorThread.isAlive()) {
-                            isThreadAlive_healthMonitorThread = false;
-                            logW(TAGG+"HealthMonitorThread is not alive! Restarting it...");
-                            restartThread_healthMonitorThread();
-                        } else {
-                            isThreadAlive_healthMonitorThread = true;
-                        }
-
-                        // END THE BULK OF THE ACTUAL WORK HERE...
-                        ////////////////////////////////////////////////////////////////////////////////
-                    } catch (Exception e) {
-                        logE(TAGG+"Exception caught: "+e.getMessage());
-                    }
-                }
-
-                doCounterIncrement();
-
-                // this is the end of the loop-iteration, so check whether we will stop or continue
-                if (doCheckWhetherNeedToStop()) {
-                    isThreadRunning = false;
-                    break;
-                }
-            }//end while
-        }//end run()
-
-        private void doSleepPaused() {
-            final String TAGG = this.TAGG+"doSleepPaused: ";
-
-            try {
-                Thread.sleep(pausedProcessingSleepDuration);
-            } catch (InterruptedException e) {
-                logW(TAGG + "Exception caught trying to sleep during pause: " + e.getMessage());
-            }
-        }
-
-        private void doSleepActive() {
-            final String TAGG = this.TAGG+"doSleepActive: ";
-
-            try {
-                Thread.sleep(activeProcessingSleepDuration);
-            } catch (InterruptedException e) {
-                logW(TAGG + "Exception caught trying to sleep: " + e.getMessage());
-            }
-        }
-
-        private void doCounterIncrement() {
-            final String TAGG = this.TAGG+"doCounterIncrement: ";
-
-            try {
-                loopIterationCounter++;
-            } catch (Exception e) {
-                logW(TAGG+"Exception caught incrementing loop counter. Resetting to 1: "+e.getMessage());
-                loopIterationCounter = 1;
-            }
-        }
-
-        private boolean doCheckWhetherNeedToStop() {
-            final String TAGG = this.TAGG+"doCheckWhetherNeedToStop: ";
-            boolean ret = false;
-
-            try {
-                if (Thread.currentThread().isInterrupted()) {
-                    logI(TAGG + "Thread will now stop.");
-                    isThreadRunning = false;
-                }
-                if (isStopRequested) {
-                    logI(TAGG + "Thread has been requested to stop and will now do so.");
-                    isThreadRunning = false;
-                    ret = true;
-                }
-            } catch (Exception e) {
-                logE(TAGG+"Exception caught: "+e.getMessage());
-            }
-
-            return ret;
-        }
-
-        /** Call this to terminate the loop and release resources. */
-        public void cleanup() {
-            final String TAGG = "cleanup: ";
-
-            try {
-                this.isStopRequested = true;
-
-                // Note: At this point, the thread-loop should break on its own
-            } catch (Exception e) {
-                logE(TAGG+"Exception caught calling stopListening(): "+e.getMessage());
-            }
-        }
-    }
-
-
     /*============================================================================================*/
     /* Logging Methods */
 
@@ -530,45 +329,6 @@ public class MainService extends Service {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, logSeverity, tagg);
     }
 }
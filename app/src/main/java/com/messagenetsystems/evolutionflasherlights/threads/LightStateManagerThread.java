@@ -5,6 +5,7 @@ package com.messagenetsystems.evolutionflasherlights.threads;
  * This allows us to be more intelligent instead of brute-forcing the initiate calls.
  *  If no messages, then ensure lights are in default state.
  *  If some message that needs lights, ensure lights are correct.
+ * Runs as a triggered task on the shared MonitorScheduler (see start and signal).
  *
  * Revisions:
  *  2018.11.26      Chris Rider     Created (initially for just default state when no messages).
@@ -15,43 +16,62 @@ package com.messagenetsystems.evolutionflasherlights.threads;
  *  2020.06.25      Chris Rider     Refactored whole app to shift work from BluetoothService to MainApplication.
  *  2020.06.28      Chris Rider     Added getter to support thread monitoring and restart capabilities.
  *                                  Now monitoring main delivery app's heartbeat for anomalies and enforcing standby light mode if needed.
+ *  2026.10.16      agent           Light commands here now only touch the radio if the controller isn't confirmed in that state (or it's gone stale).
+ *  2026.10.16      agent           Command-underway check now asks MainApplication (derived from the GATT session) instead of reading a flag.
+ *  2026.10.16      agent           Iteration banner and paused message are sampled (see LogUtils.Sampler), so they don't flood the log every loop.
+ *  2026.10.16      agent           Now event-driven (main app communication, delivering count changes, command completions) with a deadline
+ *                                  exactly MAIN_APP_HEARTBEAT_STALE_MS after main app last communicated, instead of waking every 5 seconds.
+ *  2026.10.16      agent           Now a triggered task (with a re-armed timer for its deadline) on the shared MonitorScheduler, instead of its own thread (name kept).
+ *  2026.10.16      agent           Deadlines use DatetimeUtils monotonic helpers.
  */
 
 import android.content.Context;
-import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
+import com.messagenetsystems.evolutionflasherlights.models.MainAppLiveness;
 import com.messagenetsystems.evolutionflasherlights.utilities.DatetimeUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 
 import java.lang.ref.WeakReference;
-import java.util.Date;
 
 
-public class LightStateManagerThread extends Thread {
+public class LightStateManagerThread implements Runnable {
     private String TAG = LightStateManagerThread.class.getSimpleName();
 
+    // Events (signal these, and we re-evaluate the light state right away)...
+    public static final int EVENT_MAIN_APP_COMMUNICATION = 1;       //heartbeat (or anything else) from main app (re-arms the silence deadline)
+    public static final int EVENT_DELIVERING_COUNT_CHANGED = 1 << 1;
+    public static final int EVENT_COMMAND_COMPLETED = 1 << 2;       //a light command got written to the controller
+
+    private static volatile LightStateManagerThread runningInstance;     //the one that receives signals (there's only one at a time)
+
     // Overhead...
     private WeakReference<Context> appContextRef;
     private MainApplication mainApplication;
 
-    private volatile boolean isStopRequested;           //flag to set/check for the thread to interrupt itself
-    private volatile boolean isThreadRunning;           //just a status flag
     private volatile boolean pauseProcessing;           //flag to set if you want to pause processing work (may double as a kind of "is paused" flag)
 
-    private int activeProcessingSleepDuration;          //duration (in milliseconds) to sleep during active processing (to help ensure CPU cycles aren't eaten like crazy)
-    private int pausedProcessingSleepDuration;          //duration (in milliseconds) to sleep during paused processing (to help ensure CPU cycles aren't eaten like crazy)
+    private long startupDelayMS;                        //duration (in milliseconds) to wait at startup, to make sure other resources initialize before we begin checks
+    private long silenceDeadlineMS;                     //duration (in milliseconds) of main app silence after which we enforce standby
+    private long reconcileIntervalMS;                   //duration (in milliseconds) after which we re-evaluate even without any events (so stale confirmations get re-asserted)
 
     private long loopIterationCounter;
 
+    private volatile MonitorScheduler.Task task;        //our task on the shared MonitorScheduler (null until started)
+
     // Local stuff...
-    private Date heartbeatDate, heartbeatDate_previous;
+    private final Object eventLock = new Object();
+    private int pendingEvents;                          //EVENT_* bits signaled since we last ran (guarded by eventLock)
 
-    private DatetimeUtils datetimeUtils;
-    private Date nowDate;
+    private long startedElapsedMS;
+    private long lastEvaluatedElapsedMS;
+    private long silenceStandbyEnforcedForElapsedMS;    //last-communication time we already enforced standby for (so the deadline fires once per silence)
+    private boolean isEvaluationDeferred;               //we skipped evaluating because a command was underway (so its completion re-evaluates)
 
     // Logging stuff...
+    private final LogUtils.Sampler iterationBannerSampler = new LogUtils.Sampler();
+    private final LogUtils.Sampler pausedSampler = new LogUtils.Sampler();
     private final int LOG_SEVERITY_V = 1;
     private final int LOG_SEVERITY_D = 2;
     private final int LOG_SEVERITY_I = 3;
@@ -71,111 +91,173 @@ public class LightStateManagerThread extends Thread {
             return;
         }
 
-        this.isStopRequested = false;
-        this.isThreadRunning = false;
         this.pauseProcessing = false;
-        this.activeProcessingSleepDuration = 5000;
-        this.pausedProcessingSleepDuration = 10000;
+        this.startupDelayMS = 5000;
+        this.silenceDeadlineMS = Constants.MAIN_APP_HEARTBEAT_STALE_MS;
+        this.reconcileIntervalMS = Constants.LIGHT_STATE_CONFIRMATION_STALE_MS;
         this.loopIterationCounter = 1;
 
-        this.datetimeUtils = new DatetimeUtils(appContext, logMethod);
+        this.pendingEvents = 0;
+        this.silenceStandbyEnforcedForElapsedMS = -1;
+        this.isEvaluationDeferred = false;
+    }
+
+    /** Start managing the light state, as a triggered task on the specified scheduler (first evaluation after a short startup delay). */
+    public void start(MonitorScheduler scheduler) {
+        final String TAGG = "start: ";
+
+        if (this.task != null) {
+            logW(TAGG+"Already started.");
+            return;
+        }
+
+        this.startedElapsedMS = DatetimeUtils.nowElapsedMS();
+        this.lastEvaluatedElapsedMS = this.startedElapsedMS;
+        this.task = scheduler.scheduleTriggered(TAG, this);
+        runningInstance = this;
+        this.task.triggerIn(this.startupDelayMS);
+    }
 
-        this.nowDate = new Date();
+    /** Signal an event (EVENT_*) to the running light state manager, so it re-evaluates right away. Safe from any thread; never blocks. */
+    public static void signal(int event) {
+        LightStateManagerThread instance = runningInstance;
+        if (instance != null) {
+            instance.postEvents(event);
+        }
     }
 
-    /** Main runnable routine... executes once whenever the initialized thread is commanded to start running with .start() or .execute() method call.
-     * Remember that .start() implicitly spawns a thread and calls .execute() to invoke this run() method.
-     * If you directly call .run(), this run() method will invoke on the same thread you call it from. */
+    /** One evaluation (runs on the MonitorScheduler's thread, so it must never block).
+     * Rather than waking on a fixed interval, we run when an event is signaled (main app communication, delivering count change, command
+     * completion), or when our deadline timer fires: exactly silenceDeadlineMS after we last heard from the main app (re-armed every time
+     * we hear from it), or else reconcileIntervalMS after our last evaluation, whichever is sooner. */
     @Override
     public void run() {
         final String TAGG = "run: ";
-        logV(TAGG + "Invoked.");
 
-        // Short pause at startup to make sure other resources initialize before we begin checks
-        doSleepActive();
+        final int events = takeEvents();
+        final long nowElapsedMS = DatetimeUtils.nowElapsedMS();
 
-        // As long as our thread is supposed to be running...
-        while (!Thread.currentThread().isInterrupted()) {
+        // A command completing is only interesting if we put off evaluating for it
+        if (events == EVENT_COMMAND_COMPLETED && !this.isEvaluationDeferred && nowElapsedMS < getNextDeadlineElapsedMS()) {
+            rearmDeadline();
+            return;
+        }
 
-            // Our thread has started or is still running
-            isThreadRunning = true;
+        // Either do nothing (if paused) or allow work to happen (if not paused)...
+        if (iterationBannerSampler.sample()) {
+            logV(TAGG + "-------- Iteration #" + loopIterationCounter + " ------------------------" + iterationBannerSampler.suppressedSuffix());
+        }
+        if (pauseProcessing) {
+            if (pausedSampler.sample()) {
+                logD(TAGG + "Processing is paused. Task continuing to be scheduled, but no work is occurring." + pausedSampler.suppressedSuffix());
+            }
+        } else {
 
-            // Either do nothing (if paused) or allow work to happen (if not paused)...
-            logV(TAGG + "-------- Iteration #" + loopIterationCounter + " ------------------------");
-            if (pauseProcessing) {
-                logD(TAGG + "Processing is paused. Thread continuing to run, but no work is occurring.");
+            try {
+                ////////////////////////////////////////////////////////////////////////////////
+                // DO THE BULK OF THE ACTUAL WORK HERE...
 
-                doSleepPaused();
-            } else {
+                evaluate(nowElapsedMS);
 
-                try {
-                    ////////////////////////////////////////////////////////////////////////////////
-                    // DO THE BULK OF THE ACTUAL WORK HERE...
-
-                    // The most extreme case, being that the main delivery app has crashed, ensure lights are in standby mode and not actuated from a previous message
-                    // Once/if we do this, there's no need for other checks regarding number of messages, etc. That is why we do the if/else-if/etc. structure, to work down a cascade of less-severe cases.
-                    int secondsSinceLastTimestampToDetermineProblem = 30;
-                    this.nowDate = new Date();
-                    if (!datetimeUtils.datesAreWithinSecs(MainApplication.mainAppLastCommunicationTimestamp, this.nowDate, secondsSinceLastTimestampToDetermineProblem)) {
-                        logW(TAGG+"Main app has not given us an updated heartbeat timestamp within "+secondsSinceLastTimestampToDetermineProblem+" seconds (last was: "+MainApplication.mainAppLastCommunicationTimestamp.toString()+" / current is: "+this.nowDate.toString()+"). Assuming it has died, so initiating light standby appearance.");
-                        mainApplication.executeLightCommand(MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_STANDBY, Integer.MAX_VALUE, null, false);
-                    }
-                    else if (MainApplication.mainAppLastCommunicationTimestamp == MainApplication.mainAppLastCommunicationTimestamp_previous) {
-                        logW(TAGG+"Main app has not given us an updated heartbeat timestamp (last was: "+MainApplication.mainAppLastCommunicationTimestamp.toString()+"). Assuming it has died, so initiating light standby appearance.");
-                        mainApplication.executeLightCommand(MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_STANDBY, Integer.MAX_VALUE, null, false);
-                    }
-                    else {
-                        if (mainApplication.isBluetoothDeviceCommandUnderway) {
-                            logV(TAGG+"There is a command underway, not interfering with it.");
-                        }
-                        else if (this.mainApplication.numOfDeliveringMsgsInMainApp == 0) {
-                            logV(TAGG + "Main app has no delivering messages, initiating light standby appearance.");
-                            mainApplication.executeLightCommand(MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_STANDBY, Integer.MAX_VALUE, null, false);
-                        }
-                    }
-
-                    // END THE BULK OF THE ACTUAL WORK HERE...
-                    ////////////////////////////////////////////////////////////////////////////////
-                } catch (NullPointerException e) {
-                    logW(TAGG+"Null pointer exception caught (this may be normal upon first startup): "+e.getMessage());
-                } catch (Exception e) {
-                    logE(TAGG+"Unexpected exception caught: "+e.getMessage());
-                }
-
-                // Do a short delay to help prevent the thread loop from eating cycles
-                doSleepActive();
+                // END THE BULK OF THE ACTUAL WORK HERE...
+                ////////////////////////////////////////////////////////////////////////////////
+            } catch (NullPointerException e) {
+                logW(TAGG+"Null pointer exception caught (this may be normal upon first startup): "+e.getMessage());
+            } catch (Exception e) {
+                logE(TAGG+"Unexpected exception caught: "+e.getMessage());
             }
+        }
 
-            doCounterIncrement();
+        doCounterIncrement();
 
-            // this is the end of the loop-iteration, so check whether we will stop or continue
-            if (doCheckWhetherNeedToStop()) {
-                isThreadRunning = false;
-                break;
-            }
-        }//end while
+        // Sleep until something happens, or our deadline arrives
+        rearmDeadline();
     }//end run()
 
-    private void doSleepPaused() {
-        final String TAGG = "doSleepPaused: ";
+    /** Decide what the lights should be doing, and make it so.
+     * The most extreme case, being that the main delivery app has gone silent (crashed?), ensures lights are in standby mode and not actuated from a previous message.
+     * Once/if we do this, there's no need for other checks regarding number of messages, etc. That is why we do the if/else-if/etc. structure, to work down a cascade of less-severe cases. */
+    private void evaluate(long nowElapsedMS) {
+        final String TAGG = "evaluate: ";
+
+        this.lastEvaluatedElapsedMS = nowElapsedMS;                                 //even if we fail below, so we don't spin on it
+        this.isEvaluationDeferred = false;
+
+        final long lastCommunicationElapsedMS = MainAppLiveness.getLastCommunicationElapsedMS();
+        if (nowElapsedMS >= getSilenceDeadlineElapsedMS()) {
+            if (this.silenceStandbyEnforcedForElapsedMS != lastCommunicationElapsedMS) {
+                logW(TAGG+"Main app has not given us an updated heartbeat within "+this.silenceDeadlineMS+"ms (last was "
+                        +(lastCommunicationElapsedMS < 0 ? "never" : (nowElapsedMS - lastCommunicationElapsedMS)+"ms ago")+"). Assuming it has died, so initiating light standby appearance.");
+                this.silenceStandbyEnforcedForElapsedMS = lastCommunicationElapsedMS;
+            } else {
+                logV(TAGG+"Main app is still silent, ensuring light standby appearance.");
+            }
+            mainApplication.executeLightCommand(MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_STANDBY, Integer.MAX_VALUE, null, false);
+        }
+        else if (mainApplication.isBluetoothDeviceCommandUnderway()) {
+            logV(TAGG+"There is a command underway, not interfering with it (will re-evaluate when it completes).");
+            this.isEvaluationDeferred = true;
+        }
+        else if (this.mainApplication.numOfDeliveringMsgsInMainApp == 0) {
+            logV(TAGG + "Main app has no delivering messages, ensuring light standby appearance.");
+            mainApplication.executeLightCommand(MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_STANDBY, Integer.MAX_VALUE, null, false);
+        }
+        else {
+            logV(TAGG + "Main app has delivering messages, ensuring their light appearance is still in effect.");
+            mainApplication.reconcileLightState();
+        }
+    }
 
-        try {
-            Thread.sleep(pausedProcessingSleepDuration);
-        } catch (InterruptedException e) {
-            logW(TAGG + "Exception caught trying to sleep during pause: " + e.getMessage());
+
+    /*============================================================================================*/
+    /* Event & Deadline Methods */
+
+    private void postEvents(int events) {
+        synchronized (eventLock) {
+            pendingEvents |= events;
+        }
+
+        MonitorScheduler.Task task = this.task;
+        if (task != null) {
+            task.trigger();
         }
     }
 
-    private void doSleepActive() {
-        final String TAGG = "doSleepActive: ";
+    /** Take the EVENT_* bits that were signaled since we last took them (0 if none, e.g. our deadline fired). */
+    private int takeEvents() {
+        synchronized (eventLock) {
+            final int events = pendingEvents;
+            pendingEvents = 0;
+            return events;
+        }
+    }
 
-        try {
-            Thread.sleep(activeProcessingSleepDuration);
-        } catch (InterruptedException e) {
-            logW(TAGG + "Exception caught trying to sleep: " + e.getMessage());
+    /** (Re)set our timer for the next deadline (replaces whatever it was set to before). */
+    private void rearmDeadline() {
+        MonitorScheduler.Task task = this.task;
+        if (task != null) {
+            task.triggerIn(DatetimeUtils.msUntil(getNextDeadlineElapsedMS()));
         }
     }
 
+    /** When the main app will have been silent for too long (re-armed every time we hear from it; counted from our start if we never have). */
+    private long getSilenceDeadlineElapsedMS() {
+        final long lastCommunicationElapsedMS = MainAppLiveness.getLastCommunicationElapsedMS();
+        return Math.max(lastCommunicationElapsedMS, this.startedElapsedMS) + this.silenceDeadlineMS;
+    }
+
+    /** The next time we need to evaluate, even if nothing happens before then. */
+    private long getNextDeadlineElapsedMS() {
+        final long reconcileDeadlineElapsedMS = this.lastEvaluatedElapsedMS + this.reconcileIntervalMS;
+        final long silenceDeadlineElapsedMS = getSilenceDeadlineElapsedMS();
+
+        if (this.silenceStandbyEnforcedForElapsedMS == MainAppLiveness.getLastCommunicationElapsedMS()
+                && DatetimeUtils.hasDeadlinePassed(silenceDeadlineElapsedMS)) {
+            return reconcileDeadlineElapsedMS;                                      //already dealt with this silence
+        }
+        return Math.min(reconcileDeadlineElapsedMS, silenceDeadlineElapsedMS);
+    }
+
     private void doCounterIncrement() {
         final String TAGG = "doCounterIncrement: ";
 
@@ -187,37 +269,17 @@ public class LightStateManagerThread extends Thread {
         }
     }
 
-    private boolean doCheckWhetherNeedToStop() {
-        final String TAGG = "doCheckWhetherNeedToStop: ";
-        boolean ret = false;
-
-        try {
-            if (Thread.currentThread().isInterrupted()) {
-                logI(TAGG + "Thread will now stop.");
-                isThreadRunning = false;
-            }
-            if (isStopRequested) {
-                logI(TAGG + "Thread has been requested to stop and will now do so.");
-                isThreadRunning = false;
-                ret = true;
-            }
-        } catch (Exception e) {
-            logE(TAGG+"Exception caught: "+e.getMessage());
-        }
-
-        return ret;
-    }
-
-    /** Call this to terminate the loop and release resources. */
+    /** Call this to stop managing the light state and release resources. */
     public void cleanup() {
         final String TAGG = "cleanup: ";
 
-        try {
-            this.isStopRequested = true;
+        if (runningInstance == this) {
+            runningInstance = null;
+        }
 
-            // Note: At this point, the thread-loop should break on its own
-        } catch (Exception e) {
-            logE(TAGG+"Exception caught calling stopListening(): "+e.getMessage());
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
         }
 
         if (this.appContextRef != null) {
@@ -226,16 +288,15 @@ public class LightStateManagerThread extends Thread {
         }
 
         this.mainApplication = null;
-
-        this.datetimeUtils = null;
     }
 
 
     /*============================================================================================*/
     /* Getter/Setter Methods */
 
-    public boolean isThreadRunning() {
-        return this.isThreadRunning;
+    /** Our task on the MonitorScheduler (for its run-time stats; null if not started). */
+    public MonitorScheduler.Task getTask() {
+        return this.task;
     }
 
 
@@ -258,45 +319,6 @@ public class LightStateManagerThread extends Thread {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_THREADS, logMethod, TAG, logSeverity, tagg);
     }
 }
\ No newline at end of file
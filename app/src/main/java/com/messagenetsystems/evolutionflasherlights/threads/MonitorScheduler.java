@@ -0,0 +1,371 @@
+package com.messagenetsystems.evolutionflasherlights.threads;
+
+/* MonitorScheduler
+ * One shared thread that runs all of our monitor loops (health monitor, light state managers, etc.) as tasks, instead of each of them
+ * being its own mostly-sleeping Thread (and yet another thread polling them all with isAlive, to restart them).
+ *
+ * A task is either:
+ *  Periodic    Runs every so often (fixed delay between the end of one run and the start of the next; can be changed at runtime).
+ *  Triggered   Runs when something calls trigger() (coalesced, so a burst of triggers is one run), and/or when a re-armable timer set
+ *              with triggerIn() fires (setting it again replaces the previous one).
+ *
+ * Supervision: a task that throws is logged and counted, but never dies; a periodic task keeps its schedule, and a triggered one is
+ * run again after TASK_RESTART_DELAY_MS (so it gets to re-arm itself). Every SUPERVISION_PERIOD_MS, we restart any periodic task whose
+ * schedule ended without it being cancelled, warn about any that have fallen well behind their cadence, and log every task's run-time stats.
+ *
+ * Tasks all share one thread, so they must never block for long (runs over their period are warned about).
+ *
+ * Usage:
+ *  MonitorScheduler scheduler = new MonitorScheduler(Constants.LOG_METHOD_FILELOGGER);
+ *  MonitorScheduler.Task task = scheduler.schedulePeriodic("HealthMonitor", 1000, 1000, runnable);
+ *  MonitorScheduler.Task task = scheduler.scheduleTriggered("LightStateManager", runnable);  task.trigger();  task.triggerIn(30000);
+ *  task.cancel();
+ *  scheduler.shutdown();
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces a dedicated sleep-loop thread per monitor, and MainService's restart polling).
+ */
+
+import android.os.SystemClock;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+public class MonitorScheduler {
+    private final String TAG = MonitorScheduler.class.getSimpleName();
+
+    // Configuration...
+    private final int BEHIND_CADENCE_FACTOR = 3;                    //periodic task is "behind" if it hasn't run for this many periods
+
+    // Local stuff...
+    private final ScheduledThreadPoolExecutor executor;
+    private final List<Task> tasks = new CopyOnWriteArrayList<Task>();
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor */
+    public MonitorScheduler(int logMethod) {
+        this.logMethod = logMethod;
+
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.setRemoveOnCancelPolicy(true);                             //re-arming timers shouldn't pile up cancelled entries
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        schedulePeriodic("Supervision", Constants.Configuration.Monitor.SUPERVISION_PERIOD_MS,
+                Constants.Configuration.Monitor.SUPERVISION_PERIOD_MS, new Runnable() {
+                    @Override
+                    public void run() {
+                        supervise();
+                    }
+                });
+    }
+
+    /** Run a task every periodMS (first after initialDelayMS). */
+    public Task schedulePeriodic(String name, long initialDelayMS, long periodMS, Runnable work) {
+        Task task = new Task(name, work, periodMS);
+        tasks.add(task);
+        task.schedulePeriodic(initialDelayMS);
+        logD("schedulePeriodic: Scheduled \""+name+"\" every "+periodMS+"ms (first in "+initialDelayMS+"ms).");
+        return task;
+    }
+
+    /** Register a task that only runs when triggered (see Task.trigger and Task.triggerIn). */
+    public Task scheduleTriggered(String name, Runnable work) {
+        Task task = new Task(name, work, 0);
+        tasks.add(task);
+        logD("scheduleTriggered: Registered \""+name+"\".");
+        return task;
+    }
+
+    /** Cancel all tasks, and let the thread go. */
+    public void shutdown() {
+        final String TAGG = "shutdown: ";
+
+        for (Task task : tasks) {
+            task.cancel();
+        }
+        executor.shutdown();
+        logI(TAGG+"Shut down.");
+    }
+
+    /** Run-time stats of every task (one line each). */
+    public String describeStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Task task : tasks) {
+            if (sb.length() > 0) {
+                sb.append("\n");
+            }
+            sb.append(task.toString());
+        }
+        return sb.toString();
+    }
+
+
+    /*============================================================================================*/
+    /* Supervision Methods (run on our thread only) */
+
+    private void supervise() {
+        final String TAGG = "supervise: ";
+        final long nowElapsedMS = SystemClock.elapsedRealtime();
+
+        for (Task task : tasks) {
+            if (task.isCancelled()) {
+                tasks.remove(task);
+                continue;
+            }
+            if (task.periodMS <= 0) {
+                continue;
+            }
+
+            if (task.isScheduleEnded()) {
+                logW(TAGG+"Periodic task \""+task.name+"\" is no longer scheduled. Restarting it.");
+                task.restartCount++;
+                task.schedulePeriodic(task.periodMS);
+            } else if (task.lastRunEndedElapsedMS > 0 && nowElapsedMS - task.lastRunEndedElapsedMS > task.periodMS * BEHIND_CADENCE_FACTOR) {
+                logW(TAGG+"Periodic task \""+task.name+"\" has not run for "+(nowElapsedMS - task.lastRunEndedElapsedMS)+"ms (period "+task.periodMS+"ms).");
+            }
+        }
+
+        logD(TAGG+"Task stats:\n"+describeStats());
+    }
+
+
+    /*============================================================================================*/
+    /* Subclasses */
+
+    /** A task running on the scheduler, with its run-time stats (which are only updated on the scheduler's thread). */
+    public final class Task {
+        private final String name;
+        private final Runnable work;
+        private volatile long periodMS;                             //0 for triggered tasks
+
+        private final Object scheduleLock = new Object();
+        private ScheduledFuture<?> scheduledFuture;                 //periodic schedule, or triggered task's pending timer (guarded by scheduleLock)
+        private final AtomicBoolean isTriggerPending = new AtomicBoolean(false);
+        private volatile boolean isCancelled;
+
+        private final Runnable runOnceRunnable = new Runnable() {
+            @Override
+            public void run() {
+                runOnce();
+            }
+        };
+        private final Runnable triggeredRunnable = new Runnable() {
+            @Override
+            public void run() {
+                isTriggerPending.set(false);
+                runOnce();
+            }
+        };
+
+        // Stats...
+        private volatile long runCount;
+        private volatile long failureCount;
+        private volatile long restartCount;
+        private volatile long totalRunNS;
+        private volatile long maxRunNS;
+        private volatile long lastRunNS;
+        private volatile long lastRunEndedElapsedMS;
+
+        private Task(String name, Runnable work, long periodMS) {
+            this.name = name;
+            this.work = work;
+            this.periodMS = periodMS;
+        }
+
+        /** Run as soon as possible (if it's already waiting to, that's the run you get). */
+        public void trigger() {
+            if (isCancelled || !isTriggerPending.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(triggeredRunnable);
+            } catch (Exception e) {
+                isTriggerPending.set(false);
+                logW("trigger: \""+name+"\" could not be run: "+e.getMessage());
+            }
+        }
+
+        /** Run after the specified delay (replaces any run that was already set to happen after a delay). */
+        public void triggerIn(long delayMS) {
+            synchronized (scheduleLock) {
+                if (isCancelled) {
+                    return;
+                }
+                if (scheduledFuture != null) {
+                    scheduledFuture.cancel(false);
+                }
+                try {
+                    scheduledFuture = executor.schedule(runOnceRunnable, Math.max(0, delayMS), TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    scheduledFuture = null;
+                    logW("triggerIn: \""+name+"\" could not be scheduled: "+e.getMessage());
+                }
+            }
+        }
+
+        /** Change how often a periodic task runs (next run is one new period from now). */
+        public void setPeriodMS(long periodMS) {
+            if (this.periodMS <= 0 || periodMS <= 0) {
+                return;
+            }
+            this.periodMS = periodMS;
+            schedulePeriodic(periodMS);
+        }
+
+        /** Stop running this task (a run that's underway finishes). */
+        public void cancel() {
+            synchronized (scheduleLock) {
+                isCancelled = true;
+                if (scheduledFuture != null) {
+                    scheduledFuture.cancel(false);
+                    scheduledFuture = null;
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getRunCount() {
+            return runCount;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getMaxRunNS() {
+            return maxRunNS;
+        }
+
+        public long getMeanRunNS() {
+            final long count = runCount;
+            return count == 0 ? 0 : totalRunNS / count;
+        }
+
+        private void schedulePeriodic(long initialDelayMS) {
+            synchronized (scheduleLock) {
+                if (isCancelled) {
+                    return;
+                }
+                if (scheduledFuture != null) {
+                    scheduledFuture.cancel(false);
+                }
+                try {
+                    scheduledFuture = executor.scheduleWithFixedDelay(runOnceRunnable, Math.max(0, initialDelayMS), periodMS, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    scheduledFuture = null;
+                    logW("schedulePeriodic: \""+name+"\" could not be scheduled: "+e.getMessage());
+                }
+            }
+        }
+
+        private boolean isScheduleEnded() {
+            synchronized (scheduleLock) {
+                return !isCancelled && (scheduledFuture == null || scheduledFuture.isDone());
+            }
+        }
+
+        /** Do the work once, keeping stats, and making sure nothing it throws takes us (or it) down. */
+        private void runOnce() {
+            final String TAGG = "runOnce(\""+name+"\"): ";
+
+            if (isCancelled) {
+                return;
+            }
+
+            boolean failed = false;
+            final long startNS = System.nanoTime();
+            try {
+                work.run();
+            } catch (Throwable t) {
+                failed = true;
+                failureCount++;
+                logE(TAGG+"Task threw "+t.getClass().getSimpleName()+": "+t.getMessage());
+            }
+            final long runNS = System.nanoTime() - startNS;
+
+            runCount++;
+            totalRunNS += runNS;
+            lastRunNS = runNS;
+            if (runNS > maxRunNS) {
+                maxRunNS = runNS;
+            }
+            lastRunEndedElapsedMS = SystemClock.elapsedRealtime();
+
+            if (periodMS > 0 && runNS / 1000000 > periodMS) {
+                logW(TAGG+"Run took "+(runNS / 1000000)+"ms, longer than its period ("+periodMS+"ms); other tasks were held up.");
+            }
+
+            if (failed && periodMS <= 0) {
+                restartCount++;
+                logW(TAGG+"Running it again in "+Constants.Configuration.Monitor.TASK_RESTART_DELAY_MS+"ms.");
+                triggerIn(Constants.Configuration.Monitor.TASK_RESTART_DELAY_MS);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name+(periodMS > 0 ? " (every "+periodMS+"ms)" : " (triggered)")
+                    +": runs="+runCount
+                    +" failures="+failureCount
+                    +" restarts="+restartCount
+                    +" meanUs="+(getMeanRunNS() / 1000)
+                    +" maxUs="+(maxRunNS / 1000)
+                    +" lastUs="+(lastRunNS / 1000)
+                    +(isCancelled ? " (cancelled)" : "");
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_THREADS, logMethod, TAG, logSeverity, tagg);
+    }
+}
@@ -0,0 +1,568 @@
+package com.messagenetsystems.evolutionflasherlights.utilities;
+
+/* AsyncFileLogger
+ * Asynchronous file logger that sits in front of the log files, so that logging never makes the calling thread (e.g. the BLE
+ * callback binder thread) wait on the filesystem.
+ *
+ * Each producer thread gets its own lock-free, single-producer/single-consumer ring buffer (a fixed byte arena), into which
+ * it copies a compact binary record: [length][wall clock ms][thread id][severity][tag length][message length][tag][message],
+ * with tag and message already UTF-8 encoded. Nothing is allocated and nothing is locked to do that (except once per thread,
+ * to register its ring). If a ring is getting full, verbose/debug messages are sampled out so warnings and errors still fit;
+ * if it's completely full, the message is dropped. Either way, counts are kept and reported in the log once there's room.
+ *
+ * A single background writer thread drains every ring a few times a second, renders the records as readable text lines into
+ * one direct buffer, and writes that buffer to the day's file with a single channel write per flush. If the file can't be written
+ * (full disk, removed sdcard, etc.), that flush is discarded, the file closed, and reopened on a later flush; the writer keeps going.
+ * Should the writer ever die anyway, it stops being the running instance, so LogUtils goes back to logging directly.
+ *
+ * Usage:
+ *  AsyncFileLogger.start(logDirectory);                                            //once, at app startup
+ *  AsyncFileLogger.offer(LogUtils.SEVERITY_D, TAG, "message");                     //normally via LogUtils.log
+ *  AsyncFileLogger.stop();                                                         //flushes whatever's left
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created.
+ *  2026.10.16      agent           Survives write failures (closes the file and reopens it later), and stops being the running
+ *                                  instance if the writer thread ends, instead of leaving producers filling rings nobody drains.
+ */
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+public class AsyncFileLogger {
+    private static final String TAG = AsyncFileLogger.class.getSimpleName();
+
+    private static final int RING_CAPACITY = 64 * 1024;                            //bytes per producer thread (must be a power of two)
+    private static final int RING_MASK = RING_CAPACITY - 1;
+    private static final int SAMPLE_THRESHOLD = (RING_CAPACITY / 4) * 3;           //beyond this much used, only info/warn/error get in
+    private static final int MAX_TAG_BYTES = 0xff;
+    private static final int MAX_MESSAGE_BYTES = 2048;                              //longer messages get truncated
+    private static final int RECORD_HEADER_BYTES = 2 + 8 + 4 + 1 + 1 + 2;
+
+    private static final long FLUSH_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final int WRITE_BUFFER_BYTES = 128 * 1024;
+    private static final int MAX_LINE_BYTES = 64 + MAX_TAG_BYTES + MAX_MESSAGE_BYTES;  //timestamp, thread, severity, separators, tag, message
+    private static final long REOPEN_INTERVAL_NS = TimeUnit.SECONDS.toNanos(5);     //how often to retry a file we couldn't open or write
+    private static final long RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+    private static final long MS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+    private static final String FILE_PREFIX = "async_";
+    private static final String FILE_SUFFIX = ".log";
+    private static final byte[] SEVERITY_CHARS = {'?', 'V', 'D', 'I', 'W', 'E'};
+
+    private static volatile AsyncFileLogger instance;
+
+    private static final ThreadLocal<Ring> threadRing = new ThreadLocal<Ring>() {
+        @Override
+        protected Ring initialValue() {
+            return new Ring(Thread.currentThread());
+        }
+    };
+
+    private final File logDirectory;
+    private final CopyOnWriteArrayList<Ring> rings = new CopyOnWriteArrayList<Ring>();
+    private final Thread writerThread;
+    private volatile boolean isRunning;
+
+    // Writer-thread-only state...
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private final TimeZone timeZone = TimeZone.getDefault();
+    private FileChannel fileChannel;
+    private File currentFile;                                                       //the day's file (whether or not it's open right now)
+    private long nextReopenNs;                                                      //System.nanoTime before which not to retry opening it
+    private long discardedBytes;                                                    //rendered bytes we couldn't write since the file was last writable
+    private long currentDay = Long.MIN_VALUE;
+    private byte[] currentDatePrefix;                                               //"yyyy-MM-dd " for currentDay
+
+
+    /** Constructor (use start) */
+    private AsyncFileLogger(File logDirectory) {
+        this.logDirectory = logDirectory;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, TAG);
+        this.writerThread.setDaemon(true);
+        this.writerThread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+
+    /*============================================================================================*/
+    /* Lifecycle Methods */
+
+    /** Start logging asynchronously to files in the specified directory. Returns whether it's running. */
+    public static synchronized boolean start(File logDirectory) {
+        final String TAGG = "start: ";
+
+        if (instance != null) {
+            return true;
+        }
+        if (logDirectory == null || !(logDirectory.isDirectory() || logDirectory.mkdirs())) {
+            Log.e(TAG, TAGG+"Log directory unavailable ("+logDirectory+"), not starting.");
+            return false;
+        }
+
+        AsyncFileLogger logger = new AsyncFileLogger(logDirectory);
+        logger.isRunning = true;
+        instance = logger;
+        logger.writerThread.start();
+        return true;
+    }
+
+    /** Stop logging asynchronously, after writing out anything already logged. */
+    public static synchronized void stop() {
+        AsyncFileLogger logger = instance;
+        if (logger == null) {
+            return;
+        }
+        instance = null;
+        logger.isRunning = false;
+        LockSupport.unpark(logger.writerThread);
+        try {
+            logger.writerThread.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static boolean isRunning() {
+        return instance != null;
+    }
+
+
+    /*============================================================================================*/
+    /* Producer Methods */
+
+    /** Queue a message to be written. Never blocks; returns false if it was sampled out or dropped (or we're not running). */
+    public static boolean offer(int severity, String tag, String msg) {
+        AsyncFileLogger logger = instance;
+        if (logger == null) {
+            return false;
+        }
+
+        Ring ring = threadRing.get();
+        if (ring.logger != logger) {
+            //first message from this thread (since start), so register its ring with the writer (only ever happens once per thread)
+            ring.logger = logger;
+            logger.rings.add(ring);
+        }
+        return ring.offer(severity, tag == null ? "" : tag, msg == null ? "" : msg);
+    }
+
+
+    /*============================================================================================*/
+    /* Writer Methods */
+
+    private void runWriter() {
+        final String TAGG = "runWriter: ";
+
+        try {
+            while (isRunning) {
+                LockSupport.parkNanos(this, FLUSH_INTERVAL_NS);
+                drainAll();
+                flushWriteBuffer();
+            }
+
+            //one last pass, for anything logged while we were stopping
+            drainAll();
+            flushWriteBuffer();
+        } catch (Throwable t) {
+            Log.e(TAG, TAGG+"Exception caught (writer stopping): "+t.getMessage());
+        } finally {
+            closeFile();
+
+            // Nobody drains the rings anymore, so stop taking messages (LogUtils falls back to logging directly)
+            if (instance == this) {
+                instance = null;
+            }
+        }
+    }
+
+    private void drainAll() throws IOException {
+        for (Ring ring : rings) {
+            drainRing(ring);
+
+            if (!ring.isOwnerAlive() && ring.isEmpty()) {
+                rings.remove(ring);
+            }
+        }
+    }
+
+    private void drainRing(Ring ring) throws IOException {
+        long tail = ring.tail.get();
+        final long head = ring.head.get();
+
+        while (tail < head) {
+            final int recordLength = ring.getShort(tail);
+            final long wallMs = ring.getLong(tail + 2);
+            final int threadId = ring.getInt(tail + 10);
+            final int severity = ring.getByte(tail + 14);
+            final int tagLength = ring.getByte(tail + 15);
+            final int msgLength = ring.getShort(tail + 16);
+            final long tagAt = tail + RECORD_HEADER_BYTES;
+
+            appendLinePrefix(wallMs, threadId, severity);
+            ring.copyTo(tagAt, tagLength, writeBuffer);
+            writeBuffer.put((byte) ':').put((byte) ' ');
+            ring.copyTo(tagAt + tagLength, msgLength, writeBuffer);
+            writeBuffer.put((byte) '\n');
+
+            tail += recordLength;
+            ring.tail.lazySet(tail);                                                //free the space as soon as it's copied out
+        }
+
+        // Report anything that didn't make it in (now that there's room for reports to)...
+        final long sampledOut = ring.sampledOutCount;
+        final long dropped = ring.droppedCount;
+        if (sampledOut != ring.reportedSampledOutCount || dropped != ring.reportedDroppedCount) {
+            appendLinePrefix(System.currentTimeMillis(), ring.threadId, LogUtils.SEVERITY_W);
+            appendAscii(TAG+": Thread \""+ring.threadName+"\" logged faster than could be written: "
+                    +(sampledOut - ring.reportedSampledOutCount)+" verbose/debug message(s) sampled out, "
+                    +(dropped - ring.reportedDroppedCount)+" message(s) dropped.\n");
+            ring.reportedSampledOutCount = sampledOut;
+            ring.reportedDroppedCount = dropped;
+        }
+    }
+
+    /** Append "yyyy-MM-dd HH:mm:ss.SSS tid S/" for the specified wall clock time, rotating files if the day changed. */
+    private void appendLinePrefix(long wallMs, int threadId, int severity) throws IOException {
+        if (writeBuffer.remaining() < MAX_LINE_BYTES) {
+            flushWriteBuffer();
+        }
+
+        final long localMs = wallMs + timeZone.getOffset(wallMs);
+        final long day = floorDiv(localMs, MS_PER_DAY);
+        if (day != currentDay) {
+            rotateFile(day, wallMs);
+        }
+
+        int msOfDay = (int) (localMs - (day * MS_PER_DAY));
+        writeBuffer.put(currentDatePrefix);
+        appendDigits(msOfDay / 3600000, 2);
+        writeBuffer.put((byte) ':');
+        appendDigits((msOfDay / 60000) % 60, 2);
+        writeBuffer.put((byte) ':');
+        appendDigits((msOfDay / 1000) % 60, 2);
+        writeBuffer.put((byte) '.');
+        appendDigits(msOfDay % 1000, 3);
+        writeBuffer.put((byte) ' ');
+        appendDigits(threadId, 0);
+        writeBuffer.put((byte) ' ');
+        writeBuffer.put(SEVERITY_CHARS[severity >= 0 && severity < SEVERITY_CHARS.length ? severity : 0]);
+        writeBuffer.put((byte) '/');
+    }
+
+    /** Append a non-negative number, zero-padded to at least minDigits. */
+    private void appendDigits(int value, int minDigits) {
+        int digits = 1;
+        for (int v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < minDigits; i++) {
+            writeBuffer.put((byte) '0');
+        }
+        int divisor = 1;
+        for (int i = 1; i < digits; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            writeBuffer.put((byte) ('0' + ((value / divisor) % 10)));
+        }
+    }
+
+    private void appendAscii(String s) {
+        for (int i = 0; i < s.length() && writeBuffer.hasRemaining(); i++) {
+            char c = s.charAt(i);
+            writeBuffer.put((byte) (c < 0x80 ? c : '?'));
+        }
+    }
+
+    /** Write out the buffer. If the file can't be written, the buffer is discarded and the file closed (to be reopened later). */
+    private void flushWriteBuffer() {
+        final String TAGG = "flushWriteBuffer: ";
+
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+
+        writeBuffer.flip();
+        if (fileChannel == null) {
+            reopenFile();
+        }
+        if (fileChannel != null) {
+            try {
+                while (writeBuffer.hasRemaining()) {
+                    fileChannel.write(writeBuffer);
+                }
+                if (discardedBytes > 0) {
+                    Log.w(TAG, TAGG+"Log file is writable again ("+discardedBytes+" bytes of messages were discarded meanwhile).");
+                    discardedBytes = 0;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, TAGG+"Could not write \""+currentFile+"\" (will retry): "+e.getMessage());
+                closeFile();
+                nextReopenNs = System.nanoTime() + REOPEN_INTERVAL_NS;
+            }
+        }
+        discardedBytes += writeBuffer.remaining();
+        writeBuffer.clear();
+    }
+
+
+    /*============================================================================================*/
+    /* File Methods */
+
+    private void rotateFile(long day, long wallMs) throws IOException {
+        flushWriteBuffer();
+        closeFile();
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd ", Locale.US);
+        dateFormat.setTimeZone(timeZone);
+        currentDatePrefix = dateFormat.format(new Date(wallMs)).getBytes("US-ASCII");
+        currentDay = day;
+
+        SimpleDateFormat fileDateFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
+        fileDateFormat.setTimeZone(timeZone);
+        currentFile = new File(logDirectory, FILE_PREFIX + fileDateFormat.format(new Date(wallMs)) + FILE_SUFFIX);
+        nextReopenNs = System.nanoTime();
+        reopenFile();
+
+        deleteExpiredFiles(wallMs);
+    }
+
+    /** (Re)open the day's file, unless we tried too recently. */
+    private void reopenFile() {
+        final String TAGG = "reopenFile: ";
+
+        if (currentFile == null || System.nanoTime() - nextReopenNs < 0) {
+            return;
+        }
+
+        try {
+            fileChannel = new FileOutputStream(currentFile, true).getChannel();
+        } catch (IOException e) {
+            Log.e(TAG, TAGG+"Could not open \""+currentFile+"\" (will retry): "+e.getMessage());
+            fileChannel = null;
+            nextReopenNs = System.nanoTime() + REOPEN_INTERVAL_NS;
+        }
+    }
+
+    private void closeFile() {
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "closeFile: Exception caught: "+e.getMessage());
+            }
+            fileChannel = null;
+        }
+    }
+
+    /** Delete our own files that are older than the retention period. */
+    private void deleteExpiredFiles(long nowWallMs) {
+        File[] files = logDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)
+                    && nowWallMs - file.lastModified() > RETENTION_MS) {
+                if (!file.delete()) {
+                    Log.w(TAG, "deleteExpiredFiles: Could not delete \""+name+"\".");
+                }
+            }
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Utility Methods */
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+
+    /*============================================================================================*/
+    /* Subclasses */
+
+    /** One producer thread's ring buffer. Only its owner thread writes records (head); only the writer thread frees them (tail). */
+    private static class Ring {
+        private final byte[] arena = new byte[RING_CAPACITY];
+        private final AtomicLong head = new AtomicLong(0);                          //published end of written records
+        private final AtomicLong tail = new AtomicLong(0);                          //start of records not yet drained
+        private final int threadId;
+        private final String threadName;
+        private final Thread owner;
+        private AsyncFileLogger logger;                                             //owner thread only
+
+        private volatile long sampledOutCount;                                      //written only by the owner thread
+        private volatile long droppedCount;                                         //written only by the owner thread
+        private long reportedSampledOutCount;                                       //writer thread only
+        private long reportedDroppedCount;                                          //writer thread only
+
+        Ring(Thread owner) {
+            this.owner = owner;
+            this.threadId = (int) owner.getId();
+            this.threadName = owner.getName();
+        }
+
+        boolean isOwnerAlive() {
+            return owner.isAlive();
+        }
+
+        boolean isEmpty() {
+            return head.get() == tail.get();
+        }
+
+        boolean offer(int severity, String tag, String msg) {
+            final long start = head.get();
+            final int used = (int) (start - tail.get());
+
+            if (used > SAMPLE_THRESHOLD && severity < LogUtils.SEVERITY_I) {
+                sampledOutCount = sampledOutCount + 1;
+                return false;
+            }
+
+            final int tagLength = utf8Length(tag, MAX_TAG_BYTES);
+            final int msgLength = utf8Length(msg, MAX_MESSAGE_BYTES);
+            final int recordLength = RECORD_HEADER_BYTES + tagLength + msgLength;
+            if (RING_CAPACITY - used < recordLength) {
+                droppedCount = droppedCount + 1;
+                return false;
+            }
+
+            long at = start;
+            at = putShort(at, recordLength);
+            at = putLong(at, System.currentTimeMillis());
+            at = putInt(at, threadId);
+            at = putByte(at, severity);
+            at = putByte(at, tagLength);
+            at = putShort(at, msgLength);
+            at = putUtf8(at, tag, tagLength);
+            putUtf8(at, msg, msgLength);
+
+            head.lazySet(start + recordLength);                                     //publish (ordered after the bytes above)
+            return true;
+        }
+
+        /* Arena access (positions are absolute, and wrap) */
+
+        private long putByte(long at, int value) {
+            arena[(int) (at & RING_MASK)] = (byte) value;
+            return at + 1;
+        }
+
+        private long putShort(long at, int value) {
+            at = putByte(at, value >>> 8);
+            return putByte(at, value);
+        }
+
+        private long putInt(long at, int value) {
+            at = putShort(at, value >>> 16);
+            return putShort(at, value);
+        }
+
+        private long putLong(long at, long value) {
+            at = putInt(at, (int) (value >>> 32));
+            return putInt(at, (int) value);
+        }
+
+        int getByte(long at) {
+            return arena[(int) (at & RING_MASK)] & 0xff;
+        }
+
+        int getShort(long at) {
+            return (getByte(at) << 8) | getByte(at + 1);
+        }
+
+        int getInt(long at) {
+            return (getShort(at) << 16) | getShort(at + 2);
+        }
+
+        long getLong(long at) {
+            return ((long) getInt(at) << 32) | (getInt(at + 4) & 0xffffffffL);
+        }
+
+        void copyTo(long at, int length, ByteBuffer dst) {
+            final int from = (int) (at & RING_MASK);
+            final int firstPart = Math.min(length, RING_CAPACITY - from);
+            dst.put(arena, from, firstPart);
+            if (firstPart < length) {
+                dst.put(arena, 0, length - firstPart);
+            }
+        }
+
+        /* UTF-8 (surrogates are written as '?', so each char's encoded length doesn't depend on its neighbours) */
+
+        private static int utf8CharLength(char c) {
+            if (c < 0x80) {
+                return 1;
+            } else if (c < 0x800) {
+                return 2;
+            } else if (isSurrogate(c)) {
+                return 1;
+            } else {
+                return 3;
+            }
+        }
+
+        private static boolean isSurrogate(char c) {
+            return c >= '\uD800' && c <= '\uDFFF';
+        }
+
+        /** Encoded length of as much of s as fits in maxBytes (whole characters only). */
+        private static int utf8Length(String s, int maxBytes) {
+            int length = 0;
+            for (int i = 0; i < s.length(); i++) {
+                int charLength = utf8CharLength(s.charAt(i));
+                if (length + charLength > maxBytes) {
+                    break;
+                }
+                length += charLength;
+            }
+            return length;
+        }
+
+        /** Write exactly encodedLength bytes of s (as computed by utf8Length). */
+        private long putUtf8(long at, String s, int encodedLength) {
+            final long end = at + encodedLength;
+            for (int i = 0; at < end; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    at = putByte(at, c);
+                } else if (c < 0x800) {
+                    at = putByte(at, 0xc0 | (c >> 6));
+                    at = putByte(at, 0x80 | (c & 0x3f));
+                } else if (isSurrogate(c)) {
+                    at = putByte(at, '?');
+                } else {
+                    at = putByte(at, 0xe0 | (c >> 12));
+                    at = putByte(at, 0x80 | ((c >> 6) & 0x3f));
+                    at = putByte(at, 0x80 | (c & 0x3f));
+                }
+            }
+            return at;
+        }
+    }
+}
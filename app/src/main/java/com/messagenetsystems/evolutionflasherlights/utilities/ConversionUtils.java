@@ -5,14 +5,17 @@ package com.messagenetsystems.evolutionflasherlights.utilities;
  * Revisions:
  *  2020.06.12      Chris Rider     Updated byteArrayToHexString method to support delineation for easier reading of the result.
  *  2020.06.23      Chris Rider     Migrated in convertCommandCodeToBleCharacteristicValueList from BluetoothService.
+ *  2026.10.16      agent           convertCommandCodeToBleCharacteristicValueList is now a lookup in the prebuilt LightCommandPayloadTable.
+ *  2026.10.16      agent           Hex encoding no longer logs every call, and encodes into a reusable per-thread buffer (added appendHex).
  */
 
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.messagenetsystems.evolutionflasherlights.Constants;
 import com.messagenetsystems.evolutionflasherlights.MainApplication;
+import com.messagenetsystems.evolutionflasherlights.devices.LightCommandPayloadTable;
 
-import java.util.ArrayList;
 import java.util.List;
 
 
@@ -21,202 +24,100 @@ public class ConversionUtils {
 
     // Constants...
     private final static char[] HEX_CHARS = "0123456789ABCDEF".toCharArray();
+    private final static char NO_DELIMITER = 0;
 
-    public static String byteArrayToHexString(byte[] bytes, @Nullable String delineator) {
-        final String TAGG = "byteArrayToHexString: ";
-        String ret;
-
-        char[] hexChars = new char[bytes.length * 2];
-        for (int j = 0; j < bytes.length; j++) {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 2] = HEX_CHARS[v >>> 4];
-            hexChars[j * 2 + 1] = HEX_CHARS[v & 0x0F];
+    // Reusable (per-thread) buffer for hex encoding, so the only allocation is the returned String itself
+    private static final ThreadLocal<char[]> hexBuffer = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[64];
         }
+    };
 
-        ret = new String(hexChars);
+    public static String byteArrayToHexString(byte[] bytes, @Nullable String delineator) {
+        final String TAGG = "byteArrayToHexString: ";
 
+        char delimiter = NO_DELIMITER;
         if (delineator != null) {
             if (delineator.length() > 1) {
                 Log.w(TAG, TAGG+"Only one-character delineators are supported. Omitting delineator altogether.");
-            } else {
-                Log.v(TAG, TAGG+"Hex Before: \""+ret+"\"");
-                StringBuilder updatedRet = new StringBuilder();
-                for (int i = 0; i < ret.length(); i++) {
-                    if (i % 2 == 0) {
-                        updatedRet.append(ret.charAt(i));
-                        updatedRet.append(ret.charAt(i+1));
-                    } else {
-                        if (i < ret.length()-1) updatedRet.append(delineator);
-                    }
-                }
-
-                // update what we will return
-                ret = updatedRet.toString();
+            } else if (delineator.length() == 1) {
+                delimiter = delineator.charAt(0);
             }
         }
 
-        Log.v(TAG, TAGG+"Returning:  \""+ret+"\"");
-        return ret;
+        return byteArrayToHexString(bytes, delimiter);
     }
     public static String byteArrayToHexString(byte[] bytes) {
-        return byteArrayToHexString(bytes, null);
+        return byteArrayToHexString(bytes, NO_DELIMITER);
     }
+    private static String byteArrayToHexString(byte[] bytes, char delimiter) {
+        final int len = hexLength(bytes.length, delimiter);
 
-    /** Convert the Omni flasher light command code byte to the device's appropriate BLE characteristic value.
-     * The returned value is a List of values, in case we need a multipart characteristic write (e.g. to make flash or something).
-     * We made it public, just in case the logic is desired elsewhere without needing to duplicate it, for code-maintainability. */
-    public static List<byte[]> convertCommandCodeToBleCharacteristicValueList(byte flasherLightCommandCode) {
-        final String TAGG = "convertCommandCodeToBleCharacteristicValueList("+String.valueOf(flasherLightCommandCode)+"): ";
-
-        List<byte[]> lightCommand = new ArrayList<>();
+        char[] buf = hexBuffer.get();
+        if (buf.length < len) {
+            buf = new char[Math.max(len, buf.length * 2)];
+            hexBuffer.set(buf);
+        }
 
-        byte[] lightCommandBase;
-        byte[] lightCommandAdditional = null;
+        encodeHex(bytes, delimiter, buf);
+        return new String(buf, 0, len);
+    }
 
-        try {
-            // Translate the signal-light command from message into a light controller command
-            if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_OFF) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_turnOff();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_RED_BRI) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_red(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_RED_MED) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMedBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_red());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_RED_DIM) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMinBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_red());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_GREEN_BRI) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_green(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_GREEN_MED) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMedBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_green());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_GREEN_DIM) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMinBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_green());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_BLUE_BRI) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_blue(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_BLUE_MED) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMedBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_blue());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_BLUE_DIM) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMinBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_blue());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_ORANGE_BRI) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_orange(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_ORANGE_MED) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMedBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_orange());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_ORANGE_DIM) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMinBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_orange());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PINK_BRI) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_pink(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PINK_MED) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMedBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_pink());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PINK_DIM) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMinBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_pink());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PURPLE_BRI) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_purple(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PURPLE_MED) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMedBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_purple());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_PURPLE_DIM) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMinBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_purple());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_YELLOW_BRI) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_yellow(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_YELLOW_MED) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMedBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_yellow());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_YELLOW_DIM) {
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMinBrightness(MainApplication.lightControllerDeviceModel.constructDataBytes_color_yellow());
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITECOOL_BRI
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEPURE_BRI
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEWARM_BRI) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_whiteMaxBrightnessSteady();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITECOOL_MED
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEPURE_MED
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEWARM_MED) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_whiteMedBrightness();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITECOOL_DIM
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEPURE_DIM
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_WHITEWARM_DIM) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_whiteMinBrightness();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_RED
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_RED) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_red(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_GREEN
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_GREEN) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_green(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_BLUE
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_BLUE) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_blue(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_ORANGE
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_ORANGE) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_orange(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_PINK
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_PINK) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_pink(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_PURPLE
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_PURPLE) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_purple(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_YELLOW
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_YELLOW) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_colorMaxBrightnessSteady(MainApplication.lightControllerDeviceModel.constructDataBytes_color_yellow(MainApplication.lightControllerDeviceModel.COLOR_BRIGHTNESS_MAX));
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
-            }
-            else if (flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITECOOL
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITECOOL
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITEPURE
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITEPURE
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FLASHING_WHITEWARM
-                    || flasherLightCommandCode == MainApplication.flasherLightOmniCommandCodes.CMD_LIGHT_FADING_WHITEWARM) {   //TODO: differentiate
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_whiteMaxBrightnessSteady();
-                lightCommandAdditional = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_flashingOn();
+    /** Append the bytes as hex (with the delimiter between them, unless it's 0) directly to the StringBuilder (no intermediate String). */
+    public static void appendHex(StringBuilder sb, @Nullable byte[] bytes, char delimiter) {
+        if (bytes == null) {
+            sb.append("null");
+            return;
+        }
+        for (int j = 0; j < bytes.length; j++) {
+            if (j > 0 && delimiter != NO_DELIMITER) {
+                sb.append(delimiter);
             }
-            else {
-                //default
-                lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_whiteRgbMinBrightness();
+            int v = bytes[j] & 0xFF;
+            sb.append(HEX_CHARS[v >>> 4]).append(HEX_CHARS[v & 0x0F]);
+        }
+    }
+
+    public static String byteToHexString(byte b) {
+        int v = b & 0xFF;
+        return new String(new char[]{HEX_CHARS[v >>> 4], HEX_CHARS[v & 0x0F]});
+    }
+
+    private static int hexLength(int byteCount, char delimiter) {
+        if (byteCount == 0) {
+            return 0;
+        }
+        return (byteCount * 2) + (delimiter != NO_DELIMITER ? byteCount - 1 : 0);
+    }
+
+    private static void encodeHex(byte[] bytes, char delimiter, char[] dst) {
+        int pos = 0;
+        for (int j = 0; j < bytes.length; j++) {
+            if (j > 0 && delimiter != NO_DELIMITER) {
+                dst[pos++] = delimiter;
             }
-        } catch (Exception e) {
-            Log.e(TAG, TAGG+"Exception caught: "+e.getMessage());
-            lightCommandBase = MainApplication.lightControllerDeviceModel.constructLightCommandByteSequence_whiteRgbMinBrightness();
+            int v = bytes[j] & 0xFF;
+            dst[pos++] = HEX_CHARS[v >>> 4];
+            dst[pos++] = HEX_CHARS[v & 0x0F];
         }
+    }
+
+    /** Convert the Omni flasher light command code byte to the device's appropriate BLE characteristic value.
+     * The returned value is a List of values, in case we need a multipart characteristic write (e.g. to make flash or something).
+     * We made it public, just in case the logic is desired elsewhere without needing to duplicate it, for code-maintainability.
+     * NOTE: This is a lookup in MainApplication's prebuilt LightCommandPayloadTable; the list and its arrays are shared, so don't modify them! */
+    public static List<byte[]> convertCommandCodeToBleCharacteristicValueList(byte flasherLightCommandCode) {
+        final String TAGG = "convertCommandCodeToBleCharacteristicValueList: ";
 
-        // Assemble the list of byte arrays
-        lightCommand.add(lightCommandBase);
-        if (lightCommandAdditional != null) {
-            lightCommand.add(lightCommandAdditional);
+        LightCommandPayloadTable lightCommandPayloadTable = MainApplication.lightCommandPayloadTable;
+        if (lightCommandPayloadTable == null) {
+            Log.w(TAG, TAGG+"Light command payload table not built yet (too early in startup?). Building it now.");
+            lightCommandPayloadTable = new LightCommandPayloadTable(MainApplication.lightControllerDeviceModel, MainApplication.flasherLightOmniCommandCodes, Constants.LOG_METHOD_LOGCAT);
+            MainApplication.lightCommandPayloadTable = lightCommandPayloadTable;
         }
 
-        Log.v(TAG, TAGG+"Returning: "+String.valueOf(lightCommand));
-        return lightCommand;
+        return lightCommandPayloadTable.get(flasherLightCommandCode);
     }
 
 }
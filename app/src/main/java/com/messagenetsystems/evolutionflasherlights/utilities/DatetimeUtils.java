@@ -9,14 +9,15 @@ package com.messagenetsystems.evolutionflasherlights.utilities;
  *  2020.05.24      Chris Rider     Added more methods to check for more time scales between two Dates.
  *  2020.05.27      Chris Rider     Added methods to convert various time units to milliseconds.
  *  2020.06.28      Chris Rider     Migrated over from main delivery app.
+ *  2026.10.16      agent           Added monotonic (elapsedRealtime) methods for timeouts, rate limits, and heartbeat checks.
  */
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -27,6 +28,8 @@ import java.util.Date;
 public class DatetimeUtils {
     private static final String TAG = DatetimeUtils.class.getSimpleName();
 
+    public static final long ELAPSED_NEVER = -1;                                    //elapsed-realtime value for "hasn't happened yet"
+
     // Logging stuff...
     public static final int LOG_METHOD_LOGCAT = 1;
     public static final int LOG_METHOD_FILELOGGER = 2;
@@ -354,6 +357,57 @@ public class DatetimeUtils {
     }
 
 
+    /*============================================================================================*/
+    /* Monotonic Methods
+     * For timeouts, rate limits, and heartbeat checks, use these instead of comparing Dates. They're based on the elapsed-realtime clock
+     * (milliseconds since boot, including deep sleep), which only ever moves forward at a steady rate, so they can't be thrown off when
+     * the wall clock gets adjusted (NTP, user, timezone). They take and return plain longs, so they never allocate.
+     * Only use wall clock time (Date, System.currentTimeMillis) for things people read, or that other apps send us. */
+
+    /** Now, on the elapsed-realtime clock (store this, rather than a Date, to time things from). */
+    public static long nowElapsedMS() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /** Milliseconds since the specified elapsed-realtime (Long.MAX_VALUE if it's ELAPSED_NEVER, i.e. forever ago). */
+    public static long msSince(final long sinceElapsedMS) {
+        if (sinceElapsedMS == ELAPSED_NEVER) {
+            return Long.MAX_VALUE;
+        }
+        return SystemClock.elapsedRealtime() - sinceElapsedMS;
+    }
+
+    /** Whether at least the specified milliseconds have passed since the specified elapsed-realtime (true if it's ELAPSED_NEVER). */
+    public static boolean hasElapsed(final long sinceElapsedMS, final long durationMS) {
+        return msSince(sinceElapsedMS) >= durationMS;
+    }
+
+    /** Whether the specified elapsed-realtime was within the last specified milliseconds (false if it's ELAPSED_NEVER). */
+    public static boolean isWithinMS(final long sinceElapsedMS, final long durationMS) {
+        return !hasElapsed(sinceElapsedMS, durationMS);
+    }
+
+    /** Elapsed-realtime deadline the specified milliseconds from now. */
+    public static long deadlineIn(final long durationMS) {
+        return SystemClock.elapsedRealtime() + durationMS;
+    }
+
+    /** Milliseconds until the specified elapsed-realtime deadline (0 if it's already passed). */
+    public static long msUntil(final long deadlineElapsedMS) {
+        return Math.max(0, deadlineElapsedMS - SystemClock.elapsedRealtime());
+    }
+
+    /** Whether the specified elapsed-realtime deadline has arrived. */
+    public static boolean hasDeadlinePassed(final long deadlineElapsedMS) {
+        return SystemClock.elapsedRealtime() >= deadlineElapsedMS;
+    }
+
+    /** Approximate wall clock time (ms since epoch) of the specified elapsed-realtime, for showing people (not for comparing!). */
+    public static long elapsedToWallMS(final long elapsedMS) {
+        return System.currentTimeMillis() - (SystemClock.elapsedRealtime() - elapsedMS);
+    }
+
+
     /*============================================================================================*/
     /* Logging Methods */
 
@@ -373,45 +427,6 @@ public class DatetimeUtils {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, logSeverity, tagg);
     }
 }
@@ -0,0 +1,377 @@
+package com.messagenetsystems.evolutionflasherlights.utilities;
+
+/* LogUtils
+ * Logging facade shared by everything: one minimum severity (checked before any formatting happens), and deferred
+ * formatting, so a message whose severity is filtered out costs nothing to not-log.
+ *
+ * Every class's private log(severity, tagg) returns immediately if isLoggable(severity) is false. That alone still pays for
+ * the caller's string concatenation though, so hot paths (e.g. the GATT callback) should use the template versions instead,
+ * which only format (on a reused, per-thread StringBuilder) if the message will actually be logged:
+ *
+ *  logV(TAGG, "Queueing [{}] to characteristic {}...", characteristicValue, gattCharacteristic.getUuid());
+ *
+ * Each "{}" in the template is replaced with the next argument. A byte[] argument is written as space-delimited hex.
+ * (Avoid passing primitives as arguments in hot paths, since they get boxed at the call site regardless.)
+ *
+ * File logging goes through AsyncFileLogger (once it's started), so it never waits on the filesystem; before that, FileLogger.
+ *
+ * Every class belongs to a subsystem (SUBSYSTEM_*), each of which can have its own minimum severity and/or log method at runtime
+ * (e.g. via LogControlReceiver), overriding the global minimum and the class's own log method. That way production can run at a
+ * low level and one subsystem can be turned up without restarting:
+ *
+ *  adb shell am broadcast -a com.messagenetsystems.evolutionflasherlights.intent.action.setLogConfig \
+ *      --es com.messagenetsystems.evolutionflasherlights.intent.extra.logSubsystem transport \
+ *      --es com.messagenetsystems.evolutionflasherlights.intent.extra.logLevel V
+ *
+ * Repetitive messages (e.g. loop banners) should go through a Sampler, which lets one through per sampling interval and counts
+ * the rest (the interval is also adjustable at runtime; zero lets everything through).
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created.
+ *  2026.10.16      agent           File logging goes through AsyncFileLogger when it's running.
+ *  2026.10.16      agent           Per-subsystem minimum severity and log method (adjustable at runtime), and Sampler for repetitive messages.
+ *  2026.10.16      agent           Sampler rate-limits on elapsed realtime (immune to wall-clock changes).
+ */
+
+import android.util.Log;
+
+import com.bosphere.filelogger.FL;
+import com.messagenetsystems.evolutionflasherlights.Constants;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+public class LogUtils {
+
+    // Severities (these match every class's LOG_SEVERITY_* values)...
+    public static final int SEVERITY_V = 1;
+    public static final int SEVERITY_D = 2;
+    public static final int SEVERITY_I = 3;
+    public static final int SEVERITY_W = 4;
+    public static final int SEVERITY_E = 5;
+
+    public static final int SEVERITY_INHERIT = 0;                                  //subsystem uses the global minimum severity
+    public static final int LOG_METHOD_INHERIT = 0;                                 //subsystem uses each class's own log method
+
+    // Subsystems (each class logs as one of these)...
+    public static final int SUBSYSTEM_APP = 0;                                      //application, services, activities, utilities
+    public static final int SUBSYSTEM_TRANSPORT = 1;                                //Bluetooth/GATT session, queue, callbacks, recovery
+    public static final int SUBSYSTEM_ENCODER = 2;                                  //device models, datagram/payload construction
+    public static final int SUBSYSTEM_RECEIVERS = 3;                                //broadcast receivers
+    public static final int SUBSYSTEM_THREADS = 4;                                  //long-running monitor/manager threads
+    private static final String[] SUBSYSTEM_NAMES = {"app", "transport", "encoder", "receivers", "threads"};
+    public static final int SUBSYSTEM_COUNT = SUBSYSTEM_NAMES.length;
+
+    private static final String PLACEHOLDER = "{}";
+    private static final int MAX_REUSED_BUILDER_CAPACITY = 4096;       //don't let one huge message pin memory forever
+
+    private static volatile int minSeverity = Constants.Configuration.App.LOG_VERBOSE ? SEVERITY_V : SEVERITY_D;
+    private static final AtomicIntegerArray subsystemMinSeverity = new AtomicIntegerArray(SUBSYSTEM_COUNT);   //SEVERITY_INHERIT unless overridden
+    private static final AtomicIntegerArray subsystemLogMethod = new AtomicIntegerArray(SUBSYSTEM_COUNT);     //LOG_METHOD_INHERIT unless overridden
+    private static volatile long sampleIntervalMs = Constants.Configuration.App.LOG_SAMPLE_INTERVAL_MS;
+
+    private static final ThreadLocal<StringBuilder> messageBuilder = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+
+    /*============================================================================================*/
+    /* Level Methods */
+
+    /** Whether a message of the specified severity would actually get logged (check this before building a message). */
+    public static boolean isLoggable(int severity) {
+        return severity >= minSeverity;
+    }
+
+    public static boolean isVerbose() {
+        return minSeverity <= SEVERITY_V;
+    }
+
+    public static int getMinSeverity() {
+        return minSeverity;
+    }
+
+    public static void setMinSeverity(int severity) {
+        minSeverity = clampSeverity(severity);
+    }
+
+    /** Whether a message of the specified severity, from the specified subsystem, would actually get logged. */
+    public static boolean isLoggable(int subsystem, int severity) {
+        return severity >= getEffectiveMinSeverity(subsystem);
+    }
+
+    public static boolean isVerbose(int subsystem) {
+        return getEffectiveMinSeverity(subsystem) <= SEVERITY_V;
+    }
+
+    /** The subsystem's own minimum severity if it has one, else the global one. */
+    public static int getEffectiveMinSeverity(int subsystem) {
+        int severity = subsystemMinSeverity.get(subsystem);
+        return severity == SEVERITY_INHERIT ? minSeverity : severity;
+    }
+
+    /** Override the subsystem's minimum severity (SEVERITY_INHERIT to go back to the global one). */
+    public static void setSubsystemMinSeverity(int subsystem, int severity) {
+        subsystemMinSeverity.set(subsystem, severity == SEVERITY_INHERIT ? SEVERITY_INHERIT : clampSeverity(severity));
+    }
+
+    /** Override the subsystem's log method (a Constants.LOG_METHOD_*, or LOG_METHOD_INHERIT to go back to each class's own). */
+    public static void setSubsystemLogMethod(int subsystem, int logMethod) {
+        subsystemLogMethod.set(subsystem, logMethod);
+    }
+
+    public static long getSampleIntervalMs() {
+        return sampleIntervalMs;
+    }
+
+    /** Set how often each Sampler lets a message through (zero or less lets every message through). */
+    public static void setSampleIntervalMs(long intervalMs) {
+        sampleIntervalMs = Math.max(0, intervalMs);
+    }
+
+    private static int clampSeverity(int severity) {
+        return Math.max(SEVERITY_V, Math.min(SEVERITY_E, severity));
+    }
+
+
+    /*============================================================================================*/
+    /* Parsing Methods (for control intents and config) */
+
+    /** Subsystem for the specified name (e.g. "transport"), or -1 if unknown. */
+    public static int parseSubsystem(String name) {
+        if (name == null) {
+            return -1;
+        }
+        String lowerName = name.trim().toLowerCase(Locale.US);
+        for (int i = 0; i < SUBSYSTEM_COUNT; i++) {
+            if (SUBSYSTEM_NAMES[i].equals(lowerName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static String getSubsystemName(int subsystem) {
+        return subsystem >= 0 && subsystem < SUBSYSTEM_COUNT ? SUBSYSTEM_NAMES[subsystem] : "?";
+    }
+
+    /** Severity for the specified name ("V".."E", or "verbose".."error", or "default" for SEVERITY_INHERIT), or -1 if unknown. */
+    public static int parseSeverity(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return -1;
+        }
+        String upperName = name.trim().toUpperCase(Locale.US);
+        if (upperName.equals("DEFAULT") || upperName.equals("INHERIT")) {
+            return SEVERITY_INHERIT;
+        }
+        switch (upperName.charAt(0)) {
+            case 'V': return SEVERITY_V;
+            case 'D': return SEVERITY_D;
+            case 'I': return SEVERITY_I;
+            case 'W': return SEVERITY_W;
+            case 'E': return SEVERITY_E;
+            default: return -1;
+        }
+    }
+
+    /** Log method for the specified name ("logcat", "file", or "default" for LOG_METHOD_INHERIT), or -1 if unknown. */
+    public static int parseLogMethod(String name) {
+        if (name == null) {
+            return -1;
+        }
+        String lowerName = name.trim().toLowerCase(Locale.US);
+        if (lowerName.equals("logcat")) {
+            return Constants.LOG_METHOD_LOGCAT;
+        } else if (lowerName.equals("file") || lowerName.equals("filelogger")) {
+            return Constants.LOG_METHOD_FILELOGGER;
+        } else if (lowerName.equals("default") || lowerName.equals("inherit")) {
+            return LOG_METHOD_INHERIT;
+        }
+        return -1;
+    }
+
+    /** Current settings, for logging/diagnostics (e.g. "min=D sample=60000ms app=- transport=V/file ..."). */
+    public static String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("min=").append(severityChar(minSeverity)).append(" sample=").append(sampleIntervalMs).append("ms");
+        for (int i = 0; i < SUBSYSTEM_COUNT; i++) {
+            int severity = subsystemMinSeverity.get(i);
+            int logMethod = subsystemLogMethod.get(i);
+            sb.append(' ').append(SUBSYSTEM_NAMES[i]).append('=').append(severity == SEVERITY_INHERIT ? '-' : severityChar(severity));
+            if (logMethod == Constants.LOG_METHOD_LOGCAT) {
+                sb.append("/logcat");
+            } else if (logMethod == Constants.LOG_METHOD_FILELOGGER) {
+                sb.append("/file");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static char severityChar(int severity) {
+        return "?VDIWE".charAt(severity >= SEVERITY_V && severity <= SEVERITY_E ? severity : 0);
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    /** Log an already-built message (if its severity passes), using the specified Constants.LOG_METHOD_*. */
+    public static void log(int logMethod, String tag, int severity, String msg) {
+        if (isLoggable(severity)) {
+            writeLog(logMethod, tag, severity, msg);
+        }
+    }
+
+    private static void writeLog(int logMethod, String tag, int severity, String msg) {
+        switch (logMethod) {
+            case Constants.LOG_METHOD_LOGCAT:
+                switch (severity) {
+                    case SEVERITY_V:
+                        Log.v(tag, msg);
+                        break;
+                    case SEVERITY_D:
+                        Log.d(tag, msg);
+                        break;
+                    case SEVERITY_I:
+                        Log.i(tag, msg);
+                        break;
+                    case SEVERITY_W:
+                        Log.w(tag, msg);
+                        break;
+                    case SEVERITY_E:
+                        Log.e(tag, msg);
+                        break;
+                }
+                break;
+            case Constants.LOG_METHOD_FILELOGGER:
+                if (AsyncFileLogger.isRunning()) {
+                    //echo to logcat (as FileLogger does), and hand off to the async writer rather than waiting on the file
+                    writeLog(Constants.LOG_METHOD_LOGCAT, tag, severity, msg);
+                    AsyncFileLogger.offer(severity, tag, msg);
+                    break;
+                }
+                switch (severity) {
+                    case SEVERITY_V:
+                        FL.v(tag, msg);
+                        break;
+                    case SEVERITY_D:
+                        FL.d(tag, msg);
+                        break;
+                    case SEVERITY_I:
+                        FL.i(tag, msg);
+                        break;
+                    case SEVERITY_W:
+                        FL.w(tag, msg);
+                        break;
+                    case SEVERITY_E:
+                        FL.e(tag, msg);
+                        break;
+                }
+                break;
+        }
+    }
+
+    /** Log an already-built message from the specified subsystem (if its severity passes that subsystem's minimum). */
+    public static void log(int subsystem, int logMethod, String tag, int severity, String msg) {
+        if (!isLoggable(subsystem, severity)) {
+            return;
+        }
+
+        int logMethodOverride = subsystemLogMethod.get(subsystem);
+        writeLog(logMethodOverride == LOG_METHOD_INHERIT ? logMethod : logMethodOverride, tag, severity, msg);
+    }
+
+    public static void log(int subsystem, int logMethod, String tag, int severity, String tagg, String template, Object arg1) {
+        if (isLoggable(subsystem, severity)) {
+            log(subsystem, logMethod, tag, severity, format(tagg, template, 1, arg1, null, null));
+        }
+    }
+
+    public static void log(int subsystem, int logMethod, String tag, int severity, String tagg, String template, Object arg1, Object arg2) {
+        if (isLoggable(subsystem, severity)) {
+            log(subsystem, logMethod, tag, severity, format(tagg, template, 2, arg1, arg2, null));
+        }
+    }
+
+    /*============================================================================================*/
+    /* Formatting Methods */
+
+    /** Build "tagg + template" with each "{}" replaced by the next of the (up to 3) arguments. */
+    public static String format(String tagg, String template, int argCount, Object arg1, Object arg2, Object arg3) {
+        StringBuilder sb = messageBuilder.get();
+        sb.setLength(0);
+        if (tagg != null) {
+            sb.append(tagg);
+        }
+
+        int argIndex = 0;
+        int from = 0;
+        int at;
+        while (argIndex < argCount && (at = template.indexOf(PLACEHOLDER, from)) >= 0) {
+            sb.append(template, from, at);
+            appendArg(sb, argIndex == 0 ? arg1 : (argIndex == 1 ? arg2 : arg3));
+            argIndex++;
+            from = at + PLACEHOLDER.length();
+        }
+        sb.append(template, from, template.length());
+
+        String ret = sb.toString();
+        if (sb.capacity() > MAX_REUSED_BUILDER_CAPACITY) {
+            messageBuilder.remove();
+        }
+        return ret;
+    }
+
+    private static void appendArg(StringBuilder sb, Object arg) {
+        if (arg instanceof byte[]) {
+            ConversionUtils.appendHex(sb, (byte[]) arg, ' ');
+        } else {
+            sb.append(arg);
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Subclasses */
+
+    /** Rate limiter for one repetitive message (e.g. a loop banner): lets one through per sampling interval, counting the rest.
+     *
+     *  if (bannerSampler.sample()) {
+     *      logV(TAGG+"---- Iteration #"+n+" ----"+bannerSampler.suppressedSuffix());
+     *  }
+     */
+    public static class Sampler {
+        private long lastPassedMs = Long.MIN_VALUE;
+        private int suppressedCount;
+        private int suppressedCountReported;
+
+        /** Whether this occurrence should be logged. Call this before building the message, so suppressed ones cost nothing. */
+        public synchronized boolean sample() {
+            final long intervalMs = sampleIntervalMs;
+            final long nowMs = DatetimeUtils.nowElapsedMS();
+            if (intervalMs <= 0 || lastPassedMs == Long.MIN_VALUE || nowMs - lastPassedMs >= intervalMs) {
+                lastPassedMs = nowMs;
+                suppressedCountReported = suppressedCount;
+                suppressedCount = 0;
+                return true;
+            }
+            suppressedCount++;
+            return false;
+        }
+
+        /** How many occurrences were suppressed before the one just let through. */
+        public synchronized int getSuppressedCount() {
+            return suppressedCountReported;
+        }
+
+        /** " (N similar suppressed)" for the one just let through, or empty if none were. */
+        public String suppressedSuffix() {
+            int count = getSuppressedCount();
+            return count == 0 ? "" : " ("+count+" similar suppressed)";
+        }
+    }
+}
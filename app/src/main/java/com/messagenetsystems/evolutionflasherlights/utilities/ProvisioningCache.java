@@ -0,0 +1,329 @@
+package com.messagenetsystems.evolutionflasherlights.utilities;
+
+/* ProvisioningCache
+ * In-process, cached reader for the device provisioning file (/sdcard/evoProvisionData.xml), so nothing has to fork a root
+ * shell and grep it every time it wants a provisioned value (like the light controller's MAC address).
+ *
+ * The file is parsed once (XmlPullParser) into an immutable Snapshot of its simple (leaf) elements, with typed getters for
+ * the ones we care about. The snapshot is invalidated by a FileObserver on the file's directory (so edits, replacements,
+ * and deletions are all seen), and, as a backstop for filesystems that don't deliver those events reliably, re-validated
+ * against the file's modification time and size at most once every REVALIDATE_INTERVAL_MS.
+ *
+ * Usage:
+ *  ProvisioningCache.startWatching();                                                      //once, at app startup
+ *  String mac = ProvisioningCache.getSnapshot().getLightControllerMacAddress();            //cheap; no I/O unless it changed
+ *  ProvisioningCache.setListener(listener);                                                //optional; told when the light controller MAC changes
+ *  ProvisioningCache.stopWatching();
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces su/grep of the provisioning file).
+ *  2026.10.16      agent           Revalidation interval uses DatetimeUtils monotonic helpers.
+ *  2026.10.16      agent           Reloads right away when the file changes, and tells a Listener when the light controller MAC changes.
+ */
+
+import android.os.FileObserver;
+import android.util.Xml;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+public class ProvisioningCache {
+    private static final String TAG = ProvisioningCache.class.getSimpleName();
+
+    // Provisioning file...
+    public static final String PROVISIONING_FILE_PATH = "/sdcard/evoProvisionData.xml";
+    public static final String KEY_LIGHT_CONTROLLER_MAC_ADDRESS = "lightControllerMacAddress";
+
+    // Configuration...
+    private static final long REVALIDATE_INTERVAL_MS = 60 * 1000;
+    private static final int WATCH_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.MOVED_FROM
+            | FileObserver.CREATE | FileObserver.DELETE;
+
+    private static final File provisioningFile = new File(PROVISIONING_FILE_PATH);
+
+    private static volatile Snapshot snapshot;                                      //null when it needs (re)loading
+    private static volatile long lastValidatedElapsedMS;
+    private static Snapshot lastLoaded;                                             //last snapshot loaded or written (survives invalidation, for change detection; guarded by the class)
+    private static FileObserver fileObserver;                                       //guarded by the class (and must stay referenced, or it stops)
+    private static volatile Listener listener;
+
+    // Logging stuff...
+    private static final int LOG_SEVERITY_V = 1;
+    private static final int LOG_SEVERITY_D = 2;
+    private static final int LOG_SEVERITY_I = 3;
+    private static final int LOG_SEVERITY_W = 4;
+    private static final int LOG_SEVERITY_E = 5;
+    private static final int logMethod = Constants.LOG_METHOD_FILELOGGER;
+
+
+    /*============================================================================================*/
+    /* Cache Methods */
+
+    /** The current provisioning snapshot (never null; if the file is missing or unreadable, its values are all null). */
+    public static Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && DatetimeUtils.isWithinMS(lastValidatedElapsedMS, REVALIDATE_INTERVAL_MS)) {
+            return current;
+        }
+        return loadIfChanged();
+    }
+
+    /** Forget the snapshot, so the next getSnapshot re-reads the file. */
+    public static void invalidate() {
+        snapshot = null;
+    }
+
+    /** Replace the snapshot with one that's known to match what's now in the file (e.g. after we wrote it ourselves). */
+    static synchronized void replaceSnapshot(Snapshot newSnapshot) {
+        snapshot = newSnapshot;
+        lastValidatedElapsedMS = DatetimeUtils.nowElapsedMS();
+        notifyIfMacAddressChanged(lastLoaded, newSnapshot);
+        lastLoaded = newSnapshot;
+    }
+
+    /** Start invalidating the snapshot whenever the provisioning file changes. */
+    public static synchronized void startWatching() {
+        final String TAGG = "startWatching: ";
+
+        if (fileObserver != null) {
+            return;
+        }
+
+        final String fileName = provisioningFile.getName();
+        fileObserver = new FileObserver(provisioningFile.getParent(), WATCH_EVENTS) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (fileName.equals(path)) {
+                    logD("onEvent: Provisioning file changed (event "+event+"), reloading snapshot.");
+                    invalidate();
+                    if (listener != null) {
+                        loadIfChanged();                                            //so the listener hears about it now, not on the next read
+                    }
+                }
+            }
+        };
+        fileObserver.startWatching();
+        logD(TAGG+"Watching "+PROVISIONING_FILE_PATH+" for changes.");
+    }
+
+    /** Be told when the provisioning file's light controller MAC address changes (null to stop). */
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    public static synchronized void stopWatching() {
+        if (fileObserver != null) {
+            fileObserver.stopWatching();
+            fileObserver = null;
+        }
+    }
+
+    /** Reload the snapshot, unless the file's modification time and size show it hasn't changed since we last did. */
+    private static synchronized Snapshot loadIfChanged() {
+        final String TAGG = "loadIfChanged: ";
+
+        final long lastModified = provisioningFile.lastModified();                  //0 if missing
+        final long length = provisioningFile.length();
+
+        Snapshot current = snapshot;
+        if (current != null && current.fileLastModified == lastModified && current.fileLength == length) {
+            lastValidatedElapsedMS = DatetimeUtils.nowElapsedMS();
+            return current;
+        }
+
+        Snapshot loaded = load(lastModified, length);
+        snapshot = loaded;
+        lastValidatedElapsedMS = DatetimeUtils.nowElapsedMS();
+        logI(TAGG+"Loaded provisioning snapshot: "+loaded.toString());
+        notifyIfMacAddressChanged(lastLoaded, loaded);
+        lastLoaded = loaded;
+        return loaded;
+    }
+
+    /** Tell the listener (if any) about a new light controller MAC address. */
+    private static void notifyIfMacAddressChanged(Snapshot previous, Snapshot current) {
+        final String TAGG = "notifyIfMacAddressChanged: ";
+
+        final Listener currentListener = listener;
+        if (currentListener == null || current == null) {
+            return;
+        }
+
+        final String previousMacAddress = previous == null ? null : previous.getLightControllerMacAddress();
+        final String currentMacAddress = current.getLightControllerMacAddress();
+        if (currentMacAddress == null || currentMacAddress.equalsIgnoreCase(previousMacAddress)) {
+            return;
+        }
+
+        logI(TAGG+"Light controller MAC address changed ("+previousMacAddress+" -> "+currentMacAddress+").");
+        try {
+            currentListener.onLightControllerMacAddressChanged(currentMacAddress);
+        } catch (Exception e) {
+            logE(TAGG+"Exception caught in listener: "+e.getMessage());
+        }
+    }
+
+    private static Snapshot load(long lastModified, long length) {
+        final String TAGG = "load: ";
+
+        if (lastModified == 0) {
+            logW(TAGG+"Provisioning file "+PROVISIONING_FILE_PATH+" not found.");
+            return new Snapshot(Collections.<String, String>emptyMap(), 0, 0, false);
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(provisioningFile);
+            return new Snapshot(parse(in), lastModified, length, true);
+        } catch (IOException e) {
+            logW(TAGG+"Could not read "+PROVISIONING_FILE_PATH+": "+e.getMessage());
+        } catch (XmlPullParserException e) {
+            logW(TAGG+"Could not parse "+PROVISIONING_FILE_PATH+": "+e.getMessage());
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    logW(TAGG+"Exception caught closing file: "+e.getMessage());
+                }
+            }
+        }
+
+        //remember which version of the file we failed on, so we don't keep re-trying it until it changes
+        return new Snapshot(Collections.<String, String>emptyMap(), lastModified, length, false);
+    }
+
+    /** Parse every simple (text-only) element's value, keyed by element name (if a name appears more than once, the last wins). */
+    static Map<String, String> parse(InputStream in) throws XmlPullParserException, IOException {
+        Map<String, String> values = new HashMap<String, String>();
+
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(in, null);
+
+        String elementName = null;
+        StringBuilder text = new StringBuilder();
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            switch (eventType) {
+                case XmlPullParser.START_TAG:
+                    elementName = parser.getName();
+                    text.setLength(0);
+                    break;
+                case XmlPullParser.TEXT:
+                    if (elementName != null) {
+                        text.append(parser.getText());
+                    }
+                    break;
+                case XmlPullParser.END_TAG:
+                    if (elementName != null && elementName.equals(parser.getName())) {
+                        values.put(elementName, text.toString().trim());
+                    }
+                    elementName = null;                                             //a parent's end tag isn't a leaf value
+                    break;
+            }
+            eventType = parser.next();
+        }
+
+        return values;
+    }
+
+
+    /*============================================================================================*/
+    /* Subclasses */
+
+    /** Told when the provisioning file's light controller MAC address changes (on whatever thread noticed it). */
+    public interface Listener {
+        void onLightControllerMacAddressChanged(String macAddress);
+    }
+
+    /** Immutable snapshot of the provisioning file's values. */
+    public static final class Snapshot {
+        private final Map<String, String> values;
+        private final long fileLastModified;
+        private final long fileLength;
+        private final boolean isLoaded;
+
+        Snapshot(Map<String, String> values, long fileLastModified, long fileLength, boolean isLoaded) {
+            this.values = Collections.unmodifiableMap(values);
+            this.fileLastModified = fileLastModified;
+            this.fileLength = fileLength;
+            this.isLoaded = isLoaded;
+        }
+
+        /** Whether the file was found and parsed. */
+        public boolean isLoaded() {
+            return isLoaded;
+        }
+
+        public String getLightControllerMacAddress() {
+            return getString(KEY_LIGHT_CONTROLLER_MAC_ADDRESS);
+        }
+
+        /** Value of the named element (null if there isn't one). */
+        public String getString(String key) {
+            return values.get(key);
+        }
+
+        public int getInt(String key, int defaultValue) {
+            String value = values.get(key);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        public boolean getBoolean(String key, boolean defaultValue) {
+            String value = values.get(key);
+            return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+        }
+
+        /** All values (read-only). */
+        public Map<String, String> getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return (isLoaded ? "" : "(not loaded) ")+values.size()+" values, "+KEY_LIGHT_CONTROLLER_MAC_ADDRESS+"="+getLightControllerMacAddress();
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private static void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private static void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private static void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private static void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private static void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private static void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, logSeverity, tagg);
+    }
+}
@@ -0,0 +1,196 @@
+package com.messagenetsystems.evolutionflasherlights.utilities;
+
+/* ProvisioningWriter
+ * In-process, atomic writer for the device provisioning file (see ProvisioningCache), replacing a root shell running sed -i.
+ *
+ * The document is read, the element's value replaced (everything else is left exactly as it was), and the result written
+ * to a temp file next to it, fsync'd, and renamed over the original. So any reader (us, or the other apps that share the
+ * file) sees either the old file or the new one, never a half-edited one. Once it's in place, ProvisioningCache's snapshot
+ * is replaced with the new values right away.
+ *
+ * Usage:
+ *  if (ProvisioningWriter.setLightControllerMacAddress("44:A6:E5:1A:21:7D")) { ... }
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces su/sed edit of the provisioning file).
+ */
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+public class ProvisioningWriter {
+    private static final String TAG = ProvisioningWriter.class.getSimpleName();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // Logging stuff...
+    private static final int LOG_SEVERITY_V = 1;
+    private static final int LOG_SEVERITY_D = 2;
+    private static final int LOG_SEVERITY_I = 3;
+    private static final int LOG_SEVERITY_W = 4;
+    private static final int LOG_SEVERITY_E = 5;
+    private static final int logMethod = Constants.LOG_METHOD_FILELOGGER;
+
+
+    /*============================================================================================*/
+    /* Writer Methods */
+
+    public static boolean setLightControllerMacAddress(String macAddress) {
+        return setValue(ProvisioningCache.KEY_LIGHT_CONTROLLER_MAC_ADDRESS, macAddress);
+    }
+
+    /** Replace the value of every <key>...</key> element in the provisioning file, atomically.
+     * @return Whether the file now has that value (false if it's missing, has no such element, or couldn't be written)
+     */
+    public static boolean setValue(String key, String value) {
+        final String TAGG = "setValue(\""+key+"\", \""+value+"\"): ";
+
+        if (key == null || value == null) {
+            logW(TAGG+"Key and value are required.");
+            return false;
+        }
+
+        final File file = new File(ProvisioningCache.PROVISIONING_FILE_PATH);
+        final File tempFile = new File(file.getParentFile(), "." + file.getName() + TEMP_FILE_SUFFIX);
+
+        synchronized (ProvisioningCache.class) {                                    //no snapshot (re)load while we swap the file
+            try {
+                // Read the current document and replace the element's value in it
+                final String document = new String(readFully(file), UTF8);
+                final Pattern pattern = Pattern.compile("(<" + Pattern.quote(key) + ">)[^<]*(</" + Pattern.quote(key) + ">)");
+                final Matcher matcher = pattern.matcher(document);
+                if (!matcher.find()) {
+                    logW(TAGG+"Provisioning file has no <"+key+"> element, nothing updated.");
+                    return false;
+                }
+                final String updatedDocument = matcher.replaceAll("$1" + Matcher.quoteReplacement(escapeXml(value)) + "$2");
+                final byte[] updatedBytes = updatedDocument.getBytes(UTF8);
+
+                if (updatedDocument.equals(document)) {
+                    logD(TAGG+"Provisioning file already has that value.");
+                    return true;
+                }
+
+                // Make sure what we're about to put in place actually parses, before putting it in place
+                ProvisioningCache.Snapshot updatedSnapshot = new ProvisioningCache.Snapshot(
+                        ProvisioningCache.parse(new ByteArrayInputStream(updatedBytes)), 0, 0, true);
+
+                // Write it to a temp file, get it onto storage, and swap it in
+                writeAndSync(tempFile, updatedBytes);
+                if (!tempFile.renameTo(file)) {
+                    logE(TAGG+"Could not rename "+tempFile+" to "+file+". Provisioning file is unchanged.");
+                    deleteQuietly(tempFile);
+                    return false;
+                }
+
+                // Our snapshot is now the file's (stamped with the new file's attributes, so revalidation sees no change)
+                ProvisioningCache.replaceSnapshot(new ProvisioningCache.Snapshot(updatedSnapshot.getValues(), file.lastModified(), file.length(), true));
+                logI(TAGG+"Provisioning file updated.");
+                return true;
+            } catch (IOException e) {
+                logE(TAGG+"Exception caught (provisioning file is unchanged): "+e.getMessage());
+            } catch (XmlPullParserException e) {
+                logE(TAGG+"Updated document would not parse (provisioning file is unchanged): "+e.getMessage());
+            }
+
+            deleteQuietly(tempFile);
+            return false;
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Utility Methods */
+
+    private static byte[] readFully(File file) throws IOException {
+        final long length = file.length();
+        if (length <= 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Unexpected size ("+length+") of "+file);
+        }
+
+        byte[] bytes = new byte[(int) length];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new IOException("File shrank while reading "+file);
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void writeAndSync(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, false);
+        try {
+            out.write(bytes);
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            logW("deleteQuietly: Could not delete "+file+".");
+        }
+    }
+
+    private static String escapeXml(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '&': sb.append("&amp;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\'': sb.append("&apos;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private static void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private static void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private static void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private static void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private static void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private static void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_APP, logMethod, TAG, logSeverity, tagg);
+    }
+}
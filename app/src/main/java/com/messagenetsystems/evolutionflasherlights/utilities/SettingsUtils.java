@@ -9,6 +9,9 @@ package com.messagenetsystems.evolutionflasherlights.utilities;
  * 2019.01.14   Chris Rider     Creation (copied from main app).
  * 2020.06.30   Chris Rider     Added method to write MAC address to provisioning file.
  * 2020.07.01   Chris Rider     Fixed bug in new method from yesterday.
+ * 2026.10.16   agent           Provisioning file MAC address now comes from ProvisioningCache (no more su/grep per call).
+ * 2026.10.16   agent           Provisioning file MAC address is now saved by ProvisioningWriter (atomic, in-process; no more su/sed).
+ * 2026.10.16   agent           Main app running check now comes from MainAppLiveness heartbeats (no more su/ps/grep per call).
  */
 
 import android.Manifest;
@@ -20,6 +23,8 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.util.Log;
 
+import com.messagenetsystems.evolutionflasherlights.models.MainAppLiveness;
+
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -217,74 +222,12 @@ public class SettingsUtils {
         return ret;
     }
 
+    /** Save the light controller MAC address to the provisioning file (in-process and atomic; see ProvisioningWriter). */
     public static boolean saveLightControllerMacAddressToProvFile(String macAddress) {
         final String TAGG = "saveLightControllerMacAddressToProvFile(\""+String.valueOf(macAddress)+"\"): ";
         Log.v(TAG, TAGG+"Invoked.");
 
-        boolean ret = true;
-
-        Process process = null;
-        OutputStream stdin;     //used to write commands to shell... using OutputStream type, we can execute commands like writing commands in terminal
-        InputStream stdout;     //used to read output of a command we executed... using InputStream type, we can input command's output to our routine here
-        InputStream stderr;     //used to read errors of a command we executed... using InputStream type, we can input command's errors to our routine here
-        BufferedReader br;
-        String line;
-
-        final String file = "/sdcard/evoProvisionData.xml";
-
-        try {
-            // Start a super-user process under which to execute our commands as root
-            Log.d(TAG, TAGG + "Starting super-user shell session...");
-            process = Runtime.getRuntime().exec("su");
-
-            // Get process streams
-            stdin = process.getOutputStream();
-            stdout = process.getInputStream();
-            stderr = process.getErrorStream();
-
-            // Construct and execute command (new-line is like hitting enter)
-            Log.d(TAG, TAGG + "Populating provisioning data file's MAC address...");
-            final String cmd = "/system/bin/sed -i -e 's|<lightControllerMacAddress>.\\{1,\\}</lightControllerMacAddress>|<lightControllerMacAddress>"+macAddress+"</lightControllerMacAddress>|' "+file+"\n";
-            Log.v(TAG, TAGG+"cmd = \""+String.valueOf(cmd)+"\"");
-            stdin.write(cmd.getBytes());
-
-            // Exit the shell
-            stdin.write(("exit\n").getBytes());
-
-            // Flush and close the stdin stream
-            stdin.flush();
-            stdin.close();
-
-            // Read output of the executed command
-            Log.v(TAG, TAGG+"Reading output of executed command (nothing if sed is successful)...");
-            br = new BufferedReader(new InputStreamReader(stdout));
-            while ((line = br.readLine()) != null) {
-                Log.v(TAG, TAGG+"stdout line: "+line);
-                //NOTE: we're looking for something like:
-                // <string name="flasherMacAddress">44:A6:E5:1D:FA:82</string>
-                if (line.contains("No such file or directory")) {
-                    Log.w(TAG, TAGG+"No such file or directory.");
-                    ret = false;
-                }
-            }
-            br.close();
-
-            // Read error stream of the executed command
-            Log.v(TAG, TAGG+"Reading errors of executed command...");
-            br = new BufferedReader(new InputStreamReader(stderr));
-            while ((line = br.readLine()) != null) {
-                Log.w(TAG, TAGG+"stderr line: "+line);
-                ret = false;
-            }
-            br.close();
-
-            // Wait for process to finish
-            process.waitFor();
-            process.destroy();
-        } catch (Exception e) {
-            Log.e(TAG, TAGG+"Exception caught: "+e.getMessage());
-            ret = false;
-        }
+        boolean ret = ProvisioningWriter.setLightControllerMacAddress(macAddress);
 
         Log.v(TAG, TAGG+"Returning "+String.valueOf(ret));
         return ret;
@@ -462,140 +405,22 @@ public class SettingsUtils {
         return ret;
     }
 
+    /** Light controller MAC address from the provisioning file (read in-process and cached; see ProvisioningCache). */
     public static String getProvFileFlasherLightControllerMacAddress() {
         final String TAGG = "getProvFileFlasherLightControllerMacAddress: ";
 
-        String ret = null;
-
-        Process process = null;
-        OutputStream stdin;     //used to write commands to shell... using OutputStream type, we can execute commands like writing commands in terminal
-        InputStream stdout;     //used to read output of a command we executed... using InputStream type, we can input command's output to our routine here
-        InputStream stderr;     //used to read errors of a command we executed... using InputStream type, we can input command's errors to our routine here
-        BufferedReader br;
-        String line;
-
-        final String file = "/sdcard/evoProvisionData.xml";
-
-        try {
-            // Start a super-user process under which to execute our commands as root
-            Log.d(TAG, TAGG + "Starting super-user shell session...");
-            process = Runtime.getRuntime().exec("su");
-
-            // Get process streams
-            stdin = process.getOutputStream();
-            stdout = process.getInputStream();
-            stderr = process.getErrorStream();
-
-            // Construct and execute command (new-line is like hitting enter)
-            Log.d(TAG, TAGG + "Looking in provisioning XML file for MAC address...");
-            stdin.write(("/system/bin/grep lightControllerMacAddress "+file+"\n").getBytes());
-
-            // Exit the shell
-            stdin.write(("exit\n").getBytes());
-
-            // Flush and close the stdin stream
-            stdin.flush();
-            stdin.close();
-
-            // Read output of the executed command
-            Log.v(TAG, TAGG+"Reading output of executed command...");
-            br = new BufferedReader(new InputStreamReader(stdout));
-            while ((line = br.readLine()) != null) {
-                Log.v(TAG, TAGG+"stdout line: "+line);
-                //NOTE: we're looking for something like:
-                // <lightControllerMacAddress>44:A6:E5:1A:21:7D</lightControllerMacAddress>
-                if (line.contains("lightControllerMacAddress")) {
-                    String str = line;          //str = <lightControllerMacAddress>44:A6:E5:1A:21:7D</lightControllerMacAddress>
-                    str = str.split(">")[1];    //str.split(">") = Element #1 of array ["<lightControllerMacAddress", "44:A6:E5:1A:21:7D</lightControllerMacAddress"]
-                    str = str.split("<")[0];    //str.split("<") = Element #0 of array ["44:A6:E5:1A:21:7D", "/lightControllerMacAddress"]
-                    ret = str;
-                } else if (line.contains("No such file or directory")) {
-                    Log.w(TAG, TAGG+"No such file or directory.");
-                } else {
-                    Log.w(TAG, TAGG+"Unhandled error.");
-                }
-            }
-            br.close();
-
-            // Read error stream of the executed command
-            Log.v(TAG, TAGG+"Reading errors of executed command...");
-            br = new BufferedReader(new InputStreamReader(stderr));
-            while ((line = br.readLine()) != null) {
-                Log.w(TAG, TAGG+"stderr line: "+line);
-            }
-            br.close();
-
-            // Wait for process to finish
-            process.waitFor();
-            process.destroy();
-        } catch (Exception e) {
-            Log.e(TAG, TAGG+"Exception caught: "+e.getMessage());
-        }
+        String ret = ProvisioningCache.getSnapshot().getLightControllerMacAddress();
 
         Log.v(TAG, TAGG+"Returning: "+String.valueOf(ret));
         return ret;
     }
 
-    /** Check if main app is running...
-     * Always assume it isn't so we set lights to non-obnoxious state. */
+    /** Check if main app is running (from its heartbeats; see MainAppLiveness)...
+     * Until we've heard a heartbeat (or once it's gone long enough without one), assume it isn't so we set lights to non-obnoxious state. */
     public static boolean isMainAppRunningOK() {
         final String TAGG = "isMainAppRunningOK: ";
 
-        boolean ret = false;
-        Process process = null;
-        OutputStream stdin;     //used to write commands to shell... using OutputStream type, we can execute commands like writing commands in terminal
-        InputStream stdout;     //used to read output of a command we executed... using InputStream type, we can input command's output to our routine here
-        InputStream stderr;     //used to read errors of a command we executed... using InputStream type, we can input command's errors to our routine here
-        BufferedReader br;
-        String line;
-
-        try {
-            // Start a super-user process under which to execute our commands as root
-            Log.d(TAG, TAGG + "Starting super-user shell session...");
-            process = Runtime.getRuntime().exec("su");
-
-            // Get process streams
-            stdin = process.getOutputStream();
-            stdout = process.getInputStream();
-            stderr = process.getErrorStream();
-
-            // Construct and execute command (new-line is like hitting enter)
-            Log.d(TAG, TAGG + "Using ps command to determine if app is running...");
-            stdin.write(("/system/bin/ps | /system/bin/grep -w com.messagenetsystems.evolution\n").getBytes());
-
-            // Exit the shell
-            stdin.write(("exit\n").getBytes());
-
-            // Flush and close the stdin stream
-            stdin.flush();
-            stdin.close();
-
-            // Read output of the executed command
-            Log.v(TAG, TAGG+"Reading output of executed command...");
-            br = new BufferedReader(new InputStreamReader(stdout));
-            while ((line = br.readLine()) != null) {
-                Log.v(TAG, TAGG+"stdout line: "+line);
-                if (line.contains("SyS_epoll_")) {
-                    ret = true;
-                }
-            }
-            br.close();
-
-            // Read error stream of the executed command
-            Log.v(TAG, TAGG+"Reading errors of executed command...");
-            br = new BufferedReader(new InputStreamReader(stderr));
-            while ((line = br.readLine()) != null) {
-                Log.w(TAG, TAGG+"stderr line: "+line);
-                ret = false;
-            }
-            br.close();
-
-            // Wait for process to finish
-            process.waitFor();
-            process.destroy();
-        } catch (Exception e) {
-            Log.e(TAG, TAGG+"Exception caught: "+e.getMessage());
-        }
+        boolean ret = MainAppLiveness.getVerdict() != MainAppLiveness.VERDICT_DEAD;
 
         Log.v(TAG, TAGG+"Returning "+String.valueOf(ret));
         return ret;
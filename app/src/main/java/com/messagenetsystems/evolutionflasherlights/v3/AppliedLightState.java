@@ -0,0 +1,92 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* AppliedLightState
+ * Compact record of the light command that was last successfully applied to a controller: its Omni command code, plus a
+ * 64-bit fingerprint (FNV-1a) of the whole payload sequence that was written for it.
+ *
+ * This is for repeat detection, which happens on every light command. Comparing a couple of primitives means no re-encoding,
+ * no hex strings, and no lists. The fingerprint covers every value in the sequence, so e.g. steady red and flashing red (which
+ * share the same base datagram) are never mistaken for each other, and a payload that changed (calibration) isn't either.
+ *
+ * Fingerprints for every command code are precomputed in LightCommandPayloadTable, so the hot path never hashes anything.
+ *
+ * Usage:
+ *  appliedLightState.record(code, payloadTable.getFingerprint(code));     //once the command's whole sequence is written
+ *  if (appliedLightState.isRepeat(code, payloadTable.getFingerprint(code))) { ...no need to send... }
+ *  appliedLightState.forget();                                             //when we can no longer vouch for it
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces hex-string comparison of re-encoded commands).
+ */
+
+import java.util.List;
+
+
+public class AppliedLightState {
+
+    private static final long FNV64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV64_PRIME = 0x100000001b3L;
+
+    private boolean isKnown;                                        //whether anything is recorded (nothing until the first successful write)
+    private byte code;                                              //Omni command code that was applied
+    private long fingerprint;                                       //fingerprint of the payload sequence that was written for it
+
+
+    /** Constructor */
+    public AppliedLightState() {
+        this.isKnown = false;
+    }
+
+
+    /*============================================================================================*/
+    /* State Methods */
+
+    /** Record that the specified command (with the specified payload fingerprint) was applied. */
+    public synchronized void record(byte flasherLightCommandCode, long payloadFingerprint) {
+        this.code = flasherLightCommandCode;
+        this.fingerprint = payloadFingerprint;
+        this.isKnown = true;
+    }
+
+    /** Whether the specified command (with the specified payload fingerprint) is exactly what was last applied. */
+    public synchronized boolean isRepeat(byte flasherLightCommandCode, long payloadFingerprint) {
+        return isKnown && code == flasherLightCommandCode && fingerprint == payloadFingerprint;
+    }
+
+    /** We can no longer vouch for what's applied (e.g. a write failed, or a different command started writing). */
+    public synchronized void forget() {
+        this.isKnown = false;
+    }
+
+    public synchronized boolean isKnown() {
+        return this.isKnown;
+    }
+
+
+    /*============================================================================================*/
+    /* Fingerprint Methods */
+
+    /** 64-bit FNV-1a fingerprint of a payload sequence (every value, in order, each one's length included so boundaries count). */
+    public static long fingerprint(List<byte[]> payloads) {
+        long hash = FNV64_OFFSET_BASIS;
+        for (int i = 0; i < payloads.size(); i++) {
+            hash = fingerprint(hash, payloads.get(i));
+        }
+        return hash;
+    }
+
+    /** 64-bit FNV-1a fingerprint of a single payload. */
+    public static long fingerprint(byte[] payload) {
+        return fingerprint(FNV64_OFFSET_BASIS, payload);
+    }
+
+    private static long fingerprint(long hash, byte[] payload) {
+        hash ^= payload.length;
+        hash *= FNV64_PRIME;
+        for (byte b : payload) {
+            hash ^= (b & 0xff);
+            hash *= FNV64_PRIME;
+        }
+        return hash;
+    }
+}
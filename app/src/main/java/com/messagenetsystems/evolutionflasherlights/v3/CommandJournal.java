@@ -0,0 +1,235 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* CommandJournal
+ * Compact binary journal of what happens to light commands: every command received, the repeat (dedupe) decision, submission
+ * to the GATT session, connection state transitions, writes started/completed/failed, link losses, and recovery steps.
+ * It's for production performance data and field diagnosis, at a fraction of the cost of verbose text logging.
+ *
+ * Each event is one fixed-size record (RECORD_SIZE bytes), stamped with the monotonic clock (elapsedRealtimeNanos), written into
+ * a memory-mapped file that's used as a ring (so its size never changes, and what's there survives the app being killed).
+ * Recording is just a handful of stores into the mapping: no allocation, no locks, no system calls (the kernel writes it out).
+ * Each process start gets its own file (journal_<yyyyMMdd_HHmmss>.bin, in the log directory); only the newest few are kept.
+ *
+ * File layout (big-endian):
+ *  Header (HEADER_SIZE bytes):
+ *   0  int    magic ("FLJ1")
+ *   4  short  version
+ *   6  short  record size
+ *   8  int    capacity (records)
+ *   12 int    (reserved)
+ *   16 long   wall clock ms when opened
+ *   24 long   monotonic ns when opened (so record times can be turned into wall clock times)
+ *  Records (capacity of them, used as a ring):
+ *   0  long   monotonic ns
+ *   8  int    sequence (1-based; 0 = never written; tells record order, and that a record wasn't torn, since it's written last)
+ *   12 byte   event type (EVENT_*)
+ *   13 byte   Omni command code (if any)
+ *   14 short  status (e.g. GATT status, from-state, accepted flag; depends on type)
+ *   16 int    aux (e.g. to-state, recovery step, superseding code; depends on type)
+ *   20 long   value (e.g. duration; depends on type)
+ *   28 int    (reserved)
+ *
+ * The companion JournalAnalyzer (tools/JournalAnalyzer.java, plain JVM) reads these files and reports per-phase latency
+ * percentiles, failure rates, and timelines.
+ *
+ * Usage:
+ *  CommandJournal.open(logDirectory);                                                  //once, at app startup
+ *  CommandJournal.record(CommandJournal.EVENT_WRITE_STARTED, code, 0, 0, 0);           //no-op if not open
+ *  CommandJournal.close();
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created.
+ */
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class CommandJournal {
+    private static final String TAG = CommandJournal.class.getSimpleName();
+
+    // Format...
+    public static final int MAGIC = 0x464c4a31;                                     //"FLJ1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 32;
+
+    // Event types (keep these in sync with tools/JournalAnalyzer.java)...
+    public static final int EVENT_COMMAND_RECEIVED = 1;                             //code; status = 1 if forced; value = duration (seconds)
+    public static final int EVENT_COMMAND_DEDUPED = 2;                              //code (controller already confirmed in that state, so not sent)
+    public static final int EVENT_COMMAND_SUBMITTED = 3;                            //code; status = 1 if the session accepted it, else 0
+    public static final int EVENT_COMMAND_SUPERSEDED = 4;                           //code that was still waiting; aux = code that replaced it
+    public static final int EVENT_STATE_TRANSITION = 5;                             //status = from-state; aux = to-state (ConnectionStateMachine.STATE_*)
+    public static final int EVENT_WRITE_STARTED = 6;                                //code
+    public static final int EVENT_WRITE_COMPLETED = 7;                              //code
+    public static final int EVENT_WRITE_FAILED = 8;                                 //code (if known); status = GATT status
+    public static final int EVENT_LINK_LOST = 9;                                    //status = GATT status
+    public static final int EVENT_RECOVERY = 10;                                    //status = failure status; aux = GattRecoveryController.STEP_*
+
+    // Configuration...
+    private static final int CAPACITY = 32 * 1024;                                  //records per file (1MB)
+    private static final int MAX_FILES_KEPT = 5;
+    private static final String FILE_PREFIX = "journal_";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private static volatile CommandJournal instance;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong nextSlot = new AtomicLong(0);
+
+
+    /** Constructor (use open) */
+    private CommandJournal(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+
+    /*============================================================================================*/
+    /* Lifecycle Methods */
+
+    /** Start a new journal file in the specified directory. Returns whether the journal is open. */
+    public static synchronized boolean open(File directory) {
+        final String TAGG = "open: ";
+
+        if (instance != null) {
+            return true;
+        }
+        if (directory == null || !(directory.isDirectory() || directory.mkdirs())) {
+            Log.e(TAG, TAGG+"Journal directory unavailable ("+directory+"), not journaling.");
+            return false;
+        }
+
+        deleteOldFiles(directory, MAX_FILES_KEPT - 1);
+
+        final long wallMS = System.currentTimeMillis();
+        final long monoNS = SystemClock.elapsedRealtimeNanos();
+        File file = new File(directory, FILE_PREFIX + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date(wallMS)) + FILE_SUFFIX);
+
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            final long length = HEADER_SIZE + (long) CAPACITY * RECORD_SIZE;
+            randomAccessFile.setLength(length);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, (short) VERSION);
+            buffer.putShort(6, (short) RECORD_SIZE);
+            buffer.putInt(8, CAPACITY);
+            buffer.putLong(16, wallMS);
+            buffer.putLong(24, monoNS);
+
+            instance = new CommandJournal(file, buffer);
+            Log.i(TAG, TAGG+"Journaling to \""+file+"\".");
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, TAGG+"Exception caught opening \""+file+"\" (not journaling): "+e.getMessage());
+            return false;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();                               //the mapping stays valid after the file is closed
+                } catch (IOException e) {
+                    Log.w(TAG, TAGG+"Exception caught closing file: "+e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Stop journaling (and ask for what's been recorded to be written out). */
+    public static synchronized void close() {
+        CommandJournal journal = instance;
+        if (journal == null) {
+            return;
+        }
+        instance = null;
+        journal.buffer.force();
+    }
+
+    public static boolean isOpen() {
+        return instance != null;
+    }
+
+    public static File getFile() {
+        CommandJournal journal = instance;
+        return journal == null ? null : journal.file;
+    }
+
+
+    /*============================================================================================*/
+    /* Recording Methods */
+
+    /** Record an event (see EVENT_* for what each field means for each type). Safe from any thread; never blocks. */
+    public static void record(int eventType, byte code, int status, int aux, long value) {
+        CommandJournal journal = instance;
+        if (journal == null) {
+            return;
+        }
+
+        final long slot = journal.nextSlot.getAndIncrement();
+        final int at = HEADER_SIZE + (int) (slot % CAPACITY) * RECORD_SIZE;
+        final ByteBuffer buffer = journal.buffer;
+
+        buffer.putInt(at + 8, 0);                                                   //mark torn until it's complete
+        buffer.putLong(at, SystemClock.elapsedRealtimeNanos());
+        buffer.put(at + 12, (byte) eventType);
+        buffer.put(at + 13, code);
+        buffer.putShort(at + 14, (short) status);
+        buffer.putInt(at + 16, aux);
+        buffer.putLong(at + 20, value);
+        buffer.putInt(at + 8, (int) (slot + 1));
+    }
+
+    public static void record(int eventType, byte code) {
+        record(eventType, code, 0, 0, 0);
+    }
+
+
+    /*============================================================================================*/
+    /* Utility Methods */
+
+    /** Delete all but the newest (keepCount) journal files in the directory. */
+    private static void deleteOldFiles(File directory, int keepCount) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        int count = 0;
+        for (File f : files) {
+            if (isJournalFile(f)) {
+                files[count++] = f;
+            }
+        }
+        if (count <= keepCount) {
+            return;
+        }
+
+        File[] journalFiles = Arrays.copyOf(files, count);
+        Arrays.sort(journalFiles);                                                  //names sort by date
+        for (int i = 0; i < count - Math.max(0, keepCount); i++) {
+            if (!journalFiles[i].delete()) {
+                Log.w(TAG, "deleteOldFiles: Could not delete \""+journalFiles[i].getName()+"\".");
+            }
+        }
+    }
+
+    private static boolean isJournalFile(File f) {
+        String name = f.getName();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+}
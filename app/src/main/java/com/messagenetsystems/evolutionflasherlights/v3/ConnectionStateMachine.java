@@ -0,0 +1,242 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* ConnectionStateMachine
+ * One explicit connection state for a light controller link, instead of a handful of volatile flags that get set from
+ * Binder threads, the main looper, and delayed runnables with no atomicity between them.
+ *
+ * States go: IDLE -> CONNECTING -> DISCOVERING -> AUTHENTICATING -> READY <-> WRITING, and -> DISCONNECTING -> IDLE.
+ * Normal transitions are compare-and-set (transition(from, to)), so two threads can never both think they started a
+ * connection, for example. Things that end a link no matter what (loss, close, timeout) use forceTo(), which always wins.
+ *
+ * Every transition is recorded in a small ring-buffer log (dumped to the log when something goes wrong), and we keep
+ * track of when the current state was entered, so a state that nobody moves us out of can be detected (isStuck) and cleared.
+ *
+ * Usage:
+ *  if (!stateMachine.transition(ConnectionStateMachine.STATE_IDLE, ConnectionStateMachine.STATE_CONNECTING, "connect")) return;
+ *  stateMachine.forceTo(ConnectionStateMachine.STATE_IDLE, "link lost");
+ *  if (stateMachine.isStuck(10000)) stateMachine.forceTo(ConnectionStateMachine.STATE_IDLE, "stuck");
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces scattered connection/command volatile flags).
+ *  2026.10.16      agent           Transitions are also recorded in the CommandJournal.
+ */
+
+import android.os.SystemClock;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ConnectionStateMachine {
+    private final String TAG = ConnectionStateMachine.class.getSimpleName();
+
+    // States...
+    public static final int STATE_IDLE = 0;                         //no link, and not trying to get one
+    public static final int STATE_CONNECTING = 1;                   //connectGatt issued, waiting for the connection
+    public static final int STATE_DISCOVERING = 2;                  //connected, resolving service & characteristics
+    public static final int STATE_AUTHENTICATING = 3;               //enabling notify, handshake, password
+    public static final int STATE_READY = 4;                        //link is usable, nothing being written
+    public static final int STATE_WRITING = 5;                      //a light command is being written
+    public static final int STATE_DISCONNECTING = 6;                //we've asked for the link to go away, waiting for it to
+
+    // Configuration...
+    private final int TRANSITION_LOG_SIZE = 32;
+
+    private final String name;
+    private final AtomicInteger state;
+    private volatile long stateEnteredElapsedMS;
+
+    // Transition log (ring buffer; guarded by this)...
+    private final long[] logElapsedMS;
+    private final int[] logFromState;
+    private final int[] logToState;
+    private final String[] logReason;
+    private int logNextIndex;
+    private long transitionCount;
+    private long rejectedTransitionCount;
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor
+     * @param name What this state machine is for (shows up in logs)
+     */
+    public ConnectionStateMachine(String name, int logMethod) {
+        this.logMethod = logMethod;
+        this.name = name;
+        this.state = new AtomicInteger(STATE_IDLE);
+        this.stateEnteredElapsedMS = SystemClock.elapsedRealtime();
+
+        this.logElapsedMS = new long[TRANSITION_LOG_SIZE];
+        this.logFromState = new int[TRANSITION_LOG_SIZE];
+        this.logToState = new int[TRANSITION_LOG_SIZE];
+        this.logReason = new String[TRANSITION_LOG_SIZE];
+        this.logNextIndex = 0;
+        this.transitionCount = 0;
+        this.rejectedTransitionCount = 0;
+    }
+
+
+    /*============================================================================================*/
+    /* Transition Methods */
+
+    /** Move from the specified state to another, but only if we're actually in that state right now (compare-and-set).
+     * @return Whether the transition happened
+     */
+    public boolean transition(int fromState, int toState, String reason) {
+        final String TAGG = "transition: ";
+
+        if (state.compareAndSet(fromState, toState)) {
+            onTransitioned(fromState, toState, reason);
+            return true;
+        }
+
+        synchronized (this) {
+            rejectedTransitionCount++;
+        }
+        if (LogUtils.isVerbose(LogUtils.SUBSYSTEM_TRANSPORT)) {
+            logV(TAGG+name+" rejected "+stateToString(fromState)+" -> "+stateToString(toState)+" ("+reason+"), actually "+stateToString(state.get())+".");
+        }
+        return false;
+    }
+
+    /** Move to the specified state no matter what state we're in (for things like link loss, that end everything).
+     * @return The state we were in
+     */
+    public int forceTo(int toState, String reason) {
+        int fromState = state.getAndSet(toState);
+        if (fromState != toState) {
+            onTransitioned(fromState, toState, reason);
+        }
+        return fromState;
+    }
+
+    private void onTransitioned(int fromState, int toState, String reason) {
+        final String TAGG = "onTransitioned: ";
+
+        stateEnteredElapsedMS = SystemClock.elapsedRealtime();
+
+        synchronized (this) {
+            logElapsedMS[logNextIndex] = stateEnteredElapsedMS;
+            logFromState[logNextIndex] = fromState;
+            logToState[logNextIndex] = toState;
+            logReason[logNextIndex] = reason;
+            logNextIndex = (logNextIndex + 1) % TRANSITION_LOG_SIZE;
+            transitionCount++;
+        }
+        CommandJournal.record(CommandJournal.EVENT_STATE_TRANSITION, (byte) 0, fromState, toState, 0);
+
+        logD(TAGG+name+" "+stateToString(fromState)+" -> "+stateToString(toState)+" ("+reason+").");
+    }
+
+
+    /*============================================================================================*/
+    /* State Query Methods */
+
+    public int get() {
+        return state.get();
+    }
+
+    public boolean is(int someState) {
+        return state.get() == someState;
+    }
+
+    public boolean isIdle() {
+        return state.get() == STATE_IDLE;
+    }
+
+    /** Whether the link is usable (whether or not something is being written right now). */
+    public boolean isLinkUp() {
+        int s = state.get();
+        return s == STATE_READY || s == STATE_WRITING;
+    }
+
+    /** Whether we're somewhere between starting a connection and it being usable. */
+    public boolean isEstablishing() {
+        int s = state.get();
+        return s == STATE_CONNECTING || s == STATE_DISCOVERING || s == STATE_AUTHENTICATING;
+    }
+
+    /** How long we've been in the current state. */
+    public long getTimeInStateMS() {
+        return SystemClock.elapsedRealtime() - stateEnteredElapsedMS;
+    }
+
+    /** Whether we've been sitting in a transient state (anything but IDLE or READY) for longer than we ever should. */
+    public boolean isStuck(long maxTimeInStateMS) {
+        int s = state.get();
+        return s != STATE_IDLE && s != STATE_READY && getTimeInStateMS() > maxTimeInStateMS;
+    }
+
+    /** Log the recent transitions (oldest first), e.g. when something went wrong. */
+    public void dumpTransitionLog(String why) {
+        final String TAGG = "dumpTransitionLog: ";
+        StringBuilder sb = new StringBuilder();
+        long nowMS = SystemClock.elapsedRealtime();
+
+        synchronized (this) {
+            sb.append(name).append(" transitions (").append(why).append("; ").append(transitionCount).append(" total, ")
+                    .append(rejectedTransitionCount).append(" rejected):");
+            for (int i = 0; i < TRANSITION_LOG_SIZE; i++) {
+                int idx = (logNextIndex + i) % TRANSITION_LOG_SIZE;
+                if (logReason[idx] == null) {
+                    continue;
+                }
+                sb.append("\n  -").append(nowMS - logElapsedMS[idx]).append("ms ")
+                        .append(stateToString(logFromState[idx])).append(" -> ").append(stateToString(logToState[idx]))
+                        .append(" (").append(logReason[idx]).append(")");
+            }
+        }
+
+        logI(TAGG+sb.toString());
+    }
+
+    public static String stateToString(int someState) {
+        switch (someState) {
+            case STATE_IDLE: return "IDLE";
+            case STATE_CONNECTING: return "CONNECTING";
+            case STATE_DISCOVERING: return "DISCOVERING";
+            case STATE_AUTHENTICATING: return "AUTHENTICATING";
+            case STATE_READY: return "READY";
+            case STATE_WRITING: return "WRITING";
+            case STATE_DISCONNECTING: return "DISCONNECTING";
+            default: return "UNKNOWN("+someState+")";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name+":"+stateToString(state.get());
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
+    }
+}
@@ -0,0 +1,149 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* ControllerStateEvent
+ * A notification from the light controller (char 1002), decoded into a typed state event.
+ *
+ * The controller reports its state using the same datagram framing we write to it (header, command, data...),
+ * so we decode it with the controller's datagram codec into power, colour, flash, white, or scene events. Anything we can't make sense of
+ * becomes an UNKNOWN event (still useful as a sign of life, but it says nothing about the applied state).
+ *
+ * To check it against what we wrote (see LightStateReconciler), the written datagram is decoded the same way and their modes and
+ * colours are compared. Brightness, speed, and tone aren't, and neither are the raw bytes, since nothing guarantees the controller
+ * reports back an exact echo of what it was sent.
+ *
+ * Usage:
+ *  ControllerStateEvent event = ControllerStateEvent.decode(lightControllerModel, characteristic.getValue());
+ *  if (event.isStateEvent()) { ...event.getType(), event.matches(writtenDatagram)... }
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (notifies were only being logged).
+ *  2026.10.16      agent           Decode with DatagramCodec_HY254117 (also fixes white brightness being read from the on/off byte).
+ *  2026.10.16      agent           matches compares decoded mode and colour instead of raw bytes; added isSameKindAs.
+ */
+
+import android.support.annotation.Nullable;
+
+import com.messagenetsystems.evolutionflasherlights.devices.BluetoothLightController_HY254117V9;
+import com.messagenetsystems.evolutionflasherlights.devices.DatagramCodec_HY254117;
+import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+
+import java.util.Arrays;
+
+
+public class ControllerStateEvent {
+
+    public static final int TYPE_UNKNOWN = DatagramCodec_HY254117.TYPE_UNKNOWN;
+    public static final int TYPE_POWER = DatagramCodec_HY254117.TYPE_POWER;        //data: on/off
+    public static final int TYPE_COLOR = DatagramCodec_HY254117.TYPE_COLOR;        //data: red, green, blue saturation, brightness-power, speed
+    public static final int TYPE_FLASH = DatagramCodec_HY254117.TYPE_FLASH;        //data: on/off
+    public static final int TYPE_WHITE = DatagramCodec_HY254117.TYPE_WHITE;        //data: on/off, brightness-power, tone
+    public static final int TYPE_SCENE = DatagramCodec_HY254117.TYPE_SCENE;        //data: scene number
+
+    private final int type;
+    private final byte[] raw;
+    private final DatagramCodec_HY254117.Datagram datagram;
+    private final DatagramCodec_HY254117 codec;                     //for decoding what we compare against
+
+
+    private ControllerStateEvent(byte[] raw, DatagramCodec_HY254117.Datagram datagram, DatagramCodec_HY254117 codec) {
+        this.type = datagram.type;
+        this.raw = raw;
+        this.datagram = datagram;
+        this.codec = codec;
+    }
+
+    /** Decode a notified value into a state event.
+     * @param model Light controller model (for its datagram constants)
+     * @param value Raw characteristic value that was notified (may be null)
+     * @return Decoded event (never null; TYPE_UNKNOWN if it couldn't be decoded)
+     */
+    public static ControllerStateEvent decode(BluetoothLightController_HY254117V9 model, @Nullable byte[] value) {
+        byte[] raw = (value == null) ? new byte[0] : Arrays.copyOf(value, value.length);
+        DatagramCodec_HY254117.Datagram datagram = new DatagramCodec_HY254117.Datagram();
+
+        model.getDatagramCodec().decode(raw, 0, raw.length, datagram);     //on failure, datagram.type is TYPE_UNKNOWN
+        return new ControllerStateEvent(raw, datagram, model.getDatagramCodec());
+    }
+
+    /** Whether this event actually tells us something about the applied state (as opposed to just being a sign of life). */
+    public boolean isStateEvent() {
+        return this.type != TYPE_UNKNOWN;
+    }
+
+    /** Whether this event reports the state the specified datagram sets (same kind, and same on/off, colour, or scene). */
+    public boolean matches(@Nullable byte[] datagram) {
+        if (!isStateEvent() || datagram == null) {
+            return false;
+        }
+
+        DatagramCodec_HY254117.Datagram written = new DatagramCodec_HY254117.Datagram();
+        if (!codec.decode(datagram, 0, datagram.length, written) || written.type != type) {
+            return false;
+        }
+
+        switch (type) {
+            case TYPE_POWER:
+            case TYPE_FLASH:
+            case TYPE_WHITE:
+                return written.isOn == this.datagram.isOn;
+            case TYPE_COLOR:
+                return written.red == this.datagram.red && written.green == this.datagram.green && written.blue == this.datagram.blue;
+            case TYPE_SCENE:
+                return written.scene == this.datagram.scene;
+            default:
+                return false;
+        }
+    }
+
+    /** Whether this event is the same kind of report as the specified datagram (so it can tell whether that state still holds). */
+    public boolean isSameKindAs(@Nullable byte[] datagram) {
+        return isStateEvent() && datagram != null && codec.peekType(datagram, 0, datagram.length) == type;
+    }
+
+    /** For power and flash events, whether it's on. */
+    public boolean isOn() {
+        return (type == TYPE_POWER || type == TYPE_FLASH) && datagram.isOn;
+    }
+
+    /** For colour events, the red/green/blue saturation bytes (0-255). */
+    public int getRed() {
+        return datagram.red;
+    }
+    public int getGreen() {
+        return datagram.green;
+    }
+    public int getBlue() {
+        return datagram.blue;
+    }
+
+    /** For colour and white events, the brightness-power byte (0-15). */
+    public int getBrightnessPower() {
+        return datagram.brightness;
+    }
+
+
+    /*============================================================================================*/
+    /* Getter & Setter Methods */
+
+    public int getType() {
+        return this.type;
+    }
+
+    public byte[] getRaw() {
+        return this.raw;
+    }
+
+    @Override
+    public String toString() {
+        final String typeStr;
+        switch (type) {
+            case TYPE_POWER: typeStr = "POWER"; break;
+            case TYPE_COLOR: typeStr = "COLOR"; break;
+            case TYPE_FLASH: typeStr = "FLASH"; break;
+            case TYPE_WHITE: typeStr = "WHITE"; break;
+            case TYPE_SCENE: typeStr = "SCENE"; break;
+            default: typeStr = "UNKNOWN"; break;
+        }
+        return typeStr+" ["+ConversionUtils.byteArrayToHexString(raw, " ")+"]";
+    }
+}
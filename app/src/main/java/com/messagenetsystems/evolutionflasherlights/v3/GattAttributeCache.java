@@ -0,0 +1,256 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* GattAttributeCache
+ * Remembers where the control service and its 1001/1002/1003 characteristics are for each light controller (keyed by MAC).
+ *
+ * Service discovery still has to run on every connection: a new BluetoothGatt client knows no services until it does, and
+ * the stack can only deliver callbacks for attributes it finds in that client's own list (it's cheap on a reconnect anyway,
+ * since the stack keeps its own attribute cache). What we skip is walking the discovered services comparing UUIDs, and
+ * doing that again for every single write.
+ *
+ * So entries only hold each attribute's UUID and instance ID, never the service/characteristic objects themselves (those
+ * belong to the client that discovered them). Every connection resolves them again, on its own client, after discovery.
+ * We only throw an entry away (and ask the stack to refresh its own cache) when a write actually comes back with an
+ * attribute error, or when the entry no longer resolves.
+ *
+ * Usage:
+ *  //after service discovery completes on this connection's client...
+ *  GattAttributeCache.Attributes attrs = GattAttributeCache.resolve(gatt, serviceUUID, char1001UUID, char1002UUID, char1003UUID);
+ *  if (attrs != null) gatt.writeCharacteristic(attrs.char1001);
+ *  if (GattAttributeCache.isAttributeError(status)) GattAttributeCache.invalidate(gatt);
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (reuse resolved attributes across connections instead of rediscovering).
+ *  2026.10.16      agent           Entries hold UUIDs and instance IDs (resolved again on each connection's client, after its
+ *                                  own discovery) instead of attribute objects from whichever client resolved them first.
+ */
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+
+public class GattAttributeCache {
+    private static final String TAG = GattAttributeCache.class.getSimpleName();
+
+    private static final HashMap<String, Entry> entriesByMac = new HashMap<String, Entry>();
+
+
+    /** Where our attributes are on one light controller (UUIDs and instance IDs only, so valid for any connection to it). */
+    public static class Entry {
+        public final String macAddress;
+        public final UUID serviceUUID;
+        public final int serviceInstanceId;
+        public final UUID char1001UUID;
+        public final int char1001InstanceId;
+        public final UUID char1002UUID;
+        public final int char1002InstanceId;
+        public final UUID char1003UUID;
+        public final int char1003InstanceId;
+
+        Entry(String macAddress, Attributes attributes) {
+            this.macAddress = macAddress;
+            this.serviceUUID = attributes.controlService.getUuid();
+            this.serviceInstanceId = attributes.controlService.getInstanceId();
+            this.char1001UUID = attributes.char1001.getUuid();
+            this.char1001InstanceId = attributes.char1001.getInstanceId();
+            this.char1002UUID = attributes.char1002.getUuid();
+            this.char1002InstanceId = attributes.char1002.getInstanceId();
+            this.char1003UUID = attributes.char1003.getUuid();
+            this.char1003InstanceId = attributes.char1003.getInstanceId();
+        }
+    }
+
+    /** Our attributes as resolved on one particular client (only use these with the client they were resolved on). */
+    public static class Attributes {
+        public final BluetoothGattService controlService;
+        public final BluetoothGattCharacteristic char1001;                  //primary light controls
+        public final BluetoothGattCharacteristic char1002;                  //notify
+        public final BluetoothGattCharacteristic char1003;                  //overhead (handshake, password, etc.)
+        public final boolean fromCache;                                     //whether they were found by a cached entry (rather than by searching)
+
+        Attributes(BluetoothGattService controlService, BluetoothGattCharacteristic char1001, BluetoothGattCharacteristic char1002, BluetoothGattCharacteristic char1003, boolean fromCache) {
+            this.controlService = controlService;
+            this.char1001 = char1001;
+            this.char1002 = char1002;
+            this.char1003 = char1003;
+            this.fromCache = fromCache;
+        }
+    }
+
+
+    /** Get the cached entry for the specified controller, or null if we don't have one. */
+    @Nullable
+    public static Entry get(@Nullable String macAddress) {
+        if (macAddress == null) {
+            return null;
+        }
+        synchronized (entriesByMac) {
+            return entriesByMac.get(macAddress.toUpperCase());
+        }
+    }
+
+    /** Resolve our attributes on a GATT client that has completed service discovery (on this connection).
+     * If we have an entry for the controller, its attributes are looked up by instance ID; otherwise (or if that no longer
+     * works out) they're searched for by UUID, and the result is cached for next time.
+     * @return Attributes resolved on this client, or null if the control service or any of its characteristics isn't there
+     */
+    @Nullable
+    public static Attributes resolve(BluetoothGatt gatt, UUID serviceUUID, UUID char1001UUID, UUID char1002UUID, UUID char1003UUID) {
+        final String TAGG = "resolve: ";
+
+        String mac = getMacAddress(gatt);
+        if (mac == null) {
+            Log.w(TAG, TAGG+"No MAC address available for GATT client, cannot resolve.");
+            return null;
+        }
+
+        try {
+            Entry entry = get(mac);
+            if (entry != null) {
+                Attributes attributes = resolveByEntry(gatt, entry);
+                if (attributes != null) {
+                    return attributes;
+                }
+                Log.d(TAG, TAGG+"Cached attributes for "+mac+" no longer resolve, searching instead.");
+                forget(gatt);
+            }
+
+            BluetoothGattService service = gatt.getService(serviceUUID);
+
+            // Some stacks won't hand it over directly, so fall back to searching everything that was discovered
+            if (service == null && gatt.getServices() != null) {
+                Log.d(TAG, TAGG+"Unable to directly get service "+serviceUUID.toString()+", searching all available services...");
+                for (BluetoothGattService gattService : gatt.getServices()) {
+                    if (serviceUUID.equals(gattService.getUuid())) {
+                        service = gattService;
+                        break;
+                    }
+                }
+            }
+
+            if (service == null) {
+                Log.w(TAG, TAGG+"Control service not found for "+mac+".");
+                return null;
+            }
+
+            BluetoothGattCharacteristic c1001 = service.getCharacteristic(char1001UUID);
+            BluetoothGattCharacteristic c1002 = service.getCharacteristic(char1002UUID);
+            BluetoothGattCharacteristic c1003 = service.getCharacteristic(char1003UUID);
+            if (c1001 == null || c1002 == null || c1003 == null) {
+                Log.w(TAG, TAGG+"Control service for "+mac+" is missing characteristic(s).");
+                return null;
+            }
+
+            Attributes attributes = new Attributes(service, c1001, c1002, c1003, false);
+            synchronized (entriesByMac) {
+                entriesByMac.put(mac, new Entry(mac, attributes));
+            }
+            Log.d(TAG, TAGG+"Cached attributes for "+mac+".");
+            return attributes;
+        } catch (Exception e) {
+            Log.e(TAG, TAGG+"Exception caught: "+e.getMessage());
+            return null;
+        }
+    }
+
+    /** Forget the cached entry for the controller behind the specified GATT client (without refreshing the stack's cache).
+     * Use this when cached attributes simply didn't work out on a connection, and you want the next one to search again. */
+    public static void forget(BluetoothGatt gatt) {
+        String mac = getMacAddress(gatt);
+        if (mac == null) {
+            return;
+        }
+        synchronized (entriesByMac) {
+            entriesByMac.remove(mac);
+        }
+    }
+
+    /** Forget the cached entry for the controller behind the specified GATT client, and refresh the stack's cache too.
+     * Only do this when a write has failed with an attribute error (see isAttributeError). */
+    public static void invalidate(BluetoothGatt gatt) {
+        final String TAGG = "invalidate: ";
+        Log.w(TAG, TAGG+"Invalidating cached attributes for "+getMacAddress(gatt)+".");
+
+        forget(gatt);
+        refreshDeviceCache(gatt);
+    }
+
+    /** Whether a GATT status means the attribute (handle) we used is no good, as opposed to a link or stack problem. */
+    public static boolean isAttributeError(int status) {
+        switch (status) {
+            case 0x01:                                              //GATT_INVALID_HANDLE
+            case BluetoothGatt.GATT_READ_NOT_PERMITTED:
+            case BluetoothGatt.GATT_WRITE_NOT_PERMITTED:
+            case BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED:
+            case BluetoothGatt.GATT_INVALID_OFFSET:
+            case 0x0a:                                              //GATT_NOT_FOUND (attribute not found)
+            case BluetoothGatt.GATT_INVALID_ATTRIBUTE_LENGTH:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Ask the Android stack to throw away its own cached attribute table for this client's device (hidden API, so via reflection). */
+    public static boolean refreshDeviceCache(BluetoothGatt gatt) {
+        final String TAGG = "refreshDeviceCache: ";
+
+        try {
+            Method localMethod = gatt.getClass().getMethod("refresh");
+            if (localMethod != null) {
+                return (Boolean) localMethod.invoke(gatt);
+            }
+        } catch (Exception localException) {
+            Log.d(TAG, TAGG+"Exception caught: "+localException.toString());
+        }
+        return false;
+    }
+
+    /** Look up a cached entry's attributes (by UUID and instance ID) among the client's discovered services, or null if any isn't there. */
+    @Nullable
+    private static Attributes resolveByEntry(BluetoothGatt gatt, Entry entry) {
+        List<BluetoothGattService> services = gatt.getServices();
+        if (services == null) {
+            return null;
+        }
+
+        for (BluetoothGattService service : services) {
+            if (service.getInstanceId() != entry.serviceInstanceId || !entry.serviceUUID.equals(service.getUuid())) {
+                continue;
+            }
+
+            BluetoothGattCharacteristic c1001 = null, c1002 = null, c1003 = null;
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                if (isAttribute(characteristic, entry.char1001UUID, entry.char1001InstanceId)) c1001 = characteristic;
+                else if (isAttribute(characteristic, entry.char1002UUID, entry.char1002InstanceId)) c1002 = characteristic;
+                else if (isAttribute(characteristic, entry.char1003UUID, entry.char1003InstanceId)) c1003 = characteristic;
+            }
+            if (c1001 == null || c1002 == null || c1003 == null) {
+                return null;
+            }
+            return new Attributes(service, c1001, c1002, c1003, true);
+        }
+        return null;
+    }
+
+    private static boolean isAttribute(BluetoothGattCharacteristic characteristic, UUID uuid, int instanceId) {
+        return characteristic.getInstanceId() == instanceId && uuid.equals(characteristic.getUuid());
+    }
+
+    @Nullable
+    private static String getMacAddress(BluetoothGatt gatt) {
+        try {
+            return gatt.getDevice().getAddress().toUpperCase();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -15,24 +15,40 @@ package com.messagenetsystems.evolutionflasherlights.v3;
  *
  * Revisions:
  *  2020.07.20      Chris Rider     Created.
+ *  2026.10.16      agent           Now owned by GattSessionManager_HY254117: link state is reported to the session instead of closing here,
+ *                                  and queued light command values are actually written to the device once authenticated.
+ *  2026.10.16      agent           All GATT operations now go through the session's GattOperationQueue (one outstanding op at a time,
+ *                                  completions driven from these callbacks), which also fixes the double service-discovery retry.
+ *  2026.10.16      agent           Colour/brightness/flash datagrams are written without response (paced) once the link is known-good.
+ *                                  The first light write after each (re)connect, and safety-critical commands, stay acknowledged.
+ *  2026.10.16      agent           Resolved service/characteristics come from GattAttributeCache, so reconnects to a known controller skip discovery.
+ *  2026.10.16      agent           Notifies on char 1002 are decoded (ControllerStateEvent) and passed to the session as state confirmation.
+ *  2026.10.16      agent           Authentication (notify, handshake, password) is tracked as explicit per-connection state: it runs once
+ *                                  per connection, light commands are refused until it completes, and only a disconnect resets it.
+ *  2026.10.16      agent           Discovery and authentication progress is reported to the session's ConnectionStateMachine.
+ *  2026.10.16      agent           Verbose logging on the write/notify hot path is deferred (nothing is formatted unless verbose is on).
+ *  2026.10.16      agent           Controller MAC address comes from ProvisioningCache (no root shell per instantiation).
+ *  2026.10.16      agent           Services are discovered on every connection again (a new client's attributes are unknown to the stack
+ *                                  until it discovers); cached instance IDs now only spare searching the discovered services.
+ *  2026.10.16      agent           Connection state changes are handled on the session thread (like every other per-connection step),
+ *                                  instead of on the Binder thread, and the connection priority request goes through the operation queue.
+ *  2026.10.16      agent           Removed the unused controller MAC address field (the session knows which controller it talks to).
  */
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.os.Handler;
-import android.util.Log;
 
-import com.bosphere.filelogger.FL;
 import com.messagenetsystems.evolutionflasherlights.Constants;
-import com.messagenetsystems.evolutionflasherlights.devices.BluetoothLightController_REDACTED;
+import com.messagenetsystems.evolutionflasherlights.MainApplication;
+import com.messagenetsystems.evolutionflasherlights.devices.BluetoothLightController_HY254117V9;
+import com.messagenetsystems.evolutionflasherlights.devices.DatagramCodec_HY254117;
 import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
-import com.messagenetsystems.evolutionflasherlights.utilities.SettingsUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -46,8 +62,20 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
     private final int MAX_RETRIES_SERVICE_DISCOVERY = 3;
     private final int RETRY_INTERVAL_MS_SERVICE_DISCOVERY = 100;
 
+    // Authentication states (one pass per connection; only a disconnect puts us back to NONE)...
+    public static final int AUTH_STATE_NONE = 0;                    //not connected, or connected and not started yet
+    public static final int AUTH_STATE_DISCOVERING = 1;             //resolving service & characteristics
+    public static final int AUTH_STATE_ENABLING_NOTIFY = 2;
+    public static final int AUTH_STATE_HANDSHAKING = 3;
+    public static final int AUTH_STATE_SENDING_PASSWORD = 4;
+    public static final int AUTH_STATE_AUTHENTICATED = 5;           //ok to stream light commands
+
 
     // Local stuff...
+    private GattSessionManager_HY254117 sessionManager;
+    private GattOperationQueue gattOperationQueue;
+    private ConnectionStateMachine connectionState;
+    private final Handler sessionHandler;                           //per-connection state is only touched on this (session) thread
     private BluetoothLightController_HY254117V9 lightControllerModel;
 
     private UUID uuid_service;
@@ -55,13 +83,23 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
 
     private byte[] charValue_handshake, charValue_password;
 
-    private String lightControllerMAC;
-
     private int retryCount_serviceDiscovery;
     private boolean retryIsUnderway_serviceDiscovery;
 
     private byte flasherLightCodeToDo;
     private List<byte[]> characteristicValuesToWrite;
+    private int characteristicIndexToWrite;
+
+    private volatile int authState;                                 //where this connection is in the authentication routine (AUTH_STATE_*)
+    private boolean isLinkKnownGood;                                //an acknowledged light write has succeeded on this connection
+
+    private GattAttributeCache.Attributes attributes;               //service & characteristics, resolved on this connection's client
+
+    private final GattOperationQueue.OnCompleteListener discoverServicesListener;
+    private final GattOperationQueue.OnCompleteListener enableNotifyListener;
+    private final GattOperationQueue.OnCompleteListener handshakeListener;
+    private final GattOperationQueue.OnCompleteListener passwordListener;
+    private final GattOperationQueue.OnCompleteListener lightCommandValueListener;
 
 
     // Logging stuff...
@@ -74,8 +112,12 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
 
 
     /** Constructor */
-    public GattCallback_HY254117(int logMethod) {
+    public GattCallback_HY254117(int logMethod, GattSessionManager_HY254117 sessionManager) {
         this.logMethod = logMethod;
+        this.sessionManager = sessionManager;
+        this.gattOperationQueue = sessionManager.getGattOperationQueue();
+        this.connectionState = sessionManager.getConnectionState();
+        this.sessionHandler = sessionManager.getSessionHandler();
 
         lightControllerModel = new BluetoothLightController_HY254117V9(logMethod);
 
@@ -87,10 +129,47 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
         charValue_handshake = lightControllerModel.CHARACTERISTIC_VALUE_BYTES_HANDSHAKE;
         charValue_password = lightControllerModel.CHARACTERISTIC_VALUE_BYTES_PASSWORD_000000;
 
-        lightControllerMAC = SettingsUtils.getProvFileFlasherLightControllerMacAddress();
-
         retryCount_serviceDiscovery = 0;
         retryIsUnderway_serviceDiscovery = false;
+
+        characteristicIndexToWrite = 0;
+        authState = AUTH_STATE_NONE;
+        isLinkKnownGood = false;
+
+        discoverServicesListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                onDiscoverServicesComplete(op, status);
+            }
+        };
+
+        enableNotifyListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                onEnableNotifyComplete(op, status);
+            }
+        };
+
+        handshakeListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                onHandshakeComplete(op, status);
+            }
+        };
+
+        passwordListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                onPasswordComplete(op, status);
+            }
+        };
+
+        lightCommandValueListener = new GattOperationQueue.OnCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationQueue.Operation op, int status) {
+                onLightCommandValueComplete(op, status);
+            }
+        };
     }
 
     /** Cleanup */
@@ -98,27 +177,71 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
         if (lightControllerModel != null) {
             lightControllerModel = null;
         }
+
+        sessionManager = null;
+        gattOperationQueue = null;
+    }
+
+    /** Reset per-connection state. The session calls this before each (re)connect. */
+    void resetForNewConnection() {
+        retryCount_serviceDiscovery = 0;
+        retryIsUnderway_serviceDiscovery = false;
+        characteristicValuesToWrite = null;
+        characteristicIndexToWrite = 0;
+        authState = AUTH_STATE_NONE;
+        isLinkKnownGood = false;
+        attributes = null;
     }
 
     /*============================================================================================*/
     /* BluetoothGattCallback methods */
 
     @Override
-    public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+    public void onConnectionStateChange(final BluetoothGatt gatt, final int status, final int newState) {
         super.onConnectionStateChange(gatt, status, newState);
         final String TAGG = "onConnectionStateChange: ";
 
+        // We're on a Binder thread here, so hand it to the session thread, where the queue listeners touch the same per-connection state
+        boolean isPosted = sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                handleConnectionStateChange(gatt, status, newState);
+            }
+        });
+        if (!isPosted) {
+            logW(TAGG+"Session thread is gone (status "+status+", new state "+newState+"). Closing client.");
+            gatt.close();
+        }
+    }
+
+    /** Connection state changed (runs on the session thread). */
+    private void handleConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+        final String TAGG = "handleConnectionStateChange: ";
+
+        if (gattOperationQueue == null) {
+            // We've been cleaned up (session shut down), so there's nobody to connect for or report to
+            logW(TAGG+"Connection state changed after cleanup (status "+status+", new state "+newState+"). Closing client.");
+            gatt.close();
+            return;
+        }
+
         if (status == GATT_SUCCESS) {
             if (newState == BluetoothProfile.STATE_CONNECTED) {
-                logI(TAGG + "Connected. Proceeding with connection routine...");
-                if (!gatt.discoverServices()) {
-                    logE(TAGG+"discoverServices failed to start. Closing GATT connection.");
-                    gatt.close();
+                if (authState != AUTH_STATE_NONE) {
+                    // Some stacks report the same connection more than once; authentication only ever runs once per connection
+                    logW(TAGG + "Connected again, but authentication is already underway or done for this connection (state "+authState+"). Ignoring.");
+                    return;
                 }
+
+                // Always discover, even for a known controller: this client's service list is empty until we do (GattAttributeCache only saves searching it)
+                logI(TAGG + "Connected. Proceeding with connection routine...");
+                authState = AUTH_STATE_DISCOVERING;
+                connectionState.transition(ConnectionStateMachine.STATE_CONNECTING, ConnectionStateMachine.STATE_DISCOVERING, "connected");
+                gattOperationQueue.enqueue(GattOperationQueue.Operation.discoverServices(gatt, 0, discoverServicesListener));
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                // We successfully disconnected on our own request
-                logI(TAGG + "Disconnected. Closing GATT connection.");
-                gatt.close();
+                // We successfully disconnected (either on our own request, or the link went away cleanly)
+                logI(TAGG + "Disconnected. Letting session know.");
+                onLinkLost(gatt, status);
             }
         } else {
             // An error happened... figure it out
@@ -126,94 +249,41 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
                 // GATT_CONN_TERMINATE_PEER_USER
                 // The device disconnected itself on purpose.
                 // For example, all data has been transferred and there is nothing else to do.
-                logE(TAGG+"Device has disconnected itself on purpose. Closing GATT connection.");
-                gatt.close();
+                logE(TAGG+"Device has disconnected itself on purpose. Letting session know.");
+                onLinkLost(gatt, status);
             } else if (status == 8) {
                 // GATT_CONN_TIMEOUT
                 // The connection timed out and device disconnected itself.
-                logE(TAGG+"Connection timed-out and device disconnected itself. Closing GATT connection.");
-                gatt.close();
+                logE(TAGG+"Connection timed-out and device disconnected itself. Letting session know.");
+                onLinkLost(gatt, status);
             } else if (status == 133) {
                 // GATT_ERROR (this really means nothing, thanks to Android's poor implementation)
                 // There was a low-level error in the communication which led to loss of connection.
-                logE(TAGG+"Status 133 (low-level error / loss of connection / failure to connect). Closing GATT connection.");
-                gatt.close();
+                logE(TAGG+"Status 133 (low-level error / loss of connection / failure to connect). Letting session know.");
+                onLinkLost(gatt, status);
             } else {
-                logE(TAGG + "An error (status "+status+") occurred. Closing GATT connection.");
-                gatt.close();
+                logE(TAGG + "An error (status "+status+") occurred. Letting session know.");
+                onLinkLost(gatt, status);
             }
         }
     }
 
     @Override
-    public void onServicesDiscovered(final BluetoothGatt gatt, int status) {
+    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
         super.onServicesDiscovered(gatt, status);
-        final String TAGG = "onServicesDiscovered: ";
-
-        if (status == BluetoothGatt.GATT_SUCCESS) {
-            // Set high priority connection
-            gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
-
-            // Get the service we care about
-            BluetoothGattService service = gatt.getService(uuid_service);
-
-            // Check if we got it, and do anything to retry or whatever, if not. If no beans, disconnect and abort.
-            if (service == null) {
-                if (retryCount_serviceDiscovery < MAX_RETRIES_SERVICE_DISCOVERY) {
-                    // Retry service discovery
-                    retryCount_serviceDiscovery++;
-                    new Handler().postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (!gatt.discoverServices()) {
-                                logE(TAGG+"discoverServices failed to start.");
-                            }
-                        }
-                    }, RETRY_INTERVAL_MS_SERVICE_DISCOVERY);
-                    gatt.discoverServices();
-                } else {
-                    // Max retries reached, give up
-                    logE(TAGG+"Service not found after "+retryCount_serviceDiscovery+" attempts! Disconnecting and aborting.");
-                    retryCount_serviceDiscovery = 0;
-                    gatt.disconnect();
-                }
-                return;
-            }
-
-            // If we got here, then we should be good to go!
-            // We assume that all subsequent service acquisitions from here on will succeed (so no further retries necessary).
-
-            // Enable notify
-            // NOTE: This should result in the invocation of "onDescriptorWrite" where you may continue with handshake!
-            enableNotify(gatt);
-        } else {
-            logE(TAGG+"Non-success GATT status, disconnecting...");
-            gatt.disconnect();
-        }
+        gattOperationQueue.onServicesDiscovered(gatt, status);
     }
 
     @Override
     public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
         super.onCharacteristicRead(gatt, characteristic, status);
+        gattOperationQueue.onCharacteristicRead(gatt, characteristic, status);
     }
 
     @Override
     public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
         super.onCharacteristicWrite(gatt, characteristic, status);
-        final String TAGG = "onCharacteristicWrite: ";
-
-        if (status == BluetoothGatt.GATT_SUCCESS) {
-            if (Arrays.equals(characteristic.getValue(), charValue_handshake)) {
-                logV(TAGG + "Handshake successfully sent to device. Sending password...");
-                sendCharacteristicValue(gatt, uuid_service, uuid_char1003, charValue_password);
-            } else if (Arrays.equals(characteristic.getValue(), charValue_password)) {
-                logV(TAGG + "Password successfully sent to device.");
-            } else {
-                logV(TAGG + "Characteristic value successfully sent to device: \"" + ConversionUtils.byteArrayToHexString(characteristic.getValue(), " ") + "\".");
-            }
-        } else {
-            logE(TAGG+"Non-success GATT status.");
-        }
+        gattOperationQueue.onCharacteristicWrite(gatt, characteristic, status);
     }
 
     @Override
@@ -221,7 +291,13 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
         super.onCharacteristicChanged(gatt, characteristic);
         final String TAGG = "onCharacteristicChanged: ";
 
-        logV(TAGG+"Characteristic changed: "+characteristic.getUuid().toString()+" ["+ConversionUtils.byteArrayToHexString(characteristic.getValue(), " ")+"]");
+        logV(TAGG, "Characteristic changed: {} [{}]", characteristic.getUuid(), characteristic.getValue());
+
+        if (uuid_char1002.equals(characteristic.getUuid()) && sessionManager != null) {
+            ControllerStateEvent event = ControllerStateEvent.decode(lightControllerModel, characteristic.getValue());
+            logV(TAGG, "Controller reported: {}", event);
+            sessionManager.onControllerStateEvent(gatt, event);
+        }
     }
 
     @Override
@@ -232,15 +308,7 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
     @Override
     public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
         super.onDescriptorWrite(gatt, descriptor, status);
-        final String TAGG = "onDescriptorWrite: ";
-
-        if (status == BluetoothGatt.GATT_SUCCESS) {
-            // Send handshake signal
-            // NOTE: This should result in the invocation of "onCharacteristicWrite" where you may continue
-            sendCharacteristicValue(gatt, uuid_service, uuid_char1003, charValue_handshake);
-        } else {
-            logE(TAGG+"Non-success GATT status.");
-        }
+        gattOperationQueue.onDescriptorWrite(gatt, descriptor, status);
     }
 
     @Override
@@ -269,18 +337,161 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
     }
 
 
+    /*============================================================================================*/
+    /* Connection routine (GattOperationQueue listeners; these run on the session thread) */
+
+    private void onDiscoverServicesComplete(GattOperationQueue.Operation op, int status) {
+        final String TAGG = "onDiscoverServicesComplete: ";
+        BluetoothGatt gatt = op.gatt;
+
+        if (status != GATT_SUCCESS) {
+            logE(TAGG+"Non-success status ("+status+"), disconnecting...");
+            gatt.disconnect();
+            return;
+        }
+
+        // Resolve the service and characteristics we care about on this client (by cached instance IDs if we've seen this controller), and retry if not there. If no beans, disconnect and abort.
+        attributes = GattAttributeCache.resolve(gatt, uuid_service, uuid_char1001, uuid_char1002, uuid_char1003);
+        if (attributes == null) {
+            if (retryCount_serviceDiscovery < MAX_RETRIES_SERVICE_DISCOVERY) {
+                retryCount_serviceDiscovery++;
+                logW(TAGG+"Service not found, retrying discovery (retry #"+retryCount_serviceDiscovery+")...");
+                gattOperationQueue.enqueue(GattOperationQueue.Operation.discoverServices(gatt, RETRY_INTERVAL_MS_SERVICE_DISCOVERY, discoverServicesListener));
+            } else {
+                logE(TAGG+"Service not found after "+retryCount_serviceDiscovery+" retries! Disconnecting and aborting.");
+                retryCount_serviceDiscovery = 0;
+                gatt.disconnect();
+            }
+            return;
+        }
+
+        // If we got here, then we should be good to go!
+        // Set high priority connection (queued, so it can't land in the middle of another operation)
+        gattOperationQueue.enqueue(GattOperationQueue.Operation.requestConnectionPriority(gatt, BluetoothGatt.CONNECTION_PRIORITY_HIGH, null));
+
+        // Enable notify, which (once done) continues with the handshake
+        authState = AUTH_STATE_ENABLING_NOTIFY;
+        if (!enableNotify(gatt)) {
+            gatt.disconnect();
+        }
+    }
+
+    private void onEnableNotifyComplete(GattOperationQueue.Operation op, int status) {
+        final String TAGG = "onEnableNotifyComplete: ";
+
+        if (status != GATT_SUCCESS) {
+            onSetupOperationFailed(op, status);
+            return;
+        }
+
+        // Send handshake signal (must happen within 5 seconds of connecting)
+        authState = AUTH_STATE_HANDSHAKING;
+        if (!sendCharacteristicValue(op.gatt, attributes.char1003, charValue_handshake, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, handshakeListener)) {
+            op.gatt.disconnect();
+        }
+    }
+
+    private void onHandshakeComplete(GattOperationQueue.Operation op, int status) {
+        final String TAGG = "onHandshakeComplete: ";
+
+        if (status != GATT_SUCCESS) {
+            onSetupOperationFailed(op, status);
+            return;
+        }
+
+        logV(TAGG + "Handshake successfully sent to device. Sending password...");
+        authState = AUTH_STATE_SENDING_PASSWORD;
+        if (!sendCharacteristicValue(op.gatt, attributes.char1003, charValue_password, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, passwordListener)) {
+            op.gatt.disconnect();
+        }
+    }
+
+    private void onPasswordComplete(GattOperationQueue.Operation op, int status) {
+        final String TAGG = "onPasswordComplete: ";
+
+        if (status != GATT_SUCCESS) {
+            onSetupOperationFailed(op, status);
+            return;
+        }
+
+        logV(TAGG + "Password successfully sent to device. Authenticated for this connection; link is ready.");
+        authState = AUTH_STATE_AUTHENTICATED;
+        if (sessionManager != null) {
+            sessionManager.onLinkReady(op.gatt);
+        }
+    }
+
+    /** A link setup operation (notify, handshake, password) failed, so drop the link (and any attributes that are to blame). */
+    private void onSetupOperationFailed(GattOperationQueue.Operation op, int status) {
+        final String TAGG = "onSetupOperationFailed: ";
+        logE(TAGG+op.toString()+" failed (status "+status+"), disconnecting...");
+
+        if (GattAttributeCache.isAttributeError(status)) {
+            GattAttributeCache.invalidate(op.gatt);
+        } else if (attributes != null && attributes.fromCache) {
+            // Cached attributes didn't pan out on this connection; search for them next time (stack's own cache is left alone)
+            GattAttributeCache.forget(op.gatt);
+        }
+
+        op.gatt.disconnect();
+    }
+
+    private void onLightCommandValueComplete(GattOperationQueue.Operation op, int status) {
+        final String TAGG = "onLightCommandValueComplete: ";
+
+        if (status != GATT_SUCCESS) {
+            logE(TAGG+"Non-success status ("+status+").");
+            isLinkKnownGood = false;
+            if (GattAttributeCache.isAttributeError(status)) {
+                GattAttributeCache.invalidate(op.gatt);
+            }
+            gattOperationQueue.clearNow();      //don't bother writing the rest of this command's values
+            characteristicValuesToWrite = null;
+            characteristicIndexToWrite = 0;
+            if (sessionManager != null) {
+                sessionManager.onLightCommandWriteFailed(op.gatt, status);
+            }
+            return;
+        }
+
+        logV(TAGG, "Characteristic value successfully sent to device: \"{}\".", op.getValue());
+
+        if (op.getWriteType() != BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE && !isLinkKnownGood) {
+            logD(TAGG+"Acknowledged write succeeded; link is now known-good for unacknowledged writes.");
+            isLinkKnownGood = true;
+        }
+
+        if (characteristicValuesToWrite == null) {
+            return;
+        }
+
+        characteristicIndexToWrite++;
+        if (characteristicIndexToWrite >= characteristicValuesToWrite.size()) {
+            if (sessionManager != null) {
+                sessionManager.onLightCommandWritten(op.gatt, flasherLightCodeToDo, characteristicValuesToWrite.get(0));
+            }
+            characteristicValuesToWrite = null;
+            characteristicIndexToWrite = 0;
+        }
+    }
+
+
     /*============================================================================================*/
     /* Utility methods */
 
     /** Enable GATT NOTIFY capability.
      * @param gatt GATT client reference
+     * @return Whether the descriptor write was queued
      */
-    private void enableNotify(BluetoothGatt gatt) {
+    private boolean enableNotify(BluetoothGatt gatt) {
         final String TAGG = "enableNotify: ";
 
+        // Notify, handshake, and password are all part of authenticating
+        connectionState.transition(ConnectionStateMachine.STATE_DISCOVERING, ConnectionStateMachine.STATE_AUTHENTICATING, "enabling notify");
+
         try {
             // Get our notify characteristic and set it to enabled
-            BluetoothGattCharacteristic notifyCharacteristic = gatt.getService(uuid_service).getCharacteristic(uuid_char1002);
+            BluetoothGattCharacteristic notifyCharacteristic = attributes.char1002;
             gatt.setCharacteristicNotification(notifyCharacteristic, true);
 
             // Now that notify is enabled, it will have descriptor with handle 0x2902, so we need
@@ -288,53 +499,123 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
             // to 128 bit UUID (00002902 + BASE-96 BLE UUID).
             UUID notifyDescriptorUUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
 
-            // Get the notify characteristic's descriptor and set it to enabled
+            // Get the notify characteristic's descriptor and queue writing it to enabled
+            // From here, the queue invokes our enableNotifyListener once the write completes.
             BluetoothGattDescriptor descriptor = notifyCharacteristic.getDescriptor(notifyDescriptorUUID);
-            descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-
-            // Finally, we can write the descriptor...
-            // From here, do whatever you may need in the "onDescriptorWrite" method.
-            gatt.writeDescriptor(descriptor);
+            gattOperationQueue.enqueue(GattOperationQueue.Operation.writeDescriptor(gatt, descriptor, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE, enableNotifyListener));
+            return true;
         } catch (Exception e) {
             logE(TAGG+"Exception caught: "+e.getMessage());
+            return false;
         }
     }
 
-    /** Send (write) a GATT characteristic value.
+    /** Send (write) a GATT characteristic value, by way of the operation queue.
      * @param gatt GATT client instance
-     * @param serviceUUID GATT service UUID the characteristic belongs to
-     * @param characteristicUUID GATT characteristic UUID to write to
+     * @param gattCharacteristic GATT characteristic to write to (from our resolved attributes)
      * @param characteristicValue GATT characteristic value to write
-     * @return Whether write operation was attempted
+     * @param writeType BluetoothGattCharacteristic write type (no-response writes also get paced)
+     * @param listener What to invoke once the write completes
+     * @return Whether write operation was queued
      */
-    private boolean sendCharacteristicValue(BluetoothGatt gatt, UUID serviceUUID, UUID characteristicUUID, byte[] characteristicValue) {
-        final String TAGG = "sendPassword: ";
+    private boolean sendCharacteristicValue(BluetoothGatt gatt, BluetoothGattCharacteristic gattCharacteristic, byte[] characteristicValue, int writeType, GattOperationQueue.OnCompleteListener listener) {
+        final String TAGG = "sendCharacteristicValue: ";
 
-        try {
-            // Get service
-            BluetoothGattService gattService = gatt.getService(serviceUUID);
-            if (gattService == null) {
-                logE(TAGG+"Failed to get service, aborting.");
-                return false;
-            }
+        if (gattCharacteristic == null) {
+            logE(TAGG+"No characteristic, aborting.");
+            return false;
+        }
+
+        GattOperationQueue.Operation op = GattOperationQueue.Operation.writeCharacteristic(gatt, gattCharacteristic, characteristicValue, listener)
+                .setWriteType(writeType);
+        if (writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE) {
+            op.setMinSpacingMS(Constants.GATT_WRITE_NO_RESPONSE_MIN_SPACING_MS);
+        }
 
-            // Get characteristic from that service
-            BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(characteristicUUID);
-            if (gattCharacteristic == null) {
-                logE(TAGG+"Failed to get characteristic, aborting.");
+        logV(TAGG, "Queueing [{}] to characteristic {}...", characteristicValue, gattCharacteristic.getUuid());
+        gattOperationQueue.enqueue(op);
+        return true;
+    }
+
+    /** Queue writing all the characteristic values for the specified light command to the primary control characteristic.
+     * Any further values for the command (e.g. to make it flash) go out as each previous write completes.
+     * @param gatt GATT client instance (must be connected and authenticated)
+     * @param flasherLightCommandCode Omni command code to write
+     * @return Whether the write operations were queued
+     */
+    boolean writeLightCommand(BluetoothGatt gatt, byte flasherLightCommandCode) {
+        final String TAGG = "writeLightCommand: ";
+
+        setFlasherLightCommandCodeToDo(flasherLightCommandCode);
+        characteristicIndexToWrite = 0;
+
+        if (characteristicValuesToWrite == null || characteristicValuesToWrite.size() == 0) {
+            logW(TAGG+"No characteristic values for command "+flasherLightCommandCode+", nothing to write.");
+            return false;
+        }
+
+        if (authState != AUTH_STATE_AUTHENTICATED) {
+            logW(TAGG+"Connection is not authenticated (state "+authState+"), cannot write.");
+            return false;
+        }
+
+        if (attributes == null) {
+            logW(TAGG+"No resolved attributes for this connection, cannot write.");
+            return false;
+        }
+
+        // Only the very first write decides whether the link is known-good, so the rest of this command can't change its mind mid-sequence
+        final boolean mayWriteWithoutResponse = isLinkKnownGood
+                && Constants.GATT_WRITE_NO_RESPONSE_ENABLED
+                && !isSafetyCriticalCommand(flasherLightCommandCode)
+                && (attributes.char1001.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+
+        for (byte[] characteristicValue : characteristicValuesToWrite) {
+            int writeType = (mayWriteWithoutResponse && isDatagramEligibleForWriteWithoutResponse(characteristicValue))
+                    ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                    : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+            if (!sendCharacteristicValue(gatt, attributes.char1001, characteristicValue, writeType, lightCommandValueListener)) {
+                gattOperationQueue.clear();
+                characteristicValuesToWrite = null;
                 return false;
             }
+        }
 
-            // Set value of that characteristic
-            gattCharacteristic.setValue(characteristicValue);
+        return true;
+    }
 
-            // Write the updated characteristic back to GATT
-            logV(TAGG+"Sending ["+ConversionUtils.byteArrayToHexString(characteristicValue, " ")+"] to characteristic "+characteristicUUID.toString()+" in service "+serviceUUID.toString()+"...");
-            return gatt.writeCharacteristic(gattCharacteristic);
-        } catch (Exception e) {
-            logE(TAGG+"Exception caught: "+e.getMessage());
+    /** Commands whose delivery we always want the device to acknowledge (turning the lights off or back to standby). */
+    private boolean isSafetyCriticalCommand(byte flasherLightCommandCode) {
+        if (MainApplication.flasherLightOmniCommandCodes == null) {
+            return true;
+        }
+        return !MainApplication.flasherLightOmniCommandCodes.isColor(flasherLightCommandCode);      //off, standby, none (or unknown)
+    }
+
+    /** Only colour, white (brightness), and flash datagrams may go out unacknowledged (never power, etc.). */
+    private boolean isDatagramEligibleForWriteWithoutResponse(byte[] characteristicValue) {
+        if (characteristicValue == null) {
             return false;
         }
+        switch (lightControllerModel.getDatagramCodec().peekType(characteristicValue, 0, characteristicValue.length)) {
+            case DatagramCodec_HY254117.TYPE_COLOR:
+            case DatagramCodec_HY254117.TYPE_WHITE:
+            case DatagramCodec_HY254117.TYPE_FLASH:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Report a lost (or failed) link to our session. Whatever authentication this connection had is gone with it. */
+    private void onLinkLost(BluetoothGatt gatt, int status) {
+        authState = AUTH_STATE_NONE;
+        isLinkKnownGood = false;
+        if (sessionManager != null) {
+            sessionManager.onLinkLost(gatt, status);
+        } else {
+            gatt.close();
+        }
     }
 
 
@@ -354,6 +635,14 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
         return this.flasherLightCodeToDo;
     }
 
+    public int getAuthState() {
+        return this.authState;
+    }
+
+    public boolean isAuthenticated() {
+        return this.authState == AUTH_STATE_AUTHENTICATED;
+    }
+
 
     /*============================================================================================*/
     /* Logging Methods */
@@ -361,6 +650,12 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
     private void logV(String tagg) {
         log(LOG_SEVERITY_V, tagg);
     }
+    private void logV(String tagg, String template, Object arg1) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, LOG_SEVERITY_V, tagg, template, arg1);           //formatted only if verbose is on
+    }
+    private void logV(String tagg, String template, Object arg1, Object arg2) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, LOG_SEVERITY_V, tagg, template, arg1, arg2);     //formatted only if verbose is on
+    }
     private void logD(String tagg) {
         log(LOG_SEVERITY_D, tagg);
     }
@@ -374,45 +669,6 @@ public class GattCallback_HY254117 extends BluetoothGattCallback {
         log(LOG_SEVERITY_E, tagg);
     }
     private void log(int logSeverity, String tagg) {
-        switch (logMethod) {
-            case Constants.LOG_METHOD_LOGCAT:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        Log.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        Log.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        Log.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        Log.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        Log.e(TAG, tagg);
-                        break;
-                }
-                break;
-            case Constants.LOG_METHOD_FILELOGGER:
-                switch (logSeverity) {
-                    case LOG_SEVERITY_V:
-                        FL.v(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_D:
-                        FL.d(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_I:
-                        FL.i(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_W:
-                        FL.w(TAG, tagg);
-                        break;
-                    case LOG_SEVERITY_E:
-                        FL.e(TAG, tagg);
-                        break;
-                }
-                break;
-        }
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
     }
 }
@@ -0,0 +1,526 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* GattOperationQueue
+ * Serializes GATT client operations (service discovery, characteristic/descriptor reads and writes, connection priority requests)
+ * so that exactly one is ever outstanding with the Android BLE stack at a time.
+ *
+ * The Android stack silently refuses (or worse, garbles) a new operation while another is still in flight,
+ * which is why older code in this app slept between writes. Instead, each operation here completes from its
+ * GATT callback (you forward the callback to us), and only then do we start the next one. If a callback never
+ * arrives, the operation times out and its listener is told so. A callback only completes the current operation if it's for the
+ * same client and the same characteristic/descriptor; and once an operation has timed out, its late callback (if it ever comes)
+ * is swallowed rather than being mistaken for the next operation's on that same characteristic. A connection priority request has
+ * no callback (on the API levels we support), so it's done as soon as the stack accepts it.
+ *
+ * Everything (starting ops, completing them, timeouts, and listener invocations) runs on the Looper we are given
+ * (or our own HandlerThread if none), so GATT callbacks on Binder threads only ever post to us and return.
+ *
+ * Usage:
+ *  GattOperationQueue queue = new GattOperationQueue(someLooper, Constants.LOG_METHOD_FILELOGGER);
+ *  queue.enqueue(GattOperationQueue.Operation.discoverServices(gatt, 0, listener));
+ *  //...and in your BluetoothGattCallback, forward the results:
+ *  public void onServicesDiscovered(BluetoothGatt gatt, int status) { queue.onServicesDiscovered(gatt, status); }
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces sleeping between GATT operations).
+ *  2026.10.16      agent           Added per-operation characteristic write type and minimum spacing (pacing) between writes.
+ *  2026.10.16      agent           Per-operation verbose logging is deferred (no formatting unless verbose is on).
+ *  2026.10.16      agent           Callbacks must match the operation's characteristic/descriptor, and a timed-out operation's late
+ *                                  callback is swallowed, so neither can complete a later operation.
+ *  2026.10.16      agent           Added connection priority requests, so they don't race the operation in flight.
+ */
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+import java.util.ArrayDeque;
+
+
+public class GattOperationQueue {
+    private final String TAG = GattOperationQueue.class.getSimpleName();
+
+    // Constants...
+    public static final int OP_TYPE_DISCOVER_SERVICES = 1;
+    public static final int OP_TYPE_WRITE_CHARACTERISTIC = 2;
+    public static final int OP_TYPE_WRITE_DESCRIPTOR = 3;
+    public static final int OP_TYPE_READ_CHARACTERISTIC = 4;
+    public static final int OP_TYPE_REQUEST_CONNECTION_PRIORITY = 5;
+
+    public static final int STATUS_TIMEOUT = -1;                    //operation's callback never arrived in time
+    public static final int STATUS_START_FAILED = -2;               //stack refused to start the operation (or threw)
+
+    public static final int TIMEOUT_MS_DISCOVER_SERVICES = 5000;
+    public static final int TIMEOUT_MS_READ_WRITE = Constants.LIGHT_COMMAND_TIMEOUT_MS;
+
+    // Local stuff...
+    private HandlerThread ownThread;                                //only if we weren't given a Looper
+    private Handler queueHandler;
+
+    private final ArrayDeque<Operation> pendingOperations;          //only touched on our handler's thread
+    private Operation currentOperation;                             //only touched on our handler's thread
+    private Operation timedOutOperation;                            //started operation that timed out, whose callback may still come (handler's thread only)
+    private long lastWriteFinishedUptimeMS;                         //when the most recent characteristic write finished (for pacing)
+
+    private final Runnable startCurrentRunnable;
+    private final Runnable timeoutRunnable;
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor
+     * @param looper Looper to do all work on (if null, we create and own a HandlerThread)
+     * @param logMethod Logging method to use
+     */
+    public GattOperationQueue(@Nullable Looper looper, int logMethod) {
+        this.logMethod = logMethod;
+
+        if (looper == null) {
+            this.ownThread = new HandlerThread(TAG);
+            this.ownThread.start();
+            looper = this.ownThread.getLooper();
+        }
+        this.queueHandler = new Handler(looper);
+
+        this.pendingOperations = new ArrayDeque<Operation>();
+        this.currentOperation = null;
+        this.lastWriteFinishedUptimeMS = 0;
+
+        this.startCurrentRunnable = new Runnable() {
+            @Override
+            public void run() {
+                startCurrentOperation();
+            }
+        };
+
+        this.timeoutRunnable = new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "timeoutRunnable: ";
+                Operation op = currentOperation;
+                if (op == null) {
+                    return;
+                }
+                logW(TAGG+"Operation "+op.toString()+" did not complete within "+op.timeoutMS+"ms.");
+                // If we swallowed a callback for its target while it ran, that may well have been its own (the timed-out one's never came),
+                // so don't expect another; otherwise every following operation on that target would lose its callback in turn
+                timedOutOperation = (op.started && !op.hadCallbackSwallowed) ? op : null;
+                finishCurrentOperation(STATUS_TIMEOUT);
+            }
+        };
+    }
+
+    /** Add an operation to the end of the line. Safe to call from any thread. */
+    public void enqueue(final Operation op) {
+        queueHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                pendingOperations.addLast(op);
+                if (currentOperation == null) {
+                    startNextOperation();
+                }
+            }
+        });
+    }
+
+    /** Drop every queued operation (and forget any in-flight one) without invoking listeners.
+     * Use this when the link goes away, since nothing queued against it can complete anymore. Safe to call from any thread. */
+    public void clear() {
+        queueHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                clearNow();
+            }
+        });
+    }
+
+    /** Same as clear, but immediate. Only call this from our handler's thread (e.g. from an operation listener). */
+    public void clearNow() {
+        final String TAGG = "clearNow: ";
+
+        if (currentOperation != null || pendingOperations.size() > 0) {
+            logD(TAGG+"Dropping "+(pendingOperations.size() + (currentOperation == null ? 0 : 1))+" operation(s).");
+        }
+
+        queueHandler.removeCallbacks(timeoutRunnable);
+        queueHandler.removeCallbacks(startCurrentRunnable);
+        pendingOperations.clear();
+        timedOutOperation = null;
+        currentOperation = null;
+    }
+
+    /** Release everything. The instance can't be reused after this. */
+    public void quit() {
+        queueHandler.removeCallbacksAndMessages(null);
+        queueHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                clearNow();
+                if (ownThread != null) {
+                    ownThread.quitSafely();
+                    ownThread = null;
+                }
+            }
+        });
+    }
+
+    public boolean isIdle() {
+        return currentOperation == null && pendingOperations.size() == 0;
+    }
+
+
+    /*============================================================================================*/
+    /* Completion Entry Points (forward your BluetoothGattCallback results to these, from any thread) */
+
+    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+        complete(OP_TYPE_DISCOVER_SERVICES, gatt, null, null, status);
+    }
+
+    public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        complete(OP_TYPE_WRITE_CHARACTERISTIC, gatt, characteristic, null, status);
+    }
+
+    public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        complete(OP_TYPE_READ_CHARACTERISTIC, gatt, characteristic, null, status);
+    }
+
+    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+        complete(OP_TYPE_WRITE_DESCRIPTOR, gatt, null, descriptor, status);
+    }
+
+    private void complete(final int opType, final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final BluetoothGattDescriptor descriptor, final int status) {
+        queueHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "complete: ";
+
+                // The stack only calls back in order, so a timed-out operation's late callback comes before any later one's for that target
+                Operation timedOut = timedOutOperation;
+                if (timedOut != null && timedOut.isFor(opType, gatt, characteristic, descriptor)) {
+                    timedOutOperation = null;
+                    if (currentOperation != null && currentOperation.isFor(opType, gatt, characteristic, descriptor)) {
+                        currentOperation.hadCallbackSwallowed = true;
+                    }
+                    logW(TAGG+"Late callback (status "+status+") for timed-out "+timedOut.toString()+", ignoring.");
+                    return;
+                }
+
+                Operation op = currentOperation;
+                if (op == null || !op.started || !op.isFor(opType, gatt, characteristic, descriptor)) {
+                    logW(TAGG+"Callback (type "+opType+", status "+status+") doesn't match any outstanding operation, ignoring.");
+                    return;
+                }
+
+                finishCurrentOperation(status);
+            }
+        });
+    }
+
+
+    /*============================================================================================*/
+    /* Queue Methods (run on our handler's thread only) */
+
+    private void startNextOperation() {
+        final String TAGG = "startNextOperation: ";
+
+        if (currentOperation != null) {
+            return;
+        }
+
+        Operation op = pendingOperations.pollFirst();
+        if (op == null) {
+            return;
+        }
+        currentOperation = op;
+
+        // If this operation wants some breathing room first, come back when it's time (without blocking anybody)
+        long delayMS = op.delayBeforeStartMS;
+        if (op.minSpacingMS > 0 && op.type == OP_TYPE_WRITE_CHARACTERISTIC) {
+            delayMS = Math.max(delayMS, lastWriteFinishedUptimeMS + op.minSpacingMS - SystemClock.uptimeMillis());
+        }
+        if (delayMS > 0) {
+            queueHandler.removeCallbacks(startCurrentRunnable);
+            queueHandler.postDelayed(startCurrentRunnable, delayMS);
+        } else {
+            startCurrentOperation();
+        }
+    }
+
+    private void startCurrentOperation() {
+        final String TAGG = "startCurrentOperation: ";
+
+        Operation op = currentOperation;
+        if (op == null || op.started) {
+            return;
+        }
+        op.started = true;
+
+        boolean started;
+        try {
+            switch (op.type) {
+                case OP_TYPE_DISCOVER_SERVICES:
+                    started = op.gatt.discoverServices();
+                    break;
+                case OP_TYPE_WRITE_CHARACTERISTIC:
+                    op.characteristic.setWriteType(op.writeType);
+                    op.characteristic.setValue(op.value);
+                    started = op.gatt.writeCharacteristic(op.characteristic);
+                    break;
+                case OP_TYPE_READ_CHARACTERISTIC:
+                    started = op.gatt.readCharacteristic(op.characteristic);
+                    break;
+                case OP_TYPE_WRITE_DESCRIPTOR:
+                    op.descriptor.setValue(op.value);
+                    started = op.gatt.writeDescriptor(op.descriptor);
+                    break;
+                case OP_TYPE_REQUEST_CONNECTION_PRIORITY:
+                    started = op.gatt.requestConnectionPriority(op.connectionPriority);
+                    break;
+                default:
+                    logE(TAGG+"Unknown operation type ("+op.type+").");
+                    started = false;
+                    break;
+            }
+        } catch (Exception e) {
+            logE(TAGG+"Exception caught starting "+op.toString()+": "+e.getMessage());
+            started = false;
+        }
+
+        if (!started) {
+            logW(TAGG+"Stack refused to start "+op.toString()+".");
+            finishCurrentOperation(STATUS_START_FAILED);
+            return;
+        }
+
+        logV(TAGG, "Started {}.", op);
+
+        // No callback will come for this one (the stack applies it in the background), so it's done once accepted
+        if (op.type == OP_TYPE_REQUEST_CONNECTION_PRIORITY) {
+            finishCurrentOperation(BluetoothGatt.GATT_SUCCESS);
+            return;
+        }
+
+        queueHandler.removeCallbacks(timeoutRunnable);
+        queueHandler.postDelayed(timeoutRunnable, op.timeoutMS);
+    }
+
+    private void finishCurrentOperation(int status) {
+        final String TAGG = "finishCurrentOperation: ";
+
+        Operation op = currentOperation;
+        queueHandler.removeCallbacks(timeoutRunnable);
+        queueHandler.removeCallbacks(startCurrentRunnable);
+        currentOperation = null;
+
+        if (op != null && op.type == OP_TYPE_WRITE_CHARACTERISTIC) {
+            lastWriteFinishedUptimeMS = SystemClock.uptimeMillis();
+        }
+
+        if (op != null && op.listener != null) {
+            try {
+                op.listener.onGattOperationComplete(op, status);
+            } catch (Exception e) {
+                logE(TAGG+"Exception caught in listener for "+op.toString()+": "+e.getMessage());
+            }
+        }
+
+        // Listener may have cleared us or already started something; only kick if we're still idle
+        if (currentOperation == null) {
+            startNextOperation();
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Subclasses */
+
+    /** Listener invoked (on the queue's thread) when an operation completes, fails to start, or times out. */
+    public interface OnCompleteListener {
+        void onGattOperationComplete(Operation op, int status);
+    }
+
+    /** A single GATT operation. Create these with the static factory methods. */
+    public static class Operation {
+        final int type;
+        final BluetoothGatt gatt;
+        final BluetoothGattCharacteristic characteristic;
+        final BluetoothGattDescriptor descriptor;
+        final byte[] value;
+        final OnCompleteListener listener;
+
+        long delayBeforeStartMS = 0;
+        long minSpacingMS = 0;
+        long timeoutMS = TIMEOUT_MS_READ_WRITE;
+        int writeType = BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+        int connectionPriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+        boolean started = false;
+        boolean hadCallbackSwallowed = false;                       //a callback for our target was taken as a timed-out operation's late one
+
+        private Operation(int type, BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor descriptor, byte[] value, OnCompleteListener listener) {
+            this.type = type;
+            this.gatt = gatt;
+            this.characteristic = characteristic;
+            this.descriptor = descriptor;
+            this.value = value;
+            this.listener = listener;
+        }
+
+        public static Operation discoverServices(BluetoothGatt gatt, long delayBeforeStartMS, @Nullable OnCompleteListener listener) {
+            Operation op = new Operation(OP_TYPE_DISCOVER_SERVICES, gatt, null, null, null, listener);
+            op.delayBeforeStartMS = delayBeforeStartMS;
+            op.timeoutMS = TIMEOUT_MS_DISCOVER_SERVICES;
+            return op;
+        }
+
+        public static Operation writeCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, byte[] value, @Nullable OnCompleteListener listener) {
+            return new Operation(OP_TYPE_WRITE_CHARACTERISTIC, gatt, characteristic, null, value, listener);
+        }
+
+        public static Operation readCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, @Nullable OnCompleteListener listener) {
+            return new Operation(OP_TYPE_READ_CHARACTERISTIC, gatt, characteristic, null, null, listener);
+        }
+
+        public static Operation writeDescriptor(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, byte[] value, @Nullable OnCompleteListener listener) {
+            return new Operation(OP_TYPE_WRITE_DESCRIPTOR, gatt, null, descriptor, value, listener);
+        }
+
+        public static Operation requestConnectionPriority(BluetoothGatt gatt, int connectionPriority, @Nullable OnCompleteListener listener) {
+            Operation op = new Operation(OP_TYPE_REQUEST_CONNECTION_PRIORITY, gatt, null, null, null, listener);
+            op.connectionPriority = connectionPriority;
+            return op;
+        }
+
+        /** Wait this long (without blocking) before starting the operation once it reaches the front of the line. */
+        public Operation setDelayBeforeStartMS(long delayBeforeStartMS) {
+            this.delayBeforeStartMS = delayBeforeStartMS;
+            return this;
+        }
+
+        /** Don't start this write until at least this long after the previous characteristic write finished. */
+        public Operation setMinSpacingMS(long minSpacingMS) {
+            this.minSpacingMS = minSpacingMS;
+            return this;
+        }
+
+        /** Characteristic write type to use (BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT if never set). */
+        public Operation setWriteType(int writeType) {
+            this.writeType = writeType;
+            return this;
+        }
+
+        public Operation setTimeoutMS(long timeoutMS) {
+            this.timeoutMS = timeoutMS;
+            return this;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public BluetoothGatt getGatt() {
+            return gatt;
+        }
+
+        public BluetoothGattCharacteristic getCharacteristic() {
+            return characteristic;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        public int getWriteType() {
+            return writeType;
+        }
+
+        /** Whether a callback of the specified type, for the specified client and characteristic/descriptor, is this operation's. */
+        boolean isFor(int callbackType, BluetoothGatt callbackGatt, BluetoothGattCharacteristic callbackCharacteristic, BluetoothGattDescriptor callbackDescriptor) {
+            if (type != callbackType || gatt != callbackGatt) {
+                return false;
+            }
+            switch (type) {
+                case OP_TYPE_WRITE_CHARACTERISTIC:
+                case OP_TYPE_READ_CHARACTERISTIC:
+                    return isSameCharacteristic(characteristic, callbackCharacteristic);
+                case OP_TYPE_WRITE_DESCRIPTOR:
+                    return isSameDescriptor(descriptor, callbackDescriptor);
+                default:
+                    return true;
+            }
+        }
+
+        private static boolean isSameCharacteristic(BluetoothGattCharacteristic a, BluetoothGattCharacteristic b) {
+            if (a == b) {
+                return true;
+            }
+            return a != null && b != null && a.getUuid().equals(b.getUuid()) && a.getInstanceId() == b.getInstanceId();
+        }
+
+        private static boolean isSameDescriptor(BluetoothGattDescriptor a, BluetoothGattDescriptor b) {
+            if (a == b) {
+                return true;
+            }
+            return a != null && b != null && a.getUuid().equals(b.getUuid())
+                    && isSameCharacteristic(a.getCharacteristic(), b.getCharacteristic());
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case OP_TYPE_DISCOVER_SERVICES:
+                    return "discoverServices";
+                case OP_TYPE_WRITE_CHARACTERISTIC:
+                    return "writeCharacteristic("+(characteristic == null ? "null" : characteristic.getUuid().toString())
+                            +(writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE ? ", no-response" : "")+")";
+                case OP_TYPE_READ_CHARACTERISTIC:
+                    return "readCharacteristic("+(characteristic == null ? "null" : characteristic.getUuid().toString())+")";
+                case OP_TYPE_WRITE_DESCRIPTOR:
+                    return "writeDescriptor("+(descriptor == null ? "null" : descriptor.getUuid().toString())+")";
+                case OP_TYPE_REQUEST_CONNECTION_PRIORITY:
+                    return "requestConnectionPriority("+connectionPriority+")";
+                default:
+                    return "unknown("+type+")";
+            }
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logV(String tagg, String template, Object arg1) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, LOG_SEVERITY_V, tagg, template, arg1);           //formatted only if verbose is on
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
+    }
+}
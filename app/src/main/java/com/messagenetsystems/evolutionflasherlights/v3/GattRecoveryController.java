@@ -0,0 +1,265 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* GattRecoveryController
+ * Decides how to recover from GATT connection failures (status 133, 257, timeouts, etc.), so a bad RF day doesn't turn into a reconnect storm.
+ *
+ * Three things going on here:
+ *  1) Backoff: each consecutive failure doubles the wait before the next attempt (up to a cap), with random jitter so we don't
+ *     fall into lock-step with whatever else is hammering the stack.
+ *  2) Escalation: the more consecutive failures, the heavier the recovery step...
+ *      - close the client (always),
+ *      - then also refresh the stack's GATT cache,
+ *      - then also reset the Bluetooth adapter (rate-limited, since it affects everything on the device).
+ *  3) Circuit breaker: after too many consecutive 133s, stop trying altogether for a cool-down period (OPEN). After that,
+ *     allow a single trial attempt (HALF_OPEN); if it succeeds we're back to normal (CLOSED), otherwise the breaker opens again.
+ *
+ * Thread-safe (the legacy service reports failures from Binder threads).
+ *
+ * Usage:
+ *  if (!recovery.allowAttempt()) { ...try again in recovery.getBreakerRemainingMS()... }
+ *  int step = recovery.onFailure(status);     //then do what step says, and reconnect in recovery.getNextAttemptDelayMS()
+ *  recovery.onSuccess();                       //once the link is up and usable
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces immediate cleanup/re-init and forced re-sends on 133/257).
+ *  2026.10.16      agent           Rate limit and breaker timing use DatetimeUtils monotonic helpers.
+ */
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.DatetimeUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+import java.util.Random;
+
+
+public class GattRecoveryController {
+    private final String TAG = GattRecoveryController.class.getSimpleName();
+
+    // Recovery steps (each includes everything before it)...
+    public static final int STEP_CLOSE_CLIENT = 1;
+    public static final int STEP_REFRESH_CACHE = 2;
+    public static final int STEP_RESET_ADAPTER = 3;
+
+    // Circuit breaker states...
+    public static final int BREAKER_CLOSED = 0;                     //normal, attempts allowed
+    public static final int BREAKER_OPEN = 1;                       //cooling down, no attempts allowed
+    public static final int BREAKER_HALF_OPEN = 2;                  //cool-down over, one trial attempt allowed
+
+    // Configuration...
+    private final long BACKOFF_BASE_MS = 1000;
+    private final long BACKOFF_MAX_MS = 60 * 1000;
+    private final int FAILURES_BEFORE_REFRESH_CACHE = 2;            //consecutive failures before we start refreshing the GATT cache too
+    private final int FAILURES_BEFORE_RESET_ADAPTER = 4;            //consecutive failures before we start resetting the adapter too
+    private final long RESET_ADAPTER_MIN_INTERVAL_MS = 10 * 60 * 1000;
+    private final int BREAKER_OPEN_AFTER_CONSECUTIVE_133 = 6;
+    private final long BREAKER_OPEN_DURATION_MS = 2 * 60 * 1000;
+
+    private final Random random;
+
+    private int consecutiveFailures;
+    private int consecutive133s;
+    private long nextAttemptDelayMS;
+
+    private int breakerState;
+    private long breakerOpenedElapsedMS;
+    private long lastAdapterResetElapsedMS;
+
+    // Counters (for logging and health monitoring)...
+    private long failureCount;
+    private long status133Count;
+    private long status257Count;
+    private long closeClientCount;
+    private long refreshCacheCount;
+    private long resetAdapterCount;
+    private long breakerOpenCount;
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor */
+    public GattRecoveryController(int logMethod) {
+        this.logMethod = logMethod;
+        this.random = new Random();
+
+        this.consecutiveFailures = 0;
+        this.consecutive133s = 0;
+        this.nextAttemptDelayMS = BACKOFF_BASE_MS;
+
+        this.breakerState = BREAKER_CLOSED;
+        this.breakerOpenedElapsedMS = 0;
+        this.lastAdapterResetElapsedMS = 0;
+    }
+
+
+    /*============================================================================================*/
+    /* Recovery Methods */
+
+    /** Whether a connection attempt is allowed right now (i.e. the breaker isn't open). */
+    public synchronized boolean allowAttempt() {
+        final String TAGG = "allowAttempt: ";
+
+        if (breakerState == BREAKER_OPEN) {
+            if (getBreakerRemainingMS() > 0) {
+                return false;
+            }
+            breakerState = BREAKER_HALF_OPEN;
+            logI(TAGG+"Circuit breaker cool-down is over. Allowing one trial attempt (HALF_OPEN).");
+        }
+        return true;
+    }
+
+    /** A connection attempt (or established link) failed.
+     * @param status GATT status that came with the failure (or our own negative status if none)
+     * @return Recovery step to take (STEP_*); the reconnect should then happen after getNextAttemptDelayMS()
+     */
+    public synchronized int onFailure(int status) {
+        final String TAGG = "onFailure: ";
+
+        failureCount++;
+        consecutiveFailures++;
+        if (status == 133) {
+            status133Count++;
+            consecutive133s++;
+        } else {
+            consecutive133s = 0;
+        }
+        if (status == 257) {
+            status257Count++;
+        }
+
+        // Figure out how hard to hit it
+        int step = STEP_CLOSE_CLIENT;
+        if (consecutiveFailures >= FAILURES_BEFORE_RESET_ADAPTER
+                && (lastAdapterResetElapsedMS == 0 || DatetimeUtils.hasElapsed(lastAdapterResetElapsedMS, RESET_ADAPTER_MIN_INTERVAL_MS))) {
+            step = STEP_RESET_ADAPTER;
+            lastAdapterResetElapsedMS = DatetimeUtils.nowElapsedMS();
+            resetAdapterCount++;
+        } else if (consecutiveFailures >= FAILURES_BEFORE_REFRESH_CACHE) {
+            step = STEP_REFRESH_CACHE;
+            refreshCacheCount++;
+        }
+        closeClientCount++;
+
+        // Back off (exponentially, capped, with jitter: somewhere between half and all of the backoff)
+        long backoffMS = BACKOFF_BASE_MS << Math.min(consecutiveFailures - 1, 16);
+        backoffMS = Math.min(backoffMS, BACKOFF_MAX_MS);
+        nextAttemptDelayMS = (backoffMS / 2) + (long) (random.nextDouble() * (backoffMS / 2));
+
+        // Trip the breaker if 133s keep coming (or if the half-open trial failed)
+        if (breakerState == BREAKER_HALF_OPEN || consecutive133s >= BREAKER_OPEN_AFTER_CONSECUTIVE_133) {
+            openBreaker();
+            nextAttemptDelayMS = Math.max(nextAttemptDelayMS, BREAKER_OPEN_DURATION_MS);
+        }
+
+        logW(TAGG+"Failure #"+failureCount+" (status "+status+", "+consecutiveFailures+" consecutive, "+consecutive133s+" consecutive 133s). "
+                +"Step: "+stepToString(step)+". Next attempt in "+nextAttemptDelayMS+"ms. "
+                +"Counts: close="+closeClientCount+", refresh="+refreshCacheCount+", adapterReset="+resetAdapterCount+", breakerOpened="+breakerOpenCount+".");
+
+        return step;
+    }
+
+    /** The link came up and is usable, so everything is back to normal. */
+    public synchronized void onSuccess() {
+        final String TAGG = "onSuccess: ";
+
+        if (consecutiveFailures > 0 || breakerState != BREAKER_CLOSED) {
+            logI(TAGG+"Recovered after "+consecutiveFailures+" consecutive failure(s). Circuit breaker CLOSED.");
+        }
+
+        consecutiveFailures = 0;
+        consecutive133s = 0;
+        nextAttemptDelayMS = BACKOFF_BASE_MS;
+        breakerState = BREAKER_CLOSED;
+    }
+
+    private void openBreaker() {
+        final String TAGG = "openBreaker: ";
+
+        breakerState = BREAKER_OPEN;
+        breakerOpenedElapsedMS = DatetimeUtils.nowElapsedMS();
+        breakerOpenCount++;
+        logE(TAGG+"Circuit breaker OPEN (opened "+breakerOpenCount+" time(s)). No attempts for "+BREAKER_OPEN_DURATION_MS+"ms.");
+    }
+
+    public static String stepToString(int step) {
+        switch (step) {
+            case STEP_CLOSE_CLIENT: return "CLOSE_CLIENT";
+            case STEP_REFRESH_CACHE: return "REFRESH_CACHE";
+            case STEP_RESET_ADAPTER: return "RESET_ADAPTER";
+            default: return "UNKNOWN";
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Getter & Setter Methods */
+
+    public synchronized long getNextAttemptDelayMS() {
+        return this.nextAttemptDelayMS;
+    }
+
+    /** How long until an open breaker allows a trial attempt (0 if it's not open). */
+    public synchronized long getBreakerRemainingMS() {
+        if (breakerState != BREAKER_OPEN) {
+            return 0;
+        }
+        return DatetimeUtils.msUntil(breakerOpenedElapsedMS + BREAKER_OPEN_DURATION_MS);
+    }
+
+    public synchronized int getBreakerState() {
+        return this.breakerState;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return this.consecutiveFailures;
+    }
+
+    public synchronized long getFailureCount() {
+        return this.failureCount;
+    }
+
+    public synchronized long getStatus133Count() {
+        return this.status133Count;
+    }
+
+    public synchronized long getStatus257Count() {
+        return this.status257Count;
+    }
+
+    public synchronized long getResetAdapterCount() {
+        return this.resetAdapterCount;
+    }
+
+    public synchronized long getBreakerOpenCount() {
+        return this.breakerOpenCount;
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
+    }
+}
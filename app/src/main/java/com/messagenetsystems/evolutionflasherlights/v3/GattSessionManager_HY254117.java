@@ -0,0 +1,721 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* GattSessionManager_HY254117
+ * Owns one long-lived GATT connection to the HY-254117 light controller.
+ * Instead of connecting, discovering, writing, and tearing down for every single light command,
+ * we open the link once, keep it open, and simply write subsequent commands to it.
+ * If the link drops (device power-cycled, out of range, stack hiccup, etc.), we transparently reconnect.
+ *
+ * All session bookkeeping happens on our own HandlerThread, so GATT callbacks (which arrive on Binder
+ * threads) just post to us and return right away. Every GATT operation on the link goes through our GattOperationQueue,
+ * which runs on that same thread.
+ *
+ * Usage:
+ *  GattSessionManager_HY254117 session = new GattSessionManager_HY254117(appContext, Constants.LOG_METHOD_FILELOGGER);
+ *  session.start();                        //opens the link (and keeps it open)
+ *  session.useController(macAddress);      //(re)points the session at a newly associated controller, starting it if needed
+ *  session.submitLightCommand(code);       //writes immediately if link is ready, otherwise as soon as it is
+ *  session.shutdown();                     //closes the link and releases the thread
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (persistent session instead of connect-per-command).
+ *  2026.10.16      agent           Owns the GattOperationQueue for the link (cleared whenever the link is closed).
+ *  2026.10.16      agent           Pending command is now a latest-wins LightCommandMailbox (newer commands replace, never get dropped).
+ *  2026.10.16      agent           Owns the controller's LightStateReconciler (confirmed by writes and notifies, invalidated by link loss).
+ *  2026.10.16      agent           Link only becomes ready once the callback reports the connection authenticated.
+ *  2026.10.16      agent           Decoded controller state reports are fed to the reconciler as confirmation.
+ *  2026.10.16      agent           Failures go through a GattRecoveryController (backoff with jitter, escalating recovery, circuit breaker)
+ *                                  instead of always reconnecting after a fixed delay.
+ *  2026.10.16      agent           Connecting/ready/writing flags replaced by a ConnectionStateMachine (CAS transitions, transition log).
+ *  2026.10.16      agent           Supersessions, writes, failures, link losses, and recovery steps are recorded in the CommandJournal.
+ *  2026.10.16      agent           Follows light controller MAC changes (useController), and starts itself on the first command if a
+ *                                  controller has been defined since, instead of rejecting commands until the app restarts.
+ *  2026.10.16      agent           Controller state reports are handled on the session thread (after the write they may confirm),
+ *                                  and one contradicting the confirmed state triggers a reconcile right away.
+ *  2026.10.16      agent           Drift reconciles are subject to the reconciler's rate limit (see LightStateReconciler).
+ *  2026.10.16      agent           Exposes the session handler to the GATT callback, so connection state changes are handled on the session thread.
+ */
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.MainApplication;
+import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+import java.lang.ref.WeakReference;
+
+
+public class GattSessionManager_HY254117 {
+    private final String TAG = GattSessionManager_HY254117.class.getSimpleName();
+
+    // Configuration...
+    private final int ADAPTER_RESET_OFF_MS = 3000;                  //how long to leave the adapter off when resetting it
+    private final int ADAPTER_RESET_SETTLE_MS = 5000;               //how long to let the adapter settle after turning it back on, before reconnecting
+    private final int CONNECT_TIMEOUT_MS = 15000;                   //how long a connection attempt may take to become ready before we give up and retry
+
+    // Local stuff...
+    private WeakReference<Context> appContextRef;
+    private MainApplication mainApplication;
+
+    private HandlerThread sessionThread;
+    private Handler sessionHandler;
+
+    private BluetoothDevice bluetoothDevice;
+    private BluetoothGatt bluetoothGatt;
+    private GattCallback_HY254117 gattCallback;
+    private GattOperationQueue gattOperationQueue;
+    private final LightStateReconciler lightStateReconciler;
+    private final GattRecoveryController recoveryController;
+
+    private volatile boolean isSessionWanted;                       //whether we should be keeping a link open at all
+    private volatile boolean isShutdown;                            //shutdown has been called (our thread is gone, or going)
+    private final ConnectionStateMachine connectionState;           //IDLE, CONNECTING, DISCOVERING, AUTHENTICATING, READY, WRITING, DISCONNECTING
+    private volatile boolean isAdapterResetUnderway;                //we turned the adapter off and haven't turned it back on yet
+
+    private final LightCommandMailbox<Byte> commandMailbox;         //newest command waiting to be written (empty if none)
+    private volatile Byte writingCommandCode;                       //command currently being written (null if none)
+
+    private long connectAttemptCount;
+    private long linkLostCount;
+
+    private final Runnable connectRunnable;
+    private final Runnable connectTimeoutRunnable;
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor */
+    public GattSessionManager_HY254117(Context appContext, int logMethod) {
+        this.logMethod = logMethod;
+        this.appContextRef = new WeakReference<Context>(appContext);
+
+        try {
+            this.mainApplication = ((MainApplication) appContext.getApplicationContext());
+        } catch (Exception e) {
+            logE("Exception caught instantiating MainApplication object: "+e.getMessage());
+        }
+
+        this.sessionThread = new HandlerThread(TAG);
+        this.sessionThread.start();
+        this.sessionHandler = new Handler(this.sessionThread.getLooper());
+        this.gattOperationQueue = new GattOperationQueue(this.sessionThread.getLooper(), logMethod);
+        this.recoveryController = new GattRecoveryController(logMethod);
+        this.lightStateReconciler = new LightStateReconciler(MainApplication.definedLightControllerMAC, Constants.LIGHT_STATE_CONFIRMATION_STALE_MS,
+                Constants.LIGHT_STATE_DRIFT_RECONCILE_MIN_INTERVAL_MS, Constants.LIGHT_STATE_DRIFT_RECONCILE_MAX_CONSECUTIVE, logMethod);
+
+        this.isSessionWanted = false;
+        this.isShutdown = false;
+        this.connectionState = new ConnectionStateMachine(TAG, logMethod);
+        this.isAdapterResetUnderway = false;
+        this.commandMailbox = new LightCommandMailbox<Byte>();
+        this.writingCommandCode = null;
+        this.connectAttemptCount = 0;
+        this.linkLostCount = 0;
+
+        this.connectRunnable = new Runnable() {
+            @Override
+            public void run() {
+                doConnect();
+            }
+        };
+
+        this.connectTimeoutRunnable = new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "connectTimeoutRunnable: ";
+                if (connectionState.isEstablishing()) {
+                    logW(TAGG+"Connection attempt did not become ready within "+CONNECT_TIMEOUT_MS+"ms (stuck "+connectionState.toString()+").");
+                    connectionState.dumpTransitionLog("connect timeout");
+                    recoverFromFailure(GattOperationQueue.STATUS_TIMEOUT);
+                }
+            }
+        };
+    }
+
+    /** Begin keeping a link open to the light controller. */
+    public void start() {
+        final String TAGG = "start: ";
+
+        if (isShutdown) {
+            logW(TAGG+"Session has been shut down, cannot start it.");
+            return;
+        }
+
+        logI(TAGG+"Starting GATT session.");
+        this.isSessionWanted = true;
+        this.sessionHandler.post(connectRunnable);
+    }
+
+    /** Point the session at the specified light controller, starting the session if it isn't already.
+     * If it was talking to a different controller, that link is closed and the new one is connected (the desired state carries over).
+     * @param macAddress MAC address of the light controller (ignored if null)
+     */
+    public void useController(final String macAddress) {
+        final String TAGG = "useController: ";
+
+        if (macAddress == null || isShutdown) {
+            return;
+        }
+
+        this.isSessionWanted = true;
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (bluetoothDevice != null && !bluetoothDevice.getAddress().equalsIgnoreCase(macAddress)) {
+                    logI(TAGG+"Switching from light controller "+bluetoothDevice.getAddress()+" to "+macAddress+".");
+                    forgetController();
+                    lightStateReconciler.onControllerChanged(macAddress);
+                }
+
+                sessionHandler.removeCallbacks(connectRunnable);
+                doConnect();
+            }
+        });
+    }
+
+    /** Close the link and release everything. The instance can't be reused after this. */
+    public void shutdown() {
+        final String TAGG = "shutdown: ";
+        logI(TAGG+"Shutting down GATT session.");
+
+        this.isSessionWanted = false;
+        this.isShutdown = true;
+
+        this.sessionHandler.removeCallbacksAndMessages(null);
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeGatt();
+                gattOperationQueue.quit();
+
+                // Never leave the adapter off just because we shut down in the middle of resetting it
+                if (isAdapterResetUnderway) {
+                    BluetoothAdapter.getDefaultAdapter().enable();
+                    isAdapterResetUnderway = false;
+                }
+
+                if (gattCallback != null) {
+                    gattCallback.cleanup();
+                    gattCallback = null;
+                }
+
+                bluetoothDevice = null;
+                commandMailbox.clear();
+                writingCommandCode = null;
+
+                sessionThread.quitSafely();
+            }
+        });
+
+        if (this.appContextRef != null) {
+            this.appContextRef.clear();
+            this.appContextRef = null;
+        }
+    }
+
+    /** Hand a light command to the session.
+     * It gets written right away if the link is ready, otherwise as soon as the link (re)connects.
+     * If a command is already being written, this one gets written as soon as that finishes (replacing anything else still waiting).
+     * @param flasherLightCommandCode Omni command code to write
+     * @return Whether the command was accepted by the session
+     */
+    public boolean submitLightCommand(final byte flasherLightCommandCode) {
+        final String TAGG = "submitLightCommand: ";
+
+        if (!isSessionWanted) {
+            // A controller may have been defined since we were created (e.g. associated from StartupActivity), so start now if we can
+            if (isShutdown || MainApplication.definedLightControllerMAC == null) {
+                logW(TAGG+"Session is not started (and no light controller is defined), rejecting command.");
+                return false;
+            }
+            useController(MainApplication.definedLightControllerMAC);
+        }
+
+        Byte supersededCode = this.commandMailbox.post(flasherLightCommandCode);
+        if (supersededCode != null) {
+            CommandJournal.record(CommandJournal.EVENT_COMMAND_SUPERSEDED, supersededCode, 0, flasherLightCommandCode, 0);
+            logD(TAGG+"Light command "+supersededCode+" was still waiting and has been replaced by "+flasherLightCommandCode+".");
+        }
+
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (connectionState.isLinkUp()) {
+                    writePendingCommand();
+                } else if (connectionState.isIdle()) {
+                    logD(TAGG+"Link is not up, bringing it up before writing.");
+                    sessionHandler.removeCallbacks(connectRunnable);
+                    doConnect();
+                } else if (connectionState.isStuck(CONNECT_TIMEOUT_MS)) {
+                    // Nothing moved us out of a transient state (e.g. a disconnect callback that never came), so start over
+                    logW(TAGG+"Connection has been stuck in "+connectionState.toString()+" for "+connectionState.getTimeInStateMS()+"ms. Recovering.");
+                    recoverFromFailure(GattOperationQueue.STATUS_TIMEOUT);
+                } else {
+                    logV(TAGG+"Link is not ready yet ("+connectionState.toString()+"), command will be written once it is.");
+                }
+            }
+        });
+
+        return true;
+    }
+
+
+    /*============================================================================================*/
+    /* Callback Hooks (invoked from GattCallback_HY254117 on Binder threads; we just post to our thread) */
+
+    /** Link is connected, discovered, and authenticated. */
+    void onLinkReady(final BluetoothGatt gatt) {
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "onLinkReady: ";
+
+                if (gatt != bluetoothGatt) {
+                    logW(TAGG+"Ready notification is for a stale GATT client, ignoring.");
+                    return;
+                }
+
+                if (gattCallback == null || !gattCallback.isAuthenticated()) {
+                    logW(TAGG+"Ready notification, but connection is no longer authenticated (link dropped meanwhile?), ignoring.");
+                    return;
+                }
+
+                if (!connectionState.transition(ConnectionStateMachine.STATE_AUTHENTICATING, ConnectionStateMachine.STATE_READY, "authenticated")) {
+                    logW(TAGG+"Ready notification, but we weren't authenticating ("+connectionState.toString()+"), ignoring.");
+                    return;
+                }
+
+                sessionHandler.removeCallbacks(connectTimeoutRunnable);
+                recoveryController.onSuccess();
+                logI(TAGG+"Link to light controller is ready (attempt #"+connectAttemptCount+").");
+
+                writePendingCommand();
+            }
+        });
+    }
+
+    /** Link was lost (or failed to establish). */
+    void onLinkLost(final BluetoothGatt gatt, final int status) {
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "onLinkLost: ";
+
+                if (gatt != bluetoothGatt) {
+                    logV(TAGG+"Loss notification is for a stale GATT client, closing it and otherwise ignoring.");
+                    try {
+                        gatt.close();
+                    } catch (Exception e) {
+                        logW(TAGG+"Exception caught closing stale GATT client: "+e.getMessage());
+                    }
+                    return;
+                }
+
+                linkLostCount++;
+                CommandJournal.record(CommandJournal.EVENT_LINK_LOST, writingCommandCode == null ? 0 : writingCommandCode, status, 0, 0);
+                logW(TAGG+"Link to light controller lost (status "+status+", loss #"+linkLostCount+").");
+
+                // Whatever was being written didn't finish, so put it back in line (unless something newer is already waiting)
+                if (writingCommandCode != null) {
+                    commandMailbox.putBackIfEmpty(writingCommandCode);
+                }
+                writingCommandCode = null;
+
+                // The controller may come back in some other state (e.g. if it was power-cycled), so we can't vouch for it anymore
+                lightStateReconciler.invalidateConfirmation();
+
+                recoverFromFailure(status);
+            }
+        });
+    }
+
+    /** All values for the command currently being written have been written successfully. */
+    void onLightCommandWritten(final BluetoothGatt gatt, final byte flasherLightCommandCode, final byte[] rootCharacteristicValue) {
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "onLightCommandWritten: ";
+
+                if (gatt != bluetoothGatt) {
+                    logW(TAGG+"Write notification is for a stale GATT client, ignoring.");
+                    return;
+                }
+
+                CommandJournal.record(CommandJournal.EVENT_WRITE_COMPLETED, flasherLightCommandCode);
+                logD(TAGG+"Light command "+flasherLightCommandCode+" written.");
+                writingCommandCode = null;
+                connectionState.transition(ConnectionStateMachine.STATE_WRITING, ConnectionStateMachine.STATE_READY, "command "+flasherLightCommandCode+" written");
+                lightStateReconciler.onWriteConfirmed(flasherLightCommandCode, ConversionUtils.convertCommandCodeToBleCharacteristicValueList(flasherLightCommandCode));
+
+                if (mainApplication != null) {
+                    mainApplication.onLightCommandWritten(flasherLightCommandCode, rootCharacteristicValue);
+                }
+
+                // If something newer came in while we were writing, do it now
+                writePendingCommand();
+            }
+        });
+    }
+
+    /** The light controller reported its state (notify on char 1002). */
+    void onControllerStateEvent(final BluetoothGatt gatt, final ControllerStateEvent event) {
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "onControllerStateEvent: ";
+
+                if (gatt != bluetoothGatt) {
+                    return;
+                }
+
+                // If it contradicts what was confirmed, the controller drifted; put it back now, if the reconciler's drift limit allows (and no write is already on its way)
+                if (lightStateReconciler.onStateEvent(event) && !isCommandOutstanding() && mainApplication != null) {
+                    logI(TAGG+"Controller drifted from its confirmed state, reconciling.");
+                    mainApplication.reconcileLightState();
+                }
+            }
+        });
+    }
+
+    /** A write to the light controller failed without the link dropping. */
+    void onLightCommandWriteFailed(final BluetoothGatt gatt, final int status) {
+        this.sessionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final String TAGG = "onLightCommandWriteFailed: ";
+
+                if (gatt != bluetoothGatt) {
+                    return;
+                }
+
+                CommandJournal.record(CommandJournal.EVENT_WRITE_FAILED, writingCommandCode == null ? 0 : writingCommandCode, status, 0, 0);
+                logW(TAGG+"Light command write failed (status "+status+"). Dropping the link so it can be re-established cleanly.");
+                connectionState.forceTo(ConnectionStateMachine.STATE_DISCONNECTING, "write failed, status "+status);
+                try {
+                    gatt.disconnect();
+                } catch (Exception e) {
+                    logW(TAGG+"Exception caught disconnecting: "+e.getMessage());
+                }
+            }
+        });
+    }
+
+
+    /*============================================================================================*/
+    /* Session Methods (run on our session thread only) */
+
+    private void doConnect() {
+        final String TAGG = "doConnect: ";
+
+        if (!isSessionWanted) {
+            logV(TAGG+"Session not wanted, not connecting.");
+            return;
+        }
+
+        if (!connectionState.isIdle()) {
+            logV(TAGG+"Already connecting or connected ("+connectionState.toString()+"), nothing to do.");
+            return;
+        }
+
+        if (!recoveryController.allowAttempt()) {
+            logW(TAGG+"Circuit breaker is open, not connecting for another "+recoveryController.getBreakerRemainingMS()+"ms.");
+            scheduleReconnect(recoveryController.getBreakerRemainingMS());
+            return;
+        }
+
+        try {
+            Context appContext = appContextRef == null ? null : appContextRef.get();
+            if (appContext == null) {
+                logE(TAGG+"No context available, cannot connect.");
+                return;
+            }
+
+            if (MainApplication.definedLightControllerMAC == null) {
+                logW(TAGG+"No light controller MAC address defined, cannot connect.");
+                return;
+            }
+
+            // Acquire our device directly by its MAC address (only needs to happen once per controller)
+            if (bluetoothDevice != null && !bluetoothDevice.getAddress().equalsIgnoreCase(MainApplication.definedLightControllerMAC)) {
+                logI(TAGG+"Light controller changed to "+MainApplication.definedLightControllerMAC+", dropping "+bluetoothDevice.getAddress()+".");
+                forgetController();
+                lightStateReconciler.onControllerChanged(MainApplication.definedLightControllerMAC);
+            }
+            if (bluetoothDevice == null) {
+                bluetoothDevice = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(MainApplication.definedLightControllerMAC.toUpperCase());
+                if (mainApplication != null) {
+                    mainApplication.bluetoothDevice = bluetoothDevice;
+                }
+            }
+
+            if (gattCallback == null) {
+                gattCallback = new GattCallback_HY254117(logMethod, this);
+            }
+            gattCallback.resetForNewConnection();
+
+            // Make sure there's never more than one client instance lying around
+            closeGatt();
+
+            connectAttemptCount++;
+            if (!connectionState.transition(ConnectionStateMachine.STATE_IDLE, ConnectionStateMachine.STATE_CONNECTING, "connect attempt #"+connectAttemptCount)) {
+                return;
+            }
+            logD(TAGG+"Connecting to light controller (attempt #"+connectAttemptCount+")...");
+            bluetoothGatt = bluetoothDevice.connectGatt(appContext,
+                    Constants.GATT_AUTOCONNECT,
+                    gattCallback,
+                    BluetoothDevice.TRANSPORT_LE);
+
+            if (bluetoothGatt == null) {
+                logE(TAGG+"connectGatt returned null. Will retry.");
+                recoverFromFailure(GattOperationQueue.STATUS_START_FAILED);
+                return;
+            }
+
+            sessionHandler.removeCallbacks(connectTimeoutRunnable);
+            sessionHandler.postDelayed(connectTimeoutRunnable, CONNECT_TIMEOUT_MS);
+        } catch (Exception e) {
+            logE(TAGG+"Exception caught: "+e.getMessage());
+            recoverFromFailure(GattOperationQueue.STATUS_START_FAILED);
+        }
+    }
+
+    /** Recover from a failed connection attempt or lost link, as hard as the recovery controller says, and schedule the next attempt.
+     * @param status GATT status that came with the failure (or our own negative status if none)
+     */
+    private void recoverFromFailure(int status) {
+        final String TAGG = "recoverFromFailure: ";
+
+        if (status == 133 && mainApplication != null) {
+            mainApplication.problemCount_status133++;
+        }
+
+        connectionState.dumpTransitionLog("failure, status "+status);
+
+        final int step = recoveryController.onFailure(status);
+        CommandJournal.record(CommandJournal.EVENT_RECOVERY, (byte) 0, status, step, 0);
+
+        // Refresh the stack's cache (and forget ours) while we still have a client to do it with
+        if (step >= GattRecoveryController.STEP_REFRESH_CACHE && bluetoothGatt != null) {
+            logI(TAGG+"Refreshing GATT cache.");
+            GattAttributeCache.invalidate(bluetoothGatt);
+        }
+
+        logI(TAGG+"Closing GATT client.");
+        closeGatt();
+
+        long reconnectDelayMS = recoveryController.getNextAttemptDelayMS();
+        if (step == GattRecoveryController.STEP_RESET_ADAPTER) {
+            resetAdapter();
+            reconnectDelayMS = Math.max(reconnectDelayMS, ADAPTER_RESET_OFF_MS + ADAPTER_RESET_SETTLE_MS);
+        }
+
+        scheduleReconnect(reconnectDelayMS);
+    }
+
+    /** Turn the Bluetooth adapter off and back on (last resort for a wedged stack). */
+    private void resetAdapter() {
+        final String TAGG = "resetAdapter: ";
+
+        try {
+            final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+            if (bluetoothAdapter == null) {
+                logW(TAGG+"No Bluetooth adapter available, cannot reset.");
+                return;
+            }
+
+            logW(TAGG+"Resetting Bluetooth adapter.");
+            bluetoothDevice = null;                                 //re-acquire once the adapter is back
+            isAdapterResetUnderway = true;
+            bluetoothAdapter.disable();
+
+            sessionHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    logI(TAGG+"Turning Bluetooth adapter back on.");
+                    bluetoothAdapter.enable();
+                    isAdapterResetUnderway = false;
+                }
+            }, ADAPTER_RESET_OFF_MS);
+        } catch (Exception e) {
+            logE(TAGG+"Exception caught: "+e.getMessage());
+        }
+    }
+
+    /** Drop everything tied to the current controller (link, callback, device), so the next connect starts from scratch. */
+    private void forgetController() {
+        if (writingCommandCode != null) {
+            commandMailbox.putBackIfEmpty(writingCommandCode);
+            writingCommandCode = null;
+        }
+
+        closeGatt();
+
+        if (gattCallback != null) {
+            gattCallback.cleanup();
+            gattCallback = null;
+        }
+
+        bluetoothDevice = null;
+        if (mainApplication != null) {
+            mainApplication.bluetoothDevice = null;
+        }
+
+        recoveryController.onSuccess();                             //backoff earned by the old controller doesn't apply to the new one
+    }
+
+    private void scheduleReconnect(long delayMS) {
+        final String TAGG = "scheduleReconnect: ";
+
+        if (!isSessionWanted) {
+            return;
+        }
+
+        logD(TAGG+"Reconnecting in "+delayMS+"ms.");
+        sessionHandler.removeCallbacks(connectRunnable);
+        sessionHandler.postDelayed(connectRunnable, delayMS);
+    }
+
+    private void closeGatt() {
+        final String TAGG = "closeGatt: ";
+
+        sessionHandler.removeCallbacks(connectTimeoutRunnable);
+        connectionState.forceTo(ConnectionStateMachine.STATE_IDLE, "GATT client closed");
+
+        // Nothing queued against this client can complete anymore
+        gattOperationQueue.clearNow();
+
+        if (bluetoothGatt != null) {
+            try {
+                bluetoothGatt.disconnect();
+                bluetoothGatt.close();
+            } catch (Exception e) {
+                logW(TAGG+"Exception caught closing GATT client: "+e.getMessage());
+            }
+            bluetoothGatt = null;
+        }
+
+        if (mainApplication != null) {
+            mainApplication.bluetoothGatt = null;
+        }
+    }
+
+    private void writePendingCommand() {
+        final String TAGG = "writePendingCommand: ";
+
+        if (commandMailbox.isEmpty()) {
+            return;
+        }
+
+        if (!connectionState.transition(ConnectionStateMachine.STATE_READY, ConnectionStateMachine.STATE_WRITING, "writing command")) {
+            return;                                                 //not ready, or already writing (we'll be back when that's done)
+        }
+
+        final Byte code = commandMailbox.take();
+        if (code == null) {
+            connectionState.transition(ConnectionStateMachine.STATE_WRITING, ConnectionStateMachine.STATE_READY, "nothing to write after all");
+            return;
+        }
+
+        if (mainApplication != null) {
+            mainApplication.bluetoothGatt = bluetoothGatt;
+        }
+
+        writingCommandCode = code;
+        CommandJournal.record(CommandJournal.EVENT_WRITE_STARTED, code);
+        if (!gattCallback.writeLightCommand(bluetoothGatt, code)) {
+            CommandJournal.record(CommandJournal.EVENT_WRITE_FAILED, code, GattOperationQueue.STATUS_START_FAILED, 0, 0);
+            logW(TAGG+"Write of light command "+code+" could not be started. Dropping the link so it can be re-established.");
+            writingCommandCode = null;
+            commandMailbox.putBackIfEmpty(code);
+            connectionState.forceTo(ConnectionStateMachine.STATE_DISCONNECTING, "write of command "+code+" could not be started");
+            bluetoothGatt.disconnect();
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Getter & Setter Methods */
+
+    GattOperationQueue getGattOperationQueue() {
+        return this.gattOperationQueue;
+    }
+
+    /** Handler for the session thread (our GATT callback posts connection state changes to it). */
+    Handler getSessionHandler() {
+        return this.sessionHandler;
+    }
+
+    public GattRecoveryController getRecoveryController() {
+        return this.recoveryController;
+    }
+
+    public LightStateReconciler getLightStateReconciler() {
+        return this.lightStateReconciler;
+    }
+
+    ConnectionStateMachine getConnectionState() {
+        return this.connectionState;
+    }
+
+    public boolean isLinkReady() {
+        return this.connectionState.isLinkUp();
+    }
+
+    /** Whether a connection attempt is somewhere between connectGatt and the link being usable. */
+    public boolean isConnectionEstablishing() {
+        return this.connectionState.isEstablishing();
+    }
+
+    /** Whether a command is being written or waiting to be written. */
+    public boolean isCommandOutstanding() {
+        return !this.commandMailbox.isEmpty() || this.writingCommandCode != null;
+    }
+
+    public long getSupersededCommandCount() {
+        return this.commandMailbox.getSupersededCount();
+    }
+
+    public long getConnectAttemptCount() {
+        return this.connectAttemptCount;
+    }
+
+    public long getLinkLostCount() {
+        return this.linkLostCount;
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
+    }
+}
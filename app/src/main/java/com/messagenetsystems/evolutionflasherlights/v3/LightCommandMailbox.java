@@ -0,0 +1,94 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* LightCommandMailbox
+ * A single-slot, latest-wins mailbox for the next light command to send.
+ *
+ * Posting a command always succeeds: if an older command is still waiting, it's simply replaced (it would have been
+ * stale by the time it got written anyway). The transport takes whatever is newest as soon as its current write is done.
+ * So nothing newer is ever lost, and there's never a backlog of outdated commands to chew through.
+ *
+ * Lock-free (one AtomicReference), so it's safe to post from any thread and take from the transport's thread.
+ *
+ * Usage:
+ *  mailbox.post(code);                     //from anywhere
+ *  Byte next = mailbox.take();             //from the transport, when it's ready for the next command (null if none)
+ *  mailbox.putBackIfEmpty(inFlightCode);   //from the transport, if an in-flight command didn't make it (and nothing newer came in)
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (replaces dropping commands while another is underway).
+ */
+
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class LightCommandMailbox<T> {
+
+    private final AtomicReference<T> slot;
+
+    private final AtomicLong postedCount;
+    private final AtomicLong supersededCount;                       //commands that were replaced before they ever got taken
+
+
+    /** Constructor */
+    public LightCommandMailbox() {
+        this.slot = new AtomicReference<T>(null);
+        this.postedCount = new AtomicLong(0);
+        this.supersededCount = new AtomicLong(0);
+    }
+
+    /** Make the specified command the next one to send, replacing anything still waiting.
+     * @return The waiting command that got replaced (never sent), or null if there wasn't one
+     */
+    @Nullable
+    public T post(T command) {
+        T superseded = slot.getAndSet(command);
+        postedCount.incrementAndGet();
+        if (superseded != null) {
+            supersededCount.incrementAndGet();
+        }
+        return superseded;
+    }
+
+    /** Take the newest waiting command (leaving the mailbox empty).
+     * @return Newest command, or null if none is waiting
+     */
+    @Nullable
+    public T take() {
+        return slot.getAndSet(null);
+    }
+
+    /** Put a command back, but only if nothing newer has been posted in the meantime.
+     * @return Whether the command was put back
+     */
+    public boolean putBackIfEmpty(T command) {
+        return slot.compareAndSet(null, command);
+    }
+
+    @Nullable
+    public T peek() {
+        return slot.get();
+    }
+
+    public boolean isEmpty() {
+        return slot.get() == null;
+    }
+
+    public void clear() {
+        slot.set(null);
+    }
+
+
+    /*============================================================================================*/
+    /* Getter & Setter Methods */
+
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    public long getSupersededCount() {
+        return supersededCount.get();
+    }
+}
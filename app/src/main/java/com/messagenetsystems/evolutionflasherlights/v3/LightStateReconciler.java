@@ -0,0 +1,280 @@
+package com.messagenetsystems.evolutionflasherlights.v3;
+
+/* LightStateReconciler
+ * Keeps track of the state we want a light controller to be in (desired) and the last state it was confirmed to be in (actual).
+ *
+ * We only need to touch the radio when those differ, or when the confirmation has gotten old enough that we shouldn't trust
+ * it anymore (the controller may have drifted or been power-cycled without us noticing). Otherwise, asking for the same state
+ * again (as LightStateManagerThread does every cycle) is a no-op.
+ *
+ * A state is confirmed when its write completes successfully. After that, the controller's own state reports (notifies on
+ * char 1002, decoded into ControllerStateEvent) keep it confirmed if they match what we wrote, so we never need to re-send or
+ * read back just to check. Reports are compared by decoded mode and colour (see ControllerStateEvent.matches), and one of a kind
+ * we didn't write can't tell us anything (except power-off). A report that contradicts what we wrote means the controller has
+ * drifted (or power-cycled) since, so the confirmation is thrown away right then, and the caller reconciles. Losing the link
+ * throws confirmation away too, since a controller that drops off may come back in its power-on state.
+ *
+ * Drift reconciles are rate-limited, so a controller that never reports back what we wrote can't keep us rewriting it: at most
+ * one per minimum interval, which doubles with each consecutive drift, and after the maximum consecutive drifts we give up
+ * (and say so) until a report matches again or the controller changes. Held-back drifts leave confirmation alone, so staleness
+ * still gets it rewritten eventually.
+ *
+ * One instance per controller (GattSessionManager_HY254117 owns it). Thread-safe.
+ *
+ * Usage:
+ *  reconciler.setDesired(code);
+ *  if (reconciler.needsReconcile()) { ...write reconciler.getDesired()... }
+ *  reconciler.onWriteConfirmed(code, values);  //when a write completes
+ *  if (reconciler.onStateEvent(event)) { ...reconcile... }   //when the controller notifies us
+ *  reconciler.invalidateConfirmation();        //when the link drops
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created (only write when desired and confirmed state differ, or confirmation is stale).
+ *  2026.10.16      agent           Confirmation from notifies now requires the decoded state to match what we wrote.
+ *  2026.10.16      agent           Staleness check uses DatetimeUtils monotonic helpers.
+ *  2026.10.16      agent           Added onControllerChanged (session re-pointed at a different controller).
+ *  2026.10.16      agent           A mismatching state report now invalidates confirmation (and says so), instead of waiting for it to go stale.
+ *  2026.10.16      agent           Drift is judged on decoded state (reports of another kind are inconclusive), and drift reconciles are
+ *                                  rate-limited with backoff, giving up after too many in a row.
+ */
+
+import android.support.annotation.Nullable;
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.utilities.DatetimeUtils;
+import com.messagenetsystems.evolutionflasherlights.utilities.LogUtils;
+
+import java.util.List;
+
+
+public class LightStateReconciler {
+    private final String TAG = LightStateReconciler.class.getSimpleName();
+
+    private String macAddress;
+    private final long confirmationStaleMS;
+    private final long driftReconcileMinIntervalMS;
+    private final int driftReconcileMaxConsecutive;
+
+    private Byte desiredCode;                                       //state we want the controller in (null if nobody has asked for anything yet)
+    private Byte confirmedCode;                                     //state the controller was last confirmed to be in (null if unknown)
+    private List<byte[]> confirmedValues;                           //datagrams that were written for confirmedCode (what the controller should report back)
+    private long confirmedElapsedMS;                                //when confirmedCode was last confirmed (SystemClock.elapsedRealtime)
+
+    private long skippedCount;                                      //how many times we avoided touching the radio
+    private long stateEventMatchCount;                              //how many controller state reports matched what we wrote
+    private long stateEventMismatchCount;                           //how many controller state reports didn't
+
+    private int consecutiveDriftCount;                              //drift reconciles since a report last matched
+    private long lastDriftReconcileElapsedMS;                       //when we last let a drift reconcile happen (ELAPSED_NEVER if not yet)
+    private boolean isDriftReconcileGivenUp;                        //whether we've stopped reconciling drift (until a report matches)
+
+    // Logging stuff...
+    private final int LOG_SEVERITY_V = 1;
+    private final int LOG_SEVERITY_D = 2;
+    private final int LOG_SEVERITY_I = 3;
+    private final int LOG_SEVERITY_W = 4;
+    private final int LOG_SEVERITY_E = 5;
+    private int logMethod = Constants.LOG_METHOD_LOGCAT;
+
+
+    /** Constructor */
+    public LightStateReconciler(String macAddress, long confirmationStaleMS, long driftReconcileMinIntervalMS, int driftReconcileMaxConsecutive, int logMethod) {
+        this.logMethod = logMethod;
+        this.macAddress = macAddress;
+        this.confirmationStaleMS = confirmationStaleMS;
+        this.driftReconcileMinIntervalMS = driftReconcileMinIntervalMS;
+        this.driftReconcileMaxConsecutive = driftReconcileMaxConsecutive;
+
+        this.desiredCode = null;
+        this.confirmedCode = null;
+        this.confirmedValues = null;
+        this.confirmedElapsedMS = 0;
+        this.skippedCount = 0;
+        this.stateEventMatchCount = 0;
+        this.stateEventMismatchCount = 0;
+        resetDriftLimit();
+    }
+
+
+    /*============================================================================================*/
+    /* Reconciliation Methods */
+
+    /** Set the state we want the controller to be in. */
+    public synchronized void setDesired(byte flasherLightCommandCode) {
+        this.desiredCode = flasherLightCommandCode;
+    }
+
+    /** Whether the radio needs touching to get (or keep) the controller in its desired state.
+     * That's the case if we have a desired state and it's either not what was last confirmed, or that confirmation is stale. */
+    public synchronized boolean needsReconcile() {
+        final String TAGG = "needsReconcile: ";
+
+        if (desiredCode == null) {
+            return false;
+        }
+
+        if (confirmedCode == null || !confirmedCode.equals(desiredCode)) {
+            return true;
+        }
+
+        if (isConfirmationStale()) {
+            logD(TAGG+"Confirmation of state "+confirmedCode+" for "+macAddress+" is stale, needs rewriting.");
+            return true;
+        }
+
+        skippedCount++;
+        return false;
+    }
+
+    /** A write of the specified state completed successfully.
+     * @param flasherLightCommandCode Omni command code that was written
+     * @param writtenValues Datagrams that were written for it
+     */
+    public synchronized void onWriteConfirmed(byte flasherLightCommandCode, @Nullable List<byte[]> writtenValues) {
+        this.confirmedCode = flasherLightCommandCode;
+        this.confirmedValues = writtenValues;
+        this.confirmedElapsedMS = DatetimeUtils.nowElapsedMS();
+    }
+
+    /** The controller reported its state. If it's what we wrote, that's as good as a fresh confirmation.
+     * @return Whether it contradicted the confirmed state and a drift reconcile is allowed now (confirmation is then forgotten, so the caller should reconcile)
+     */
+    public synchronized boolean onStateEvent(ControllerStateEvent event) {
+        final String TAGG = "onStateEvent: ";
+
+        if (confirmedCode == null || event == null || !event.isStateEvent()) {
+            return false;
+        }
+
+        boolean isComparable = false;
+        if (confirmedValues != null) {
+            for (byte[] value : confirmedValues) {
+                if (event.matches(value)) {
+                    stateEventMatchCount++;
+                    this.confirmedElapsedMS = DatetimeUtils.nowElapsedMS();
+                    if (isDriftReconcileGivenUp) {
+                        logI(TAGG+"Controller "+macAddress+" reports confirmed state "+confirmedCode+" again, resuming drift reconciles.");
+                    }
+                    resetDriftLimit();
+                    return false;
+                }
+                if (event.isSameKindAs(value)) {
+                    isComparable = true;
+                }
+            }
+        }
+
+        // A report of some other kind (e.g. a flash report when we wrote a color) says nothing about what we wrote, unless it's power-off
+        if (!isComparable && !(event.getType() == ControllerStateEvent.TYPE_POWER && !event.isOn())) {
+            logV(TAGG+"Controller "+macAddress+" reported "+event.toString()+", which is inconclusive for confirmed state "+confirmedCode+".");
+            return false;
+        }
+
+        // Not what we wrote for the confirmed state, so the controller has drifted (or power-cycled) since
+        stateEventMismatchCount++;
+
+        if (isDriftReconcileGivenUp) {
+            logV(TAGG+"Controller "+macAddress+" still reports "+event.toString()+", drift reconciles are given up.");
+            return false;
+        }
+
+        if (consecutiveDriftCount >= driftReconcileMaxConsecutive) {
+            isDriftReconcileGivenUp = true;
+            logW(TAGG+"Controller "+macAddress+" drifted from confirmed state "+confirmedCode+" "+consecutiveDriftCount+" times in a row, giving up on drift reconciles (last report: "+event.toString()+").");
+            return false;
+        }
+
+        if (!DatetimeUtils.hasElapsed(lastDriftReconcileElapsedMS, driftReconcileMinIntervalMS << consecutiveDriftCount)) {
+            logD(TAGG+"Controller "+macAddress+" reported "+event.toString()+", which doesn't match confirmed state "+confirmedCode+" (holding back, reconciled too recently).");
+            return false;
+        }
+
+        // We can't vouch for it anymore, so let the caller reconcile
+        consecutiveDriftCount++;
+        lastDriftReconcileElapsedMS = DatetimeUtils.nowElapsedMS();
+        logI(TAGG+"Controller "+macAddress+" reported "+event.toString()+", which doesn't match confirmed state "+confirmedCode+" (drift "+consecutiveDriftCount+" of "+driftReconcileMaxConsecutive+").");
+        invalidateConfirmation();
+        return true;
+    }
+
+    /** We can no longer vouch for the controller's state (e.g. link was lost, controller may have power-cycled). */
+    public synchronized void invalidateConfirmation() {
+        final String TAGG = "invalidateConfirmation: ";
+
+        if (confirmedCode != null) {
+            logD(TAGG+"Forgetting confirmed state "+confirmedCode+" for "+macAddress+".");
+        }
+        this.confirmedCode = null;
+        this.confirmedValues = null;
+        this.confirmedElapsedMS = 0;
+    }
+
+    /** The session now talks to a different light controller: keep what's desired, but nothing about the old one's state applies. */
+    public synchronized void onControllerChanged(String macAddress) {
+        final String TAGG = "onControllerChanged: ";
+        logI(TAGG+"Light controller changed ("+this.macAddress+" -> "+macAddress+").");
+
+        this.macAddress = macAddress;
+        invalidateConfirmation();
+        resetDriftLimit();
+    }
+
+    private boolean isConfirmationStale() {
+        return DatetimeUtils.hasElapsed(confirmedElapsedMS, confirmationStaleMS);
+    }
+
+    private void resetDriftLimit() {
+        this.consecutiveDriftCount = 0;
+        this.lastDriftReconcileElapsedMS = DatetimeUtils.ELAPSED_NEVER;
+        this.isDriftReconcileGivenUp = false;
+    }
+
+
+    /*============================================================================================*/
+    /* Getter & Setter Methods */
+
+    @Nullable
+    public synchronized Byte getDesired() {
+        return this.desiredCode;
+    }
+
+    @Nullable
+    public synchronized Byte getConfirmed() {
+        return this.confirmedCode;
+    }
+
+    public synchronized long getSkippedCount() {
+        return this.skippedCount;
+    }
+
+    public synchronized long getStateEventMatchCount() {
+        return this.stateEventMatchCount;
+    }
+
+    public synchronized long getStateEventMismatchCount() {
+        return this.stateEventMismatchCount;
+    }
+
+
+    /*============================================================================================*/
+    /* Logging Methods */
+
+    private void logV(String tagg) {
+        log(LOG_SEVERITY_V, tagg);
+    }
+    private void logD(String tagg) {
+        log(LOG_SEVERITY_D, tagg);
+    }
+    private void logI(String tagg) {
+        log(LOG_SEVERITY_I, tagg);
+    }
+    private void logW(String tagg) {
+        log(LOG_SEVERITY_W, tagg);
+    }
+    private void logE(String tagg) {
+        log(LOG_SEVERITY_E, tagg);
+    }
+    private void log(int logSeverity, String tagg) {
+        LogUtils.log(LogUtils.SUBSYSTEM_TRANSPORT, logMethod, TAG, logSeverity, tagg);
+    }
+}
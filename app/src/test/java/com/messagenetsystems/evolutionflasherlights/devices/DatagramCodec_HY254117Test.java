@@ -0,0 +1,197 @@
+package com.messagenetsystems.evolutionflasherlights.devices;
+
+/* DatagramCodec_HY254117Test
+ * Local unit tests for the datagram codec, which is where diode safety is enforced (see its header).
+ * Makes sure out-of-range values get clamped as they're encoded, and that brightness-power never exceeds the steady
+ * maximum of the most delicate diode that's lit, whatever the caller asks for (including the "peak" methods).
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created.
+ */
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class DatagramCodec_HY254117Test {
+
+    private BluetoothLightController_HY254117V9 model;
+    private DatagramCodec_HY254117 codec;
+    private DatagramCodec_HY254117.Datagram datagram;
+    private byte[] buf;
+
+
+    @Before
+    public void setUp() {
+        model = new BluetoothLightController_HY254117V9(Constants.LOG_METHOD_LOGCAT);
+        codec = model.getDatagramCodec();
+        datagram = new DatagramCodec_HY254117.Datagram();
+        buf = new byte[DatagramCodec_HY254117.MAX_LENGTH];
+    }
+
+
+    /*============================================================================================*/
+    /* Color Tests */
+
+    @Test
+    public void encodeColor_clampsBrightnessToLitDiode() {
+        codec.encodeColor(buf, 0, 0xff, 0x00, 0x00, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, DatagramCodec_HY254117.SPEED_MAX);
+        assertEquals(model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY, buf[DatagramCodec_HY254117.POS_COLOR_BRIGHTNESS]);
+
+        codec.encodeColor(buf, 0, 0x00, 0xff, 0x00, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, DatagramCodec_HY254117.SPEED_MAX);
+        assertEquals(model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY, buf[DatagramCodec_HY254117.POS_COLOR_BRIGHTNESS]);
+
+        codec.encodeColor(buf, 0, 0x00, 0x00, 0xff, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, DatagramCodec_HY254117.SPEED_MAX);
+        assertEquals(model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY, buf[DatagramCodec_HY254117.POS_COLOR_BRIGHTNESS]);
+    }
+
+    @Test
+    public void encodeColor_clampsBrightnessToMostDelicateLitDiode() {
+        //every combination of lit diodes, at every requested brightness-power (including out of range)
+        for (int mask = 0; mask < 8; mask++) {
+            final int red = (mask & 1) != 0 ? 0xff : 0x00;
+            final int green = (mask & 2) != 0 ? 0xff : 0x00;
+            final int blue = (mask & 4) != 0 ? 0xff : 0x00;
+            final int limit = expectedColorLimit(red, green, blue);
+
+            for (int requested = -1; requested <= DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX + 1; requested++) {
+                codec.encodeColor(buf, 0, red, green, blue, requested, DatagramCodec_HY254117.SPEED_MAX);
+                final int encoded = buf[DatagramCodec_HY254117.POS_COLOR_BRIGHTNESS] & 0xff;
+                assertEquals("rgb "+red+","+green+","+blue+" requested "+requested,
+                        Math.max(0, Math.min(requested, limit)), encoded);
+            }
+        }
+    }
+
+    @Test
+    public void encodeColor_clampsOutOfRangeFields() {
+        final long clampCountBefore = codec.getClampCount();
+        final int len = codec.encodeColor(buf, 0, 0x1ff, -5, 0x100, -1, DatagramCodec_HY254117.SPEED_MAX + 3);
+
+        assertEquals(DatagramCodec_HY254117.LENGTH_COLOR, len);
+        assertTrue(codec.decode(buf, 0, len, datagram));
+        assertEquals(DatagramCodec_HY254117.TYPE_COLOR, datagram.type);
+        assertEquals(DatagramCodec_HY254117.SATURATION_MAX, datagram.red);
+        assertEquals(0, datagram.green);
+        assertEquals(DatagramCodec_HY254117.SATURATION_MAX, datagram.blue);
+        assertEquals(0, datagram.brightness);
+        assertEquals(DatagramCodec_HY254117.SPEED_MAX, datagram.speed);
+        assertEquals(clampCountBefore + 5, codec.getClampCount());
+    }
+
+    @Test
+    public void encodeColor_byteBufferMatchesArray() {
+        final ByteBuffer bb = ByteBuffer.allocate(DatagramCodec_HY254117.MAX_LENGTH);
+        final int lenArray = codec.encodeColor(buf, 0, 0xff, 0x80, 0x00, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, 0x08);
+        final int lenBuffer = codec.encodeColor(bb, 0xff, 0x80, 0x00, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, 0x08);
+
+        assertEquals(lenArray, lenBuffer);
+        assertEquals(lenBuffer, bb.position());
+        assertArrayEquals(buf, bb.array());
+    }
+
+    @Test
+    public void encodeColor_honorsCalibrationChange() {
+        model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY = (byte) 0x01;
+
+        codec.encodeColor(buf, 0, 0x00, 0xff, 0x00, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, DatagramCodec_HY254117.SPEED_MAX);
+        assertEquals(0x01, buf[DatagramCodec_HY254117.POS_COLOR_BRIGHTNESS]);
+    }
+
+
+    /*============================================================================================*/
+    /* White Tests */
+
+    @Test
+    public void encodeWhite_clampsBrightnessAndTone() {
+        final int len = codec.encodeWhite(buf, 0, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, DatagramCodec_HY254117.WHITE_TONE_MAX + 1);
+
+        assertEquals(DatagramCodec_HY254117.LENGTH_WHITE, len);
+        assertTrue(codec.decode(buf, 0, len, datagram));
+        assertEquals(DatagramCodec_HY254117.TYPE_WHITE, datagram.type);
+        assertTrue(datagram.isOn);
+        assertEquals(model.DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY, datagram.brightness);
+        assertEquals(DatagramCodec_HY254117.WHITE_TONE_MAX, datagram.tone);
+
+        codec.encodeWhite(buf, 0, -1, -1);
+        assertTrue(codec.decode(buf, 0, len, datagram));
+        assertEquals(0, datagram.brightness);
+        assertEquals(0, datagram.tone);
+    }
+
+    @Test
+    public void encodeWhite_byteBufferMatchesArray() {
+        final ByteBuffer bb = ByteBuffer.allocate(DatagramCodec_HY254117.LENGTH_WHITE);
+        codec.encodeWhite(buf, 0, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, 0x00);
+        codec.encodeWhite(bb, DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX, 0x00);
+
+        for (int i = 0; i < DatagramCodec_HY254117.LENGTH_WHITE; i++) {
+            assertEquals("byte "+i, buf[i], bb.get(i));
+        }
+    }
+
+
+    /*============================================================================================*/
+    /* Model Tests */
+
+    @Test
+    public void peakMethods_onlyGetSteadyBrightness() {
+        assertTrue(codec.decode(model.constructLightCommandByteSequence_whiteMaxBrightnessPeak(), 0, DatagramCodec_HY254117.LENGTH_WHITE, datagram));
+        assertTrue(datagram.brightness <= model.DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY);
+
+        final byte[][] colors = {
+                model.constructDataBytes_color_red(BluetoothLightController_HY254117V9.COLOR_BRIGHTNESS_MAX),
+                model.constructDataBytes_color_green(BluetoothLightController_HY254117V9.COLOR_BRIGHTNESS_MAX),
+                model.constructDataBytes_color_blue(BluetoothLightController_HY254117V9.COLOR_BRIGHTNESS_MAX),
+                model.constructDataBytes_color_orange(BluetoothLightController_HY254117V9.COLOR_BRIGHTNESS_MAX),
+                model.constructDataBytes_color_pink(BluetoothLightController_HY254117V9.COLOR_BRIGHTNESS_MAX),
+                model.constructDataBytes_color_purple(BluetoothLightController_HY254117V9.COLOR_BRIGHTNESS_MAX),
+                model.constructDataBytes_color_yellow(BluetoothLightController_HY254117V9.COLOR_BRIGHTNESS_MAX)
+        };
+        for (byte[] color : colors) {
+            final byte[] value = model.constructLightCommandByteSequence_colorMaxBrightnessPeak(color);
+            assertTrue(codec.decode(value, 0, value.length, datagram));
+            assertTrue("peak brightness "+datagram.brightness+" for rgb "+datagram.red+","+datagram.green+","+datagram.blue,
+                    datagram.brightness <= expectedColorLimit(datagram.red, datagram.green, datagram.blue));
+        }
+    }
+
+    @Test
+    public void powerOff_keepsPersistByte() {
+        final int len = codec.encodePower(buf, 0, false);
+
+        assertEquals(DatagramCodec_HY254117.LENGTH_POWER_OFF, len);
+        assertEquals((byte) 0x02, buf[DatagramCodec_HY254117.POS_POWER_PERSIST]);
+        assertTrue(codec.decode(buf, 0, len, datagram));
+        assertEquals(DatagramCodec_HY254117.TYPE_POWER, datagram.type);
+        assertFalse(datagram.isOn);
+    }
+
+
+    /*============================================================================================*/
+    /* Utility Methods */
+
+    /** The lowest steady maximum among the lit diodes, worked out straight from the model (not via the codec under test). */
+    private int expectedColorLimit(int red, int green, int blue) {
+        if (red <= 0 && green <= 0 && blue <= 0) {
+            //nothing lit, so the codec should be as conservative as the most delicate diode
+            return Math.min(model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY,
+                    Math.min(model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY, model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY));
+        }
+
+        int limit = DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX;
+        if (red > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY);
+        if (green > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY);
+        if (blue > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY);
+        return limit;
+    }
+}
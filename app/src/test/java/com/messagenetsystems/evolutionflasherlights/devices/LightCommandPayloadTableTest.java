@@ -0,0 +1,133 @@
+package com.messagenetsystems.evolutionflasherlights.devices;
+
+/* LightCommandPayloadTableTest
+ * Local unit tests for the precomputed light command payloads.
+ * Every entry (all 256 codes, for each platform's codes) gets decoded and checked against the controller model's steady
+ * brightness limits for the diodes it actually lights, since these are what actually get written to the lights.
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created.
+ */
+
+import com.messagenetsystems.evolutionflasherlights.Constants;
+import com.messagenetsystems.evolutionflasherlights.models.FlasherLights;
+import com.messagenetsystems.evolutionflasherlights.utilities.ConversionUtils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class LightCommandPayloadTableTest {
+
+    private static final byte[] PLATFORMS = {FlasherLights.PLATFORM_MNS, FlasherLights.PLATFORM_API};
+
+
+    /*============================================================================================*/
+    /* Tests */
+
+    @Test
+    public void everyEntry_staysWithinSteadyLimits() {
+        for (byte platform : PLATFORMS) {
+            final BluetoothLightController_HY254117V9 model = new BluetoothLightController_HY254117V9(Constants.LOG_METHOD_LOGCAT);
+            final LightCommandPayloadTable table = new LightCommandPayloadTable(model, new FlasherLights.OmniCommandCodes(platform), Constants.LOG_METHOD_LOGCAT);
+
+            assertAllEntriesSafe(model, table, "platform "+platform);
+        }
+    }
+
+    @Test
+    public void everyEntry_staysWithinSteadyLimits_afterCalibrationChange() {
+        final BluetoothLightController_HY254117V9 model = new BluetoothLightController_HY254117V9(Constants.LOG_METHOD_LOGCAT);
+        final LightCommandPayloadTable table = new LightCommandPayloadTable(model, new FlasherLights.OmniCommandCodes(FlasherLights.PLATFORM_MNS), Constants.LOG_METHOD_LOGCAT);
+        assertEquals(1, table.getBuildCount());
+
+        //derate every diode (as if recalibrated for a hotter enclosure)
+        model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY = (byte) 0x01;
+        model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY = (byte) 0x01;
+        model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY = (byte) 0x02;
+        model.DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY = (byte) 0x01;
+
+        assertAllEntriesSafe(model, table, "recalibrated");
+        assertEquals(2, table.getBuildCount());
+    }
+
+    @Test
+    public void flashingEntries_turnFlashOnAfterBase() {
+        final BluetoothLightController_HY254117V9 model = new BluetoothLightController_HY254117V9(Constants.LOG_METHOD_LOGCAT);
+        final FlasherLights.OmniCommandCodes codes = new FlasherLights.OmniCommandCodes(FlasherLights.PLATFORM_MNS);
+        final LightCommandPayloadTable table = new LightCommandPayloadTable(model, codes, Constants.LOG_METHOD_LOGCAT);
+        final DatagramCodec_HY254117 codec = model.getDatagramCodec();
+        final DatagramCodec_HY254117.Datagram datagram = new DatagramCodec_HY254117.Datagram();
+
+        final List<byte[]> values = table.get(codes.CMD_LIGHT_FLASHING_RED);
+        assertEquals(2, values.size());
+
+        assertTrue(codec.decode(values.get(0), 0, values.get(0).length, datagram));
+        assertEquals(DatagramCodec_HY254117.TYPE_COLOR, datagram.type);
+
+        assertTrue(codec.decode(values.get(1), 0, values.get(1).length, datagram));
+        assertEquals(DatagramCodec_HY254117.TYPE_FLASH, datagram.type);
+        assertTrue(datagram.isOn);
+    }
+
+
+    /*============================================================================================*/
+    /* Utility Methods */
+
+    /** Decode every value of every entry, and check its brightness-power against the steady limits of the diodes it lights. */
+    private void assertAllEntriesSafe(BluetoothLightController_HY254117V9 model, LightCommandPayloadTable table, String what) {
+        final DatagramCodec_HY254117 codec = model.getDatagramCodec();
+        final DatagramCodec_HY254117.Datagram datagram = new DatagramCodec_HY254117.Datagram();
+
+        for (int i = Byte.MIN_VALUE; i <= Byte.MAX_VALUE; i++) {
+            final List<byte[]> values = table.get((byte) i);
+            assertFalse(what+", code "+i+": no values", values.isEmpty());
+
+            for (byte[] value : values) {
+                final String where = what+", code "+i+", value "+ConversionUtils.byteArrayToHexString(value);
+                assertTrue(where+": doesn't decode", codec.decode(value, 0, value.length, datagram));
+
+                switch (datagram.type) {
+                    case DatagramCodec_HY254117.TYPE_COLOR:
+                        assertTrue(where+": brightness "+datagram.brightness+" over steady limit",
+                                datagram.brightness <= steadyColorLimit(model, datagram.red, datagram.green, datagram.blue));
+                        assertTrue(where+": speed out of range", datagram.speed <= DatagramCodec_HY254117.SPEED_MAX);
+                        break;
+                    case DatagramCodec_HY254117.TYPE_WHITE:
+                        assertTrue(where+": brightness "+datagram.brightness+" over steady limit",
+                                datagram.brightness <= model.DATAGRAM_W_DATA_WHITE_MAXBRIGHT_PWR_STDY);
+                        assertTrue(where+": tone out of range", datagram.tone <= DatagramCodec_HY254117.WHITE_TONE_MAX);
+                        break;
+                    case DatagramCodec_HY254117.TYPE_POWER:
+                        if (!datagram.isOn) {
+                            assertEquals(where+": power-off without persist byte", DatagramCodec_HY254117.LENGTH_POWER_OFF, value.length);
+                        }
+                        break;
+                    case DatagramCodec_HY254117.TYPE_FLASH:
+                        break;
+                    default:
+                        throw new AssertionError(where+": unexpected datagram type "+datagram.type);
+                }
+            }
+        }
+    }
+
+    /** The lowest steady maximum among the lit diodes (or among all of them, if nothing's lit). */
+    private int steadyColorLimit(BluetoothLightController_HY254117V9 model, int red, int green, int blue) {
+        if (red <= 0 && green <= 0 && blue <= 0) {
+            return Math.min(model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY,
+                    Math.min(model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY, model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY));
+        }
+
+        int limit = DatagramCodec_HY254117.BRIGHTNESS_PWR_MAX;
+        if (red > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_RED_MAXBRIGHT_PWR_STDY);
+        if (green > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_GREEN_MAXBRIGHT_PWR_STDY);
+        if (blue > 0) limit = Math.min(limit, model.DATAGRAM_W_DATA_BLUE_MAXBRIGHT_PWR_STDY);
+        return limit;
+    }
+}
@@ -0,0 +1,407 @@
+/* JournalAnalyzer
+ * Offline (plain JVM, no Android) analyzer for the binary journal files written by the app's CommandJournal
+ * (journal_<yyyyMMdd_HHmmss>.bin, in the device's logs_<package> directory).
+ *
+ * Reports, per file:
+ *  - event counts, dedupe rate, write failure rate, connect success rate, link losses, recovery steps
+ *  - latency percentiles (p50/p90/p99/max) for each connection phase (time spent in each ConnectionStateMachine state),
+ *    and for commands: received -> write started (waiting for link/turn), write started -> completed, received -> completed
+ *  - optionally, the full timeline (wall clock time, delta, and what happened)
+ *
+ * Usage (JDK 11+ can run it straight from source; otherwise javac it first):
+ *  adb pull /sdcard/logs_com.messagenetsystems.evolutionflasherlights/journal_20261016_080000.bin
+ *  java tools/JournalAnalyzer.java [--timeline] journal_20261016_080000.bin [more.bin ...]
+ *
+ * Event types and record layout must match CommandJournal.java.
+ *
+ * Revisions:
+ *  2026.10.16      agent           Created.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+public class JournalAnalyzer {
+
+    // Format (see CommandJournal)...
+    private static final int MAGIC = 0x464c4a31;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int EVENT_COMMAND_RECEIVED = 1;
+    private static final int EVENT_COMMAND_DEDUPED = 2;
+    private static final int EVENT_COMMAND_SUBMITTED = 3;
+    private static final int EVENT_COMMAND_SUPERSEDED = 4;
+    private static final int EVENT_STATE_TRANSITION = 5;
+    private static final int EVENT_WRITE_STARTED = 6;
+    private static final int EVENT_WRITE_COMPLETED = 7;
+    private static final int EVENT_WRITE_FAILED = 8;
+    private static final int EVENT_LINK_LOST = 9;
+    private static final int EVENT_RECOVERY = 10;
+    private static final String[] EVENT_NAMES = {"?", "RECEIVED", "DEDUPED", "SUBMITTED", "SUPERSEDED", "TRANSITION",
+            "WRITE_STARTED", "WRITE_COMPLETED", "WRITE_FAILED", "LINK_LOST", "RECOVERY"};
+
+    // ConnectionStateMachine.STATE_* and GattRecoveryController.STEP_*...
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_CONNECTING = 1;
+    private static final int STATE_AUTHENTICATING = 3;
+    private static final int STATE_READY = 4;
+    private static final String[] STATE_NAMES = {"IDLE", "CONNECTING", "DISCOVERING", "AUTHENTICATING", "READY", "WRITING", "DISCONNECTING"};
+    private static final String[] STEP_NAMES = {"?", "CLOSE_CLIENT", "REFRESH_CACHE", "RESET_ADAPTER"};
+
+    private static final long NS_PER_MS = 1000000L;
+
+
+    public static void main(String[] args) {
+        boolean showTimeline = false;
+        List<String> paths = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("--timeline")) {
+                showTimeline = true;
+            } else if (arg.startsWith("--")) {
+                usage("Unknown option: " + arg);
+                return;
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.isEmpty()) {
+            usage(null);
+            return;
+        }
+
+        int failures = 0;
+        for (String path : paths) {
+            try {
+                analyze(new File(path), showTimeline);
+            } catch (IOException e) {
+                System.err.println(path + ": " + e.getMessage());
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String problem) {
+        if (problem != null) {
+            System.err.println(problem);
+        }
+        System.err.println("Usage: java JournalAnalyzer [--timeline] journal_<date>.bin [...]");
+        System.exit(2);
+    }
+
+
+    /*============================================================================================*/
+    /* Reading */
+
+    private static class Record {
+        long monoNS;
+        int sequence;
+        int type;
+        int code;
+        int status;
+        int aux;
+        long value;
+    }
+
+    private static class Journal {
+        File file;
+        int capacity;
+        long openedWallMS;
+        long openedMonoNS;
+        int tornCount;
+        List<Record> records = new ArrayList<Record>();
+
+        long toWallMS(long monoNS) {
+            return openedWallMS + (monoNS - openedMonoNS) / NS_PER_MS;
+        }
+    }
+
+    private static Journal read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] bytes;
+        try {
+            if (randomAccessFile.length() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be a journal.");
+            }
+            bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a journal file (bad magic).");
+        }
+
+        Journal journal = new Journal();
+        journal.file = file;
+        int version = buffer.getShort(4);
+        int recordSize = buffer.getShort(6);
+        journal.capacity = buffer.getInt(8);
+        journal.openedWallMS = buffer.getLong(16);
+        journal.openedMonoNS = buffer.getLong(24);
+        if (version != 1 || recordSize < 32 || journal.capacity <= 0
+                || HEADER_SIZE + (long) journal.capacity * recordSize > bytes.length) {
+            throw new IOException("Unsupported journal (version " + version + ", record size " + recordSize + ", capacity " + journal.capacity + ").");
+        }
+
+        for (int slot = 0; slot < journal.capacity; slot++) {
+            int at = HEADER_SIZE + slot * recordSize;
+            int sequence = buffer.getInt(at + 8);
+            if (sequence == 0) {
+                continue;
+            }
+            if ((((long) sequence - 1) & 0xffffffffL) % journal.capacity != slot) {
+                journal.tornCount++;                                    //interrupted write (or garbage)
+                continue;
+            }
+
+            Record record = new Record();
+            record.monoNS = buffer.getLong(at);
+            record.sequence = sequence;
+            record.type = buffer.get(at + 12) & 0xff;
+            record.code = buffer.get(at + 13);
+            record.status = buffer.getShort(at + 14);
+            record.aux = buffer.getInt(at + 16);
+            record.value = buffer.getLong(at + 20);
+            journal.records.add(record);
+        }
+
+        Collections.sort(journal.records, new Comparator<Record>() {
+            @Override
+            public int compare(Record a, Record b) {
+                long sa = a.sequence & 0xffffffffL;
+                long sb = b.sequence & 0xffffffffL;
+                return sa < sb ? -1 : (sa == sb ? 0 : 1);
+            }
+        });
+        return journal;
+    }
+
+
+    /*============================================================================================*/
+    /* Analysis */
+
+    private static void analyze(File file, boolean showTimeline) throws IOException {
+        Journal journal = read(file);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+
+        System.out.println("== " + file.getName());
+        System.out.println("Opened " + dateFormat.format(new Date(journal.openedWallMS)) + ", " + journal.records.size()
+                + " records (capacity " + journal.capacity + (journal.tornCount > 0 ? ", " + journal.tornCount + " torn" : "") + ").");
+        if (journal.records.isEmpty()) {
+            System.out.println();
+            return;
+        }
+        Record first = journal.records.get(0);
+        Record last = journal.records.get(journal.records.size() - 1);
+        System.out.println("Covers " + dateFormat.format(new Date(journal.toWallMS(first.monoNS))) + " to "
+                + dateFormat.format(new Date(journal.toWallMS(last.monoNS))) + " (sequence " + first.sequence + " to " + last.sequence + ").");
+
+        int[] eventCounts = new int[EVENT_NAMES.length];
+        int acceptedCount = 0;
+        int rejectedCount = 0;
+        int connectAttemptCount = 0;
+        int connectReadyCount = 0;
+        int[] recoveryStepCounts = new int[STEP_NAMES.length];
+        Map<String, List<Long>> phaseLatencies = new LinkedHashMap<String, List<Long>>();
+        List<Long> waitLatencies = new ArrayList<Long>();
+        List<Long> writeLatencies = new ArrayList<Long>();
+        List<Long> endToEndLatencies = new ArrayList<Long>();
+
+        // Per command code: when the (still pending) command was received, and when its write started (-1 if none)
+        long[] receivedNS = new long[256];
+        long[] writeStartedNS = new long[256];
+        Arrays.fill(receivedNS, -1);
+        Arrays.fill(writeStartedNS, -1);
+
+        long stateEnteredNS = -1;
+        int currentState = -1;
+
+        for (Record r : journal.records) {
+            if (r.type < EVENT_NAMES.length) {
+                eventCounts[r.type]++;
+            }
+            int code = r.code & 0xff;
+
+            switch (r.type) {
+                case EVENT_COMMAND_RECEIVED:
+                    receivedNS[code] = r.monoNS;
+                    break;
+                case EVENT_COMMAND_DEDUPED:
+                    receivedNS[code] = -1;
+                    break;
+                case EVENT_COMMAND_SUBMITTED:
+                    if (r.status != 0) {
+                        acceptedCount++;
+                    } else {
+                        rejectedCount++;
+                        receivedNS[code] = -1;
+                    }
+                    break;
+                case EVENT_COMMAND_SUPERSEDED:
+                    receivedNS[code] = -1;
+                    break;
+                case EVENT_STATE_TRANSITION:
+                    if (currentState == r.status && stateEnteredNS >= 0) {
+                        add(phaseLatencies, stateName(r.status), r.monoNS - stateEnteredNS);
+                    }
+                    if (r.status == STATE_IDLE && r.aux == STATE_CONNECTING) {
+                        connectAttemptCount++;
+                    } else if (r.status == STATE_AUTHENTICATING && r.aux == STATE_READY) {
+                        connectReadyCount++;
+                    }
+                    currentState = r.aux;
+                    stateEnteredNS = r.monoNS;
+                    break;
+                case EVENT_WRITE_STARTED:
+                    if (receivedNS[code] >= 0) {
+                        waitLatencies.add(r.monoNS - receivedNS[code]);
+                    }
+                    writeStartedNS[code] = r.monoNS;
+                    break;
+                case EVENT_WRITE_COMPLETED:
+                    if (writeStartedNS[code] >= 0) {
+                        writeLatencies.add(r.monoNS - writeStartedNS[code]);
+                    }
+                    if (receivedNS[code] >= 0) {
+                        endToEndLatencies.add(r.monoNS - receivedNS[code]);
+                    }
+                    writeStartedNS[code] = -1;
+                    receivedNS[code] = -1;
+                    break;
+                case EVENT_WRITE_FAILED:
+                    writeStartedNS[code] = -1;
+                    break;
+                case EVENT_RECOVERY:
+                    if (r.aux >= 0 && r.aux < recoveryStepCounts.length) {
+                        recoveryStepCounts[r.aux]++;
+                    }
+                    break;
+            }
+        }
+
+        // Counts & rates
+        System.out.println();
+        System.out.println("Commands:");
+        int received = eventCounts[EVENT_COMMAND_RECEIVED];
+        int deduped = eventCounts[EVENT_COMMAND_DEDUPED];
+        int started = eventCounts[EVENT_WRITE_STARTED];
+        int failed = eventCounts[EVENT_WRITE_FAILED];
+        System.out.println("  received           " + received);
+        System.out.println("  deduped            " + deduped + percent(deduped, received));
+        System.out.println("  submitted          " + acceptedCount + " accepted, " + rejectedCount + " rejected");
+        System.out.println("  superseded         " + eventCounts[EVENT_COMMAND_SUPERSEDED]);
+        System.out.println("  writes started     " + started);
+        System.out.println("  writes completed   " + eventCounts[EVENT_WRITE_COMPLETED]);
+        System.out.println("  writes failed      " + failed + percent(failed, started));
+        System.out.println("Link:");
+        System.out.println("  connect attempts   " + connectAttemptCount);
+        System.out.println("  connects ready     " + connectReadyCount + percent(connectReadyCount, connectAttemptCount));
+        System.out.println("  links lost         " + eventCounts[EVENT_LINK_LOST]);
+        StringBuilder steps = new StringBuilder();
+        for (int i = 1; i < STEP_NAMES.length; i++) {
+            steps.append(i == 1 ? "" : ", ").append(STEP_NAMES[i]).append(' ').append(recoveryStepCounts[i]);
+        }
+        System.out.println("  recoveries         " + eventCounts[EVENT_RECOVERY] + " (" + steps + ")");
+
+        // Latencies
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%-26s %7s %9s %9s %9s %9s", "Latency (ms)", "count", "p50", "p90", "p99", "max"));
+        for (Map.Entry<String, List<Long>> entry : phaseLatencies.entrySet()) {
+            printPercentiles("phase " + entry.getKey(), entry.getValue());
+        }
+        printPercentiles("cmd received->write", waitLatencies);
+        printPercentiles("cmd write->completed", writeLatencies);
+        printPercentiles("cmd received->completed", endToEndLatencies);
+
+        // Timeline
+        if (showTimeline) {
+            System.out.println();
+            System.out.println("Timeline:");
+            SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+            long previousNS = first.monoNS;
+            for (Record r : journal.records) {
+                System.out.println(String.format(Locale.US, "  %s %+9.1fms  %s",
+                        timeFormat.format(new Date(journal.toWallMS(r.monoNS))), (r.monoNS - previousNS) / (double) NS_PER_MS, describe(r)));
+                previousNS = r.monoNS;
+            }
+        }
+        System.out.println();
+    }
+
+    private static void add(Map<String, List<Long>> map, String key, long value) {
+        List<Long> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Long>();
+            map.put(key, list);
+        }
+        list.add(value);
+    }
+
+    private static void printPercentiles(String name, List<Long> valuesNS) {
+        if (valuesNS.isEmpty()) {
+            System.out.println(String.format(Locale.US, "%-26s %7d", name, 0));
+            return;
+        }
+        long[] sorted = new long[valuesNS.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = valuesNS.get(i);
+        }
+        Arrays.sort(sorted);
+        System.out.println(String.format(Locale.US, "%-26s %7d %9.1f %9.1f %9.1f %9.1f", name, sorted.length,
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1] / (double) NS_PER_MS));
+    }
+
+    /** Nearest-rank percentile, in ms. */
+    private static double percentile(long[] sortedNS, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sortedNS.length);
+        return sortedNS[Math.max(0, Math.min(sortedNS.length - 1, rank - 1))] / (double) NS_PER_MS;
+    }
+
+    private static String percent(int part, int whole) {
+        return whole == 0 ? "" : String.format(Locale.US, " (%.1f%%)", 100.0 * part / whole);
+    }
+
+    private static String stateName(int state) {
+        return state >= 0 && state < STATE_NAMES.length ? STATE_NAMES[state] : "STATE(" + state + ")";
+    }
+
+    private static String describe(Record r) {
+        String name = r.type < EVENT_NAMES.length ? EVENT_NAMES[r.type] : "EVENT(" + r.type + ")";
+        int code = r.code & 0xff;
+        switch (r.type) {
+            case EVENT_COMMAND_RECEIVED:
+                return name + " code " + code + ", duration " + r.value + "s" + (r.status != 0 ? ", forced" : "");
+            case EVENT_COMMAND_SUBMITTED:
+                return name + " code " + code + (r.status != 0 ? ", accepted" : ", rejected");
+            case EVENT_COMMAND_SUPERSEDED:
+                return name + " code " + code + " by " + (r.aux & 0xff);
+            case EVENT_STATE_TRANSITION:
+                return name + " " + stateName(r.status) + " -> " + stateName(r.aux);
+            case EVENT_WRITE_FAILED:
+            case EVENT_LINK_LOST:
+                return name + " code " + code + ", status " + r.status;
+            case EVENT_RECOVERY:
+                return name + " " + (r.aux >= 0 && r.aux < STEP_NAMES.length ? STEP_NAMES[r.aux] : "STEP(" + r.aux + ")") + ", status " + r.status;
+            default:
+                return name + " code " + code;
+        }
+    }
+}